@@ -0,0 +1,235 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Load generator for {@link AttendanceServer}: each client logs in once, then loops over a
+ * kiosk-like mix of requests (60% stats, 20% subject list, 20% session saves) for a fixed time.
+ * Reports requests per second and p50 / p99 latency, overall and per endpoint.
+ *
+ * Without a URL it starts the server in-process on a free port with the in-memory backend
+ * (unless {@code -Dattendance.backend} says otherwise) and registers one account per client.
+ * Against a running server, pass the URL and an existing account; its subjects are only
+ * written if it has none.
+ *
+ * Usage: java -cp out ApiLoadGenerator [clients] [seconds] [baseUrl sapid password]
+ */
+public class ApiLoadGenerator {
+
+    private static final String[] ENDPOINTS = {"stats", "subjects", "sessions"};
+    private static final int SUBJECTS = 7;
+    private static final int MAX_SAMPLES = 1_000_000;
+
+    public static void main(String[] args) throws Exception {
+        int clients = args.length > 0 ? Integer.parseInt(args[0]) : 32;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+
+        AttendanceServer server = null;
+        String baseUrl;
+        String[][] accounts = new String[clients][];
+        if (args.length > 4) {
+            baseUrl = args[2].replaceAll("/+$", "");
+            for (int i = 0; i < clients; i++) {
+                accounts[i] = new String[]{args[3], args[4]};
+            }
+        } else {
+            if (System.getProperty("attendance.backend") == null) {
+                System.setProperty("attendance.backend", AttendanceRepositories.MEMORY);
+            }
+            server = new AttendanceServer(AttendanceService.getInstance(), "127.0.0.1", 0);
+            server.start();
+            baseUrl = "http://127.0.0.1:" + server.getPort();
+            for (int i = 0; i < clients; i++) {
+                accounts[i] = new String[]{"load-" + i, "load-password-" + i};
+                AttendanceService.getInstance().register(accounts[i][0], "Load Client " + i, accounts[i][1]);
+            }
+        }
+
+        // Log every client in before the clock starts (password hashing is deliberately slow)
+        String[] tokens = new String[clients];
+        List<List<String>> subjects = new ArrayList<>();
+        for (int i = 0; i < clients; i++) {
+            tokens[i] = login(baseUrl, accounts[i][0], accounts[i][1]);
+            subjects.add(ensureSubjects(baseUrl, tokens[i]));
+        }
+
+        long[][] samples = new long[ENDPOINTS.length][MAX_SAMPLES];
+        AtomicLong[] counts = {new AtomicLong(), new AtomicLong(), new AtomicLong()};
+        AtomicLong errors = new AtomicLong();
+        CountDownLatch start = new CountDownLatch(1);
+        long[] window = new long[2];
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < clients; i++) {
+            String token = tokens[i];
+            List<String> mySubjects = subjects.get(i);
+            Thread t = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                while (System.nanoTime() < window[1]) {
+                    int roll = random.nextInt(10);
+                    int endpoint = roll < 6 ? 0 : (roll < 8 ? 1 : 2);
+                    long begin = System.nanoTime();
+                    try {
+                        if (endpoint == 0) {
+                            request("GET", baseUrl + "/api/stats", token, null);
+                        } else if (endpoint == 1) {
+                            request("GET", baseUrl + "/api/subjects", token, null);
+                        } else {
+                            request("POST", baseUrl + "/api/sessions", token, Json.write(randomSession(mySubjects, random)));
+                        }
+                        long n = counts[endpoint].getAndIncrement();
+                        if (n < MAX_SAMPLES) samples[endpoint][(int) n] = System.nanoTime() - begin;
+                    } catch (IOException e) {
+                        if (errors.incrementAndGet() <= 3) System.err.println("Request failed: " + e.getMessage());
+                    }
+                }
+            }, "load-client-" + i);
+            threads.add(t);
+            t.start();
+        }
+
+        window[0] = System.nanoTime();
+        window[1] = window[0] + seconds * 1_000_000_000L;
+        start.countDown();
+        for (Thread t : threads) {
+            t.join();
+        }
+        double elapsed = (System.nanoTime() - window[0]) / 1e9;
+
+        System.out.printf("%n%d clients, %d s against %s%n%n", clients, seconds, baseUrl);
+        System.out.printf("%-10s | %9s | %10s | %10s | %10s%n", "Endpoint", "Requests", "Req/s", "p50 (ms)", "p99 (ms)");
+        System.out.println("---------------------------------------------------------------");
+        long[] all = new long[0];
+        long total = 0;
+        for (int e = 0; e < ENDPOINTS.length; e++) {
+            int n = (int) Math.min(counts[e].get(), MAX_SAMPLES);
+            long[] sorted = Arrays.copyOf(samples[e], n);
+            Arrays.sort(sorted);
+            report(ENDPOINTS[e], counts[e].get(), elapsed, sorted);
+            all = concat(all, sorted);
+            total += counts[e].get();
+        }
+        Arrays.sort(all);
+        System.out.println("---------------------------------------------------------------");
+        report("all", total, elapsed, all);
+        System.out.println("Errors: " + errors.get());
+
+        if (server != null) {
+            server.stop(0);
+        }
+    }
+
+    private static String login(String baseUrl, String sapid, String password) throws IOException {
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("sapid", sapid);
+        body.put("password", password);
+        Object response = Json.parse(request("POST", baseUrl + "/api/login", null, Json.write(body)));
+        return (String) ((Map<?, ?>) response).get("token");
+    }
+
+    /** Returns the account's subject names, first saving a set if it has none. */
+    private static List<String> ensureSubjects(String baseUrl, String token) throws IOException {
+        List<String> names = new ArrayList<>();
+        Map<?, ?> response = (Map<?, ?>) Json.parse(request("GET", baseUrl + "/api/subjects", token, null));
+        for (Object row : (List<?>) response.get("subjects")) {
+            names.add((String) ((Map<?, ?>) row).get("name"));
+        }
+        if (!names.isEmpty()) {
+            return names;
+        }
+        List<Object> rows = new ArrayList<>();
+        for (int i = 0; i < SUBJECTS; i++) {
+            Map<String, Object> row = new LinkedHashMap<>();
+            row.put("name", "Subject " + i);
+            row.put("targetTotalLectures", 40);
+            rows.add(row);
+            names.add("Subject " + i);
+        }
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("subjects", rows);
+        request("PUT", baseUrl + "/api/subjects", token, Json.write(body));
+        return names;
+    }
+
+    private static Map<String, Object> randomSession(List<String> subjects, ThreadLocalRandom random) {
+        List<Object> marks = new ArrayList<>();
+        for (String subject : subjects) {
+            Map<String, Object> mark = new LinkedHashMap<>();
+            mark.put("subject", subject);
+            mark.put("present", random.nextInt(4) != 0);
+            marks.add(mark);
+        }
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("marks", marks);
+        return body;
+    }
+
+    /** Sends one request on a kept-alive connection and returns the body; non-2xx is an IOException. */
+    private static String request(String method, String url, String token, String body) throws IOException {
+        HttpURLConnection conn = (HttpURLConnection) new URL(url).openConnection();
+        conn.setRequestMethod(method);
+        if (token != null) {
+            conn.setRequestProperty("Authorization", "Bearer " + token);
+        }
+        if (body != null) {
+            byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+            conn.setDoOutput(true);
+            conn.setRequestProperty("Content-Type", "application/json");
+            conn.setFixedLengthStreamingMode(bytes.length);
+            try (OutputStream out = conn.getOutputStream()) {
+                out.write(bytes);
+            }
+        }
+        int status = conn.getResponseCode();
+        InputStream in = status < 400 ? conn.getInputStream() : conn.getErrorStream();
+        String text = readFully(in); // Reading to the end lets the connection be reused
+        if (status / 100 != 2) {
+            throw new IOException(method + " " + url + " -> " + status + " " + text);
+        }
+        return text;
+    }
+
+    private static String readFully(InputStream in) throws IOException {
+        if (in == null) return "";
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        byte[] chunk = new byte[4096];
+        try (InputStream stream = in) {
+            int n;
+            while ((n = stream.read(chunk)) > 0) {
+                buffer.write(chunk, 0, n);
+            }
+        }
+        return new String(buffer.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static void report(String name, long requests, double elapsed, long[] sorted) {
+        System.out.printf("%-10s | %9d | %10.1f | %10.2f | %10.2f%n", name, requests, requests / elapsed,
+                percentile(sorted, 0.50) / 1e6, percentile(sorted, 0.99) / 1e6);
+    }
+
+    private static long percentile(long[] sorted, double p) {
+        return sorted.length == 0 ? 0 : sorted[Math.min(sorted.length - 1, (int) (p * sorted.length))];
+    }
+
+    private static long[] concat(long[] a, long[] b) {
+        long[] joined = Arrays.copyOf(a, a.length + b.length);
+        System.arraycopy(b, 0, joined, a.length, b.length);
+        return joined;
+    }
+}
@@ -0,0 +1,88 @@
+import java.io.File;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time a session save takes to return, saving straight to a (simulated) database versus through
+ * the offline {@link SessionJournal}. The database is an {@link InMemoryAttendanceRepository} that
+ * sleeps for the given latency per save, so the effect of a slow or distant server is visible
+ * without one. Reports p50 / p99 per save and how long the replayer then needed to catch up.
+ *
+ * Usage: java -cp out JournalBenchmark [sessions] [latencyMicros]
+ */
+public class JournalBenchmark {
+
+    private static final int SUBJECTS = 7;
+
+    public static void main(String[] args) throws Exception {
+        int sessions = args.length > 0 ? Integer.parseInt(args[0]) : 2_000;
+        long latencyMicros = args.length > 1 ? Long.parseLong(args[1]) : 2_000;
+
+        List<String> subjects = new ArrayList<>();
+        List<SubjectTarget> targets = new ArrayList<>();
+        boolean[] present = new boolean[SUBJECTS];
+        for (int i = 0; i < SUBJECTS; i++) {
+            subjects.add("Subject " + i);
+            targets.add(new SubjectTarget("Subject " + i, 40));
+            present[i] = (i % 3) != 0;
+        }
+
+        System.out.printf("%d sessions of %d subjects, %d us database latency%n%n", sessions, SUBJECTS, latencyMicros);
+        System.out.printf("%-10s | %10s | %10s | %12s%n", "Strategy", "p50 (us)", "p99 (us)", "Drain (ms)");
+        System.out.println("-----------------------------------------------------");
+
+        AttendanceRepository direct = slowDatabase(targets, latencyMicros);
+        long[] times = new long[sessions];
+        for (int i = 0; i < sessions; i++) {
+            long start = System.nanoTime();
+            direct.saveSession("S1", "direct-" + i, subjects, present);
+            times[i] = System.nanoTime() - start;
+        }
+        report("direct", times, 0);
+
+        File file = File.createTempFile("journal-bench", ".journal");
+        file.deleteOnExit();
+        new File(file.getPath() + ".rejected").deleteOnExit();
+        JournaledAttendanceRepository journaled = new JournaledAttendanceRepository(
+                slowDatabase(targets, latencyMicros), SqlDialect.ORACLE, new SessionJournal(file, 16 * 1024 * 1024, 10));
+        for (int i = 0; i < sessions; i++) {
+            long start = System.nanoTime();
+            journaled.saveSession("S1", "journaled-" + i, subjects, present);
+            times[i] = System.nanoTime() - start;
+        }
+        long drainStart = System.nanoTime();
+        journaled.replayPending();
+        report("journaled", times, System.nanoTime() - drainStart);
+        journaled.close();
+    }
+
+    /** An in-memory repository with one registered user whose saves take {@code latencyMicros}. */
+    private static AttendanceRepository slowDatabase(List<SubjectTarget> targets, long latencyMicros) throws SQLException {
+        InMemoryAttendanceRepository memory = new InMemoryAttendanceRepository();
+        memory.register("S1", "Bench", "password");
+        memory.saveSubjects("S1", targets);
+        return new InMemoryAttendanceRepository() {
+            @Override
+            public int[] saveSession(String sapid, String sessionId, List<String> subjects, boolean[] present) throws SQLException {
+                try {
+                    TimeUnit.MICROSECONDS.sleep(latencyMicros);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new SQLException("Interrupted", e);
+                }
+                return memory.saveSession(sapid, sessionId, subjects, present);
+            }
+        };
+    }
+
+    private static void report(String strategy, long[] nanos, long drainNanos) {
+        long[] sorted = nanos.clone();
+        Arrays.sort(sorted);
+        System.out.printf("%-10s | %10.1f | %10.1f | %12s%n", strategy,
+                sorted[sorted.length / 2] / 1e3, sorted[(int) (sorted.length * 0.99)] / 1e3,
+                drainNanos == 0 ? "-" : String.format("%.1f", drainNanos / 1e6));
+    }
+}
@@ -0,0 +1,117 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures logins per second, and per core, through {@link PasswordService} at the PBKDF2 cost
+ * in use, for a growing number of concurrent login attempts. The last row is a login storm
+ * (many more callers than the pool and queue hold) to show backpressure turning into rejections
+ * instead of unbounded queueing.
+ *
+ * Logins go through {@link InMemoryAttendanceRepository#authenticate}, so no database is needed
+ * and the numbers are hashing cost plus queueing only.
+ *
+ * Usage: java -cp out LoginBenchmark [iterations] [secondsPerRow]
+ */
+public class LoginBenchmark {
+
+    private static final String SAPID = "S12345";
+    private static final String PASSWORD = "correct horse battery staple";
+
+    public static void main(String[] args) throws Exception {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : PasswordHasher.DEFAULT_ITERATIONS;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        int cores = Runtime.getRuntime().availableProcessors();
+        int queueCapacity = 4 * cores;
+
+        PasswordService service = new PasswordService(new PasswordHasher(iterations), cores, queueCapacity, 500);
+        InMemoryAttendanceRepository repository = new InMemoryAttendanceRepository(service);
+        repository.register(SAPID, "Bench User", PASSWORD);
+        for (int i = 0; i < 20; i++) {
+            repository.authenticate(SAPID, PASSWORD); // Warm up the JIT on the PBKDF2 path
+        }
+
+        System.out.printf("PBKDF2-HMAC-SHA256, %d iterations, %d worker thread(s), queue %d%n%n",
+                iterations, cores, queueCapacity);
+        System.out.printf("%-8s | %9s | %15s | %12s | %12s | %8s%n",
+                "Callers", "Logins/s", "Logins/s/core", "p50 (ms)", "p99 (ms)", "Rejected");
+        System.out.println("------------------------------------------------------------------------------");
+
+        List<Integer> callerCounts = new ArrayList<>();
+        for (int callers = 1; callers < cores; callers *= 2) {
+            callerCounts.add(callers);
+        }
+        callerCounts.add(cores);
+        callerCounts.add(2 * cores);
+        callerCounts.add(16 * (cores + queueCapacity)); // Storm: far more than pool + queue can hold
+        for (int callers : callerCounts) {
+            run(repository, callers, seconds, cores);
+        }
+        service.shutdown();
+    }
+
+    private static void run(InMemoryAttendanceRepository repository, int callers, int seconds, int cores)
+            throws InterruptedException {
+        AtomicLong rejected = new AtomicLong();
+        List<long[]> latencies = new ArrayList<>();
+        CountDownLatch start = new CountDownLatch(1);
+        long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < callers; i++) {
+            long[] samples = new long[100_000];
+            latencies.add(samples);
+            Thread t = new Thread(() -> {
+                int n = 0;
+                try {
+                    start.await();
+                    while (System.nanoTime() < deadline && n < samples.length - 1) {
+                        long begin = System.nanoTime();
+                        try {
+                            if (repository.authenticate(SAPID, PASSWORD) == null) {
+                                throw new IllegalStateException("Login unexpectedly failed");
+                            }
+                            samples[n++] = System.nanoTime() - begin;
+                        } catch (RejectedExecutionException e) {
+                            rejected.incrementAndGet();
+                        }
+                    }
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+                samples[samples.length - 1] = n; // Last slot holds the sample count
+            }, "login-caller-" + i);
+            threads.add(t);
+            t.start();
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        for (Thread t : threads) {
+            t.join();
+        }
+        double elapsed = (System.nanoTime() - begin) / 1e9;
+
+        int total = 0;
+        for (long[] samples : latencies) {
+            total += (int) samples[samples.length - 1];
+        }
+        long[] all = new long[total];
+        int pos = 0;
+        for (long[] samples : latencies) {
+            int n = (int) samples[samples.length - 1];
+            System.arraycopy(samples, 0, all, pos, n);
+            pos += n;
+        }
+        Arrays.sort(all);
+        double loginsPerSecond = total / elapsed;
+        System.out.printf("%-8d | %9.1f | %15.1f | %12.1f | %12.1f | %8d%n",
+                callers, loginsPerSecond, loginsPerSecond / cores,
+                percentile(all, 0.50) / 1e6, percentile(all, 0.99) / 1e6, rejected.get());
+    }
+
+    private static long percentile(long[] sorted, double p) {
+        return sorted.length == 0 ? 0 : sorted[Math.min(sorted.length - 1, (int) (p * sorted.length))];
+    }
+}
@@ -0,0 +1,104 @@
+import java.awt.Color;
+import java.awt.FlowLayout;
+import java.awt.Font;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.swing.BoxLayout;
+import javax.swing.ButtonGroup;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JRadioButton;
+import javax.swing.JScrollPane;
+
+/**
+ * Compares build time and retained heap of the old per-row component layout
+ * (JPanel + JLabel + 2 JRadioButtons + ButtonGroup per row, kept in HashMaps)
+ * with the {@link AttendanceRosterModel} / {@link RosterTable} roster.
+ *
+ * Usage: java -Djava.awt.headless=true -cp out RosterBenchmark
+ */
+public class RosterBenchmark {
+
+    private static final int[] ROW_COUNTS = {1_000, 10_000};
+    private static final Font FONT = new Font("Segoe UI", Font.PLAIN, 13);
+
+    // Holds the built UI while its heap is measured
+    private static volatile Object sink;
+
+    public static void main(String[] args) {
+        System.out.printf("%-7s | %-10s | %10s | %10s%n", "Rows", "Layout", "Build (ms)", "Heap (KB)");
+        System.out.println("---------------------------------------------");
+        for (int rows : ROW_COUNTS) {
+            List<String> labels = new ArrayList<>(rows);
+            for (int i = 0; i < rows; i++) {
+                labels.add("Student " + i);
+            }
+            // Warm up class loading and JIT for both layouts before measuring
+            buildPerRowPanels(labels.subList(0, 100));
+            buildRoster(labels.subList(0, 100));
+
+            measure(rows, "per-row", () -> buildPerRowPanels(labels));
+            measure(rows, "roster", () -> buildRoster(labels));
+        }
+    }
+
+    private interface Builder {
+        Object build();
+    }
+
+    private static void measure(int rows, String layout, Builder builder) {
+        long before = usedHeap();
+        long start = System.nanoTime();
+        sink = builder.build();
+        long nanos = System.nanoTime() - start;
+        long after = usedHeap();
+        sink = null;
+        System.out.printf("%-7d | %-10s | %10.1f | %10d%n", rows, layout, nanos / 1e6, Math.max(0, after - before) / 1024);
+    }
+
+    /** The pre-roster layout from Timetable.createSubjectRowPanel. */
+    private static Object buildPerRowPanels(List<String> labels) {
+        Map<String, JRadioButton> present = new HashMap<>();
+        Map<String, JRadioButton> absent = new HashMap<>();
+        Map<String, ButtonGroup> groups = new HashMap<>();
+        JPanel panel = new JPanel();
+        panel.setLayout(new BoxLayout(panel, BoxLayout.Y_AXIS));
+        for (String label : labels) {
+            JPanel row = new JPanel(new FlowLayout(FlowLayout.LEFT, 20, 5));
+            row.setBackground(Color.WHITE);
+            JLabel lbl = new JLabel(label);
+            lbl.setFont(FONT);
+            row.add(lbl);
+            JRadioButton p = new JRadioButton("Present");
+            JRadioButton a = new JRadioButton("Absent");
+            row.add(p);
+            row.add(a);
+            ButtonGroup group = new ButtonGroup();
+            group.add(p);
+            group.add(a);
+            present.put(label, p);
+            absent.put(label, a);
+            groups.put(label, group);
+            panel.add(row);
+        }
+        return new Object[]{new JScrollPane(panel), present, absent, groups};
+    }
+
+    private static Object buildRoster(List<String> labels) {
+        AttendanceRosterModel model = new AttendanceRosterModel();
+        model.setRows(labels);
+        RosterTable table = new RosterTable(model, FONT, FONT, Color.WHITE, Color.DARK_GRAY, Color.LIGHT_GRAY);
+        return new JScrollPane(table);
+    }
+
+    private static long usedHeap() {
+        Runtime rt = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return rt.totalMemory() - rt.freeMemory();
+    }
+}
@@ -0,0 +1,159 @@
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares round trips and commits per saved session for the old per-subject
+ * autocommit loop and the batched single-transaction {@link JdbcAttendanceRepository#saveSession}.
+ *
+ * Runs against a counting stub connection, so no database is needed. Each round trip
+ * sleeps for a simulated network latency to show the wall-clock effect. The repository saves one
+ * session before the measured one, so its user and subject ids are already in its dictionaries
+ * (the first save of a login reads them, two more round trips).
+ *
+ * Usage: java -cp out SaveSessionBenchmark [latencyMicros]
+ */
+public class SaveSessionBenchmark {
+
+    private static final String LEGACY_UPDATE_SQL = "UPDATE timetable SET " +
+                                                    "lectures_taken_so_far = NVL(lectures_taken_so_far, 0) + 1, " +
+                                                    "attended_count = NVL(attended_count, 0) + ? " +
+                                                    "WHERE sapid = ? AND subjects = ?";
+
+    private static final int[] SESSION_SIZES = {7, 50, 500};
+
+    public static void main(String[] args) throws Exception {
+        long latencyMicros = args.length > 0 ? Long.parseLong(args[0]) : 500;
+
+        System.out.printf("%-8s | %-10s | %11s | %7s | %10s%n", "Subjects", "Strategy", "Round trips", "Commits", "Time (ms)");
+        System.out.println("---------------------------------------------------------");
+        for (int size : SESSION_SIZES) {
+            List<String> subjects = new ArrayList<>();
+            boolean[] present = new boolean[size];
+            for (int i = 0; i < size; i++) {
+                subjects.add("Subject " + i);
+                present[i] = (i % 3) != 0;
+            }
+
+            Counters before = new Counters(latencyMicros, subjects);
+            long start = System.nanoTime();
+            saveLegacy(before.connection(), "S12345", subjects, present);
+            report(size, "per-row", before, System.nanoTime() - start);
+
+            Counters after = new Counters(latencyMicros, subjects);
+            JdbcAttendanceRepository repository = new JdbcAttendanceRepository(after::connection, SqlDialect.ORACLE);
+            repository.saveSession("S12345", "warm-up-" + size, subjects, present);
+            after.reset();
+            start = System.nanoTime();
+            repository.saveSession("S12345", "bench-" + size, subjects, present);
+            report(size, "batched", after, System.nanoTime() - start);
+        }
+    }
+
+    /** The pre-batching implementation: one prepare + autocommitted UPDATE per subject. */
+    private static void saveLegacy(Connection conn, String sapid, List<String> subjects, boolean[] present) throws SQLException {
+        for (int i = 0; i < subjects.size(); i++) {
+            try (PreparedStatement pstmt = conn.prepareStatement(LEGACY_UPDATE_SQL)) {
+                pstmt.setInt(1, present[i] ? 1 : 0);
+                pstmt.setString(2, sapid);
+                pstmt.setString(3, subjects.get(i));
+                pstmt.executeUpdate();
+            }
+        }
+    }
+
+    private static void report(int size, String strategy, Counters c, long nanos) {
+        System.out.printf("%-8d | %-10s | %11d | %7d | %10.2f%n",
+                size, strategy, c.roundTrips, c.commits, nanos / 1_000_000.0);
+    }
+
+    /**
+     * Stub JDBC objects that count server round trips and commits (autocommit counts one per statement).
+     * Queries answer as a database holding one user registered for {@code subjects}.
+     */
+    private static final class Counters {
+        private final long latencyMicros;
+        private final List<String> subjects;
+        private boolean autoCommit = true;
+        private int batched;
+        int roundTrips;
+        int commits;
+
+        Counters(long latencyMicros, List<String> subjects) {
+            this.latencyMicros = latencyMicros;
+            this.subjects = subjects;
+        }
+
+        void reset() {
+            roundTrips = 0;
+            commits = 0;
+        }
+
+        private void roundTrip() {
+            roundTrips++;
+            try {
+                TimeUnit.MICROSECONDS.sleep(latencyMicros);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        Connection connection() {
+            return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{Connection.class},
+                    (proxy, method, args) -> {
+                        switch (method.getName()) {
+                            case "prepareStatement": return statement((String) args[0]);
+                            case "getAutoCommit": return autoCommit;
+                            case "setAutoCommit": autoCommit = (Boolean) args[0]; return null;
+                            case "commit": roundTrip(); commits++; return null;
+                            case "rollback": roundTrip(); return null;
+                            default: return null;
+                        }
+                    });
+        }
+
+        private PreparedStatement statement(String sql) {
+            return (PreparedStatement) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{PreparedStatement.class},
+                    (proxy, method, args) -> {
+                        switch (method.getName()) {
+                            case "addBatch": batched++; return null;
+                            case "executeQuery":
+                                roundTrip();
+                                return sql.contains("FROM users") ? rows(1) : rows(subjects.size());
+                            case "executeUpdate":
+                                roundTrip();
+                                if (autoCommit) commits++;
+                                return 1;
+                            case "executeBatch":
+                                roundTrip();
+                                if (autoCommit) commits++;
+                                int[] counts = new int[batched];
+                                Arrays.fill(counts, 1);
+                                batched = 0;
+                                return counts;
+                            default: return null;
+                        }
+                    });
+        }
+
+        /** A result of {@code count} rows: row i has id i + 1 and, for the subject list query, subject i. */
+        private ResultSet rows(int count) {
+            int[] row = {0};
+            return (ResultSet) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{ResultSet.class},
+                    (proxy, method, args) -> {
+                        switch (method.getName()) {
+                            case "next": return ++row[0] <= count;
+                            case "getInt": return row[0];
+                            case "getString": return subjects.get(row[0] - 1);
+                            default: return null;
+                        }
+                    });
+        }
+    }
+}
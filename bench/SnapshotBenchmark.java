@@ -0,0 +1,63 @@
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Size and scan speed of a {@link CounterSnapshot}: writes synthetic counters for an institution
+ * of the given size, maps the file and times a full {@link AttendanceAnalytics} pass over it with
+ * 1, 2, 4 ... threads up to the number of cores. Throughput is reported in rows and in bytes of
+ * the columns the scan reads.
+ *
+ * Usage: java -cp out SnapshotBenchmark [students] [subjectsPerStudent]
+ */
+public class SnapshotBenchmark {
+
+    private static final int SUBJECT_POOL = 200;
+
+    public static void main(String[] args) throws Exception {
+        int students = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+        int perStudent = args.length > 1 ? Integer.parseInt(args[1]) : 7;
+
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        CounterSnapshot.Writer writer = new CounterSnapshot.Writer();
+        for (int s = 0; s < students; s++) {
+            String sapid = String.format("%011d", 50_000_000_000L + s);
+            int first = random.nextInt(SUBJECT_POOL);
+            for (int k = 0; k < perStudent; k++) {
+                int taken = random.nextInt(60);
+                writer.add(sapid, new SubjectStats("Subject " + ((first + k) % SUBJECT_POOL) + " - Engineering Mathematics",
+                        taken == 0 ? 0 : random.nextInt(taken + 1), taken, 60));
+            }
+        }
+        Path file = Files.createTempFile("counters", ".snap");
+        long start = System.nanoTime();
+        writer.writeTo(file);
+        System.out.printf("Wrote %d rows in %.1f ms, %.1f MB (%.1f bytes/row)%n", writer.getRowCount(),
+                (System.nanoTime() - start) / 1e6, Files.size(file) / 1e6, (double) Files.size(file) / writer.getRowCount());
+
+        CounterSnapshot snapshot = CounterSnapshot.open(file);
+        long rows = snapshot.getRowCount();
+        int cores = Runtime.getRuntime().availableProcessors();
+        System.out.printf("%n%-8s | %12s | %12s | %12s | %8s%n", "Threads", "ms per pass", "M rows/s", "GB/s", "Speed-up");
+        System.out.println("--------------------------------------------------------------");
+        double single = 0;
+        for (int threads = 1; threads <= cores; threads = threads < cores && threads * 2 > cores ? cores : threads * 2) {
+            AttendanceAnalytics analytics = new AttendanceAnalytics(threads);
+            for (int i = 0; i < 5; i++) {
+                analytics.analyze(snapshot, 0.75); // Warm-up
+            }
+            int runs = 10;
+            long begin = System.nanoTime();
+            for (int i = 0; i < runs; i++) {
+                analytics.analyze(snapshot, 0.75);
+            }
+            double seconds = (System.nanoTime() - begin) / 1e9 / runs;
+            analytics.shutdown();
+            if (threads == 1) single = seconds;
+            // Four int columns are read per row: subject, attended, taken, target
+            System.out.printf("%-8d | %12.2f | %12.0f | %12.2f | %7.1fx%n", threads, seconds * 1e3,
+                    rows / seconds / 1e6, rows * 16 / seconds / 1e9, single / seconds);
+        }
+        Files.deleteIfExists(file);
+    }
+}
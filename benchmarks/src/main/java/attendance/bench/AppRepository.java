@@ -0,0 +1,103 @@
+package attendance.bench;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Method;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Handle on the application's {@code AttendanceRepository}.
+ *
+ * The application classes live in the default package, which a named package cannot import
+ * (and JMH refuses benchmarks in the default package), so they are reached through method
+ * handles looked up and bound once per trial. The call overhead is a few nanoseconds,
+ * negligible next to the database work being measured.
+ */
+final class AppRepository {
+
+    private final MethodHandle authenticate;
+    private final MethodHandle register;
+    private final MethodHandle loadSubjects;
+    private final MethodHandle saveSubjects;
+    private final MethodHandle saveSession;
+    private final MethodHandle loadStatistics;
+    private final MethodHandle resetAttendance;
+    private final MethodHandle newSubjectTarget;
+    private final String backend;
+
+    /**
+     * Opens the repository for a backend. Must run before any application class is loaded
+     * in this JVM, since the backend and database URL are read from system properties once.
+     *
+     * @param backend "embedded" or "memory"
+     * @param dataDir directory for the embedded database files
+     */
+    static AppRepository open(String backend, Path dataDir) throws ReflectiveOperationException {
+        System.setProperty("attendance.backend", backend);
+        System.setProperty("attendance.db.url", "jdbc:h2:file:" + dataDir.resolve("attendance").toAbsolutePath());
+        Object repository = Class.forName("AttendanceRepositories").getMethod("get").invoke(null);
+        return new AppRepository(backend, repository);
+    }
+
+    private AppRepository(String backend, Object repository) throws ReflectiveOperationException {
+        this.backend = backend;
+        Class<?> api = Class.forName("AttendanceRepository");
+        authenticate = bind(api, repository, "authenticate", String.class, String.class);
+        register = bind(api, repository, "register", String.class, String.class, String.class);
+        loadSubjects = bind(api, repository, "loadSubjects", String.class);
+        saveSubjects = bind(api, repository, "saveSubjects", String.class, List.class);
+        saveSession = bind(api, repository, "saveSession", String.class, String.class, List.class, boolean[].class);
+        loadStatistics = bind(api, repository, "loadStatistics", String.class);
+        resetAttendance = bind(api, repository, "resetAttendance", String.class);
+        newSubjectTarget = MethodHandles.publicLookup()
+                .unreflectConstructor(Class.forName("SubjectTarget").getConstructor(String.class, int.class));
+    }
+
+    private static MethodHandle bind(Class<?> api, Object repository, String name, Class<?>... parameterTypes)
+            throws ReflectiveOperationException {
+        Method method = api.getMethod(name, parameterTypes);
+        return MethodHandles.publicLookup().unreflect(method).bindTo(repository);
+    }
+
+    Object authenticate(String sapid, String password) throws Throwable {
+        return authenticate.invoke(sapid, password);
+    }
+
+    boolean register(String sapid, String name, String password) throws Throwable {
+        return (boolean) register.invoke(sapid, name, password);
+    }
+
+    List<?> loadSubjects(String sapid) throws Throwable {
+        return (List<?>) loadSubjects.invoke(sapid);
+    }
+
+    void saveSubjects(String sapid, List<?> subjectTargets) throws Throwable {
+        saveSubjects.invoke(sapid, subjectTargets);
+    }
+
+    int[] saveSession(String sapid, String sessionId, List<String> subjects, boolean[] present) throws Throwable {
+        return (int[]) saveSession.invoke(sapid, sessionId, subjects, present);
+    }
+
+    List<?> loadStatistics(String sapid) throws Throwable {
+        return (List<?>) loadStatistics.invoke(sapid);
+    }
+
+    int resetAttendance(String sapid) throws Throwable {
+        return (int) resetAttendance.invoke(sapid);
+    }
+
+    /** Creates an application {@code SubjectTarget}. */
+    Object subjectTarget(String name, int targetTotalLectures) throws Throwable {
+        return newSubjectTarget.invoke(name, targetTotalLectures);
+    }
+
+    /** Closes the connection pool of a database backend. */
+    void close() throws ReflectiveOperationException {
+        if (!"memory".equals(backend)) {
+            Class<?> pool = Class.forName("ConnectionPool");
+            pool.getMethod("shutdown").invoke(pool.getMethod("getInstance").invoke(null));
+        }
+    }
+}
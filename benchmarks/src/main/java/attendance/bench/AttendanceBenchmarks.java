@@ -0,0 +1,83 @@
+package attendance.bench;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The repository calls behind each screen action: login, opening the timetable, saving a
+ * session, viewing statistics, re-saving subjects and resetting attendance.
+ *
+ * Run with {@code java -jar benchmarks/target/benchmarks.jar}; add e.g.
+ * {@code -p backend=memory} or {@code -p subjects=7} to narrow the matrix. The forked JVMs
+ * run without the application's console and file logging and its periodic metrics dump.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Dattendance.log.console=false", "-Dattendance.log.file=", "-Dattendance.metrics.dumpSeconds=0"})
+public class AttendanceBenchmarks {
+
+    /** Adds one unsaved session before every invocation, so the measured call has events to fold or delete. */
+    @State(Scope.Thread)
+    public static class PendingSession {
+        @Setup(Level.Invocation)
+        public void markOneSession(RepositoryState state) throws Throwable {
+            state.saveOneSession();
+        }
+    }
+
+    /** Login button: credential check. */
+    @Benchmark
+    public Object login(RepositoryState state) throws Throwable {
+        return state.repository.authenticate(RepositoryState.SAPID, RepositoryState.PASSWORD);
+    }
+
+    /** Timetable window opening: the user's subject list. */
+    @Benchmark
+    public List<?> loadSubjects(RepositoryState state) throws Throwable {
+        return state.repository.loadSubjects(RepositoryState.SAPID);
+    }
+
+    /** SAVE Session with every subject marked. */
+    @Benchmark
+    public int[] saveSession(RepositoryState state) throws Throwable {
+        return state.saveOneSession();
+    }
+
+    /** View STATS with nothing new to fold (repeat view). */
+    @Benchmark
+    public List<?> statistics(RepositoryState state) throws Throwable {
+        return state.repository.loadStatistics(RepositoryState.SAPID);
+    }
+
+    /** View STATS right after a session was saved, so the pending events are folded first. */
+    @Benchmark
+    public List<?> statisticsAfterSave(RepositoryState state, PendingSession pending) throws Throwable {
+        return state.repository.loadStatistics(RepositoryState.SAPID);
+    }
+
+    /** Save Subjects with one target changed: the diff locks, compares and merges one row. */
+    @Benchmark
+    public void resaveSubjects(RepositoryState state) throws Throwable {
+        state.repository.saveSubjects(RepositoryState.SAPID, state.nextSubjectList());
+    }
+
+    /** Reset Data with one session of history to clear. */
+    @Benchmark
+    public int resetAttendance(RepositoryState state, PendingSession pending) throws Throwable {
+        return state.repository.resetAttendance(RepositoryState.SAPID);
+    }
+}
@@ -0,0 +1,99 @@
+package attendance.bench;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * One registered user with {@link #subjects} subjects and some attendance history, in a fresh
+ * database per trial. Every trial runs in its own forked JVM, which is what lets the backend be
+ * chosen per trial (the application reads it from system properties once).
+ */
+@State(Scope.Benchmark)
+public class RepositoryState {
+
+    static final String SAPID = "bench-user";
+    static final String PASSWORD = "bench-password";
+    private static final int TARGET_LECTURES = 60;
+    private static final int HISTORY_SESSIONS = 20;
+
+    /** "embedded" (H2 file database through the connection pool) or "memory". */
+    @Param({"embedded"})
+    public String backend;
+
+    /** Subjects registered for the user; every session marks all of them. */
+    @Param({"7", "50", "500"})
+    public int subjects;
+
+    AppRepository repository;
+    List<String> subjectNames;
+    boolean[] present;
+
+    private List<Object> subjectTargets;
+    private List<Object> retargetedSubjects;
+    private final AtomicLong sessions = new AtomicLong();
+    private final AtomicLong resaves = new AtomicLong();
+    private Path dataDir;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Throwable {
+        dataDir = Files.createTempDirectory("attendance-jmh");
+        repository = AppRepository.open(backend, dataDir);
+        repository.register(SAPID, "Benchmark User", PASSWORD);
+
+        subjectNames = new ArrayList<>(subjects);
+        present = new boolean[subjects];
+        subjectTargets = new ArrayList<>(subjects);
+        retargetedSubjects = new ArrayList<>(subjects);
+        for (int i = 0; i < subjects; i++) {
+            String name = String.format("Subject %03d", i);
+            subjectNames.add(name);
+            present[i] = (i % 4) != 0;
+            subjectTargets.add(repository.subjectTarget(name, TARGET_LECTURES));
+            // Same list with the first target changed, so a re-save has one real change to apply
+            retargetedSubjects.add(repository.subjectTarget(name, i == 0 ? TARGET_LECTURES + 1 : TARGET_LECTURES));
+        }
+        repository.saveSubjects(SAPID, subjectTargets);
+
+        for (int i = 0; i < HISTORY_SESSIONS; i++) {
+            saveOneSession();
+        }
+        repository.loadStatistics(SAPID); // Fold the history so every benchmark starts from settled counters
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        repository.close();
+        try (Stream<Path> files = Files.walk(dataDir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> {
+                try {
+                    Files.delete(path);
+                } catch (IOException e) {
+                    System.err.println("Could not delete " + path + ": " + e.getMessage());
+                }
+            });
+        }
+    }
+
+    /** Saves one session marking every subject, under a fresh session id. */
+    int[] saveOneSession() throws Throwable {
+        return repository.saveSession(SAPID, "bench-session-" + sessions.incrementAndGet(), subjectNames, present);
+    }
+
+    /** The subject list to save next; alternates between two targets for the first subject. */
+    List<Object> nextSubjectList() {
+        return (resaves.incrementAndGet() & 1) == 0 ? subjectTargets : retargetedSubjects;
+    }
+}
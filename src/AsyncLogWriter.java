@@ -0,0 +1,446 @@
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Background writer behind {@link Log}.
+ *
+ * Callers claim a slot in a fixed ring of preallocated records with one compare-and-set, fill
+ * it in and publish it; nothing is locked, formatted or allocated per record beyond the caller's
+ * varargs array. The single "log-writer" thread drains the ring in batches, formats each record
+ * into one reused StringBuilder, encodes it into one reused byte buffer and writes the batch to
+ * the console (WARN and ERROR to stderr) and the log file. It sleeps while the ring is empty and
+ * is woken by the next record.
+ *
+ * The file ({@code -Dattendance.log.file}, empty for none) rolls over once it passes
+ * {@code -Dattendance.log.maxFileKb}: {@code attendance.log} becomes {@code attendance.log.1},
+ * and so on, keeping {@code -Dattendance.log.maxFiles} old files. {@code -Dattendance.log.console=false}
+ * turns the console off. Records still in the ring at exit are written by a shutdown hook.
+ */
+public final class AsyncLogWriter {
+
+    public static final String FILE = System.getProperty("attendance.log.file", "attendance-data/logs/attendance.log");
+    private static final boolean CONSOLE = Boolean.parseBoolean(System.getProperty("attendance.log.console", "true"));
+    private static final long MAX_FILE_BYTES = Long.getLong("attendance.log.maxFileKb", 10_240L) * 1024;
+    private static final int MAX_FILES = Integer.getInteger("attendance.log.maxFiles", 5);
+    private static final int RING_SIZE = Integer.highestOneBit(Math.max(64, Integer.getInteger("attendance.log.bufferSize", 8192)));
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final long FULL_WAIT_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+    private static final int BATCH_BYTES = 64 * 1024;
+
+    private static final DateTimeFormatter TIMESTAMP =
+            DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSS").withZone(ZoneId.systemDefault());
+
+    private static volatile AsyncLogWriter instance;
+
+    // --- Ring shared by producers and the writer ---
+    private final Slot[] ring = new Slot[RING_SIZE];
+    private final int mask = RING_SIZE - 1;
+    private final AtomicLong claimed = new AtomicLong();   // Next sequence a producer will claim
+    private volatile long consumed;                        // Sequences below this are free again
+    private final LongAdder dropped = new LongAdder();
+    private volatile boolean sleeping;
+    private volatile boolean closing;
+    private volatile boolean finished;     // Writer thread has exited; see writeNow
+    private final Thread thread;
+
+    // --- Writer-thread state, reused for every record ---
+    private final StringBuilder line = new StringBuilder(512);
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private final ByteBuffer batch = ByteBuffer.allocate(BATCH_BYTES);
+    private ByteBuffer encoded = ByteBuffer.allocate(1024);
+    private final PrintWriter traceWriter = new PrintWriter(new BuilderWriter(line));
+    private final Path file;
+    private FileChannel channel;
+    private long fileSize;
+    private long reportedDrops;
+
+    /** Returns the shared writer, starting its thread on first use. */
+    public static AsyncLogWriter getInstance() {
+        AsyncLogWriter writer = instance;
+        if (writer == null) {
+            synchronized (AsyncLogWriter.class) {
+                writer = instance;
+                if (writer == null) {
+                    writer = new AsyncLogWriter(FILE.trim().isEmpty() ? null : Paths.get(FILE));
+                    instance = writer;
+                }
+            }
+        }
+        return writer;
+    }
+
+    private AsyncLogWriter(Path file) {
+        for (int i = 0; i < RING_SIZE; i++) {
+            ring[i] = new Slot(i - RING_SIZE); // Not yet published for any sequence
+        }
+        this.file = file;
+        this.thread = new Thread(this::drainLoop, "log-writer");
+        this.thread.setDaemon(true);
+        this.thread.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(this::close, "log-shutdown"));
+    }
+
+    /**
+     * Queues one record and returns. If the ring is full, a DEBUG or INFO record is dropped (and
+     * counted) at once; a WARN or ERROR record waits up to 50 ms for space first.
+     */
+    void log(Log.Level level, String logger, String message, Throwable error, Object[] fields) {
+        if (finished) {
+            writeNow(level, logger, message, error, fields);
+            return;
+        }
+        long sequence;
+        long deadline = 0;
+        while (true) {
+            sequence = claimed.get();
+            if (sequence - consumed >= RING_SIZE) {
+                // Full. Warnings and errors wait briefly for the writer; anything else is dropped at once
+                if (level.compareTo(Log.Level.WARN) < 0) {
+                    dropped.increment();
+                    return;
+                }
+                long now = System.nanoTime();
+                if (deadline == 0) {
+                    deadline = now + FULL_WAIT_NANOS;
+                } else if (now - deadline > 0) {
+                    dropped.increment();
+                    return;
+                }
+                LockSupport.unpark(thread);
+                LockSupport.parkNanos(FULL_WAIT_NANOS / 100);
+                continue;
+            }
+            if (claimed.compareAndSet(sequence, sequence + 1)) {
+                break;
+            }
+        }
+
+        Slot slot = ring[(int) sequence & mask];
+        slot.fill(level, logger, message, error, fields);
+        slot.published = sequence; // Volatile write: the writer sees every field above
+        if (sleeping) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    /** After the writer has stopped at exit (e.g. other shutdown hooks still logging): write on the caller's thread. */
+    private synchronized void writeNow(Log.Level level, String logger, String message, Throwable error, Object[] fields) {
+        Slot slot = new Slot(0);
+        slot.fill(level, logger, message, error, fields);
+        format(slot);
+        flush();
+    }
+
+    /** Records dropped so far because the ring was full. */
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    // --- Writer thread ---
+
+    private void drainLoop() {
+        long cursor = 0;
+        while (true) {
+            Slot slot = ring[(int) cursor & mask];
+            if (slot.published == cursor) {
+                try {
+                    format(slot);
+                } catch (RuntimeException e) {
+                    System.err.println("Could not write log record '" + slot.message + "': " + e); // E.g. a field's toString failed
+                }
+                slot.clear();
+                consumed = ++cursor;
+                continue;
+            }
+            // Ring empty (or the next record is still being filled in): write what we have
+            flush();
+            if (closing && cursor == claimed.get()) {
+                synchronized (this) {
+                    finished = true;
+                }
+                return;
+            }
+            sleeping = true;
+            if (slot.published != cursor && !closing) {
+                LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+            }
+            sleeping = false;
+        }
+    }
+
+    private void format(Slot slot) {
+        long drops = dropped.sum();
+        if (drops != reportedDrops) {
+            line.setLength(0);
+            appendHeader(slot.time, Log.Level.WARN, thread.getName(), "AsyncLogWriter");
+            line.append(drops - reportedDrops).append(" log records dropped, the log buffer was full\n");
+            reportedDrops = drops;
+            append(Log.Level.WARN);
+        }
+
+        line.setLength(0);
+        appendHeader(slot.time, slot.level, slot.thread, slot.logger);
+        line.append(slot.message);
+        Object[] fields = slot.fields;
+        if (fields != null) {
+            for (int i = 0; i + 1 < fields.length; i += 2) {
+                line.append(' ').append(fields[i]).append('=');
+                appendValue(fields[i + 1]);
+            }
+            if (fields.length % 2 == 1) {
+                line.append(' ');
+                appendValue(fields[fields.length - 1]); // A value without a key is still shown
+            }
+        }
+        line.append('\n');
+        if (slot.error != null) {
+            slot.error.printStackTrace(traceWriter);
+            traceWriter.flush();
+        }
+        append(slot.level);
+    }
+
+    private void appendHeader(long time, Log.Level level, String threadName, String logger) {
+        TIMESTAMP.formatTo(Instant.ofEpochMilli(time), line);
+        line.append(' ').append(level.name());
+        for (int pad = level.name().length(); pad < 5; pad++) {
+            line.append(' ');
+        }
+        line.append(" [").append(threadName).append("] ").append(logger).append(" - ");
+    }
+
+    /** Values with spaces, quotes or '=' are quoted so each field stays one token. */
+    private void appendValue(Object value) {
+        String text = String.valueOf(value);
+        boolean quote = text.isEmpty();
+        for (int i = 0; i < text.length() && !quote; i++) {
+            char c = text.charAt(i);
+            quote = c == ' ' || c == '"' || c == '=' || c < ' ';
+        }
+        if (!quote) {
+            line.append(text);
+            return;
+        }
+        line.append('"');
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '"' || c == '\\') {
+                line.append('\\').append(c);
+            } else if (c == '\n') {
+                line.append("\\n");
+            } else if (c < ' ') {
+                line.append(' ');
+            } else {
+                line.append(c);
+            }
+        }
+        line.append('"');
+    }
+
+    /** Adds the formatted line to the batch. WARN and ERROR go to stderr at once, after the stdout records before them. */
+    private void append(Log.Level level) {
+        ByteBuffer record = encode();
+        boolean toStderr = CONSOLE && level.compareTo(Log.Level.WARN) >= 0;
+        if (toStderr || record.remaining() > batch.remaining()) {
+            flush();
+        }
+        if (toStderr) {
+            write(System.err, record);
+        } else if (record.remaining() > batch.remaining()) {
+            write(System.out, record); // Larger than a whole batch
+        } else {
+            batch.put(record);
+        }
+    }
+
+    /** The line as UTF-8 in the reused record buffer, which grows for long lines. */
+    private ByteBuffer encode() {
+        while (true) {
+            encoder.reset();
+            encoded.clear();
+            CoderResult result = encoder.encode(CharBuffer.wrap(line), encoded, true);
+            if (!result.isOverflow()) {
+                result = encoder.flush(encoded);
+            }
+            if (!result.isOverflow()) {
+                encoded.flip();
+                return encoded;
+            }
+            encoded = ByteBuffer.allocate(encoded.capacity() * 2);
+        }
+    }
+
+    private void flush() {
+        batch.flip();
+        write(System.out, batch);
+        batch.clear();
+    }
+
+    /** Writes the bytes to the console stream and the log file. */
+    private void write(PrintStream console, ByteBuffer bytes) {
+        if (!bytes.hasRemaining()) {
+            return;
+        }
+        if (CONSOLE) {
+            console.write(bytes.array(), bytes.arrayOffset() + bytes.position(), bytes.remaining());
+            console.flush();
+        }
+        if (file != null) {
+            writeToFile(bytes);
+        }
+    }
+
+    private void writeToFile(ByteBuffer bytes) {
+        try {
+            if (channel == null) {
+                openFile();
+            }
+            while (bytes.hasRemaining()) {
+                fileSize += channel.write(bytes);
+            }
+            if (fileSize >= MAX_FILE_BYTES) {
+                roll();
+            }
+        } catch (IOException e) {
+            // The console still has the records; retry the file with the next batch
+            System.err.println("Log file " + file + " not writable: " + e.getMessage());
+            closeFile();
+        }
+    }
+
+    private void openFile() throws IOException {
+        Path dir = file.toAbsolutePath().getParent();
+        if (dir != null) {
+            Files.createDirectories(dir);
+        }
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        fileSize = channel.size();
+    }
+
+    /** attendance.log -> attendance.log.1 -> ... -> attendance.log.N (deleted). */
+    private void roll() throws IOException {
+        closeFile();
+        Files.deleteIfExists(sibling(MAX_FILES));
+        for (int i = MAX_FILES - 1; i >= 1; i--) {
+            Path older = sibling(i);
+            if (Files.exists(older)) {
+                Files.move(older, sibling(i + 1), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        if (MAX_FILES > 0) {
+            Files.move(file, sibling(1), StandardCopyOption.REPLACE_EXISTING);
+        } else {
+            Files.deleteIfExists(file);
+        }
+        openFile();
+    }
+
+    private Path sibling(int index) {
+        return file.resolveSibling(file.getFileName() + "." + index);
+    }
+
+    private void closeFile() {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException ignored) {}
+            channel = null;
+        }
+    }
+
+    /** Writes everything still queued (waiting up to 2 s), then closes the file. */
+    private void close() {
+        closing = true;
+        LockSupport.unpark(thread);
+        try {
+            thread.join(2_000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (!thread.isAlive()) {
+            synchronized (this) {
+                closeFile(); // Reopened by writeNow if a later hook still logs
+            }
+        }
+    }
+
+    // --- One preallocated record ---
+    private static final class Slot {
+        volatile long published; // Sequence of the record in this slot once it is filled in
+        long time;
+        Log.Level level;
+        String thread;
+        String logger;
+        String message;
+        Throwable error;
+        Object[] fields;
+
+        Slot(long published) {
+            this.published = published;
+        }
+
+        void fill(Log.Level level, String logger, String message, Throwable error, Object[] fields) {
+            this.time = System.currentTimeMillis();
+            this.level = level;
+            this.thread = Thread.currentThread().getName();
+            this.logger = logger;
+            this.message = message;
+            this.error = error;
+            this.fields = fields;
+        }
+
+        /** Drops references so logged values can be collected while the slot waits for reuse. */
+        void clear() {
+            error = null;
+            fields = null;
+            message = null;
+        }
+    }
+
+    /** Lets Throwable.printStackTrace append to the reused line buffer. */
+    private static final class BuilderWriter extends Writer {
+        private final StringBuilder target;
+
+        BuilderWriter(StringBuilder target) {
+            this.target = target;
+        }
+
+        @Override
+        public void write(char[] chars, int offset, int length) {
+            target.append(chars, offset, length);
+        }
+
+        @Override
+        public void write(String text, int offset, int length) {
+            target.append(text, offset, offset + length);
+        }
+
+        @Override
+        public void flush() {}
+
+        @Override
+        public void close() {}
+    }
+}
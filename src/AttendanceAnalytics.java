@@ -0,0 +1,351 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Institution-wide attendance analytics over a {@link CounterSnapshot}: per-subject attendance
+ * distributions and percentiles, "Can Leave" projections, and the list of students at risk of
+ * missing the required ratio.
+ *
+ * The snapshot's rows are split into chunks scanned by a fork/join pool
+ * ({@code -Dattendance.analytics.parallelism}, default one thread per core). Each worker thread
+ * adds its chunks into its own {@link Accumulator} of primitive arrays, read straight from the
+ * mapped columns, and the accumulators are merged once at the end; workers share nothing while
+ * scanning, so the scan scales with the number of cores.
+ *
+ * Attendance rates are bucketed by whole percent, so percentiles are exact to 1%.
+ */
+public final class AttendanceAnalytics {
+
+    public static final int PARALLELISM = Integer.getInteger("attendance.analytics.parallelism",
+            Runtime.getRuntime().availableProcessors());
+    private static final int MIN_CHUNK_ROWS = 16_384;
+    private static final int BUCKETS = 101; // Attendance rate 0..100 %
+
+    private final ForkJoinPool pool;
+
+    public AttendanceAnalytics() {
+        this(PARALLELISM);
+    }
+
+    public AttendanceAnalytics(int parallelism) {
+        this.pool = new ForkJoinPool(parallelism, p -> {
+            ForkJoinWorkerThread t = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+            t.setName("analytics-worker-" + t.getPoolIndex());
+            t.setDaemon(true);
+            return t;
+        }, null, false);
+    }
+
+    public int getParallelism() {
+        return pool.getParallelism();
+    }
+
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    /**
+     * Scans the whole snapshot once.
+     *
+     * @param requiredRatio share of the target lectures a student must attend, e.g.
+     *                      {@link SubjectStats#DEFAULT_REQUIRED_RATIO}
+     */
+    public Report analyze(CounterSnapshot snapshot, double requiredRatio) {
+        if (requiredRatio <= 0 || requiredRatio > 1) {
+            throw new IllegalArgumentException("Required ratio must be in (0, 1]: " + requiredRatio);
+        }
+        long start = System.nanoTime();
+        int subjects = snapshot.getSubjectCount();
+        // One accumulator per worker thread, only for this pass
+        ConcurrentMap<Thread, Accumulator> accumulators = new ConcurrentHashMap<>();
+        int rows = snapshot.getRowCount();
+        int chunk = Math.max(MIN_CHUNK_ROWS, rows / (pool.getParallelism() * 8) + 1);
+        pool.invoke(new Scan(snapshot, requiredRatio, accumulators, 0, rows, chunk));
+
+        Accumulator total = new Accumulator(subjects);
+        for (Accumulator acc : accumulators.values()) {
+            total.merge(acc);
+        }
+        return new Report(snapshot, requiredRatio, total, System.nanoTime() - start, pool.getParallelism());
+    }
+
+    /** Splits a row range in halves until it is one chunk, then scans it into the thread's accumulator. */
+    private static final class Scan extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final transient CounterSnapshot snapshot;
+        private final double ratio;
+        private final transient ConcurrentMap<Thread, Accumulator> accumulators;
+        private final int from;
+        private final int to;
+        private final int chunk;
+
+        Scan(CounterSnapshot snapshot, double ratio, ConcurrentMap<Thread, Accumulator> accumulators, int from, int to, int chunk) {
+            this.snapshot = snapshot;
+            this.ratio = ratio;
+            this.accumulators = accumulators;
+            this.from = from;
+            this.to = to;
+            this.chunk = chunk;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > chunk) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new Scan(snapshot, ratio, accumulators, from, mid, chunk),
+                          new Scan(snapshot, ratio, accumulators, mid, to, chunk));
+                return;
+            }
+            Accumulator acc = accumulators.computeIfAbsent(Thread.currentThread(), t -> new Accumulator(snapshot.getSubjectCount()));
+            for (int row = from; row < to; row++) {
+                acc.add(row, snapshot.subjectCode(row), snapshot.attended(row), snapshot.taken(row), snapshot.target(row), ratio);
+            }
+        }
+    }
+
+    /** One thread's running totals, per subject code. Not thread-safe; merged after the scan. */
+    private static final class Accumulator {
+        final int[] students;
+        final int[] measured;        // Rows with at least one lecture taken
+        final long[] attended;
+        final long[] taken;
+        final int[] histogram;       // [subject * BUCKETS + rate percent]
+        final int[] belowRatio;
+        final int[] withTarget;
+        final long[] canLeave;       // Sum of Can Leave over rows with a target
+        final int[] noSlack;         // Can Leave is 0: one more absence and the ratio is out of reach
+        final int[] beyondRecovery;  // The ratio is already out of reach
+        long[] atRisk = new long[64];  // (slack << 32 | row), see Report#getAtRisk
+        int atRiskCount;
+
+        Accumulator(int subjects) {
+            students = new int[subjects];
+            measured = new int[subjects];
+            attended = new long[subjects];
+            taken = new long[subjects];
+            histogram = new int[subjects * BUCKETS];
+            belowRatio = new int[subjects];
+            withTarget = new int[subjects];
+            canLeave = new long[subjects];
+            noSlack = new int[subjects];
+            beyondRecovery = new int[subjects];
+        }
+
+        void add(int row, int subject, int a, int t, int target, double ratio) {
+            students[subject]++;
+            attended[subject] += a;
+            taken[subject] += t;
+            boolean below = false;
+            if (t > 0) {
+                measured[subject]++;
+                histogram[subject * BUCKETS + Math.min(100, (int) (100L * a / t))]++;
+                if (a < ratio * t) {
+                    belowRatio[subject]++;
+                    below = true;
+                }
+            }
+            int slack = Integer.MAX_VALUE;
+            if (target > 0) {
+                withTarget[subject]++;
+                slack = SubjectStats.slack(a, t, target, ratio);
+                if (slack > 0) {
+                    canLeave[subject] += slack;
+                } else if (slack == 0) {
+                    noSlack[subject]++;
+                } else {
+                    beyondRecovery[subject]++;
+                }
+            }
+            if (below || slack <= 0) {
+                if (atRiskCount == atRisk.length) {
+                    atRisk = Arrays.copyOf(atRisk, atRiskCount * 2);
+                }
+                atRisk[atRiskCount++] = ((long) slack << 32) | (row & 0xFFFFFFFFL);
+            }
+        }
+
+        void merge(Accumulator other) {
+            for (int s = 0; s < students.length; s++) {
+                students[s] += other.students[s];
+                measured[s] += other.measured[s];
+                attended[s] += other.attended[s];
+                taken[s] += other.taken[s];
+                belowRatio[s] += other.belowRatio[s];
+                withTarget[s] += other.withTarget[s];
+                canLeave[s] += other.canLeave[s];
+                noSlack[s] += other.noSlack[s];
+                beyondRecovery[s] += other.beyondRecovery[s];
+            }
+            for (int i = 0; i < histogram.length; i++) {
+                histogram[i] += other.histogram[i];
+            }
+            if (atRiskCount + other.atRiskCount > atRisk.length) {
+                atRisk = Arrays.copyOf(atRisk, atRiskCount + other.atRiskCount);
+            }
+            System.arraycopy(other.atRisk, 0, atRisk, atRiskCount, other.atRiskCount);
+            atRiskCount += other.atRiskCount;
+        }
+    }
+
+    // --- Results ---
+
+    /** Attendance distribution of one subject across every student taking it. */
+    public static final class SubjectDistribution {
+        private final String subject;
+        private final int students;
+        private final int measured;
+        private final long attended;
+        private final long taken;
+        private final int[] histogram;
+        private final int belowRatio;
+        private final int withTarget;
+        private final long canLeave;
+        private final int noSlack;
+        private final int beyondRecovery;
+
+        SubjectDistribution(String subject, Accumulator acc, int code) {
+            this.subject = subject;
+            this.students = acc.students[code];
+            this.measured = acc.measured[code];
+            this.attended = acc.attended[code];
+            this.taken = acc.taken[code];
+            this.histogram = Arrays.copyOfRange(acc.histogram, code * BUCKETS, (code + 1) * BUCKETS);
+            this.belowRatio = acc.belowRatio[code];
+            this.withTarget = acc.withTarget[code];
+            this.canLeave = acc.canLeave[code];
+            this.noSlack = acc.noSlack[code];
+            this.beyondRecovery = acc.beyondRecovery[code];
+        }
+
+        public String getSubject() { return subject; }
+        public int getStudents() { return students; }
+        public long getAttended() { return attended; }
+        public long getTaken() { return taken; }
+        /** Students below the required ratio so far (of those with lectures taken). */
+        public int getBelowRatio() { return belowRatio; }
+        /** Students who can miss no further lecture. */
+        public int getNoSlack() { return noSlack; }
+        /** Students who can no longer reach the required ratio of the target. */
+        public int getBeyondRecovery() { return beyondRecovery; }
+
+        /** Attended / taken over all students, or NaN if no lectures were taken. */
+        public double getAttendanceRate() {
+            return taken == 0 ? Double.NaN : (double) attended / taken;
+        }
+
+        /** Average "Can Leave" over students with a target, or NaN if none has one. */
+        public double getAverageCanLeave() {
+            return withTarget == 0 ? Double.NaN : (double) canLeave / withTarget;
+        }
+
+        /**
+         * Attendance rate (0..1) at or below which {@code p} (0..1) of the students with lectures
+         * taken fall, or NaN if there are none.
+         */
+        public double percentile(double p) {
+            if (measured == 0) {
+                return Double.NaN;
+            }
+            long rank = Math.max(1, (long) Math.ceil(p * measured));
+            long seen = 0;
+            for (int bucket = 0; bucket < BUCKETS; bucket++) {
+                seen += histogram[bucket];
+                if (seen >= rank) {
+                    return bucket / 100.0;
+                }
+            }
+            return 1.0;
+        }
+
+        /** Students per whole attendance percent (index 0..100). */
+        public int[] getHistogram() {
+            return histogram.clone();
+        }
+    }
+
+    /** One student's subject that is below the ratio or out of slack. */
+    public static final class AtRisk {
+        private final String sapid;
+        private final String subject;
+        private final int attended;
+        private final int taken;
+        private final int target;
+        private final int slack;
+
+        AtRisk(String sapid, String subject, int attended, int taken, int target, int slack) {
+            this.sapid = sapid;
+            this.subject = subject;
+            this.attended = attended;
+            this.taken = taken;
+            this.target = target;
+            this.slack = slack;
+        }
+
+        public String getSapid() { return sapid; }
+        public String getSubject() { return subject; }
+        public int getAttended() { return attended; }
+        public int getTaken() { return taken; }
+        public int getTarget() { return target; }
+        /** Absences left before the ratio is out of reach; negative if it already is, MAX_VALUE without a target. */
+        public int getSlack() { return slack; }
+    }
+
+    /** Result of one {@link #analyze} pass. */
+    public static final class Report {
+        private final CounterSnapshot snapshot;
+        private final double requiredRatio;
+        private final List<SubjectDistribution> subjects;
+        private final long[] atRisk;
+        private final long elapsedNanos;
+        private final int parallelism;
+        private boolean atRiskSorted;
+
+        Report(CounterSnapshot snapshot, double requiredRatio, Accumulator total, long elapsedNanos, int parallelism) {
+            this.snapshot = snapshot;
+            this.requiredRatio = requiredRatio;
+            String[] names = snapshot.getSubjects();
+            List<SubjectDistribution> list = new ArrayList<>(names.length);
+            for (int code = 0; code < names.length; code++) {
+                list.add(new SubjectDistribution(names[code], total, code));
+            }
+            this.subjects = Collections.unmodifiableList(list);
+            this.atRisk = Arrays.copyOf(total.atRisk, total.atRiskCount);
+            this.elapsedNanos = elapsedNanos;
+            this.parallelism = parallelism;
+        }
+
+        public double getRequiredRatio() { return requiredRatio; }
+        public int getRowCount() { return snapshot.getRowCount(); }
+        public long getElapsedNanos() { return elapsedNanos; }
+        public int getParallelism() { return parallelism; }
+
+        /** One distribution per subject, in the snapshot's dictionary order. */
+        public List<SubjectDistribution> getSubjects() { return subjects; }
+
+        public int getAtRiskCount() { return atRisk.length; }
+
+        /** The {@code limit} most critical at-risk rows: least slack first, then snapshot order. */
+        public synchronized List<AtRisk> getAtRisk(int limit) {
+            if (!atRiskSorted) {
+                Arrays.parallelSort(atRisk); // Slack is the high half of each key
+                atRiskSorted = true;
+            }
+            int n = Math.min(limit, atRisk.length);
+            List<AtRisk> rows = new ArrayList<>(n);
+            for (int i = 0; i < n; i++) {
+                int row = (int) atRisk[i];
+                rows.add(new AtRisk(snapshot.sapid(row), snapshot.subject(row), snapshot.attended(row),
+                        snapshot.taken(row), snapshot.target(row), (int) (atRisk[i] >> 32)));
+            }
+            return rows;
+        }
+    }
+}
@@ -0,0 +1,202 @@
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Present/absent history of one subject for one user: one bit per recorded lecture, oldest
+ * first, packed 64 to a {@code long}. Stored as {@code timetable.attendance_bits} and carried by
+ * {@link SubjectStats}, so the attended count, the current streak and the last-N share are popcounts
+ * over a few words rather than scans of the event log.
+ *
+ * A bitmap is an immutable view: {@link #append} returns a new one. Appends still write in place:
+ * views share their word array, and the first append at a given length claims the next bit of it,
+ * so a history that only grows fills its array without copying; the array doubles when full. A view
+ * that is no longer the longest (it lost a race to append) copies instead. Publish views safely, as
+ * through an {@code AtomicReference} or a lock, like any value shared between threads.
+ */
+public final class AttendanceBitmap {
+
+    public static final AttendanceBitmap EMPTY = new AttendanceBitmap(new Words(0), 0);
+
+    // Stored form: bit count, then the bits, little-endian within each byte
+    private static final int HEADER_BYTES = 4;
+
+    private final Words words;
+    private final int length;
+
+    private AttendanceBitmap(Words words, int length) {
+        this.words = words;
+        this.length = length;
+    }
+
+    /** Lectures recorded. */
+    public int length() {
+        return length;
+    }
+
+    public boolean isEmpty() {
+        return length == 0;
+    }
+
+    /** Whether lecture {@code index} (0 = oldest) was attended. */
+    public boolean get(int index) {
+        if (index < 0 || index >= length) {
+            throw new IndexOutOfBoundsException("Lecture " + index + " of " + length);
+        }
+        return (words.bits[index >>> 6] & (1L << index)) != 0;
+    }
+
+    /** This history with one more lecture. */
+    public AttendanceBitmap append(boolean present) {
+        Words target = words;
+        if (length >= target.bits.length * 64 || !target.claimed.compareAndSet(length, length + 1)) {
+            target = copy(((length >>> 6) + 1) * 2);
+            target.claimed.set(length + 1);
+        }
+        if (present) {
+            target.bits[length >>> 6] |= 1L << length;
+        }
+        return new AttendanceBitmap(target, length + 1);
+    }
+
+    // --- Counts ---
+
+    /** Lectures attended. */
+    public int cardinality() {
+        return cardinality(0, length);
+    }
+
+    /** Lectures attended among {@code [from, to)}. */
+    public int cardinality(int from, int to) {
+        if (from < 0 || to > length || from > to) {
+            throw new IndexOutOfBoundsException("Range [" + from + ", " + to + ") of " + length);
+        }
+        if (from == to) {
+            return 0;
+        }
+        long[] bits = words.bits;
+        int first = from >>> 6;
+        int last = (to - 1) >>> 6;
+        long firstMask = -1L << from;
+        long lastMask = -1L >>> -to; // Keeps bits below to; all of them when to is a multiple of 64
+        if (first == last) {
+            return Long.bitCount(bits[first] & firstMask & lastMask);
+        }
+        int count = Long.bitCount(bits[first] & firstMask);
+        for (int i = first + 1; i < last; i++) {
+            count += Long.bitCount(bits[i]);
+        }
+        return count + Long.bitCount(bits[last] & lastMask);
+    }
+
+    /** Lectures attended among the latest {@code n} (all of them if fewer were recorded). */
+    public int cardinalityOfLast(int n) {
+        return cardinality(Math.max(0, length - n), length);
+    }
+
+    /** Consecutive lectures attended, ending with the latest; 0 if the latest was missed. */
+    public int currentStreak() {
+        if (length == 0) {
+            return 0;
+        }
+        long[] bits = words.bits;
+        int lastWord = (length - 1) >>> 6;
+        int streak = 0;
+        for (int i = lastWord; i >= 0; i--) {
+            int valid = i == lastWord ? ((length - 1) & 63) + 1 : 64;
+            long missed = ~bits[i] & (-1L >>> (64 - valid));
+            if (missed == 0) {
+                streak += valid;
+                continue;
+            }
+            return streak + valid - 1 - (63 - Long.numberOfLeadingZeros(missed));
+        }
+        return streak;
+    }
+
+    // --- Stored form ---
+
+    /** The stored form: a 4-byte big-endian bit count, then {@code ceil(length / 8)} bytes of bits. */
+    public byte[] toBytes() {
+        byte[] bytes = new byte[HEADER_BYTES + (length + 7) / 8];
+        bytes[0] = (byte) (length >>> 24);
+        bytes[1] = (byte) (length >>> 16);
+        bytes[2] = (byte) (length >>> 8);
+        bytes[3] = (byte) length;
+        long[] bits = words.bits;
+        for (int i = 0; i < bytes.length - HEADER_BYTES; i++) {
+            bytes[HEADER_BYTES + i] = (byte) (bits[i >>> 3] >>> ((i & 7) * 8));
+        }
+        if ((length & 7) != 0) {
+            bytes[bytes.length - 1] &= (byte) ((1 << (length & 7)) - 1); // Bits past the end belong to longer views
+        }
+        return bytes;
+    }
+
+    /**
+     * Reads the form written by {@link #toBytes}; {@code null} or empty is an empty history. Leaves
+     * room to append, so a read-append-write cycle does not reallocate.
+     *
+     * @throws IllegalArgumentException if the bytes are shorter than their bit count says
+     */
+    public static AttendanceBitmap fromBytes(byte[] bytes) {
+        if (bytes == null || bytes.length == 0) {
+            return EMPTY;
+        }
+        int length = bytes.length < HEADER_BYTES ? -1
+                : (bytes[0] & 0xFF) << 24 | (bytes[1] & 0xFF) << 16 | (bytes[2] & 0xFF) << 8 | (bytes[3] & 0xFF);
+        if (length < 0 || bytes.length < HEADER_BYTES + (length + 7) / 8) {
+            throw new IllegalArgumentException("Truncated attendance bitmap: " + bytes.length + " bytes");
+        }
+        Words words = new Words(Math.max(2, (length + 64) / 64 * 2));
+        for (int i = 0; i < (length + 7) / 8; i++) {
+            words.bits[i >>> 3] |= (bytes[HEADER_BYTES + i] & 0xFFL) << ((i & 7) * 8);
+        }
+        if ((length & 63) != 0) {
+            words.bits[length >>> 6] &= -1L >>> -length;
+        }
+        words.claimed.set(length);
+        return new AttendanceBitmap(words, length);
+    }
+
+    // A copy of this view's bits in a new array of `capacity` words; bits of longer views are dropped
+    private Words copy(int capacity) {
+        Words copy = new Words(capacity);
+        int used = (length + 63) >>> 6;
+        System.arraycopy(words.bits, 0, copy.bits, 0, used);
+        if ((length & 63) != 0) {
+            copy.bits[used - 1] &= -1L >>> -length;
+        }
+        return copy;
+    }
+
+    /** The word array shared by the views of one growing history, and how many of its bits are taken. */
+    private static final class Words {
+        final long[] bits;
+        final AtomicInteger claimed = new AtomicInteger();
+
+        Words(int capacity) {
+            bits = new long[capacity];
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof AttendanceBitmap)) return false;
+        AttendanceBitmap other = (AttendanceBitmap) o;
+        return length == other.length && Arrays.equals(toBytes(), other.toBytes());
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(toBytes());
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            text.append(get(i) ? 'P' : 'A');
+        }
+        return "AttendanceBitmap [" + text + "]";
+    }
+}
@@ -0,0 +1,57 @@
+/**
+ * A change to one user's attendance, as delivered by {@link ChangeBus}: the new state of one
+ * subject, or a note that the whole subject list or all counters have to be read again.
+ * Immutable.
+ */
+public final class AttendanceChange {
+
+    public enum Kind {
+        /** Counters of {@link #getSubject} changed; {@link #getStats} holds them, or null if unknown. */
+        COUNTERS,
+        /** Subjects were added, removed, re-targeted or rescheduled. */
+        SUBJECTS
+    }
+
+    private final String sapid;
+    private final Kind kind;
+    private final String subject;
+    private final SubjectStats stats;
+    private final boolean remote;
+
+    private AttendanceChange(String sapid, Kind kind, String subject, SubjectStats stats, boolean remote) {
+        this.sapid = sapid;
+        this.kind = kind;
+        this.subject = subject;
+        this.stats = stats;
+        this.remote = remote;
+    }
+
+    /** New counters of one subject. */
+    public static AttendanceChange counters(String sapid, SubjectStats stats, boolean remote) {
+        return new AttendanceChange(sapid, Kind.COUNTERS, stats.getSubject(), stats, remote);
+    }
+
+    /** Counters of {@code subject} changed to values not known here; {@code subject} null for all subjects. */
+    public static AttendanceChange countersChanged(String sapid, String subject, boolean remote) {
+        return new AttendanceChange(sapid, Kind.COUNTERS, subject, null, remote);
+    }
+
+    public static AttendanceChange subjects(String sapid, boolean remote) {
+        return new AttendanceChange(sapid, Kind.SUBJECTS, null, null, remote);
+    }
+
+    public String getSapid() { return sapid; }
+    public Kind getKind() { return kind; }
+    /** The subject changed; null when the change is about all of them. */
+    public String getSubject() { return subject; }
+    /** The subject's new counters; null if they have to be read again. */
+    public SubjectStats getStats() { return stats; }
+    /** True if the change was made by another process and found by polling. */
+    public boolean isRemote() { return remote; }
+
+    @Override
+    public String toString() {
+        return "AttendanceChange [sapid=" + sapid + ", kind=" + kind + ", subject=" + subject
+                + ", stats=" + stats + ", remote=" + remote + "]";
+    }
+}
@@ -0,0 +1,94 @@
+import java.io.IOException;
+import java.util.Locale;
+
+/**
+ * Chooses the application's {@link AttendanceRepository} from {@code -Dattendance.backend}:
+ * <ul>
+ *   <li>{@code oracle} (default) - Oracle through {@link ConnectionPool}</li>
+ *   <li>{@code embedded} - a file-backed H2 database through the same pool (needs h2.jar on the
+ *       classpath)</li>
+ *   <li>{@code memory} - {@link InMemoryAttendanceRepository}, nothing persisted</li>
+ * </ul>
+ * For the database backends the schema is checked (and created or migrated if needed) by
+ * {@link DatabaseSetup} when the repository is first requested, and attendance saves go through
+ * the offline {@link SessionJournal} ({@link JournaledAttendanceRepository}) unless
+ * {@code -Dattendance.journal=false}. Every backend is wrapped in a
+ * {@link MeteredAttendanceRepository}, so each storage call is timed in {@link Metrics}.
+ * Once the schema is current, the repository's statements are prepared on the pool's
+ * standing connections, so the first user action does not pay for parsing them.
+ */
+public final class AttendanceRepositories {
+
+    public static final String ORACLE = "oracle";
+    public static final String EMBEDDED = "embedded";
+    public static final String MEMORY = "memory";
+
+    public static final String BACKEND = System.getProperty("attendance.backend", ORACLE).trim().toLowerCase(Locale.ROOT);
+    private static final boolean JOURNAL = Boolean.parseBoolean(System.getProperty("attendance.journal", "true"));
+
+    private static final Log LOG = Log.get(AttendanceRepositories.class);
+
+    private static volatile AttendanceRepository instance;
+
+    private AttendanceRepositories() {}
+
+    /** Returns the shared repository for the configured backend, creating it on first use. */
+    public static AttendanceRepository get() {
+        AttendanceRepository repository = instance;
+        if (repository == null) {
+            synchronized (AttendanceRepositories.class) {
+                repository = instance;
+                if (repository == null) {
+                    repository = create();
+                    instance = repository;
+                }
+            }
+        }
+        return repository;
+    }
+
+    /** SQL dialect of the configured backend's database. */
+    public static SqlDialect dialect() {
+        return EMBEDDED.equals(BACKEND) ? SqlDialect.EMBEDDED : SqlDialect.ORACLE;
+    }
+
+    private static AttendanceRepository create() {
+        LOG.info("Using attendance backend", "backend", BACKEND);
+        switch (BACKEND) {
+            case MEMORY:
+                return new MeteredAttendanceRepository(new InMemoryAttendanceRepository());
+            case EMBEDDED:
+            case ORACLE:
+                // One indexed read when the schema is current; migrates (or creates) it otherwise
+                if (!DatabaseSetup.setupDatabaseIfNeeded()) {
+                    throw new IllegalStateException("Database schema check failed for " + ConnectionPool.DB_URL
+                            + ". See the console for details.");
+                }
+                ConnectionPool pool = ConnectionPool.getInstance();
+                JdbcAttendanceRepository jdbc = new JdbcAttendanceRepository(pool::getConnection, dialect());
+                jdbc.warmUp(pool.getMinimumSize());
+                // Metered inside the journal: db.saveSession times the database write, not the journal append
+                return journaled(new MeteredAttendanceRepository(jdbc));
+            default:
+                throw new IllegalStateException("Unknown attendance.backend '" + BACKEND + "' (expected "
+                        + ORACLE + ", " + EMBEDDED + " or " + MEMORY + ")");
+        }
+    }
+
+    /** Puts the offline journal in front of a database repository, or returns it as is if the journal cannot be used. */
+    private static AttendanceRepository journaled(AttendanceRepository repository) {
+        if (!JOURNAL) {
+            return repository;
+        }
+        SessionJournal journal;
+        try {
+            journal = SessionJournal.open();
+        } catch (IOException | RuntimeException e) {
+            LOG.warn("Offline journal unavailable, saving sessions directly", "reason", e.getMessage());
+            return repository;
+        }
+        JournaledAttendanceRepository journaled = new JournaledAttendanceRepository(repository, dialect(), journal);
+        Runtime.getRuntime().addShutdownHook(new Thread(journaled::close, "journal-shutdown"));
+        return journaled;
+    }
+}
@@ -0,0 +1,94 @@
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.function.BiConsumer;
+
+/**
+ * Storage operations used by the screens: accounts, a user's subjects, attendance sessions
+ * and statistics. The UI only talks to this interface; {@link AttendanceRepositories} picks
+ * the backend (Oracle, an embedded file database, or memory) at startup.
+ *
+ * Failures are reported as {@link SQLException} by every backend, so callers handle them the
+ * same way whichever store is configured.
+ */
+public interface AttendanceRepository {
+
+    /**
+     * Checks a user's credentials against the stored password hash through {@link PasswordService},
+     * upgrading plaintext or weaker hashes on success.
+     *
+     * @return the account, or null if the SAP ID / password pair does not match
+     * @throws java.util.concurrent.RejectedExecutionException if too many logins are being checked at once
+     */
+    UserAccount authenticate(String sapid, String password) throws SQLException;
+
+    /**
+     * Creates a new account with no subjects. Only a salted hash of the password is stored.
+     *
+     * @return false if an account with this SAP ID already exists
+     */
+    boolean register(String sapid, String name, String password) throws SQLException;
+
+    /** Returns the user's subjects and targets, ordered by subject name. */
+    List<SubjectTarget> loadSubjects(String sapid) throws SQLException;
+
+    /**
+     * Replaces the user's subject list atomically. Subjects that are kept keep their attendance
+     * counters; removed ones lose them, new ones start at zero. Also sets the user's
+     * "subjects added" flag according to whether the list is empty.
+     */
+    void saveSubjects(String sapid, List<SubjectTarget> subjects) throws SQLException;
+
+    /**
+     * Records one attendance session atomically. Saving is idempotent per session id: a session
+     * already saved for the user is rejected with a duplicate key error and changes nothing, so a
+     * timed-out save can safely be retried with the same id.
+     *
+     * @param sessionId client-generated id of this session; keep it when retrying
+     * @param subjects  subjects that were marked this session
+     * @param present   present[i] is true if subjects.get(i) was attended
+     * @return rows written per subject, in the same order as {@code subjects};
+     *         check entries with {@link #isUpdated(int)}
+     */
+    int[] saveSession(String sapid, String sessionId, List<String> subjects, boolean[] present) throws SQLException;
+
+    /** Returns the user's current counters per subject, ordered by subject name. */
+    List<SubjectStats> loadStatistics(String sapid) throws SQLException;
+
+    /**
+     * Clears the user's attendance history and zeroes the counters, keeping the subjects.
+     *
+     * @return number of subjects reset
+     */
+    int resetAttendance(String sapid) throws SQLException;
+
+    /**
+     * Streams every user's current counters, one subject at a time, for institution-wide exports
+     * ({@link SnapshotExporter}). Rows come grouped by SAP ID; the whole table is never held in memory.
+     */
+    void forEachCounter(BiConsumer<String, SubjectStats> visitor) throws SQLException;
+
+    /**
+     * A cheap fingerprint of the user's attendance that moves whenever it changes, in this process
+     * or another one sharing the storage; polled by {@link ChangeBus}. Built by {@link #changeToken(long, long)}
+     * from a sequence bumped by subject edits and resets, and a count of saved sessions.
+     *
+     * @return the token, or 0 for an unknown user
+     */
+    long changeToken(String sapid) throws SQLException;
+
+    /** Packs a change token: the structural sequence in the high half, the session count in the low half. */
+    static long changeToken(long changeSequence, long sessions) {
+        return changeSequence << 32 | (sessions & 0xFFFFFFFFL);
+    }
+
+    /** The structural sequence of a token: it moves on subject edits and resets, not on saved sessions. */
+    static long changeSequence(long token) {
+        return token >>> 32;
+    }
+
+    /** True if an entry returned by {@link #saveSession} means the row was written. */
+    static boolean isUpdated(int count) {
+        return count > 0 || count == Statement.SUCCESS_NO_INFO;
+    }
+}
@@ -0,0 +1,133 @@
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.swing.table.AbstractTableModel;
+
+/**
+ * Table model for marking attendance: one row per entry (a subject, or a student in a section),
+ * with mutually exclusive Present / Absent columns and a read-only summary of the entry's record
+ * so far, which can be patched one row at a time.
+ *
+ * The marks live in a single byte array rather than in per-row Swing components, so a roster of
+ * thousands of rows costs a few bytes per row; {@link RosterTable} only renders the visible cells.
+ */
+public class AttendanceRosterModel extends AbstractTableModel {
+
+    private static final long serialVersionUID = 1L;
+
+    public static final byte UNMARKED = 0;
+    public static final byte PRESENT = 1;
+    public static final byte ABSENT = 2;
+
+    public static final int COLUMN_LABEL = 0;
+    public static final int COLUMN_PRESENT = 1;
+    public static final int COLUMN_ABSENT = 2;
+    public static final int COLUMN_SUMMARY = 3;
+
+    private static final String[] COLUMN_NAMES = {"Subject", "Present", "Absent", "So Far"};
+
+    private String[] labels = new String[0];
+    private byte[] marks = new byte[0];
+    private String[] summaries = new String[0];
+    private Map<String, Integer> rowsByLabel = new HashMap<>();
+
+    /** Replaces all rows; every row starts unmarked and without a summary. */
+    public void setRows(List<String> rowLabels) {
+        labels = rowLabels.toArray(new String[0]);
+        marks = new byte[labels.length];
+        summaries = new String[labels.length];
+        Arrays.fill(summaries, "");
+        rowsByLabel = new HashMap<>(labels.length * 2);
+        for (int row = 0; row < labels.length; row++) {
+            rowsByLabel.put(labels[row], row);
+        }
+        fireTableDataChanged();
+    }
+
+    /** The row showing {@code label}, or -1. */
+    public int rowOf(String label) {
+        Integer row = rowsByLabel.get(label);
+        return row == null ? -1 : row;
+    }
+
+    /**
+     * Sets one row's summary, repainting only that row.
+     *
+     * @return true if the summary changed
+     */
+    public boolean setSummary(int row, String summary) {
+        if (summaries[row].equals(summary)) {
+            return false;
+        }
+        summaries[row] = summary;
+        fireTableRowsUpdated(row, row);
+        return true;
+    }
+
+    /** Clears every Present/Absent selection. */
+    public void clearMarks() {
+        Arrays.fill(marks, UNMARKED);
+        fireTableRowsUpdated(0, Math.max(0, marks.length - 1));
+    }
+
+    public String getLabel(int row) {
+        return labels[row];
+    }
+
+    /** @return {@link #UNMARKED}, {@link #PRESENT} or {@link #ABSENT} */
+    public byte getMark(int row) {
+        return marks[row];
+    }
+
+    public void setMark(int row, byte mark) {
+        if (marks[row] != mark) {
+            marks[row] = mark;
+            fireTableRowsUpdated(row, row);
+        }
+    }
+
+    @Override
+    public int getRowCount() {
+        return labels.length;
+    }
+
+    @Override
+    public int getColumnCount() {
+        return COLUMN_NAMES.length;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return COLUMN_NAMES[column];
+    }
+
+    @Override
+    public Class<?> getColumnClass(int column) {
+        return column == COLUMN_LABEL || column == COLUMN_SUMMARY ? String.class : Boolean.class;
+    }
+
+    @Override
+    public boolean isCellEditable(int row, int column) {
+        return column == COLUMN_PRESENT || column == COLUMN_ABSENT;
+    }
+
+    @Override
+    public Object getValueAt(int row, int column) {
+        switch (column) {
+            case COLUMN_LABEL: return labels[row];
+            case COLUMN_PRESENT: return marks[row] == PRESENT;
+            case COLUMN_ABSENT: return marks[row] == ABSENT;
+            default: return summaries[row];
+        }
+    }
+
+    @Override
+    public void setValueAt(Object value, int row, int column) {
+        if (!isCellEditable(row, column) || !Boolean.TRUE.equals(value)) {
+            return; // Radio semantics: a choice is only ever switched, never cleared by a click
+        }
+        setMark(row, column == COLUMN_PRESENT ? PRESENT : ABSENT);
+    }
+}
@@ -0,0 +1,461 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.security.SecureRandom;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Headless JSON API over the same {@link AttendanceService} the desktop screens use, so kiosks
+ * and scripts can mark attendance without a database account of their own. Every request shares
+ * the one configured backend (and, for the database backends, the one {@link ConnectionPool}),
+ * so the number of clients is no longer capped by the database's connection limit.
+ *
+ * Built on the JDK's HTTP server. Each request runs on its own virtual thread when the JRE has
+ * them (Java 21+); older JREs fall back to a bounded pool ({@code -Dattendance.api.threads}).
+ *
+ * Endpoints (request and response bodies are JSON):
+ * <pre>
+ *   POST /api/login     {"sapid", "password"}        -> {"token", "sapid", "name", "hasSubjects"}
+ *   POST /api/logout
+ *   GET  /api/subjects                               -> {"subjects": [{"name", "targetTotalLectures", "days"}]}
+ *   PUT  /api/subjects  {"subjects": [{"name", "targetTotalLectures", "days"?}]}
+ *   POST /api/sessions  {"sessionId"?, "marks": [{"subject", "present"}]} -> {"sessionId", "saved"}
+ *   GET  /api/stats                                  -> {"subjects": [{"subject", "attended", "taken", "target", "canLeave",
+ *                                                                     "streak", "recentPercent"}]}
+ *   GET  /api/health
+ * </pre>
+ * All but login and health need {@code Authorization: Bearer <token>}. Tokens expire after
+ * {@code -Dattendance.api.sessionIdleMinutes} without use.
+ *
+ * The server also refreshes the institution-wide {@link CounterSnapshot} on a schedule
+ * ({@link SnapshotExporter}). Each request is timed per endpoint in {@link Metrics} ({@code http.*}).
+ *
+ * Usage: java AttendanceServer [port]   (host and port also via -Dattendance.api.host / .port)
+ */
+public final class AttendanceServer {
+
+    private static final String HOST = System.getProperty("attendance.api.host", "127.0.0.1");
+    private static final int PORT = Integer.getInteger("attendance.api.port", 8080);
+    private static final int FALLBACK_THREADS = Integer.getInteger("attendance.api.threads",
+            4 * Runtime.getRuntime().availableProcessors());
+    private static final long SESSION_IDLE_MS = TimeUnit.MINUTES.toMillis(Long.getLong("attendance.api.sessionIdleMinutes", 30L));
+    private static final int MAX_BODY_BYTES = 64 * 1024;
+    private static final long SWEEP_INTERVAL_MS = 60_000L;
+
+    private static final Log LOG = Log.get(AttendanceServer.class);
+    private static final SecureRandom RANDOM = new SecureRandom();
+    private static final List<String> ENDPOINTS = Arrays.asList("/api/health", "/api/login", "/api/logout",
+            "/api/subjects", "/api/sessions", "/api/stats");
+
+    static {
+        // Responses are written as headers + body; without TCP_NODELAY, Nagle's algorithm and the
+        // client's delayed ACK add ~40 ms to every keep-alive request. Read when the first server starts.
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+    }
+
+    private final AttendanceService service;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final ConcurrentMap<String, ApiSession> sessions = new ConcurrentHashMap<>();
+    private final AtomicLong lastSweep = new AtomicLong(System.currentTimeMillis());
+
+    public AttendanceServer(AttendanceService service, String host, int port) throws IOException {
+        this.service = service;
+        this.executor = newRequestExecutor();
+        this.server = HttpServer.create(new InetSocketAddress(host, port), 0);
+        this.server.createContext("/api/", this::dispatch);
+        this.server.setExecutor(executor);
+    }
+
+    public void start() {
+        server.start();
+        LOG.info("Attendance API listening", "url", "http://" + server.getAddress().getHostString() + ":" + getPort() + "/api/");
+    }
+
+    /** Stops accepting requests, waiting up to {@code delaySeconds} for running ones to finish. */
+    public void stop(int delaySeconds) {
+        server.stop(delaySeconds);
+        executor.shutdown();
+    }
+
+    /** The bound port (useful when started on port 0). */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : PORT;
+        AttendanceServer server = new AttendanceServer(AttendanceService.getInstance(), HOST, port);
+        SnapshotExporter exporter = new SnapshotExporter(AttendanceService.getInstance().getRepository(), Paths.get(SnapshotExporter.FILE));
+        if (SnapshotExporter.INTERVAL_MINUTES > 0) {
+            exporter.start(SnapshotExporter.INTERVAL_MINUTES);
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            exporter.stop();
+            server.stop(2);
+            if (!AttendanceRepositories.MEMORY.equals(AttendanceRepositories.BACKEND)) {
+                ConnectionPool.getInstance().shutdown();
+            }
+        }, "api-shutdown"));
+        server.start();
+    }
+
+    /**
+     * One virtual thread per request when available (Java 21+), found reflectively so the code
+     * still compiles and runs on older JREs, which get a bounded platform-thread pool instead.
+     */
+    static ExecutorService newRequestExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            ExecutorService virtual = (ExecutorService) factory.invoke(null);
+            LOG.info("HTTP requests run on virtual threads");
+            return virtual;
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // Not in this JRE (or still a preview feature): fall through to the pool
+        }
+        LOG.info("Virtual threads unavailable; HTTP requests run on pooled threads", "threads", FALLBACK_THREADS);
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(FALLBACK_THREADS, FALLBACK_THREADS, 60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(256),
+                new ThreadFactory() {
+                    private final AtomicInteger count = new AtomicInteger();
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread t = new Thread(r, "api-worker-" + count.incrementAndGet());
+                        t.setDaemon(true);
+                        return t;
+                    }
+                },
+                new ThreadPoolExecutor.CallerRunsPolicy()); // Full: the accepting thread serves it, slowing intake
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+
+    // --- Request handling ---
+
+    private void dispatch(HttpExchange exchange) throws IOException {
+        long start = System.nanoTime();
+        try {
+            String path = exchange.getRequestURI().getPath();
+            String method = exchange.getRequestMethod();
+            Object result;
+            switch (path) {
+                case "/api/health":
+                    requireMethod(method, "GET");
+                    result = object("status", "ok", "backend", AttendanceRepositories.BACKEND,
+                            "offlineBacklog", service.offlineBacklog());
+                    break;
+                case "/api/login":
+                    requireMethod(method, "POST");
+                    result = login(readBody(exchange));
+                    break;
+                case "/api/logout":
+                    requireMethod(method, "POST");
+                    String token = token(exchange);
+                    if (token != null) sessions.remove(token);
+                    result = object("loggedOut", true);
+                    break;
+                case "/api/subjects":
+                    if ("PUT".equals(method)) {
+                        result = saveSubjects(session(exchange), readBody(exchange));
+                    } else {
+                        requireMethod(method, "GET");
+                        result = subjects(session(exchange));
+                    }
+                    break;
+                case "/api/sessions":
+                    requireMethod(method, "POST");
+                    result = saveSession(session(exchange), readBody(exchange));
+                    break;
+                case "/api/stats":
+                    requireMethod(method, "GET");
+                    result = statistics(session(exchange));
+                    break;
+                default:
+                    throw new ApiException(404, "No such endpoint: " + path);
+            }
+            send(exchange, 200, result);
+        } catch (ApiException e) {
+            send(exchange, e.status, object("error", e.getMessage()));
+        } catch (IllegalArgumentException e) {
+            send(exchange, 400, object("error", e.getMessage()));
+        } catch (RejectedExecutionException e) {
+            exchange.getResponseHeaders().set("Retry-After", "1");
+            send(exchange, 503, object("error", e.getMessage()));
+        } catch (SQLException e) {
+            if (AttendanceRepositories.dialect().isDuplicateKey(e)) {
+                send(exchange, 409, object("error", "This attendance session was already saved"));
+            } else {
+                LOG.error("API database error", e, "uri", exchange.getRequestURI());
+                send(exchange, 500, object("error", "Database error"));
+            }
+        } catch (Exception e) {
+            LOG.error("API error", e, "uri", exchange.getRequestURI());
+            send(exchange, 500, object("error", "Internal error"));
+        } finally {
+            exchange.close();
+            recordRequest(exchange, start);
+        }
+    }
+
+    /** Times the request as {@code http.<endpoint>}; 5xx responses count as errors. */
+    private static void recordRequest(HttpExchange exchange, long start) {
+        String path = exchange.getRequestURI().getPath();
+        String endpoint = ENDPOINTS.contains(path) ? path.substring("/api/".length()) : "unknown"; // Bounded names
+        int status = exchange.getResponseCode();
+        Metrics metrics = Metrics.getInstance();
+        metrics.timer("http." + endpoint).record(start, status > 0 && status < 500);
+        metrics.counter("http.status." + (status > 0 ? status / 100 + "xx" : "none")).increment();
+    }
+
+    private Object login(Map<String, Object> body) throws SQLException, ApiException {
+        String sapid = requireString(body, "sapid").trim();
+        String password = requireString(body, "password");
+        UserSession session = service.login(sapid, password);
+        if (session == null) {
+            throw new ApiException(401, "Invalid SAP ID or Password");
+        }
+        sweepExpiredSessions();
+        String token = newToken();
+        sessions.put(token, new ApiSession(session));
+        UserAccount account = session.getAccount();
+        return object("token", token, "sapid", account.getSapid(), "name", account.getName(),
+                "hasSubjects", account.hasSubjects());
+    }
+
+    private Object subjects(UserSession session) throws SQLException {
+        List<Object> rows = new ArrayList<>();
+        for (SubjectTarget subject : service.subjects(session)) {
+            rows.add(object("name", subject.getName(), "targetTotalLectures", subject.getTargetTotalLectures(),
+                    "days", WeeklySchedule.format(subject.getDaysMask())));
+        }
+        return object("subjects", rows);
+    }
+
+    private Object saveSubjects(UserSession session, Map<String, Object> body) throws SQLException {
+        List<SubjectTarget> subjects = new ArrayList<>();
+        for (Object item : requireList(body, "subjects")) {
+            Map<String, Object> row = asObject(item, "subjects[]");
+            Object days = row.get("days"); // E.g. "Mon Wed Fri"; every day if absent
+            subjects.add(new SubjectTarget(requireString(row, "name").trim(), requireInt(row, "targetTotalLectures"),
+                    WeeklySchedule.parse(days == null ? null : String.valueOf(days))));
+        }
+        service.saveSubjects(session, subjects); // Validates; IllegalArgumentException becomes a 400
+        return object("saved", subjects.size());
+    }
+
+    private Object saveSession(UserSession session, Map<String, Object> body) throws SQLException {
+        Object requestedId = body.get("sessionId");
+        String sessionId = requestedId == null ? UUID.randomUUID().toString() : String.valueOf(requestedId);
+        if (sessionId.isEmpty() || sessionId.length() > 40) {
+            throw new IllegalArgumentException("sessionId must be 1 to 40 characters");
+        }
+
+        List<String> known = new ArrayList<>();
+        for (SubjectTarget subject : service.subjects(session)) {
+            known.add(subject.getName());
+        }
+        List<Object> marks = requireList(body, "marks");
+        List<String> subjects = new ArrayList<>(marks.size());
+        boolean[] present = new boolean[marks.size()];
+        for (Object item : marks) {
+            Map<String, Object> mark = asObject(item, "marks[]");
+            String subject = requireString(mark, "subject");
+            if (!known.contains(subject)) {
+                throw new IllegalArgumentException("Unknown subject '" + subject + "'");
+            }
+            if (subjects.contains(subject)) {
+                throw new IllegalArgumentException("Subject '" + subject + "' is marked twice");
+            }
+            Object flag = mark.get("present");
+            if (!(flag instanceof Boolean)) {
+                throw new IllegalArgumentException("'present' must be true or false for '" + subject + "'");
+            }
+            present[subjects.size()] = (Boolean) flag;
+            subjects.add(subject);
+        }
+
+        int[] counts = service.saveSession(session, sessionId, subjects, present);
+        int saved = 0;
+        for (int count : counts) {
+            if (AttendanceRepository.isUpdated(count)) saved++;
+        }
+        return object("sessionId", sessionId, "saved", saved);
+    }
+
+    private Object statistics(UserSession session) throws SQLException {
+        List<Object> rows = new ArrayList<>();
+        for (SubjectStats row : service.statistics(session)) {
+            int canLeave = row.canLeave(SubjectStats.DEFAULT_REQUIRED_RATIO); // Same rule as the desktop report
+            int recent = row.recentPercent(SubjectStats.RECENT_LECTURES);
+            rows.add(object("subject", row.getSubject(), "attended", row.getAttended(), "taken", row.getTaken(),
+                    "target", row.getTarget(), "canLeave", canLeave >= 0 ? canLeave : null,
+                    "streak", row.currentStreak(), "recentPercent", recent >= 0 ? recent : null));
+        }
+        return object("subjects", rows);
+    }
+
+    // --- Sessions ---
+
+    private UserSession session(HttpExchange exchange) throws ApiException {
+        String token = token(exchange);
+        ApiSession apiSession = token == null ? null : sessions.get(token);
+        long now = System.currentTimeMillis();
+        if (apiSession == null || now - apiSession.lastUsed > SESSION_IDLE_MS) {
+            if (apiSession != null) sessions.remove(token, apiSession);
+            throw new ApiException(401, "Log in first (POST /api/login) and send 'Authorization: Bearer <token>'");
+        }
+        apiSession.lastUsed = now;
+        return apiSession.session;
+    }
+
+    private static String token(HttpExchange exchange) {
+        String header = exchange.getRequestHeaders().getFirst("Authorization");
+        return header != null && header.startsWith("Bearer ") ? header.substring(7).trim() : null;
+    }
+
+    private static String newToken() {
+        byte[] bytes = new byte[32];
+        RANDOM.nextBytes(bytes);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    }
+
+    /** Drops idle sessions, at most once per sweep interval. */
+    private void sweepExpiredSessions() {
+        long now = System.currentTimeMillis();
+        long last = lastSweep.get();
+        if (now - last < SWEEP_INTERVAL_MS || !lastSweep.compareAndSet(last, now)) {
+            return;
+        }
+        for (Iterator<ApiSession> it = sessions.values().iterator(); it.hasNext(); ) {
+            if (now - it.next().lastUsed > SESSION_IDLE_MS) {
+                it.remove();
+            }
+        }
+    }
+
+    // --- JSON in and out ---
+
+    private static Map<String, Object> readBody(HttpExchange exchange) throws IOException, ApiException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        byte[] chunk = new byte[4096];
+        try (InputStream in = exchange.getRequestBody()) {
+            int n;
+            while ((n = in.read(chunk)) > 0) {
+                if (buffer.size() + n > MAX_BODY_BYTES) {
+                    throw new ApiException(413, "Request body larger than " + MAX_BODY_BYTES + " bytes");
+                }
+                buffer.write(chunk, 0, n);
+            }
+        }
+        return asObject(Json.parse(new String(buffer.toByteArray(), StandardCharsets.UTF_8)), "request body");
+    }
+
+    private static void send(HttpExchange exchange, int status, Object body) throws IOException {
+        byte[] bytes = Json.write(body).getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static void requireMethod(String actual, String expected) throws ApiException {
+        if (!expected.equals(actual)) {
+            throw new ApiException(405, "Use " + expected);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> asObject(Object value, String what) {
+        if (!(value instanceof Map)) {
+            throw new IllegalArgumentException(what + " must be a JSON object");
+        }
+        return (Map<String, Object>) value;
+    }
+
+    private static String requireString(Map<String, Object> object, String key) {
+        Object value = object.get(key);
+        if (!(value instanceof String) || ((String) value).isEmpty()) {
+            throw new IllegalArgumentException("'" + key + "' is required");
+        }
+        return (String) value;
+    }
+
+    private static int requireInt(Map<String, Object> object, String key) {
+        Object value = object.get(key);
+        if (!(value instanceof Long) || (Long) value > Integer.MAX_VALUE || (Long) value < Integer.MIN_VALUE) {
+            throw new IllegalArgumentException("'" + key + "' must be a whole number");
+        }
+        return ((Long) value).intValue();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Object> requireList(Map<String, Object> object, String key) {
+        Object value = object.get(key);
+        if (!(value instanceof List)) {
+            throw new IllegalArgumentException("'" + key + "' must be a JSON array");
+        }
+        return (List<Object>) value;
+    }
+
+    /** Builds a JSON object from alternating keys and values. */
+    private static Map<String, Object> object(Object... keysAndValues) {
+        Map<String, Object> map = new LinkedHashMap<>();
+        for (int i = 0; i < keysAndValues.length; i += 2) {
+            map.put((String) keysAndValues[i], keysAndValues[i + 1]);
+        }
+        return map;
+    }
+
+    // --- Inner classes ---
+
+    /** A logged-in API client: the same session context the desktop screens share. */
+    private static final class ApiSession {
+        private final UserSession session;
+        private volatile long lastUsed = System.currentTimeMillis();
+
+        ApiSession(UserSession session) {
+            this.session = session;
+        }
+    }
+
+    /** A request error reported to the client with the given HTTP status. */
+    private static final class ApiException extends Exception {
+        private static final long serialVersionUID = 1L;
+        private final int status;
+
+        ApiException(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+    }
+}
@@ -0,0 +1,215 @@
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The attendance operations as a user performs them, independent of Swing: each one is a
+ * repository call plus keeping {@link StatsCache} and the caller's {@link UserSession} in step,
+ * and publishing what changed on the {@link ChangeBus}, so other open windows of the user follow.
+ *
+ * The desktop frames run these through {@link DatabaseTask}, and {@link AttendanceServer} runs
+ * them for HTTP clients, so both behave identically against the one configured backend.
+ * Stateless apart from the shared caches; safe to call from any thread.
+ */
+public final class AttendanceService {
+
+    private static volatile AttendanceService instance;
+
+    private final AttendanceRepository repository;
+    private final ChangeBus changes;
+
+    /** Returns the service over the configured backend ({@link AttendanceRepositories#get()}). */
+    public static AttendanceService getInstance() {
+        AttendanceService service = instance;
+        if (service == null) {
+            synchronized (AttendanceService.class) {
+                service = instance;
+                if (service == null) {
+                    service = new AttendanceService(AttendanceRepositories.get());
+                    instance = service;
+                }
+            }
+        }
+        return service;
+    }
+
+    public AttendanceService(AttendanceRepository repository) {
+        this.repository = repository;
+        this.changes = new ChangeBus(repository);
+    }
+
+    public AttendanceRepository getRepository() {
+        return repository;
+    }
+
+    /** Changes to users' attendance, from this process and (polled) from others. */
+    public ChangeBus getChanges() {
+        return changes;
+    }
+
+    // --- Accounts ---
+
+    /**
+     * Checks credentials and opens a session for the user.
+     *
+     * @return the new session, or null if the SAP ID / password pair does not match
+     */
+    public UserSession login(String sapid, String password) throws SQLException {
+        UserAccount account = repository.authenticate(sapid, password);
+        return account == null ? null : new UserSession(account);
+    }
+
+    public boolean register(String sapid, String name, String password) throws SQLException {
+        return repository.register(sapid, name, password);
+    }
+
+    // --- Subjects ---
+
+    /** The user's subjects: from the session if this login has them, loaded (and kept) otherwise. */
+    public List<SubjectTarget> subjects(UserSession session) throws SQLException {
+        List<SubjectTarget> subjects = session.getSubjects();
+        return subjects != null ? subjects : reloadSubjects(session);
+    }
+
+    /** Loads the user's subjects from the repository, refreshing the session. */
+    public List<SubjectTarget> reloadSubjects(UserSession session) throws SQLException {
+        session.setSubjects(repository.loadSubjects(session.getSapid()));
+        return session.getSubjects();
+    }
+
+    /**
+     * Replaces the user's subject list. Existing subjects keep their attendance counts.
+     *
+     * @throws IllegalArgumentException if the list fails {@link #validateSubjects}
+     */
+    public void saveSubjects(UserSession session, List<SubjectTarget> subjects) throws SQLException {
+        String problem = validateSubjects(subjects);
+        if (problem != null) {
+            throw new IllegalArgumentException(problem);
+        }
+        repository.saveSubjects(session.getSapid(), subjects);
+        StatsCache.getInstance().invalidate(session.getSapid()); // Subject list and targets changed
+        session.setSubjects(subjects);                           // The next screen renders from what was written
+        changes.publish(AttendanceChange.subjects(session.getSapid(), false));
+    }
+
+    /**
+     * Checks a subject list before it is saved.
+     *
+     * @return a message describing the first problem, or null if the list can be saved
+     */
+    public static String validateSubjects(List<SubjectTarget> subjects) {
+        Set<String> seen = new HashSet<>();
+        for (SubjectTarget subject : subjects) {
+            String name = subject.getName() == null ? "" : subject.getName().trim();
+            if (name.isEmpty()) {
+                return "Subject Name cannot be empty.";
+            }
+            if (subject.getTargetTotalLectures() <= 0) {
+                return "Target Lectures for '" + name + "' must be a positive number.";
+            }
+            if (!WeeklySchedule.isValid(subject.getDaysMask())) {
+                return "'" + name + "' must meet on at least one day of the week.";
+            }
+            if (!seen.add(name.toLowerCase(Locale.ROOT))) {
+                return "Duplicate subject name entered: '" + name + "'. Subject names must be unique.";
+            }
+        }
+        return null;
+    }
+
+    // --- Attendance ---
+
+    /**
+     * Saves one attendance session and applies it to the cached statistics.
+     *
+     * @return per-subject update counts, as {@link AttendanceRepository#saveSession}
+     */
+    public int[] saveSession(UserSession session, String sessionId, List<String> subjects, boolean[] present) throws SQLException {
+        String sapid = session.getSapid();
+        int[] counts;
+        try {
+            counts = repository.saveSession(sapid, sessionId, subjects, present);
+        } catch (SQLException | RuntimeException e) {
+            // E.g. a subject removed from another terminal: make the next screen re-read the list
+            session.invalidateSubjects();
+            throw e;
+        }
+
+        // Keep cached statistics in step with what was written
+        int updated = 0;
+        for (int count : counts) {
+            if (AttendanceRepository.isUpdated(count)) updated++;
+        }
+        List<SubjectStats> rows = null;
+        if (updated > 0 && updated == subjects.size()) {
+            rows = StatsCache.getInstance().recordSession(sapid, subjects, present);
+        } else if (updated > 0) {
+            StatsCache.getInstance().invalidate(sapid);
+        }
+        publishCounters(sapid, subjects, rows);
+        return counts;
+    }
+
+    /**
+     * Sessions saved locally ({@link JournaledAttendanceRepository}) that are waiting for the
+     * database to become reachable again; 0 while it is reachable or without a journal.
+     */
+    public int offlineBacklog() {
+        if (repository instanceof JournaledAttendanceRepository) {
+            JournaledAttendanceRepository journaled = (JournaledAttendanceRepository) repository;
+            return journaled.isDatabaseUnavailable() ? journaled.getPendingCount() : 0;
+        }
+        return 0;
+    }
+
+    /** The user's statistics, from {@link StatsCache} when possible, otherwise loaded and cached. */
+    public List<SubjectStats> statistics(UserSession session) throws SQLException {
+        String sapid = session.getSapid();
+        List<SubjectStats> cached = StatsCache.getInstance().get(sapid);
+        if (cached != null) {
+            return cached;
+        }
+        List<SubjectStats> rows = repository.loadStatistics(sapid);
+        StatsCache.getInstance().put(sapid, rows);
+        return new ArrayList<>(rows);
+    }
+
+    /** Zeroes the user's attendance counts and history. @return subjects affected */
+    public int resetAttendance(UserSession session) throws SQLException {
+        String sapid = session.getSapid();
+        int rows = repository.resetAttendance(sapid);
+        List<SubjectStats> reset = StatsCache.getInstance().resetCounts(sapid);
+        if (reset != null) {
+            for (SubjectStats row : reset) {
+                changes.publish(AttendanceChange.counters(sapid, row, false));
+            }
+        } else {
+            changes.publish(AttendanceChange.countersChanged(sapid, null, false));
+        }
+        return rows;
+    }
+
+    /** Publishes the new counters of each saved subject, as far as the cache knows them. */
+    private void publishCounters(String sapid, List<String> subjects, List<SubjectStats> rows) {
+        if (!changes.isWatched(sapid)) {
+            return;
+        }
+        Map<String, SubjectStats> bySubject = new HashMap<>();
+        if (rows != null) {
+            for (SubjectStats row : rows) {
+                bySubject.put(row.getSubject(), row);
+            }
+        }
+        for (String subject : subjects) {
+            SubjectStats stats = bySubject.get(subject);
+            changes.publish(stats != null ? AttendanceChange.counters(sapid, stats, false)
+                                          : AttendanceChange.countersChanged(sapid, subject, false));
+        }
+    }
+}
@@ -0,0 +1,443 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Command-line bulk import/export of users and timetable rows, for onboarding a semester
+ * without going through the registration and subject screens one student at a time.
+ *
+ * Import streams the CSV file: a reader thread parses it line by line into fixed-size
+ * chunks handed to parallel writer threads through a bounded queue, so memory use does not
+ * grow with the file. Each chunk is one JDBC batch and one commit. The highest line up to
+ * which every chunk has committed is recorded in a checkpoint file, and a re-run resumes
+ * after it; rows are MERGEd, so chunks replayed after a crash are harmless.
+ *
+ * Export streams a table to CSV with a bounded fetch size, never holding it in the heap.
+ *
+ * Usage:
+ *   java BulkLoader import-users     users.csv     [--chunk 500] [--threads 4] [--checkpoint file]
+ *   java BulkLoader import-timetable timetable.csv [--chunk 500] [--threads 4] [--checkpoint file]
+ *   java BulkLoader export-users     out.csv
+ *   java BulkLoader export-timetable out.csv
+ *
+ * CSV layouts (a header row is skipped if present):
+ *   users:     sapid,name,password
+ *   timetable: sapid,subject,target_total_lectures
+ * Plaintext passwords are hashed by the writer threads before they are stored; values that are
+ * already {@link PasswordHasher} hashes (e.g. from another install) are imported unchanged.
+ */
+public class BulkLoader {
+
+    private static final Log LOG = Log.get(BulkLoader.class);
+    private static final int DEFAULT_CHUNK_SIZE = 500;
+    private static final int DEFAULT_THREADS = 4;
+    private static final int EXPORT_FETCH_SIZE = 1000;
+    private static final SqlDialect DIALECT = AttendanceRepositories.dialect();
+
+    // Bind variables are typed explicitly; H2 cannot infer the type of an untyped "? AS col"
+    private static final String MERGE_USER_SQL =
+            "MERGE INTO users u USING (SELECT CAST(? AS VARCHAR2(20)) AS sapid, CAST(? AS VARCHAR2(100)) AS name, " +
+            "CAST(? AS VARCHAR2(255)) AS password FROM dual) s " +
+            "ON (u.sapid = s.sapid) " +
+            "WHEN NOT MATCHED THEN INSERT (user_id, sapid, name, password, subjects_added) " +
+            "VALUES (users_seq.NEXTVAL, s.sapid, s.name, s.password, 0)";
+
+    // Adds subject names missing from the catalog; committed on its own, before the chunk
+    private static final String MERGE_CATALOG_SQL =
+            "MERGE INTO subject c USING (SELECT CAST(? AS VARCHAR2(100)) AS name FROM dual) s " +
+            "ON (c.name = s.name) " +
+            "WHEN NOT MATCHED THEN INSERT (subject_id, name) VALUES (subject_seq.NEXTVAL, s.name)";
+
+    // Resolves SAP ID and subject name to their ids; an unknown SAP ID merges nothing
+    private static final String MERGE_TIMETABLE_SQL =
+            "MERGE INTO timetable t USING (SELECT u.user_id, c.subject_id, CAST(? AS NUMBER(10)) AS target FROM users u, subject c " +
+            "WHERE u.sapid = ? AND c.name = ?) s " +
+            "ON (t.user_id = s.user_id AND t.subject_id = s.subject_id) " +
+            "WHEN MATCHED THEN UPDATE SET t.target_total_lectures = s.target " +
+            "WHEN NOT MATCHED THEN INSERT (user_id, subject_id, target_total_lectures, attended_count, lectures_taken_so_far) " +
+            "VALUES (s.user_id, s.subject_id, s.target, 0, 0)";
+
+    private static final String FLAG_SUBJECTS_ADDED_SQL = "UPDATE users SET subjects_added = 1 WHERE sapid = ?";
+
+    /** Marks the end of the chunk stream for one writer thread. */
+    private static final Chunk POISON = new Chunk(-1, -1, new ArrayList<>());
+
+    public static void main(String[] args) {
+        if (args.length < 2) {
+            printUsage();
+            System.exit(1);
+        }
+        String command = args[0];
+        Path file = Paths.get(args[1]);
+        int chunkSize = DEFAULT_CHUNK_SIZE;
+        int threads = DEFAULT_THREADS;
+        Path checkpoint = null;
+        for (int i = 2; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--chunk": chunkSize = Integer.parseInt(args[i + 1]); break;
+                case "--threads": threads = Integer.parseInt(args[i + 1]); break;
+                case "--checkpoint": checkpoint = Paths.get(args[i + 1]); break;
+                default:
+                    System.err.println("Unknown option: " + args[i]);
+                    printUsage();
+                    System.exit(1);
+            }
+        }
+        if (checkpoint == null) {
+            checkpoint = Paths.get(file + ".checkpoint");
+        }
+
+        try {
+            switch (command) {
+                case "import-users":
+                    new BulkLoader(chunkSize, threads, checkpoint).importFile(file, Kind.USERS);
+                    break;
+                case "import-timetable":
+                    new BulkLoader(chunkSize, threads, checkpoint).importFile(file, Kind.TIMETABLE);
+                    break;
+                case "export-users":
+                    export(file, "SELECT sapid, name, subjects_added FROM users ORDER BY sapid");
+                    break;
+                case "export-timetable":
+                    export(file, "SELECT u.sapid, c.name AS subjects, t.target_total_lectures, t.attended_count, t.lectures_taken_so_far " +
+                                 "FROM timetable t JOIN users u ON u.user_id = t.user_id JOIN subject c ON c.subject_id = t.subject_id " +
+                                 "ORDER BY u.sapid, c.name");
+                    break;
+                default:
+                    printUsage();
+                    System.exit(1);
+            }
+        } catch (Exception e) {
+            LOG.error("Command failed", e, "command", command);
+            System.exit(2);
+        } finally {
+            ConnectionPool.getInstance().shutdown();
+        }
+    }
+
+    private static void printUsage() {
+        System.err.println("Usage:");
+        System.err.println("  BulkLoader import-users     <users.csv>     [--chunk N] [--threads N] [--checkpoint file]");
+        System.err.println("  BulkLoader import-timetable <timetable.csv> [--chunk N] [--threads N] [--checkpoint file]");
+        System.err.println("  BulkLoader export-users     <out.csv>");
+        System.err.println("  BulkLoader export-timetable <out.csv>");
+    }
+
+    private enum Kind { USERS, TIMETABLE }
+
+    private final int chunkSize;
+    private final int threads;
+    private final Path checkpointFile;
+
+    // Checkpoint bookkeeping: chunks can commit out of order, so track the contiguous prefix
+    private final TreeSet<Long> pendingChunkStarts = new TreeSet<>();
+    private final TreeSet<Long> committedChunkEnds = new TreeSet<>();
+    private final AtomicLong rowsWritten = new AtomicLong();
+    private final AtomicReference<Exception> firstFailure = new AtomicReference<>();
+    private final PasswordHasher passwordHasher = new PasswordHasher();
+
+    private BulkLoader(int chunkSize, int threads, Path checkpointFile) {
+        this.chunkSize = chunkSize;
+        this.threads = threads;
+        this.checkpointFile = checkpointFile;
+    }
+
+    private void importFile(Path file, Kind kind) throws IOException, InterruptedException {
+        long resumeAfter = readCheckpoint();
+        if (resumeAfter > 0) {
+            LOG.info("Resuming import", "file", file, "afterLine", resumeAfter, "checkpoint", checkpointFile);
+        }
+
+        BlockingQueue<Chunk> queue = new ArrayBlockingQueue<>(threads * 2);
+        List<Thread> writers = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            Thread t = new Thread(() -> writeChunks(queue, kind), "bulk-writer-" + (i + 1));
+            t.start();
+            writers.add(t);
+        }
+
+        long start = System.nanoTime();
+        long lineNo = 0;
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            List<String[]> rows = new ArrayList<>(chunkSize);
+            long chunkStart = -1;
+            String line;
+            while ((line = reader.readLine()) != null && firstFailure.get() == null) {
+                lineNo++;
+                if (lineNo <= resumeAfter || line.trim().isEmpty()) continue;
+                String[] fields = parseCsvLine(line);
+                if (lineNo == 1 && "sapid".equalsIgnoreCase(fields[0].trim())) continue; // Header row
+                if (fields.length < 3) {
+                    LOG.warn("Skipping malformed line", "line", lineNo, "text", line);
+                    continue;
+                }
+                if (chunkStart < 0) chunkStart = lineNo;
+                rows.add(fields);
+                if (rows.size() == chunkSize) {
+                    enqueue(queue, new Chunk(chunkStart, lineNo, rows));
+                    rows = new ArrayList<>(chunkSize);
+                    chunkStart = -1;
+                }
+            }
+            if (!rows.isEmpty()) {
+                enqueue(queue, new Chunk(chunkStart, lineNo, rows));
+            }
+        } finally {
+            for (int i = 0; i < threads; i++) {
+                queue.put(POISON);
+            }
+            for (Thread t : writers) {
+                t.join();
+            }
+        }
+
+        double seconds = (System.nanoTime() - start) / 1e9;
+        Exception failure = firstFailure.get();
+        if (failure != null) {
+            throw new IOException("Import stopped; re-run to resume from checkpoint " + checkpointFile, failure);
+        }
+        Files.deleteIfExists(checkpointFile); // Finished cleanly: next run starts from the top
+        LOG.info("Import finished", "file", file, "rows", rowsWritten.get(),
+                "seconds", String.format(Locale.ROOT, "%.1f", seconds),
+                "rowsPerSecond", Math.round(rowsWritten.get() / Math.max(seconds, 0.001)));
+    }
+
+    private void enqueue(BlockingQueue<Chunk> queue, Chunk chunk) throws InterruptedException {
+        synchronized (this) {
+            pendingChunkStarts.add(chunk.firstLine);
+        }
+        queue.put(chunk);
+    }
+
+    private void writeChunks(BlockingQueue<Chunk> queue, Kind kind) {
+        while (true) {
+            Chunk chunk;
+            try {
+                chunk = queue.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            if (chunk == POISON) return;
+            if (firstFailure.get() != null) continue; // Drain without writing after a failure
+            if (kind == Kind.USERS) hashPasswords(chunk); // CPU-heavy: before borrowing a connection
+
+            try (Connection conn = ConnectionPool.getInstance().getConnection()) {
+                writeChunk(conn, chunk, kind);
+                rowsWritten.addAndGet(chunk.rows.size());
+                chunkCommitted(chunk);
+            } catch (SQLException | IOException e) {
+                LOG.error("Chunk failed", "firstLine", chunk.firstLine, "lastLine", chunk.lastLine, "reason", e.getMessage());
+                firstFailure.compareAndSet(null, e);
+            }
+        }
+    }
+
+    /** Replaces plaintext passwords with salted hashes; rows that already hold a hash are kept as-is. */
+    private void hashPasswords(Chunk chunk) {
+        for (String[] row : chunk.rows) {
+            if (row.length > 2 && !PasswordHasher.isHash(row[2])) {
+                row[2] = passwordHasher.hash(row[2]);
+            }
+        }
+    }
+
+    private static void writeChunk(Connection conn, Chunk chunk, Kind kind) throws SQLException {
+        if (kind == Kind.TIMETABLE) {
+            addToCatalog(conn, chunk);
+        }
+        conn.setAutoCommit(false);
+        try {
+            if (kind == Kind.USERS) {
+                try (PreparedStatement pstmt = conn.prepareStatement(DIALECT.translate(MERGE_USER_SQL))) {
+                    for (String[] row : chunk.rows) {
+                        pstmt.setString(1, row[0].trim());
+                        pstmt.setString(2, row[1].trim());
+                        pstmt.setString(3, row[2]);
+                        pstmt.addBatch();
+                    }
+                    pstmt.executeBatch();
+                }
+            } else {
+                Set<String> sapids = new LinkedHashSet<>();
+                try (PreparedStatement pstmt = conn.prepareStatement(DIALECT.translate(MERGE_TIMETABLE_SQL))) {
+                    for (String[] row : chunk.rows) {
+                        String sapid = row[0].trim();
+                        pstmt.setInt(1, Integer.parseInt(row[2].trim()));
+                        pstmt.setString(2, sapid);
+                        pstmt.setString(3, row[1].trim());
+                        pstmt.addBatch();
+                        sapids.add(sapid);
+                    }
+                    int[] counts = pstmt.executeBatch();
+                    for (int i = 0; i < counts.length; i++) {
+                        if (!AttendanceRepository.isUpdated(counts[i])) {
+                            throw new SQLException("No user with SAPID " + chunk.rows.get(i)[0].trim(), "23000", 2291);
+                        }
+                    }
+                }
+                try (PreparedStatement flag = conn.prepareStatement(FLAG_SUBJECTS_ADDED_SQL)) {
+                    for (String sapid : sapids) {
+                        flag.setString(1, sapid);
+                        flag.addBatch();
+                    }
+                    flag.executeBatch();
+                }
+            }
+            conn.commit();
+        } catch (SQLException | RuntimeException e) {
+            try { conn.rollback(); } catch (SQLException e_rb) { LOG.warn("Rollback failed", "reason", e_rb.getMessage()); }
+            throw (e instanceof SQLException) ? (SQLException) e : new SQLException("Invalid row in chunk: " + e.getMessage(), e);
+        } finally {
+            try { conn.setAutoCommit(true); } catch (SQLException ignored) {}
+        }
+    }
+
+    /**
+     * Makes sure every subject name in a timetable chunk is in the {@code subject} catalog.
+     * Parallel writers may add the same new name at once; the loser retries and finds it.
+     */
+    private static void addToCatalog(Connection conn, Chunk chunk) throws SQLException {
+        Set<String> names = new LinkedHashSet<>();
+        for (String[] row : chunk.rows) {
+            names.add(row[1].trim());
+        }
+        for (int attempt = 1; ; attempt++) {
+            try (PreparedStatement pstmt = conn.prepareStatement(DIALECT.translate(MERGE_CATALOG_SQL))) {
+                for (String name : names) {
+                    pstmt.setString(1, name);
+                    pstmt.addBatch();
+                }
+                pstmt.executeBatch();
+                return;
+            } catch (SQLException e) {
+                if (attempt == 2 || !DIALECT.isDuplicateKey(e)) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    /** Advances the checkpoint to the end of the longest run of committed chunks from the start. */
+    private synchronized void chunkCommitted(Chunk chunk) throws IOException {
+        pendingChunkStarts.remove(chunk.firstLine);
+        committedChunkEnds.add(chunk.lastLine);
+        long oldestPending = pendingChunkStarts.isEmpty() ? Long.MAX_VALUE : pendingChunkStarts.first();
+        Long safe = committedChunkEnds.lower(oldestPending);
+        if (safe != null) {
+            committedChunkEnds.headSet(safe, false).clear();
+            writeCheckpoint(safe);
+        }
+    }
+
+    private long readCheckpoint() throws IOException {
+        if (!Files.exists(checkpointFile)) return 0;
+        String text = new String(Files.readAllBytes(checkpointFile), StandardCharsets.UTF_8).trim();
+        return text.isEmpty() ? 0 : Long.parseLong(text);
+    }
+
+    private void writeCheckpoint(long line) throws IOException {
+        Path tmp = Paths.get(checkpointFile + ".tmp");
+        Files.write(tmp, Long.toString(line).getBytes(StandardCharsets.UTF_8));
+        Files.move(tmp, checkpointFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void export(Path file, String sql) throws SQLException, IOException {
+        long rows = 0;
+        try (Connection conn = ConnectionPool.getInstance().getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql);
+             BufferedWriter out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            pstmt.setFetchSize(EXPORT_FETCH_SIZE); // Rows arrive in bounded pages, never the whole table
+            try (ResultSet rs = pstmt.executeQuery()) {
+                int columns = rs.getMetaData().getColumnCount();
+                for (int c = 1; c <= columns; c++) {
+                    if (c > 1) out.write(',');
+                    writeCsvField(out, rs.getMetaData().getColumnLabel(c).toLowerCase());
+                }
+                out.newLine();
+                while (rs.next()) {
+                    for (int c = 1; c <= columns; c++) {
+                        if (c > 1) out.write(',');
+                        writeCsvField(out, rs.getString(c));
+                    }
+                    out.newLine();
+                    rows++;
+                }
+            }
+        }
+        LOG.info("Export finished", "file", file, "rows", rows);
+    }
+
+    /** Splits one CSV line, honouring double-quoted fields with "" escapes. */
+    static String[] parseCsvLine(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char ch = line.charAt(i);
+            if (quoted) {
+                if (ch == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (ch == '"') {
+                    quoted = false;
+                } else {
+                    field.append(ch);
+                }
+            } else if (ch == '"') {
+                quoted = true;
+            } else if (ch == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(ch);
+            }
+        }
+        fields.add(field.toString());
+        return fields.toArray(new String[0]);
+    }
+
+    private static void writeCsvField(Writer out, String value) throws IOException {
+        if (value == null) return;
+        if (value.indexOf(',') >= 0 || value.indexOf('"') >= 0 || value.indexOf('\n') >= 0) {
+            out.write('"');
+            out.write(value.replace("\"", "\"\""));
+            out.write('"');
+        } else {
+            out.write(value);
+        }
+    }
+
+    // --- Inner class for one batch of parsed lines ---
+    private static final class Chunk {
+        private final long firstLine;
+        private final long lastLine;
+        private final List<String[]> rows;
+
+        Chunk(long firstLine, long lastLine, List<String[]> rows) {
+            this.firstLine = firstLine;
+            this.lastLine = lastLine;
+            this.rows = rows;
+        }
+    }
+}
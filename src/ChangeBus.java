@@ -0,0 +1,188 @@
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Pushes {@link AttendanceChange}s to whoever shows a user's attendance (open {@link Timetable}
+ * windows), so they patch the affected rows instead of re-reading everything.
+ *
+ * Changes made in this process are published by {@link AttendanceService} as they happen. Changes
+ * made by other processes sharing the database, e.g. another terminal or a bulk correction, are
+ * found by polling: every {@code -Dattendance.changes.pollMillis} (default 2000, 0 to disable) each
+ * subscribed user's {@link AttendanceRepository#changeToken change token} is read, one indexed
+ * query, and only for users whose token moved are the statistics loaded, put in {@link StatsCache}
+ * and compared subject by subject with what was cached, so only subjects changed elsewhere are
+ * published. Published counters are a subject's full new state, so a change that does arrive both
+ * ways is applied twice harmlessly.
+ *
+ * Listeners run on one daemon thread ("change-bus") in publication order, and must hand over to
+ * the EDT themselves. Publishing for a user nobody is subscribed to costs a map lookup.
+ */
+public final class ChangeBus {
+
+    private static final Log LOG = Log.get(ChangeBus.class);
+
+    private static final long POLL_MS = Long.getLong("attendance.changes.pollMillis", 2000L);
+
+    // Token of a watch that has not been polled yet
+    private static final long NO_TOKEN = -1L;
+
+    /** Receives the changes of one user. Called on the bus thread. */
+    public interface Listener {
+        void changed(AttendanceChange change);
+    }
+
+    /** A listener's registration; close it when the window goes away. */
+    public interface Subscription extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    private final AttendanceRepository repository;
+    private final Map<String, Watch> watches = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService thread;
+    private final LongAdder delivered;
+    private final LongAdder polls;
+    private ScheduledFuture<?> poller; // Guarded by "this"; started with the first subscription
+
+    public ChangeBus(AttendanceRepository repository) {
+        this.repository = repository;
+        this.thread = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "change-bus");
+            t.setDaemon(true);
+            return t;
+        });
+        Metrics metrics = Metrics.getInstance();
+        this.delivered = metrics.counter("changes.delivered");
+        this.polls = metrics.counter("changes.polls");
+        metrics.gauge("changes.watchedUsers", watches::size);
+    }
+
+    /** Delivers the user's changes to {@code listener} until the subscription is closed. */
+    public Subscription subscribe(String sapid, Listener listener) {
+        watches.compute(sapid, (key, watch) -> {
+            Watch w = watch != null ? watch : new Watch();
+            w.listeners.add(listener);
+            return w;
+        });
+        startPolling();
+        LOG.debug("Subscribed to changes", "sapid", sapid);
+        return () -> watches.computeIfPresent(sapid, (key, watch) -> {
+            watch.listeners.remove(listener);
+            return watch.listeners.isEmpty() ? null : watch;
+        });
+    }
+
+    /** True while someone is subscribed to the user's changes. */
+    public boolean isWatched(String sapid) {
+        return watches.containsKey(sapid);
+    }
+
+    /** Queues a change made in this process for the user's listeners, if there are any. */
+    public void publish(AttendanceChange change) {
+        Watch watch = watches.get(change.getSapid());
+        if (watch != null) {
+            thread.execute(() -> deliver(watch, change));
+        }
+    }
+
+    private void deliver(Watch watch, AttendanceChange change) {
+        for (Listener listener : watch.listeners) {
+            try {
+                listener.changed(change);
+                delivered.increment();
+            } catch (RuntimeException e) {
+                LOG.warn("Change listener failed", "sapid", change.getSapid(), "kind", change.getKind(), "reason", e.toString());
+            }
+        }
+    }
+
+    // --- Polling for changes made elsewhere ---
+
+    private synchronized void startPolling() {
+        if (POLL_MS <= 0) {
+            return;
+        }
+        if (poller == null) {
+            poller = thread.scheduleWithFixedDelay(this::poll, POLL_MS, POLL_MS, TimeUnit.MILLISECONDS);
+        }
+        thread.execute(this::poll); // Takes the new watch's baseline now rather than a round later
+    }
+
+    private void poll() {
+        for (Map.Entry<String, Watch> entry : watches.entrySet()) {
+            try {
+                poll(entry.getKey(), entry.getValue());
+            } catch (SQLException | RuntimeException e) {
+                LOG.debug("Change poll failed, retrying next round", "sapid", entry.getKey(), "reason", e.getMessage());
+            }
+        }
+    }
+
+    private void poll(String sapid, Watch watch) throws SQLException {
+        polls.increment();
+        long token = repository.changeToken(sapid);
+        long previous = watch.token;
+        if (token == previous) {
+            return;
+        }
+        watch.token = token;
+        if (previous == NO_TOKEN) {
+            return; // Baseline: the window has just loaded what there is
+        }
+
+        // Compared with the cached rows when there are any: saves in this process have already been
+        // applied there, so only what other processes changed shows up as a difference
+        List<SubjectStats> known = StatsCache.getInstance().peek(sapid);
+        List<SubjectStats> rows = repository.loadStatistics(sapid);
+        StatsCache.getInstance().replace(sapid, known, rows);
+        Map<String, SubjectStats> before = known != null ? bySubject(known) : watch.seen;
+        Map<String, SubjectStats> seen = bySubject(rows);
+        watch.seen = seen;
+
+        if (AttendanceRepository.changeSequence(token) != AttendanceRepository.changeSequence(previous)
+                || !seen.keySet().equals(before.keySet()) && !before.isEmpty()) {
+            deliver(watch, AttendanceChange.subjects(sapid, true));
+        }
+        for (SubjectStats row : rows) {
+            if (!sameCounters(before.get(row.getSubject()), row)) {
+                deliver(watch, AttendanceChange.counters(sapid, row, true));
+            }
+        }
+        LOG.debug("Changes from elsewhere delivered", "sapid", sapid, "subjects", rows.size());
+    }
+
+    private static Map<String, SubjectStats> bySubject(List<SubjectStats> rows) {
+        Map<String, SubjectStats> map = new HashMap<>();
+        for (SubjectStats row : rows) {
+            map.put(row.getSubject(), row);
+        }
+        return map;
+    }
+
+    private static boolean sameCounters(SubjectStats a, SubjectStats b) {
+        return a != null && a.getAttended() == b.getAttended() && a.getTaken() == b.getTaken()
+                && a.getTarget() == b.getTarget() && a.getHistory().length() == b.getHistory().length();
+    }
+
+    /** Listeners of one user, and what the poller last saw of them (poller thread only). */
+    private static final class Watch {
+        final List<Listener> listeners = new CopyOnWriteArrayList<>();
+        long token = NO_TOKEN;
+        Map<String, SubjectStats> seen = Collections.emptyMap(); // Fallback when nothing is cached; empty publishes every row
+    }
+
+    @Override
+    public String toString() {
+        return "ChangeBus [watchedUsers=" + watches.size() + ", delivered=" + delivered.sum() + ", polls=" + polls.sum() + "]";
+    }
+}
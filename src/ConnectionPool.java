@@ -0,0 +1,523 @@
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Application-wide pool of database connections (Oracle, or the embedded H2 file database)
+ * shared by every screen.
+ *
+ * Callers borrow with {@link #getConnection()} and give the connection back
+ * simply by closing it (try-with-resources), so existing JDBC code keeps its shape.
+ * Connections are validated on borrow, idle ones above the minimum are evicted,
+ * and connections held longer than the leak timeout are reported. Every statement
+ * created through a pooled connection gets {@link #QUERY_TIMEOUT_SECONDS} as its query timeout.
+ * Each physical connection keeps its most recently used prepared statements, keyed by SQL text:
+ * {@code prepareStatement(sql)} hands back the cached statement and closing it puts it back, so
+ * a statement is parsed once per connection rather than once per call.
+ * Borrow latency ({@code pool.borrow}) and the pool's occupancy are reported through {@link Metrics}.
+ */
+public final class ConnectionPool {
+
+    // --- Database Connection Details (override with -Dattendance.db.url=... etc.) ---
+    // The defaults follow -Dattendance.backend: local Oracle XE, or an H2 file under ./attendance-data
+    private static final boolean EMBEDDED = AttendanceRepositories.EMBEDDED.equals(AttendanceRepositories.BACKEND);
+    public static final String DB_URL = System.getProperty("attendance.db.url",
+            EMBEDDED ? "jdbc:h2:file:./attendance-data/attendance" : "jdbc:oracle:thin:@localhost:1521:xe");
+    public static final String DB_USERNAME = System.getProperty("attendance.db.user", EMBEDDED ? "sa" : "system");
+    public static final String DB_PASSWORD = System.getProperty("attendance.db.password", EMBEDDED ? "" : "123"); // Replace with your actual DB password
+    public static final String DB_DRIVER = System.getProperty("attendance.db.driver",
+            EMBEDDED ? "org.h2.Driver" : "oracle.jdbc.driver.OracleDriver");
+
+    // --- Pool Sizing & Timeouts ---
+    private static final int MIN_SIZE = Integer.getInteger("attendance.pool.minSize", 2);
+    private static final int MAX_SIZE = Integer.getInteger("attendance.pool.maxSize", 10);
+    private static final long BORROW_TIMEOUT_MS = Long.getLong("attendance.pool.borrowTimeoutMs", 15_000L);
+    private static final long IDLE_TIMEOUT_MS = Long.getLong("attendance.pool.idleTimeoutMs", 5 * 60_000L);
+    private static final long LEAK_TIMEOUT_MS = Long.getLong("attendance.pool.leakTimeoutMs", 60_000L);
+    private static final long HOUSEKEEPING_INTERVAL_MS = 30_000L;
+    private static final int VALIDATION_TIMEOUT_SECONDS = 2;
+    public static final int QUERY_TIMEOUT_SECONDS = Integer.getInteger("attendance.db.queryTimeoutSeconds", 30);
+    // Prepared statements kept open per connection; 0 turns the cache off
+    private static final int STATEMENT_CACHE_SIZE = Integer.getInteger("attendance.pool.statementCacheSize", 32);
+
+    private static final Log LOG = Log.get(ConnectionPool.class);
+
+    private static volatile ConnectionPool instance;
+
+    private final LinkedBlockingDeque<PooledConnection> idle = new LinkedBlockingDeque<>();
+    private final Set<PooledConnection> borrowed = ConcurrentHashMap.newKeySet();
+    private final Semaphore permits = new Semaphore(MAX_SIZE, true);
+    private final AtomicInteger waiting = new AtomicInteger();
+    private final ScheduledExecutorService housekeeper;
+    private final Metrics.Timer borrowTimer = Metrics.getInstance().timer("pool.borrow");
+    private final LongAdder statementHits = Metrics.getInstance().counter("pool.statementCache.hits");
+    private final LongAdder statementMisses = Metrics.getInstance().counter("pool.statementCache.misses");
+    private volatile boolean shutdown;
+
+    /** Returns the shared pool, creating it on first use. */
+    public static ConnectionPool getInstance() {
+        ConnectionPool pool = instance;
+        if (pool == null) {
+            synchronized (ConnectionPool.class) {
+                pool = instance;
+                if (pool == null) {
+                    pool = new ConnectionPool();
+                    instance = pool;
+                }
+            }
+        }
+        return pool;
+    }
+
+    private ConnectionPool() {
+        try {
+            Class.forName(DB_DRIVER);
+        } catch (ClassNotFoundException e) {
+            LOG.error("JDBC driver not found. Please ensure the JDBC driver JAR (e.g., ojdbc11.jar, or h2.jar for the "
+                    + "embedded backend) is included in the classpath.", "driver", DB_DRIVER);
+        }
+        DriverManager.setLoginTimeout(15);
+
+        Metrics metrics = Metrics.getInstance();
+        metrics.gauge("pool.active", this::getActiveCount);
+        metrics.gauge("pool.idle", this::getIdleCount);
+        metrics.gauge("pool.waiting", this::getWaitingCount);
+
+        housekeeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "connection-pool-housekeeper");
+            t.setDaemon(true);
+            return t;
+        });
+        housekeeper.scheduleWithFixedDelay(this::housekeep,
+                HOUSEKEEPING_INTERVAL_MS, HOUSEKEEPING_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        Runtime.getRuntime().addShutdownHook(new Thread(this::shutdown, "connection-pool-shutdown"));
+
+        // Pre-fill the minimum in the background so the first login does not pay for it.
+        housekeeper.execute(this::fillToMinimum);
+    }
+
+    /**
+     * Borrows a validated connection. Closing the returned connection returns it to the pool.
+     *
+     * @throws SQLException if no connection becomes available within the borrow timeout.
+     */
+    public Connection getConnection() throws SQLException {
+        long start = System.nanoTime();
+        boolean ok = false;
+        try {
+            Connection connection = borrow();
+            ok = true;
+            return connection;
+        } finally {
+            borrowTimer.record(start, ok);
+        }
+    }
+
+    private Connection borrow() throws SQLException {
+        if (shutdown) {
+            throw new SQLException("Connection pool has been shut down.");
+        }
+        waiting.incrementAndGet();
+        try {
+            if (!permits.tryAcquire(BORROW_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                throw new SQLException("Timed out after " + BORROW_TIMEOUT_MS + " ms waiting for a database connection "
+                        + "(active=" + getActiveCount() + ", max=" + MAX_SIZE + ").");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a database connection.", e);
+        } finally {
+            waiting.decrementAndGet();
+        }
+
+        try {
+            PooledConnection pooled;
+            while ((pooled = idle.pollFirst()) != null) {
+                if (isUsable(pooled.physical)) {
+                    break;
+                }
+                closePhysical(pooled.physical);
+            }
+            if (pooled == null) {
+                pooled = new PooledConnection(openPhysical());
+            }
+            pooled.borrowedAt = System.currentTimeMillis();
+            pooled.borrowSite = new Throwable("Connection borrowed here");
+            borrowed.add(pooled);
+            return pooled.newHandle();
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /** Number of connections currently borrowed by callers. */
+    public int getActiveCount() {
+        return borrowed.size();
+    }
+
+    /** Number of open connections sitting in the pool, ready to be borrowed. */
+    public int getIdleCount() {
+        return idle.size();
+    }
+
+    /** Number of callers currently blocked waiting for a connection. */
+    public int getWaitingCount() {
+        return waiting.get();
+    }
+
+    /** Number of connections the pool keeps open even when idle. */
+    public int getMinimumSize() {
+        return MIN_SIZE;
+    }
+
+    /** Closes all idle connections and stops housekeeping. Borrowed connections are closed when returned. */
+    public void shutdown() {
+        if (shutdown) return;
+        shutdown = true;
+        housekeeper.shutdownNow();
+        PooledConnection pooled;
+        while ((pooled = idle.pollFirst()) != null) {
+            closePhysical(pooled.physical);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "ConnectionPool[active=" + getActiveCount() + ", idle=" + getIdleCount()
+                + ", waiting=" + getWaitingCount() + ", max=" + MAX_SIZE + "]";
+    }
+
+    private void release(PooledConnection pooled) {
+        borrowed.remove(pooled);
+        try {
+            Connection physical = pooled.physical;
+            if (shutdown || physical.isClosed()) {
+                closePhysical(physical);
+                return;
+            }
+            // Leave the connection clean for the next borrower
+            if (!physical.getAutoCommit()) {
+                physical.rollback();
+                physical.setAutoCommit(true);
+            }
+            pooled.lastReturnedAt = System.currentTimeMillis();
+            pooled.borrowSite = null;
+            idle.offerFirst(pooled); // LIFO keeps hot connections hot and lets cold ones age out
+        } catch (SQLException e) {
+            LOG.warn("Discarding pooled connection that failed to reset", "reason", e.getMessage());
+            closePhysical(pooled.physical);
+        } finally {
+            permits.release();
+        }
+    }
+
+    private void housekeep() {
+        long now = System.currentTimeMillis();
+
+        // 1. Evict idle connections past the idle timeout, keeping the minimum
+        Iterator<PooledConnection> it = idle.descendingIterator(); // oldest returns first
+        while (it.hasNext() && idle.size() > MIN_SIZE) {
+            PooledConnection pooled = it.next();
+            if (now - pooled.lastReturnedAt > IDLE_TIMEOUT_MS && idle.remove(pooled)) {
+                closePhysical(pooled.physical);
+            }
+        }
+
+        // 2. Report connections that have been held too long
+        for (PooledConnection pooled : borrowed) {
+            Throwable site = pooled.borrowSite;
+            if (site != null && now - pooled.borrowedAt > LEAK_TIMEOUT_MS && !pooled.leakReported) {
+                pooled.leakReported = true;
+                LOG.warn("Possible connection leak", site, "heldMs", now - pooled.borrowedAt, "pool", toString());
+            }
+        }
+
+        fillToMinimum();
+    }
+
+    private void fillToMinimum() {
+        while (!shutdown && idle.size() + borrowed.size() < MIN_SIZE && permits.tryAcquire()) {
+            try {
+                PooledConnection pooled = new PooledConnection(openPhysical());
+                pooled.lastReturnedAt = System.currentTimeMillis();
+                idle.offerLast(pooled);
+            } catch (SQLException e) {
+                LOG.warn("Connection pool could not pre-open a connection", "reason", e.getMessage());
+                return;
+            } finally {
+                permits.release();
+            }
+        }
+    }
+
+    private static Connection openPhysical() throws SQLException {
+        return DriverManager.getConnection(DB_URL, DB_USERNAME, DB_PASSWORD);
+    }
+
+    private static boolean isUsable(Connection physical) {
+        try {
+            return !physical.isClosed() && physical.isValid(VALIDATION_TIMEOUT_SECONDS);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private static void closePhysical(Connection physical) {
+        try {
+            physical.close();
+        } catch (SQLException ignored) {}
+    }
+
+    // --- Inner class tracking one physical connection ---
+    private final class PooledConnection {
+        private final Connection physical;
+        private final StatementCache statements = new StatementCache();
+        private volatile long borrowedAt;
+        private volatile long lastReturnedAt;
+        private volatile Throwable borrowSite;
+        private volatile boolean leakReported;
+
+        PooledConnection(Connection physical) {
+            this.physical = physical;
+        }
+
+        /** Each borrow gets its own handle so a stale reference cannot close someone else's borrow. */
+        Connection newHandle() {
+            leakReported = false;
+            Handle handle = new Handle(this);
+            handle.proxy = (Connection) Proxy.newProxyInstance(
+                    ConnectionPool.class.getClassLoader(),
+                    new Class<?>[]{Connection.class},
+                    handle);
+            return handle.proxy;
+        }
+    }
+
+    private final class Handle implements InvocationHandler {
+        private final PooledConnection pooled;
+        // Cached statements checked out through this handle and not closed yet
+        private final List<StatementHandle> openStatements = new ArrayList<>();
+        private Connection proxy;
+        private boolean closed;
+
+        Handle(PooledConnection pooled) {
+            this.pooled = pooled;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (!closed) {
+                        // Statements the caller left open go back to the cache with the connection
+                        for (StatementHandle statement : new ArrayList<>(openStatements)) {
+                            statement.giveBack();
+                        }
+                        closed = true;
+                        release(pooled);
+                    }
+                    return null;
+                case "isClosed":
+                    return closed || pooled.physical.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "PooledConnection[" + pooled.physical + (closed ? ", returned" : "") + "]";
+                case "prepareStatement":
+                    if (args.length == 1 && STATEMENT_CACHE_SIZE > 0 && !closed) {
+                        return pooled.statements.checkOut(this, (String) args[0]);
+                    }
+                    return delegate(method, args);
+                default:
+                    return delegate(method, args);
+            }
+        }
+
+        private Object delegate(Method method, Object[] args) throws Throwable {
+            if (closed) {
+                throw new SQLException("Connection has already been returned to the pool.");
+            }
+            try {
+                Object result = method.invoke(pooled.physical, args);
+                if (result instanceof Statement && QUERY_TIMEOUT_SECONDS > 0) {
+                    ((Statement) result).setQueryTimeout(QUERY_TIMEOUT_SECONDS);
+                }
+                return result;
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+
+    // --- Prepared statement cache, one per physical connection ---
+
+    /**
+     * Open prepared statements of one physical connection, least recently used first. Only one
+     * borrower uses a connection at a time; the lock only guards against a racing eviction.
+     */
+    private final class StatementCache {
+        private final Map<String, CachedStatement> entries = new LinkedHashMap<String, CachedStatement>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedStatement> eldest) {
+                if (size() <= STATEMENT_CACHE_SIZE) {
+                    return false;
+                }
+                CachedStatement evicted = eldest.getValue();
+                evicted.evicted = true;
+                if (!evicted.inUse) {
+                    closeQuietly(evicted.statement);
+                }
+                return true;
+            }
+        };
+
+        /**
+         * The cached statement for {@code sql}, prepared now if there is none. If it is already
+         * checked out (the same SQL twice on one connection), an uncached statement is returned.
+         */
+        synchronized PreparedStatement checkOut(Handle handle, String sql) throws SQLException {
+            CachedStatement cached = entries.get(sql);
+            if (cached != null && !cached.inUse && cached.statement.isClosed()) {
+                entries.remove(sql); // Closed by the driver, e.g. after a connection error
+                cached = null;
+            }
+            if (cached != null && cached.inUse) {
+                statementMisses.increment();
+                return prepare(handle.pooled.physical, sql);
+            }
+            if (cached == null) {
+                statementMisses.increment();
+                cached = new CachedStatement(sql, prepare(handle.pooled.physical, sql));
+                entries.put(sql, cached);
+            } else {
+                statementHits.increment();
+            }
+            cached.inUse = true;
+            StatementHandle statement = new StatementHandle(this, cached, handle);
+            handle.openStatements.add(statement);
+            statement.proxy = (PreparedStatement) Proxy.newProxyInstance(
+                    ConnectionPool.class.getClassLoader(),
+                    new Class<?>[]{PreparedStatement.class},
+                    statement);
+            return statement.proxy;
+        }
+
+        /** Takes a statement back, reset for its next user; evicted or broken ones are closed instead. */
+        synchronized void checkIn(CachedStatement cached) {
+            cached.inUse = false;
+            if (cached.evicted) {
+                closeQuietly(cached.statement);
+                return;
+            }
+            try {
+                cached.statement.clearParameters();
+                cached.statement.clearBatch();
+            } catch (SQLException e) {
+                entries.remove(cached.sql);
+                closeQuietly(cached.statement);
+            }
+        }
+
+        private PreparedStatement prepare(Connection physical, String sql) throws SQLException {
+            PreparedStatement statement = physical.prepareStatement(sql);
+            if (QUERY_TIMEOUT_SECONDS > 0) {
+                statement.setQueryTimeout(QUERY_TIMEOUT_SECONDS);
+            }
+            return statement;
+        }
+    }
+
+    private static final class CachedStatement {
+        private final String sql;
+        private final PreparedStatement statement;
+        private boolean inUse;
+        private boolean evicted;
+
+        CachedStatement(String sql, PreparedStatement statement) {
+            this.sql = sql;
+            this.statement = statement;
+        }
+    }
+
+    /** One checkout of a cached statement: closing it returns the statement to the cache instead of closing it. */
+    private static final class StatementHandle implements InvocationHandler {
+        private final StatementCache cache;
+        private final CachedStatement cached;
+        private final Handle connection;
+        private PreparedStatement proxy;
+        private boolean closed;
+
+        StatementHandle(StatementCache cache, CachedStatement cached, Handle connection) {
+            this.cache = cache;
+            this.cached = cached;
+            this.connection = connection;
+        }
+
+        void giveBack() {
+            if (!closed) {
+                closed = true;
+                connection.openStatements.remove(this);
+                cache.checkIn(cached);
+            }
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    giveBack();
+                    return null;
+                case "isClosed":
+                    return closed || cached.statement.isClosed();
+                case "getConnection":
+                    return connection.proxy; // Never the physical connection, which must not be closed by callers
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "CachedStatement[" + cached.sql + (closed ? ", returned" : "") + "]";
+                default:
+                    if (closed) {
+                        throw new SQLException("Statement has already been closed.");
+                    }
+                    try {
+                        return method.invoke(cached.statement, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+            }
+        }
+    }
+
+    private static void closeQuietly(Statement statement) {
+        try {
+            statement.close();
+        } catch (SQLException ignored) {}
+    }
+}
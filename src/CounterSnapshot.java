@@ -0,0 +1,247 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Read-only, memory-mapped copy of every user's attendance counters in a columnar layout, for
+ * institution-wide reports that would otherwise scan {@code timetable} row by row over JDBC.
+ *
+ * <pre>
+ * header (64 bytes):  magic, version, createdAt, rows, sapids, subjects, offsets of the sections
+ * sapid dictionary:   length-prefixed UTF-8 strings, code = position
+ * subject dictionary: the same
+ * columns:            int[rows] each - sapid code, subject code, attended, taken, target
+ * </pre>
+ * All numbers are little-endian and the columns are 4-byte aligned, so each one is read as an
+ * {@link IntBuffer} straight over the mapped file. SAP IDs and subject names are stored once in
+ * their dictionary and referred to by code, so a row costs 20 bytes however long the names are.
+ * Rows are grouped by SAP ID.
+ *
+ * Files are built with a {@link Writer} and replaced atomically, so a reader never sees a
+ * half-written snapshot. An open snapshot keeps reading the file it mapped.
+ */
+public final class CounterSnapshot {
+
+    private static final int MAGIC = 0x4143534E; // "ACSN"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 64;
+    private static final int COLUMNS = 5;
+
+    private final Path file;
+    private final long createdAt;
+    private final int rows;
+    private final String[] sapids;
+    private final String[] subjects;
+    private final IntBuffer sapidColumn;
+    private final IntBuffer subjectColumn;
+    private final IntBuffer attendedColumn;
+    private final IntBuffer takenColumn;
+    private final IntBuffer targetColumn;
+
+    private CounterSnapshot(Path file, ByteBuffer data) throws IOException {
+        this.file = file;
+        if (data.capacity() < HEADER_SIZE || data.getInt(0) != MAGIC) {
+            throw new IOException(file + " is not a counter snapshot");
+        }
+        if (data.getInt(4) != VERSION) {
+            throw new IOException(file + " has unsupported snapshot version " + data.getInt(4));
+        }
+        this.createdAt = data.getLong(8);
+        this.rows = data.getInt(16);
+        this.sapids = readDictionary(data, (int) data.getLong(32), data.getInt(20));
+        this.subjects = readDictionary(data, (int) data.getLong(40), data.getInt(24));
+        int columns = (int) data.getLong(48);
+        if ((long) columns + (long) COLUMNS * rows * 4 > data.capacity()) {
+            throw new IOException(file + " is truncated");
+        }
+        this.sapidColumn = column(data, columns, 0);
+        this.subjectColumn = column(data, columns, 1);
+        this.attendedColumn = column(data, columns, 2);
+        this.takenColumn = column(data, columns, 3);
+        this.targetColumn = column(data, columns, 4);
+    }
+
+    /** Maps a snapshot file. Only the dictionaries are copied to the heap. */
+    public static CounterSnapshot open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            data.order(ByteOrder.LITTLE_ENDIAN);
+            return new CounterSnapshot(file, data); // The mapping outlives the channel
+        }
+    }
+
+    private IntBuffer column(ByteBuffer data, int columnsOffset, int index) {
+        ByteBuffer slice = data.duplicate();
+        slice.position(columnsOffset + index * rows * 4);
+        slice.limit(columnsOffset + (index + 1) * rows * 4);
+        return slice.slice().order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+    }
+
+    private static String[] readDictionary(ByteBuffer data, int offset, int count) {
+        ByteBuffer in = data.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        in.position(offset);
+        String[] values = new String[count];
+        for (int i = 0; i < count; i++) {
+            byte[] bytes = new byte[in.getInt()];
+            in.get(bytes);
+            values[i] = new String(bytes, StandardCharsets.UTF_8);
+        }
+        return values;
+    }
+
+    // --- Access ---
+
+    public Path getFile() { return file; }
+
+    /** When the counters were read from the repository (epoch millis). */
+    public long getCreatedAt() { return createdAt; }
+
+    public int getRowCount() { return rows; }
+
+    /** SAP ID dictionary: {@code getSapids()[sapidCode(row)]} is the row's SAP ID. */
+    public String[] getSapids() { return sapids.clone(); }
+
+    /** Subject dictionary: {@code getSubjects()[subjectCode(row)]} is the row's subject. */
+    public String[] getSubjects() { return subjects.clone(); }
+
+    public int getSapidCount() { return sapids.length; }
+    public int getSubjectCount() { return subjects.length; }
+
+    public int sapidCode(int row) { return sapidColumn.get(row); }
+    public int subjectCode(int row) { return subjectColumn.get(row); }
+    public int attended(int row) { return attendedColumn.get(row); }
+    public int taken(int row) { return takenColumn.get(row); }
+    public int target(int row) { return targetColumn.get(row); }
+
+    public String sapid(int row) { return sapids[sapidColumn.get(row)]; }
+    public String subject(int row) { return subjects[subjectColumn.get(row)]; }
+
+    @Override
+    public String toString() {
+        return "CounterSnapshot[" + file + ", rows=" + rows + ", sapids=" + sapids.length + ", subjects=" + subjects.length + "]";
+    }
+
+    // --- Writing ---
+
+    /** Accumulates rows in primitive columns, then writes them as a snapshot file. */
+    public static final class Writer {
+        private final Map<String, Integer> sapidCodes = new HashMap<>();
+        private final Map<String, Integer> subjectCodes = new HashMap<>();
+        private final List<String> sapidValues = new ArrayList<>();
+        private final List<String> subjectValues = new ArrayList<>();
+        private int[][] columns = new int[COLUMNS][1024];
+        private int rows;
+
+        public void add(String sapid, SubjectStats stats) {
+            if (rows == columns[0].length) {
+                for (int c = 0; c < COLUMNS; c++) {
+                    columns[c] = Arrays.copyOf(columns[c], rows * 2);
+                }
+            }
+            columns[0][rows] = code(sapidCodes, sapidValues, sapid);
+            columns[1][rows] = code(subjectCodes, subjectValues, stats.getSubject());
+            columns[2][rows] = stats.getAttended();
+            columns[3][rows] = stats.getTaken();
+            columns[4][rows] = stats.getTarget();
+            rows++;
+        }
+
+        public int getRowCount() {
+            return rows;
+        }
+
+        private static int code(Map<String, Integer> codes, List<String> values, String value) {
+            Integer code = codes.get(value);
+            if (code == null) {
+                code = values.size();
+                codes.put(value, code);
+                values.add(value);
+            }
+            return code;
+        }
+
+        /** Writes the snapshot to a temporary file next to {@code file}, then moves it into place. */
+        public void writeTo(Path file) throws IOException {
+            byte[][] sapidBytes = encode(sapidValues);
+            byte[][] subjectBytes = encode(subjectValues);
+            long sapidOffset = HEADER_SIZE;
+            long subjectOffset = sapidOffset + size(sapidBytes);
+            long columnsOffset = align4(subjectOffset + size(subjectBytes));
+            long total = columnsOffset + (long) COLUMNS * rows * 4;
+            if (total > Integer.MAX_VALUE) {
+                throw new IOException("Snapshot of " + rows + " rows exceeds 2 GB");
+            }
+
+            Path dir = file.toAbsolutePath().getParent();
+            if (dir != null) {
+                Files.createDirectories(dir);
+            }
+            Path temp = Files.createTempFile(dir, file.getFileName().toString(), ".tmp");
+            try {
+                try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                    MappedByteBuffer out = channel.map(FileChannel.MapMode.READ_WRITE, 0, total);
+                    out.order(ByteOrder.LITTLE_ENDIAN);
+                    out.putInt(MAGIC).putInt(VERSION).putLong(System.currentTimeMillis())
+                       .putInt(rows).putInt(sapidBytes.length).putInt(subjectBytes.length).putInt(0)
+                       .putLong(sapidOffset).putLong(subjectOffset).putLong(columnsOffset);
+                    out.position((int) sapidOffset);
+                    putDictionary(out, sapidBytes);
+                    putDictionary(out, subjectBytes);
+                    out.position((int) columnsOffset);
+                    IntBuffer ints = out.asIntBuffer();
+                    for (int c = 0; c < COLUMNS; c++) {
+                        ints.put(columns[c], 0, rows);
+                    }
+                    out.force();
+                }
+                try {
+                    Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                } catch (AtomicMoveNotSupportedException e) {
+                    Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+                }
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+        }
+
+        private static byte[][] encode(List<String> values) {
+            byte[][] bytes = new byte[values.size()][];
+            for (int i = 0; i < bytes.length; i++) {
+                bytes[i] = values.get(i).getBytes(StandardCharsets.UTF_8);
+            }
+            return bytes;
+        }
+
+        private static long size(byte[][] dictionary) {
+            long size = 0;
+            for (byte[] value : dictionary) {
+                size += 4 + value.length;
+            }
+            return size;
+        }
+
+        private static void putDictionary(ByteBuffer out, byte[][] dictionary) {
+            for (byte[] value : dictionary) {
+                out.putInt(value.length).put(value);
+            }
+        }
+
+        private static long align4(long offset) {
+            return (offset + 3) & ~3L;
+        }
+    }
+}
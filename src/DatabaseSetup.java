@@ -1,215 +1,358 @@
 import java.sql.Connection;
-import java.sql.DatabaseMetaData;
-import java.sql.DriverManager;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.Arrays;
+import java.util.List;
 
 public class DatabaseSetup {
 
     // --- !!! IMPORTANT CONFIGURATION - USER MAY NEED TO CHANGE THESE !!! ---
-    // Database Connection Details for LOCAL Oracle instance
+    // Database Connection Details for LOCAL Oracle instance now live in ConnectionPool
     // Common URL format: jdbc:oracle:thin:@<hostname>:<port>:<SID_or_ServiceName>
     // For Oracle XE, SID is often 'XE' or 'XEPDB1' (for pluggable DBs)
     // For other versions, it might be 'ORCL' or similar.
-    private static final String DB_URL = "jdbc:oracle:thin:@localhost:1521:XE"; // Adjust SID (XE/XEPDB1/ORCL...) if needed
-    private static final String DB_USER = "system"; // Common admin user
-    private static final String DB_PASSWORD = "123"; // !! CHANGE THIS to your local system password !!
-
-    // Names of the tables to check/create (Oracle stores them typically in UPPERCASE)
-    private static final String USERS_TABLE = "USERS";
-    private static final String TIMETABLE_TABLE = "TIMETABLE";
-
-    // SQL Script for creating tables
-    // NOTE: Removed DROP statements to avoid accidental data loss.
-    //       The logic now checks if tables exist first.
-    private static final String SETUP_SQL =
-            // -----------------------------------------------------
-            // Table: users
-            // Stores user login credentials and status
-            // -----------------------------------------------------
-            "CREATE TABLE users ( " +
-            "  sapid VARCHAR2(20) NOT NULL, " +
-            "  name VARCHAR2(100) NOT NULL, " +
-            "  password VARCHAR2(100) NOT NULL, " + // STORE HASHED VALUE IN REAL APP!
-            "  subjects_added NUMBER(1) DEFAULT 0 NOT NULL " +
-            ")"
-            + ";" + // Statement separator
-            // Add Primary Key constraint for users table
-            "ALTER TABLE users ADD CONSTRAINT pk_users PRIMARY KEY (sapid)"
-            + ";" +
-            // Add Check constraint for the flag
-            "ALTER TABLE users ADD CONSTRAINT chk_subjects_added CHECK (subjects_added IN (0, 1))"
-            + ";" +
-            "COMMENT ON TABLE users IS 'Stores user login credentials and status flag for subject registration.'"
-            + ";" +
-            "COMMENT ON COLUMN users.sapid IS 'User''s unique SAP ID (Primary Key)'"
-            + ";" +
-            "COMMENT ON COLUMN users.password IS 'User''s password - SHOULD BE HASHED!'"
-            + ";" +
-            "COMMENT ON COLUMN users.subjects_added IS 'Flag indicating if user has added subjects (0=No, 1=Yes)'"
-            + ";" +
-            // -----------------------------------------------------
-            // Table: timetable
-            // Stores subjects registered by a user and their attendance details
-            // -----------------------------------------------------
-            "CREATE TABLE timetable ( " +
-            "  sapid VARCHAR2(20) NOT NULL, " +
-            "  subjects VARCHAR2(100) NOT NULL, " +
-            "  target_total_lectures NUMBER DEFAULT 0 NOT NULL, " +
-            "  attended_count NUMBER DEFAULT 0 NOT NULL, " +
-            "  lectures_taken_so_far NUMBER DEFAULT 0 NOT NULL " +
-            ")"
-            + ";" +
-            // Add Composite Primary Key constraint for timetable table
-            "ALTER TABLE timetable ADD CONSTRAINT pk_timetable PRIMARY KEY (sapid, subjects)"
-            + ";" +
-            // Add Foreign Key constraint linking timetable to users
-            "ALTER TABLE timetable ADD CONSTRAINT fk_timetable_user " +
-            "  FOREIGN KEY (sapid) " +
-            "  REFERENCES users(sapid) " +
-            "  ON DELETE CASCADE" // If a user is deleted, their timetable entries are also deleted
-            + ";" +
-            "COMMENT ON TABLE timetable IS 'Stores subjects registered by users and their attendance tracking data.'"
-            + ";" +
-            "COMMENT ON COLUMN timetable.sapid IS 'Foreign Key referencing the user''s SAP ID'"
-            + ";" +
-            "COMMENT ON COLUMN timetable.subjects IS 'Name of the subject registered by the user'"
-            + ";" +
-            "COMMENT ON COLUMN timetable.target_total_lectures IS 'Total number of lectures planned for the subject'"
-            + ";" +
-            "COMMENT ON COLUMN timetable.attended_count IS 'Number of lectures marked as attended by the user'"
-            + ";" +
-            "COMMENT ON COLUMN timetable.lectures_taken_so_far IS 'Number of lectures where attendance (P/A) was recorded'"
-            + ";" +
-            // Commit the changes
-            "COMMIT"; // Explicit COMMIT
+    private static final String DB_URL = ConnectionPool.DB_URL;
+    private static final String DB_USER = ConnectionPool.DB_USERNAME;
+
+    private static final Log LOG = Log.get(DatabaseSetup.class);
+
+    // The migrations below are written for Oracle; the embedded backend runs them through its dialect
+    private static final SqlDialect DIALECT = AttendanceRepositories.dialect();
+
+    // Schema history, oldest first. Applied migrations are checksummed:
+    // NEVER edit one that has been released - add a new migration instead.
+    // NOTE: No DROP statements, to avoid accidental data loss. Tables a migration sets aside are
+    // dropped only on request, after the copy was checked (see dropV3Tables).
+    static final List<SchemaMigrator.Migration> MIGRATIONS = Arrays.asList(
+
+            // -----------------------------------------------------
+            // V1 - Tables: users, timetable
+            // Baseline: installs from before versioning already have these
+            // -----------------------------------------------------
+            SchemaMigrator.Migration.baseline(1, "Users and timetable tables",
+                    // Stores user login credentials and status
+                    "CREATE TABLE users ( " +
+                    "  sapid VARCHAR2(20) NOT NULL, " +
+                    "  name VARCHAR2(100) NOT NULL, " +
+                    "  password VARCHAR2(100) NOT NULL, " + // Widened for salted hashes in V3
+                    "  subjects_added NUMBER(1) DEFAULT 0 NOT NULL " +
+                    ")",
+                    // Add Primary Key constraint for users table
+                    "ALTER TABLE users ADD CONSTRAINT pk_users PRIMARY KEY (sapid)",
+                    // Add Check constraint for the flag
+                    "ALTER TABLE users ADD CONSTRAINT chk_subjects_added CHECK (subjects_added IN (0, 1))",
+                    "COMMENT ON TABLE users IS 'Stores user login credentials and status flag for subject registration.'",
+                    "COMMENT ON COLUMN users.sapid IS 'User''s unique SAP ID (Primary Key)'",
+                    "COMMENT ON COLUMN users.password IS 'User''s password - SHOULD BE HASHED!'",
+                    "COMMENT ON COLUMN users.subjects_added IS 'Flag indicating if user has added subjects (0=No, 1=Yes)'",
+                    // Stores subjects registered by a user and their attendance details
+                    "CREATE TABLE timetable ( " +
+                    "  sapid VARCHAR2(20) NOT NULL, " +
+                    "  subjects VARCHAR2(100) NOT NULL, " +
+                    "  target_total_lectures NUMBER DEFAULT 0 NOT NULL, " +
+                    "  attended_count NUMBER DEFAULT 0 NOT NULL, " +
+                    "  lectures_taken_so_far NUMBER DEFAULT 0 NOT NULL " +
+                    ")",
+                    // Add Composite Primary Key constraint for timetable table
+                    "ALTER TABLE timetable ADD CONSTRAINT pk_timetable PRIMARY KEY (sapid, subjects)",
+                    // Add Foreign Key constraint linking timetable to users
+                    "ALTER TABLE timetable ADD CONSTRAINT fk_timetable_user " +
+                    "  FOREIGN KEY (sapid) " +
+                    "  REFERENCES users(sapid) " +
+                    "  ON DELETE CASCADE", // If a user is deleted, their timetable entries are also deleted
+                    "COMMENT ON TABLE timetable IS 'Stores subjects registered by users and their attendance tracking data.'",
+                    "COMMENT ON COLUMN timetable.sapid IS 'Foreign Key referencing the user''s SAP ID'",
+                    "COMMENT ON COLUMN timetable.subjects IS 'Name of the subject registered by the user'",
+                    "COMMENT ON COLUMN timetable.target_total_lectures IS 'Total number of lectures planned for the subject'",
+                    "COMMENT ON COLUMN timetable.attended_count IS 'Number of lectures marked as attended by the user'",
+                    "COMMENT ON COLUMN timetable.lectures_taken_so_far IS 'Number of lectures where attendance (P/A) was recorded'"),
+
+            // -----------------------------------------------------
+            // V2 - Table: attendance_event
+            // Append-only log, one row per subject marked in a session
+            // Baseline: installs from before versioning may already have it
+            // -----------------------------------------------------
+            SchemaMigrator.Migration.baseline(2, "Attendance event log",
+                    // Watermark of the attendance_event rows already folded into the timetable counters
+                    "ALTER TABLE timetable ADD last_event_id NUMBER DEFAULT 0 NOT NULL",
+                    "COMMENT ON COLUMN timetable.last_event_id IS 'Highest attendance_event.event_id folded into the counters'",
+                    "CREATE SEQUENCE attendance_event_seq CACHE 100",
+                    "CREATE TABLE attendance_event ( " +
+                    "  event_id NUMBER NOT NULL, " +
+                    "  sapid VARCHAR2(20) NOT NULL, " +
+                    "  subjects VARCHAR2(100) NOT NULL, " +
+                    "  session_id VARCHAR2(40) NOT NULL, " +
+                    "  present NUMBER(1) NOT NULL, " +
+                    "  recorded_at TIMESTAMP DEFAULT SYSTIMESTAMP NOT NULL " +
+                    ")",
+                    "ALTER TABLE attendance_event ADD CONSTRAINT pk_attendance_event PRIMARY KEY (event_id)",
+                    "ALTER TABLE attendance_event ADD CONSTRAINT uq_attendance_event_session UNIQUE (sapid, subjects, session_id)",
+                    "ALTER TABLE attendance_event ADD CONSTRAINT chk_attendance_event_present CHECK (present IN (0, 1))",
+                    // Removing a subject from the timetable removes its history too
+                    "ALTER TABLE attendance_event ADD CONSTRAINT fk_attendance_event_timetable " +
+                    "  FOREIGN KEY (sapid, subjects) " +
+                    "  REFERENCES timetable(sapid, subjects) " +
+                    "  ON DELETE CASCADE",
+                    "COMMENT ON TABLE attendance_event IS 'Append-only log of attendance marks, the timetable counters are an aggregate of it.'",
+                    "COMMENT ON COLUMN attendance_event.session_id IS 'Client-generated id of the session the mark was saved in'"),
+
+            // -----------------------------------------------------
+            // V3 - Salted password hashes
+            // Existing plaintext rows are re-hashed at each user's next login (see PasswordHasher)
+            // -----------------------------------------------------
+            SchemaMigrator.Migration.of(3, "Password hashes",
+                    "ALTER TABLE users MODIFY (password VARCHAR2(255))",
+                    "COMMENT ON COLUMN users.password IS 'PBKDF2 hash: pbkdf2_sha256$iterations$salt$hash (plaintext only on rows not yet upgraded)'"),
+
+            // -----------------------------------------------------
+            // V4 - Numeric keys: users.user_id, subject catalog
+            // timetable and attendance_event are rebuilt keyed by (user_id, subject_id) instead of
+            // repeating the SAP ID and full subject name in every row and index entry.
+            // The string-keyed tables are renamed to *_v3 for the copy and kept as a backup; drop them
+            // with "java DatabaseSetup --drop-v3-tables" once the copy is verified.
+            // -----------------------------------------------------
+            SchemaMigrator.Migration.of(4, "Numeric keys for users and subjects",
+                    "CREATE SEQUENCE users_seq",
+                    "ALTER TABLE users ADD user_id NUMBER(10)",
+                    "UPDATE users SET user_id = users_seq.NEXTVAL",
+                    "ALTER TABLE users MODIFY (user_id NOT NULL)",
+                    "ALTER TABLE users ADD CONSTRAINT uq_users_user_id UNIQUE (user_id)",
+                    "COMMENT ON COLUMN users.user_id IS 'Numeric key of the user, referenced by timetable and attendance_event'",
+                    // Each subject name is stored once
+                    "CREATE SEQUENCE subject_seq",
+                    "CREATE TABLE subject ( " +
+                    "  subject_id NUMBER(10) NOT NULL, " +
+                    "  name VARCHAR2(100) NOT NULL " +
+                    ")",
+                    "ALTER TABLE subject ADD CONSTRAINT pk_subject PRIMARY KEY (subject_id)",
+                    "ALTER TABLE subject ADD CONSTRAINT uq_subject_name UNIQUE (name)",
+                    "COMMENT ON TABLE subject IS 'Catalog of subject names, referenced by id from timetable and attendance_event.'",
+                    "ALTER TABLE attendance_event RENAME TO attendance_event_v3",
+                    "ALTER TABLE timetable RENAME TO timetable_v3",
+                    "INSERT INTO subject (subject_id, name) " +
+                    "SELECT subject_seq.NEXTVAL, subjects FROM (SELECT DISTINCT subjects FROM timetable_v3)",
+                    "CREATE TABLE timetable ( " +
+                    "  user_id NUMBER(10) NOT NULL, " +
+                    "  subject_id NUMBER(10) NOT NULL, " +
+                    "  target_total_lectures NUMBER DEFAULT 0 NOT NULL, " +
+                    "  attended_count NUMBER DEFAULT 0 NOT NULL, " +
+                    "  lectures_taken_so_far NUMBER DEFAULT 0 NOT NULL, " +
+                    "  last_event_id NUMBER DEFAULT 0 NOT NULL " +
+                    ")",
+                    // Constraint names differ from V1's, which stay with timetable_v3
+                    "ALTER TABLE timetable ADD CONSTRAINT pk_timetable_user_subject PRIMARY KEY (user_id, subject_id)",
+                    "ALTER TABLE timetable ADD CONSTRAINT fk_timetable_user_id " +
+                    "  FOREIGN KEY (user_id) " +
+                    "  REFERENCES users(user_id) " +
+                    "  ON DELETE CASCADE",
+                    "ALTER TABLE timetable ADD CONSTRAINT fk_timetable_subject " +
+                    "  FOREIGN KEY (subject_id) " +
+                    "  REFERENCES subject(subject_id)",
+                    "COMMENT ON TABLE timetable IS 'Subjects registered by users and their attendance counters, keyed by user and subject id.'",
+                    "COMMENT ON COLUMN timetable.last_event_id IS 'Highest attendance_event.event_id folded into the counters'",
+                    "INSERT INTO timetable (user_id, subject_id, target_total_lectures, attended_count, lectures_taken_so_far, last_event_id) " +
+                    "SELECT u.user_id, s.subject_id, t.target_total_lectures, t.attended_count, t.lectures_taken_so_far, t.last_event_id " +
+                    "FROM timetable_v3 t JOIN users u ON u.sapid = t.sapid JOIN subject s ON s.name = t.subjects",
+                    "CREATE TABLE attendance_event ( " +
+                    "  event_id NUMBER NOT NULL, " +
+                    "  user_id NUMBER(10) NOT NULL, " +
+                    "  subject_id NUMBER(10) NOT NULL, " +
+                    "  session_id VARCHAR2(40) NOT NULL, " +
+                    "  present NUMBER(1) NOT NULL, " +
+                    "  recorded_at TIMESTAMP DEFAULT SYSTIMESTAMP NOT NULL " +
+                    ")",
+                    "ALTER TABLE attendance_event ADD CONSTRAINT pk_attendance_event_id PRIMARY KEY (event_id)",
+                    // Also serves the fold: its (user_id, subject_id) prefix finds a row's events
+                    "ALTER TABLE attendance_event ADD CONSTRAINT uq_attendance_event_mark UNIQUE (user_id, subject_id, session_id)",
+                    "ALTER TABLE attendance_event ADD CONSTRAINT chk_attendance_event_mark CHECK (present IN (0, 1))",
+                    "ALTER TABLE attendance_event ADD CONSTRAINT fk_attendance_event_row " +
+                    "  FOREIGN KEY (user_id, subject_id) " +
+                    "  REFERENCES timetable(user_id, subject_id) " +
+                    "  ON DELETE CASCADE",
+                    "COMMENT ON TABLE attendance_event IS 'Append-only log of attendance marks, the timetable counters are an aggregate of it.'",
+                    "COMMENT ON COLUMN attendance_event.session_id IS 'Client-generated id of the session the mark was saved in'",
+                    "INSERT INTO attendance_event (event_id, user_id, subject_id, session_id, present, recorded_at) " +
+                    "SELECT e.event_id, u.user_id, s.subject_id, e.session_id, e.present, e.recorded_at " +
+                    "FROM attendance_event_v3 e JOIN users u ON u.sapid = e.sapid JOIN subject s ON s.name = e.subjects"),
+
+            // -----------------------------------------------------
+            // V5 - Table: session_ledger
+            // One row per saved session; its primary key makes a retried save fail before any mark is written
+            // -----------------------------------------------------
+            SchemaMigrator.Migration.of(5, "Session ledger",
+                    "CREATE TABLE session_ledger ( " +
+                    "  user_id NUMBER(10) NOT NULL, " +
+                    "  session_id VARCHAR2(40) NOT NULL, " +
+                    "  marks NUMBER(5) NOT NULL, " +
+                    "  recorded_at TIMESTAMP DEFAULT SYSTIMESTAMP NOT NULL " +
+                    ")",
+                    "ALTER TABLE session_ledger ADD CONSTRAINT pk_session_ledger PRIMARY KEY (user_id, session_id)",
+                    "ALTER TABLE session_ledger ADD CONSTRAINT fk_session_ledger_user " +
+                    "  FOREIGN KEY (user_id) " +
+                    "  REFERENCES users(user_id) " +
+                    "  ON DELETE CASCADE",
+                    "COMMENT ON TABLE session_ledger IS 'Attendance sessions saved per user, for rejecting repeated submissions.'",
+                    "COMMENT ON COLUMN session_ledger.marks IS 'Number of attendance_event rows the session wrote'",
+                    // Sessions saved before the ledger existed
+                    "INSERT INTO session_ledger (user_id, session_id, marks, recorded_at) " +
+                    "SELECT user_id, session_id, COUNT(*), MIN(recorded_at) FROM attendance_event GROUP BY user_id, session_id"),
+
+            // -----------------------------------------------------
+            // V6 - Weekly schedule: timetable.days_mask
+            // Existing subjects meet every day, as the application assumed so far
+            // -----------------------------------------------------
+            SchemaMigrator.Migration.of(6, "Weekly schedule",
+                    "ALTER TABLE timetable ADD days_mask NUMBER(3) DEFAULT 127 NOT NULL",
+                    "ALTER TABLE timetable ADD CONSTRAINT chk_timetable_days_mask CHECK (days_mask BETWEEN 1 AND 127)",
+                    "COMMENT ON COLUMN timetable.days_mask IS 'Weekdays the subject meets on: bit 0 = Monday ... bit 6 = Sunday'"),
+
+            // -----------------------------------------------------
+            // V7 - Lecture history: timetable.attendance_bits
+            // The logged events are taken back out of the counters and the watermark reset, so the next
+            // fold of each row replays its log into the bitmap; counters from before the log stay as they are
+            // -----------------------------------------------------
+            SchemaMigrator.Migration.of(7, "Lecture bitmaps",
+                    "ALTER TABLE timetable ADD attendance_bits BLOB",
+                    "COMMENT ON COLUMN timetable.attendance_bits IS 'One bit per folded lecture, oldest first: 4-byte bit count, then the bits (1 = present)'",
+                    "UPDATE timetable t SET " +
+                    "  attended_count = attended_count - (SELECT NVL(SUM(e.present), 0) FROM attendance_event e " +
+                    "    WHERE e.user_id = t.user_id AND e.subject_id = t.subject_id AND e.event_id <= t.last_event_id), " +
+                    "  lectures_taken_so_far = lectures_taken_so_far - (SELECT COUNT(*) FROM attendance_event e " +
+                    "    WHERE e.user_id = t.user_id AND e.subject_id = t.subject_id AND e.event_id <= t.last_event_id), " +
+                    "  last_event_id = 0 " +
+                    "WHERE last_event_id > 0"),
+
+            // -----------------------------------------------------
+            // V8 - Change sequence: users.change_seq
+            // Polled by other processes to notice their changes
+            // -----------------------------------------------------
+            SchemaMigrator.Migration.of(8, "Change sequence",
+                    "CREATE SEQUENCE users_change_seq",
+                    "ALTER TABLE users ADD change_seq NUMBER DEFAULT 0 NOT NULL",
+                    "COMMENT ON COLUMN users.change_seq IS 'users_change_seq value of the user''s last subject edit, reset or rebuild'"),
+
+            // -----------------------------------------------------
+            // V9 - Fold by session: session_ledger.folded
+            // Event ids come from a cached sequence and commit out of order, so a row's last_event_id cannot
+            // tell which events it holds. Sessions with every mark under its row's watermark are taken as folded;
+            // the rest are folded again, which also brings back marks an out-of-order commit had skipped
+            // -----------------------------------------------------
+            SchemaMigrator.Migration.of(9, "Fold by session",
+                    "ALTER TABLE session_ledger ADD folded NUMBER(1) DEFAULT 0 NOT NULL",
+                    "ALTER TABLE session_ledger ADD CONSTRAINT chk_session_ledger_folded CHECK (folded IN (0, 1))",
+                    "CREATE INDEX ix_session_ledger_unfolded ON session_ledger (folded, user_id)",
+                    "COMMENT ON COLUMN session_ledger.folded IS '1 once the session''s marks are in the timetable counters'",
+                    "COMMENT ON COLUMN timetable.last_event_id IS 'Highest attendance_event.event_id folded into the counters; session_ledger.folded says which are'",
+                    "UPDATE session_ledger l SET folded = 1 WHERE NOT EXISTS (SELECT 1 FROM attendance_event e " +
+                    "  JOIN timetable t ON t.user_id = e.user_id AND t.subject_id = e.subject_id " +
+                    "  WHERE e.user_id = l.user_id AND e.session_id = l.session_id AND e.event_id > t.last_event_id)")
+    );
+
+    // Set aside by V4; events first, they reference timetable_v3
+    private static final String[] V3_TABLES = {"attendance_event_v3", "timetable_v3"};
 
     /**
-     * Checks if the required database tables exist and creates them if they don't.
-     * MUST be called at the start of your application.
+     * Brings the database schema up to date, creating it on a fresh database.
+     * MUST be called at the start of your application. When the schema is current this costs
+     * a single indexed read of the schema_version table.
      *
-     * @return true if setup was successful or already done, false otherwise.
+     * @return true if the schema is current (or was migrated successfully), false otherwise.
      */
     public static boolean setupDatabaseIfNeeded() {
-        System.out.println("--- Database Setup Check ---");
+        LOG.info("Database schema check started", "url", DB_URL);
 
-        // 1. Load the Oracle JDBC driver
+        // 1. Load the JDBC driver (Oracle, or H2 for the embedded backend)
         try {
-            Class.forName("oracle.jdbc.driver.OracleDriver");
-            System.out.println("Oracle JDBC Driver loaded successfully.");
+            Class.forName(ConnectionPool.DB_DRIVER);
         } catch (ClassNotFoundException e) {
-            System.err.println("ERROR: Oracle JDBC Driver not found!");
-            System.err.println("Please ensure the Oracle JDBC driver JAR (e.g., ojdbc11.jar) is included in the classpath.");
-            e.printStackTrace();
+            LOG.error("JDBC driver not found. Please ensure the JDBC driver JAR (e.g., ojdbc11.jar, or h2.jar for the "
+                    + "embedded backend) is included in the classpath.", e, "driver", ConnectionPool.DB_DRIVER);
             return false;
         }
 
-        // 2. Check if tables already exist
-        boolean usersExists = false;
-        boolean timetableExists = false;
-
-        try (Connection conn = DriverManager.getConnection(DB_URL, DB_USER, DB_PASSWORD)) {
-            System.out.println("Connected to database: " + DB_URL);
-            DatabaseMetaData dbm = conn.getMetaData();
-
-            // Check for USERS table (use uppercase as Oracle typically stores it)
-            try (ResultSet tables = dbm.getTables(null, null, USERS_TABLE, new String[]{"TABLE"})) {
-                if (tables.next()) {
-                    usersExists = true;
-                    System.out.println("Table '" + USERS_TABLE + "' already exists.");
-                } else {
-                    System.out.println("Table '" + USERS_TABLE + "' not found.");
-                }
-            }
-
-            // Check for TIMETABLE table
-            try (ResultSet tables = dbm.getTables(null, null, TIMETABLE_TABLE, new String[]{"TABLE"})) {
-                if (tables.next()) {
-                    timetableExists = true;
-                    System.out.println("Table '" + TIMETABLE_TABLE + "' already exists.");
-                } else {
-                    System.out.println("Table '" + TIMETABLE_TABLE + "' not found.");
-                }
+        // 2. Check the schema version and apply pending migrations, on one connection
+        Metrics.Timer timer = Metrics.getInstance().timer("db.schemaCheck");
+        long start = System.nanoTime();
+        boolean ok = false;
+        try (Connection conn = ConnectionPool.getInstance().getConnection()) {
+            try {
+                new SchemaMigrator(DIALECT, MIGRATIONS).migrate(conn);
+                LOG.info("Database schema check finished");
+                ok = true;
+                return true;
+            } catch (SQLException e) {
+                LOG.error("Database schema check or migration failed", e,
+                        "sqlState", e.getSQLState(), "errorCode", e.getErrorCode());
+                return false;
             }
-
         } catch (SQLException e) {
-            System.err.println("ERROR: Failed to connect to the database or check table status.");
-            System.err.println("Please ensure:");
-            System.err.println("  1. Oracle Database (e.g., XE) is installed and running.");
-            System.err.println("  2. The Listener service is running (port 1521 by default).");
-            System.err.println("  3. The DB_URL, DB_USER, and DB_PASSWORD constants in DatabaseSetup.java are correct for your local setup.");
-            System.err.println("  URL: " + DB_URL + ", User: " + DB_USER);
-            System.err.println("SQLState: " + e.getSQLState());
-            System.err.println("Error Code: " + e.getErrorCode());
-            e.printStackTrace();
-            return false; // Cannot proceed if connection fails
+            LOG.error("Failed to connect to the database. Please ensure: 1. Oracle Database (e.g., XE) is installed and "
+                    + "running. 2. The Listener service is running (port 1521 by default). 3. The DB_URL, DB_USERNAME, "
+                    + "and DB_PASSWORD constants in ConnectionPool.java are correct for your local setup.", e,
+                    "url", DB_URL, "user", DB_USER, "sqlState", e.getSQLState(), "errorCode", e.getErrorCode());
+            return false;
+        } finally {
+            timer.record(start, ok);
         }
+    }
 
-        // 3. If tables DO NOT exist, run the setup script
-        if (!usersExists || !timetableExists) {
-            System.out.println("Required table(s) missing. Attempting database setup...");
-
-            // Use try-with-resources for Connection and Statement
-            try (Connection conn = DriverManager.getConnection(DB_URL, DB_USER, DB_PASSWORD);
-                 Statement stmt = conn.createStatement()) {
-
-                System.out.println("Connected to database for setup: " + DB_URL);
-
-                // Split the script into individual statements based on semicolon (;)
-                // This is a basic split, assumes no semicolons within strings/comments in the SQL
-                String[] sqlStatements = SETUP_SQL.split(";");
-
-                for (String sql : sqlStatements) {
-                    sql = sql.trim(); // Remove leading/trailing whitespace
-                    if (!sql.isEmpty()) {
-                        try {
-                            System.out.println("Executing SQL: " + sql.substring(0, Math.min(sql.length(), 80)) + (sql.length() > 80 ? "..." : "")); // Print truncated SQL
-                            stmt.execute(sql); // Use execute() for DDL and mixed statements
-                        } catch (SQLException e) {
-                            // Handle cases where a specific object might already exist (e.g., constraint)
-                            // ORA-00955: name is already used by an existing object
-                            // ORA-02260: table can have only one primary key
-                            // ORA-02264: name already used by an existing constraint
-                            // ORA-01442: column to be modified to NOT NULL is already NOT NULL (less likely here)
-                             if (e.getErrorCode() == 955 || e.getErrorCode() == 2260 || e.getErrorCode() == 2264 || e.getErrorCode() == 1442) {
-                                System.out.println("  -> Warning: Object likely already exists (Error code: " + e.getErrorCode() + "). Skipping this statement.");
-                             } else {
-                                 // Throw other errors
-                                throw e;
-                             }
-                        }
+    /**
+     * Drops the string-keyed tables V4 renamed aside when it copied them into the numeric-key
+     * tables. Never run by a migration: the copies are the only backup of an upgraded install, so
+     * this waits until someone has checked the new tables. Logs each table's row count first.
+     *
+     * @return number of tables dropped; tables already gone are skipped
+     */
+    public static int dropV3Tables() throws SQLException {
+        int dropped = 0;
+        try (Connection conn = ConnectionPool.getInstance().getConnection();
+             Statement stmt = conn.createStatement()) {
+            for (String table : V3_TABLES) {
+                long rows;
+                try (ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM " + table)) {
+                    rs.next();
+                    rows = rs.getLong(1);
+                } catch (SQLException e) {
+                    if (DIALECT.isMissingTable(e)) {
+                        LOG.info("V3 table already dropped", "table", table);
+                        continue;
                     }
+                    throw e;
                 }
-
-                System.out.println("Database setup script executed successfully.");
-                System.out.println("--- Database Setup Finished ---");
-                return true;
-
-            } catch (SQLException e) {
-                System.err.println("ERROR: Database setup failed during SQL execution!");
-                System.err.println("SQLState: " + e.getSQLState());
-                System.err.println("Error Code: " + e.getErrorCode());
-                e.printStackTrace();
-                System.out.println("--- Database Setup Failed ---");
-                return false;
+                stmt.execute("DROP TABLE " + table);
+                LOG.info("Dropped V3 table", "table", table, "rows", rows);
+                dropped++;
             }
-        } else {
-            System.out.println("Database tables already exist. No setup needed.");
-            System.out.println("--- Database Setup Finished ---");
-            return true;
         }
+        return dropped;
     }
 
-    // Optional: A simple main method to test the setup standalone
+    // Optional: A simple main method to test the setup standalone; --drop-v3-tables also drops V4's backup tables
     public static void main(String[] args) {
-        System.out.println("Running Database Setup Test...");
+        LOG.info("Running Database Setup Test...");
+        int baseline = Arrays.asList(args).indexOf("--baseline");
+        if (baseline >= 0) {
+            // A schema created by hand at that version: record its migrations instead of running them
+            try (Connection conn = ConnectionPool.getInstance().getConnection()) {
+                new SchemaMigrator(DIALECT, MIGRATIONS).baseline(conn, Integer.parseInt(args[baseline + 1]));
+            } catch (SQLException | RuntimeException e) {
+                LOG.error("Could not record the baseline; usage: DatabaseSetup --baseline <version>", e);
+                return;
+            }
+        }
         boolean setupOk = setupDatabaseIfNeeded();
         if (setupOk) {
-            System.out.println("Database setup check completed successfully.");
-            // You could add code here to verify connection again or test inserts/selects
+            LOG.info("Database setup check completed successfully.");
+            if (Arrays.asList(args).contains("--drop-v3-tables")) {
+                try {
+                    LOG.info("V3 tables dropped", "tables", dropV3Tables());
+                } catch (SQLException e) {
+                    LOG.error("Could not drop the V3 tables", e, "sqlState", e.getSQLState(), "errorCode", e.getErrorCode());
+                }
+            }
         } else {
-            System.err.println("Database setup check failed. Please review the errors above.");
+            LOG.error("Database setup check failed. Please review the errors above.");
         }
     }
 }
\ No newline at end of file
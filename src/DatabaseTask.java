@@ -0,0 +1,187 @@
+import java.awt.Component;
+import java.awt.Cursor;
+import java.awt.Window;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.swing.JComponent;
+import javax.swing.SwingUtilities;
+import javax.swing.SwingWorker;
+
+/**
+ * Runs a piece of storage work off the Swing event dispatch thread.
+ *
+ * The work runs against the {@link AttendanceService} over the configured backend on a
+ * bounded worker pool; the result (or error) is delivered back on the EDT. While the task runs the owner
+ * window shows a wait cursor and the given components are disabled. Tasks with the same key
+ * never run concurrently, so a double-click on "Save" does not queue a second write. For the
+ * database backends, query timeouts come from {@link ConnectionPool#QUERY_TIMEOUT_SECONDS}.
+ * Each completed task is timed, from submission to result, as the {@link Metrics} timer
+ * {@code ui.<key>} (the key up to its first ':', so "timetable-save:123" is {@code ui.timetable-save}).
+ */
+public final class DatabaseTask<T> extends SwingWorker<T, Void> {
+
+    /** Storage work executed on a background thread. */
+    public interface Work<T> {
+        T run(AttendanceService service) throws Exception;
+    }
+
+    /** Callback invoked on the EDT. */
+    public interface Callback<V> {
+        void accept(V value);
+    }
+
+    private static final Log LOG = Log.get(DatabaseTask.class);
+    private static final int WORKER_THREADS = Integer.getInteger("attendance.db.workerThreads", 4);
+    private static final int QUEUE_CAPACITY = 64;
+
+    private static final ThreadPoolExecutor EXECUTOR = new ThreadPoolExecutor(
+            WORKER_THREADS, WORKER_THREADS, 60L, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(QUEUE_CAPACITY),
+            new ThreadFactory() {
+                private final AtomicInteger count = new AtomicInteger();
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "db-worker-" + count.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+
+    static {
+        EXECUTOR.allowCoreThreadTimeOut(true);
+    }
+
+    private static final Set<String> IN_FLIGHT = ConcurrentHashMap.newKeySet();
+
+    // Task lifecycle, used to release the de-duplication key only once the work has really stopped
+    private static final int QUEUED = 0;
+    private static final int RUNNING = 1;
+    private static final int FINISHED = 2;
+
+    private final Component owner;
+    private final String key;
+    private final Work<T> work;
+    private final Callback<T> onSuccess;
+    private final Callback<Exception> onError;
+    private final JComponent[] busyComponents;
+    private final AtomicInteger phase = new AtomicInteger(QUEUED);
+    private final long submittedAt = System.nanoTime();
+
+    private DatabaseTask(Component owner, String key, Work<T> work,
+                         Callback<T> onSuccess, Callback<Exception> onError, JComponent[] busyComponents) {
+        this.owner = owner;
+        this.key = key;
+        this.work = work;
+        this.onSuccess = onSuccess;
+        this.onError = onError;
+        this.busyComponents = busyComponents;
+    }
+
+    /**
+     * Starts {@code work} in the background. Must be called on the EDT.
+     *
+     * @param owner          component whose window shows the wait cursor (may be null)
+     * @param key            de-duplication key; while a task with this key runs, new submissions are ignored
+     * @param work           work to run against the service
+     * @param onSuccess      receives the result on the EDT
+     * @param onError        receives the failure on the EDT (not called when the task is cancelled)
+     * @param busyComponents disabled while the task runs
+     * @return the running task, or null if a task with the same key is already running
+     */
+    public static <T> DatabaseTask<T> run(Component owner, String key, Work<T> work,
+                                          Callback<T> onSuccess, Callback<Exception> onError,
+                                          JComponent... busyComponents) {
+        if (!IN_FLIGHT.add(key)) {
+            LOG.debug("Ignoring duplicate request while the previous one is still running", "key", key);
+            return null;
+        }
+        DatabaseTask<T> task = new DatabaseTask<>(owner, key, work, onSuccess, onError, busyComponents);
+        task.setBusy(true);
+        try {
+            EXECUTOR.execute(task);
+        } catch (RejectedExecutionException e) {
+            task.setBusy(false);
+            IN_FLIGHT.remove(key);
+            onError.accept(new IllegalStateException("Too many database requests are queued. Please try again.", e));
+            return null;
+        }
+        return task;
+    }
+
+    /** True while a task with the given key is queued or running. */
+    public static boolean isRunning(String key) {
+        return IN_FLIGHT.contains(key);
+    }
+
+    @Override
+    protected T doInBackground() throws Exception {
+        if (!phase.compareAndSet(QUEUED, RUNNING)) {
+            return null; // Cancelled while still queued
+        }
+        try {
+            return work.run(AttendanceService.getInstance());
+        } finally {
+            phase.set(FINISHED);
+            // A cancelled task keeps its key until the statement has really finished
+            if (isCancelled()) IN_FLIGHT.remove(key);
+        }
+    }
+
+    @Override
+    protected void done() {
+        setBusy(false);
+        if (isCancelled()) {
+            // The result is discarded; a statement already sent still runs until it completes or times out
+            if (phase.compareAndSet(QUEUED, FINISHED) || phase.get() == FINISHED) {
+                IN_FLIGHT.remove(key);
+            }
+            LOG.info("Database task cancelled", "key", key);
+            return;
+        }
+        IN_FLIGHT.remove(key);
+        T result;
+        try {
+            result = get();
+        } catch (CancellationException e) {
+            return;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        } catch (ExecutionException e) {
+            timer().record(submittedAt, false);
+            Throwable cause = e.getCause();
+            LOG.error("Database task failed", cause, "key", key);
+            onError.accept(cause instanceof Exception ? (Exception) cause : e);
+            return;
+        }
+        timer().record(submittedAt, true);
+        onSuccess.accept(result);
+    }
+
+    private Metrics.Timer timer() {
+        int colon = key.indexOf(':');
+        return Metrics.getInstance().timer("ui." + (colon < 0 ? key : key.substring(0, colon)));
+    }
+
+    private void setBusy(boolean busy) {
+        for (JComponent c : busyComponents) {
+            if (c != null) c.setEnabled(!busy);
+        }
+        Window window = owner == null ? null : SwingUtilities.getWindowAncestor(owner);
+        if (window == null && owner instanceof Window) {
+            window = (Window) owner;
+        }
+        if (window != null) {
+            window.setCursor(busy ? Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR) : Cursor.getDefaultCursor());
+        }
+    }
+}
@@ -0,0 +1,222 @@
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
+
+/**
+ * {@link AttendanceRepository} kept entirely in memory, for demos, benchmarks and running the
+ * UI without a database. Nothing survives a restart.
+ *
+ * Lock-free: accounts live in a {@link ConcurrentHashMap}, each user's subjects in a
+ * {@link ConcurrentSkipListMap} (which also keeps them sorted by name), and each subject's
+ * counters in an {@link AtomicReference} to an immutable {@link SubjectStats} that is swapped
+ * with compare-and-set, so concurrent sessions for the same user only meet on the brief check
+ * of the user's recent session ids.
+ * Errors mirror the database ones (Oracle error codes) so callers handle them the same way.
+ *
+ * There is no session ledger: a user's last {@code -Dattendance.memory.recentSessions} session
+ * ids (4096) are remembered to reject a repeated save, and an older one would be counted again.
+ */
+public class InMemoryAttendanceRepository implements AttendanceRepository {
+
+    // Session ids remembered per user, oldest forgotten first
+    private static final int RECENT_SESSIONS = Integer.getInteger("attendance.memory.recentSessions", 4096);
+
+    private final ConcurrentMap<String, Account> accounts = new ConcurrentHashMap<>();
+    private final AtomicInteger nextUserId = new AtomicInteger(); // Like users_seq
+    private final PasswordService passwords;
+
+    public InMemoryAttendanceRepository() {
+        this(PasswordService.getInstance());
+    }
+
+    public InMemoryAttendanceRepository(PasswordService passwords) {
+        this.passwords = passwords;
+    }
+
+    // --- Accounts ---
+
+    @Override
+    public UserAccount authenticate(String sapid, String password) {
+        Account account = accounts.get(sapid);
+        if (account == null) {
+            passwords.verifyUnknownUser(password); // As slow as a wrong password
+            return null;
+        }
+        String stored = account.password;
+        if (!passwords.verify(password, stored)) {
+            return null;
+        }
+        if (passwords.needsRehash(stored)) {
+            account.password = passwords.hash(password);
+        }
+        return new UserAccount(account.id, sapid, account.name, account.subjectsAdded.get());
+    }
+
+    @Override
+    public boolean register(String sapid, String name, String password) {
+        return !accounts.containsKey(sapid)
+                && accounts.putIfAbsent(sapid, new Account(nextUserId.incrementAndGet(), name, passwords.hash(password))) == null;
+    }
+
+    // --- Subjects ---
+
+    @Override
+    public List<SubjectTarget> loadSubjects(String sapid) throws SQLException {
+        List<SubjectTarget> subjects = new ArrayList<>();
+        Account account = account(sapid);
+        for (AtomicReference<SubjectStats> counters : account.subjects.values()) {
+            SubjectStats stats = counters.get();
+            subjects.add(new SubjectTarget(stats.getSubject(), stats.getTarget(),
+                    account.daysMasks.getOrDefault(stats.getSubject(), WeeklySchedule.EVERY_DAY)));
+        }
+        return subjects;
+    }
+
+    /**
+     * Applies the subject list as a diff: removed subjects are dropped, new ones start at zero,
+     * and kept ones only have their target swapped in, so their counters survive. Each subject is
+     * updated atomically; the list as a whole is not a single transaction.
+     */
+    @Override
+    public void saveSubjects(String sapid, List<SubjectTarget> subjects) throws SQLException {
+        Account account = account(sapid);
+        Set<String> kept = new HashSet<>();
+        for (SubjectTarget subject : subjects) {
+            String name = subject.getName();
+            int target = subject.getTargetTotalLectures();
+            kept.add(name);
+            account.daysMasks.put(name, subject.getDaysMask());
+            AtomicReference<SubjectStats> counters = account.subjects.get(name);
+            if (counters == null) {
+                counters = account.subjects.putIfAbsent(name, new AtomicReference<>(new SubjectStats(name, 0, 0, target)));
+                if (counters == null) continue; // Inserted
+            }
+            counters.updateAndGet(s -> s.getTarget() == target ? s : s.withTarget(target));
+        }
+        account.subjects.keySet().retainAll(kept);
+        account.daysMasks.keySet().retainAll(kept);
+        account.subjectsAdded.set(!subjects.isEmpty());
+        account.changeSequence.incrementAndGet();
+    }
+
+    // --- Attendance ---
+
+    /**
+     * Applies each mark to its subject's counters with a compare-and-set. A repeated session id
+     * is rejected like the event log's unique key; an unknown subject like its foreign key.
+     */
+    @Override
+    public int[] saveSession(String sapid, String sessionId, List<String> subjects, boolean[] present) throws SQLException {
+        if (subjects.isEmpty()) {
+            return new int[0];
+        }
+        Account account = account(sapid);
+        List<AtomicReference<SubjectStats>> targets = new ArrayList<>(subjects.size());
+        for (String subject : subjects) {
+            AtomicReference<SubjectStats> counters = account.subjects.get(subject);
+            if (counters == null) {
+                throw new SQLException("Subject '" + subject + "' is not registered for SAPID " + sapid, "23000", 2291);
+            }
+            targets.add(counters);
+        }
+        if (!account.sessionIds.add(sessionId)) {
+            throw new SQLException("Session " + sessionId + " was already saved for SAPID " + sapid, "23000", 1);
+        }
+
+        int[] counts = new int[subjects.size()];
+        for (int i = 0; i < counts.length; i++) {
+            boolean attended = present[i];
+            targets.get(i).updateAndGet(s -> s.withLecture(attended));
+            counts[i] = 1;
+        }
+        account.sessions.incrementAndGet();
+        return counts;
+    }
+
+    @Override
+    public List<SubjectStats> loadStatistics(String sapid) throws SQLException {
+        List<SubjectStats> rows = new ArrayList<>();
+        for (AtomicReference<SubjectStats> counters : account(sapid).subjects.values()) {
+            rows.add(counters.get());
+        }
+        return rows;
+    }
+
+    @Override
+    public int resetAttendance(String sapid) throws SQLException {
+        Account account = account(sapid);
+        account.sessionIds.clear();
+        int rows = 0;
+        for (Map.Entry<String, AtomicReference<SubjectStats>> entry : account.subjects.entrySet()) {
+            entry.getValue().updateAndGet(SubjectStats::withZeroCounts);
+            rows++;
+        }
+        account.changeSequence.incrementAndGet();
+        return rows;
+    }
+
+    /** Moves with subject edits, resets and saves; all of them are made in this process, which also publishes them. */
+    @Override
+    public long changeToken(String sapid) {
+        Account account = accounts.get(sapid);
+        return account == null ? 0 : AttendanceRepository.changeToken(account.changeSequence.get(), account.sessions.get());
+    }
+
+    @Override
+    public void forEachCounter(BiConsumer<String, SubjectStats> visitor) {
+        for (Map.Entry<String, Account> account : accounts.entrySet()) {
+            for (AtomicReference<SubjectStats> counters : account.getValue().subjects.values()) {
+                visitor.accept(account.getKey(), counters.get());
+            }
+        }
+    }
+
+    private Account account(String sapid) throws SQLException {
+        Account account = accounts.get(sapid);
+        if (account == null) {
+            throw new SQLException("No user with SAPID " + sapid, "23000", 2291);
+        }
+        return account;
+    }
+
+    // --- Inner class for one user's data ---
+    private static final class Account {
+        private final int id;
+        private final String name;
+        private volatile String password; // PBKDF2 hash, see PasswordHasher
+        private final AtomicBoolean subjectsAdded = new AtomicBoolean();
+        private final ConcurrentNavigableMap<String, AtomicReference<SubjectStats>> subjects = new ConcurrentSkipListMap<>();
+        private final Set<String> sessionIds = Collections.synchronizedSet(Collections.newSetFromMap(
+                new LinkedHashMap<String, Boolean>(16, 0.75f, false) {
+                    private static final long serialVersionUID = 1L;
+
+                    @Override
+                    protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                        return size() > RECENT_SESSIONS;
+                    }
+                }));
+        private final Map<String, Integer> daysMasks = new ConcurrentHashMap<>();
+        private final AtomicLong changeSequence = new AtomicLong(); // Subject edits and resets
+        private final AtomicLong sessions = new AtomicLong();
+
+        Account(int id, String name, String password) {
+            this.id = id;
+            this.name = name;
+            this.password = password;
+        }
+    }
+}
@@ -0,0 +1,784 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiConsumer;
+
+/**
+ * {@link AttendanceRepository} over JDBC, used for both the Oracle and the embedded backend.
+ * Its statements are the {@link NamedQuery} constants, written in Oracle syntax and prepared
+ * through a {@link QueryRegistry} for the {@link SqlDialect}.
+ *
+ * Attendance is stored in the append-only {@code attendance_event} log, and the
+ * {@code timetable} counters are maintained as an aggregate of it. Saving a session is
+ * insert-only: one event row per marked subject, sent as a single JDBC batch and committed
+ * once, so concurrent marking never contends on the hot timetable row. The counters are
+ * brought up to date by {@link #foldPendingEvents} (the events of sessions whose ledger row is
+ * not yet {@code folded}) before they are read, and can always be recomputed from scratch with
+ * {@link #rebuildCounters}. Event ids are not a usable watermark: they come from a cached
+ * sequence, and a save holding lower ids may commit after one holding higher ids was folded.
+ *
+ * Next to the counters, each row keeps its lecture history as an {@link AttendanceBitmap} in
+ * {@code attendance_bits}. The fold locks the user's rows, reads the pending events in log order,
+ * appends them to the bitmap and derives the new counters from the popcount of the appended bits,
+ * then writes the rows back and marks the sessions it read as folded, in one transaction.
+ *
+ * Saves are idempotent per (user, session id): each session is first recorded in
+ * {@code session_ledger}, whose primary key rejects a retried or double-submitted session before
+ * any mark is written. Sessions saved (or rejected) recently are remembered in memory, so the
+ * usual repeat of one is turned away without borrowing a connection.
+ *
+ * Both tables are keyed by numeric ids ({@code users.user_id}, {@code subject.subject_id})
+ * rather than by SAP ID and subject name. The API still speaks in names; they are translated
+ * through two {@link KeyDictionary} instances, so after a user's first call every statement binds
+ * numbers only, and names handed back are shared canonical instances.
+ */
+public class JdbcAttendanceRepository implements AttendanceRepository {
+
+    private static final Log LOG = Log.get(JdbcAttendanceRepository.class);
+
+    // (sapid, session id) pairs remembered as already saved
+    private static final int RECENT_SESSIONS = Integer.getInteger("attendance.ledger.recentSessions", 4096);
+
+    // Timetable rows (and ledger rows) written per batch when folding
+    private static final int FOLD_BATCH = 500;
+
+    /** Supplies a connection per operation; closing it gives it back (e.g. {@link ConnectionPool}). */
+    public interface ConnectionSource {
+        Connection getConnection() throws SQLException;
+    }
+
+    private final ConnectionSource connections;
+    private final SqlDialect dialect;
+    private final PasswordService passwords;
+
+    // SAP ID -> users.user_id and subject name -> subject.subject_id, filled as rows are read
+    private final KeyDictionary userIds = new KeyDictionary();
+    private final KeyDictionary subjectIds = new KeyDictionary();
+    private final RecentSessions recentSessions = new RecentSessions(RECENT_SESSIONS);
+
+    // Every statement, translated for this database once
+    private final QueryRegistry queries;
+
+    public JdbcAttendanceRepository(ConnectionSource connections, SqlDialect dialect) {
+        this(connections, dialect, PasswordService.getInstance());
+    }
+
+    public JdbcAttendanceRepository(ConnectionSource connections, SqlDialect dialect, PasswordService passwords) {
+        this.connections = connections;
+        this.dialect = dialect;
+        this.passwords = passwords;
+        this.queries = new QueryRegistry(dialect);
+    }
+
+    public SqlDialect getDialect() {
+        return dialect;
+    }
+
+    /**
+     * Prepares every statement on {@code connections} pooled connections ahead of the first user action.
+     *
+     * @return number of connections warmed
+     */
+    public int warmUp(int connections) {
+        return queries.warmUp(this.connections, connections);
+    }
+
+    // --- Accounts ---
+
+    @Override
+    public UserAccount authenticate(String sapid, String password) throws SQLException {
+        int userId = KeyDictionary.NONE;
+        String name = null;
+        boolean subjectsAdded = false;
+        String stored = null;
+        try (Connection conn = connections.getConnection();
+             PreparedStatement pstmt = queries.prepare(conn, NamedQuery.AUTHENTICATE)) {
+            pstmt.setString(1, sapid);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                if (rs.next()) {
+                    userId = rs.getInt("user_id");
+                    name = rs.getString("name");
+                    subjectsAdded = rs.getInt("subjects_added") == 1;
+                    stored = rs.getString("password");
+                }
+            }
+        }
+        // The connection is back in the pool before the CPU-heavy check
+        if (stored == null) {
+            passwords.verifyUnknownUser(password); // As slow as a wrong password, so unknown SAP IDs do not show
+            return null;
+        }
+        if (!passwords.verify(password, stored)) {
+            return null;
+        }
+        if (passwords.needsRehash(stored)) {
+            upgradePassword(userId, sapid, password, stored);
+        }
+        // Every later call for this login binds the numeric id without looking it up
+        return new UserAccount(userId, userIds.put(userId, sapid), name, subjectsAdded);
+    }
+
+    /** Replaces a plaintext or weaker hash after a successful login. Failure only delays the upgrade. */
+    private void upgradePassword(int userId, String sapid, String password, String stored) {
+        try {
+            String upgraded = passwords.hash(password);
+            try (Connection conn = connections.getConnection();
+                 PreparedStatement pstmt = queries.prepare(conn, NamedQuery.REHASH_PASSWORD)) {
+                pstmt.setString(1, upgraded);
+                pstmt.setInt(2, userId);
+                pstmt.setString(3, stored);
+                if (pstmt.executeUpdate() > 0) {
+                    LOG.info("Upgraded stored password hash", "sapid", sapid);
+                }
+            }
+        } catch (SQLException | RuntimeException e) {
+            LOG.warn("Could not upgrade password hash", "sapid", sapid, "reason", e.getMessage());
+        }
+    }
+
+    @Override
+    public boolean register(String sapid, String name, String password) throws SQLException {
+        String hash = passwords.hash(password); // Before borrowing a connection
+        try (Connection conn = connections.getConnection()) {
+            try (PreparedStatement check = queries.prepare(conn, NamedQuery.USER_EXISTS)) {
+                check.setString(1, sapid);
+                try (ResultSet rs = check.executeQuery()) {
+                    if (rs.next()) {
+                        return false; // User already exists
+                    }
+                }
+            }
+            try (PreparedStatement insert = queries.prepare(conn, NamedQuery.INSERT_USER)) {
+                insert.setString(1, sapid);
+                insert.setString(2, name);
+                insert.setString(3, hash);
+                return insert.executeUpdate() > 0;
+            } catch (SQLException e) {
+                if (dialect.isDuplicateKey(e)) {
+                    return false; // Registered concurrently since the check
+                }
+                throw e;
+            }
+        }
+    }
+
+    // --- Subjects ---
+
+    @Override
+    public List<SubjectTarget> loadSubjects(String sapid) throws SQLException {
+        try (Connection conn = connections.getConnection()) {
+            int userId = userId(conn, sapid);
+            return userId == KeyDictionary.NONE ? new ArrayList<>() : loadSubjects(conn, userId);
+        }
+    }
+
+    /** Reads a user's subjects, recording their ids in the subject dictionary. */
+    private List<SubjectTarget> loadSubjects(Connection conn, int userId) throws SQLException {
+        List<SubjectTarget> subjects = new ArrayList<>();
+        try (PreparedStatement pstmt = queries.prepare(conn, NamedQuery.SELECT_SUBJECTS)) {
+            pstmt.setInt(1, userId);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    String name = subjectIds.put(rs.getInt("subject_id"), rs.getString("name"));
+                    subjects.add(new SubjectTarget(name, rs.getInt("target_total_lectures"), rs.getInt("days_mask")));
+                }
+            }
+        }
+        return subjects;
+    }
+
+    /**
+     * Applies the subject list as a diff against the stored rows, in one transaction.
+     * Only removed subjects are deleted and only new, re-targeted or rescheduled ones are merged, so attendance
+     * counters (and event history) of unchanged subjects survive the edit. Names not yet in the
+     * {@code subject} catalog are added to it.
+     */
+    @Override
+    public void saveSubjects(String sapid, List<SubjectTarget> subjects) throws SQLException {
+        try (Connection conn = connections.getConnection()) {
+            int userId = requireUserId(conn, sapid);
+            conn.setAutoCommit(false); // Start transaction
+            try {
+                // a. Read (and lock) the stored subjects, targets and days for this user
+                Map<Integer, Long> storedTargets = new HashMap<>();
+                try (PreparedStatement select = queries.prepare(conn, NamedQuery.LOCK_SUBJECTS)) {
+                    select.setInt(1, userId);
+                    try (ResultSet rs = select.executeQuery()) {
+                        while (rs.next()) {
+                            storedTargets.put(rs.getInt("subject_id"), settings(rs.getInt("target_total_lectures"), rs.getInt("days_mask")));
+                        }
+                    }
+                }
+
+                // b. Compute the diff, by subject id
+                int[] ids = new int[subjects.size()];
+                List<Integer> upserts = new ArrayList<>();
+                for (int i = 0; i < ids.length; i++) {
+                    SubjectTarget subject = subjects.get(i);
+                    ids[i] = subjectId(conn, subject.getName());
+                    Long stored = storedTargets.remove(ids[i]);
+                    if (stored == null || stored != settings(subject.getTargetTotalLectures(), subject.getDaysMask())) {
+                        upserts.add(i); // New subject, or changed target or days
+                    }
+                }
+                // Whatever is left in storedTargets was removed by the user
+
+                // c. Delete only the removed subjects
+                if (!storedTargets.isEmpty()) {
+                    try (PreparedStatement delete = queries.prepare(conn, NamedQuery.DELETE_SUBJECT)) {
+                        for (int removed : storedTargets.keySet()) {
+                            delete.setInt(1, userId);
+                            delete.setInt(2, removed);
+                            delete.addBatch();
+                        }
+                        delete.executeBatch();
+                    }
+                    try (PreparedStatement markEmpty = queries.prepare(conn, NamedQuery.MARK_EMPTY_FOLDED)) {
+                        markEmpty.setInt(1, userId);
+                        markEmpty.executeUpdate(); // Else they would keep the user's next fold looking for their events
+                    }
+                }
+                LOG.debug("Deleted removed timetable rows", "sapid", sapid, "rows", storedTargets.size());
+
+                // d. Merge only new subjects and changed targets or days; counters of existing rows are untouched
+                if (!upserts.isEmpty()) {
+                    try (PreparedStatement merge = queries.prepare(conn, NamedQuery.MERGE_SUBJECT)) {
+                        for (int i : upserts) {
+                            merge.setInt(1, userId);
+                            merge.setInt(2, ids[i]);
+                            merge.setInt(3, subjects.get(i).getTargetTotalLectures());
+                            merge.setInt(4, subjects.get(i).getDaysMask());
+                            merge.addBatch();
+                        }
+                        merge.executeBatch();
+                    }
+                }
+                LOG.debug("Merged new or changed timetable rows", "sapid", sapid, "rows", upserts.size());
+
+                // e. Update the 'subjects_added' flag and the user's change sequence
+                int flagValue = subjects.isEmpty() ? 0 : 1;
+                try (PreparedStatement updateFlag = queries.prepare(conn, NamedQuery.UPDATE_FLAG)) {
+                    updateFlag.setInt(1, flagValue);
+                    updateFlag.setInt(2, userId);
+                    int flagUpdateCount = updateFlag.executeUpdate();
+                    LOG.debug("User flag subjects_added updated", "sapid", sapid, "value", flagValue, "rows", flagUpdateCount);
+                }
+
+                conn.commit(); // Commit transaction
+                for (int i = 0; i < ids.length; i++) {
+                    subjectIds.put(ids[i], subjects.get(i).getName()); // Catalog rows added above exist now
+                }
+            } catch (SQLException e) {
+                rollbackQuietly(conn);
+                throw e;
+            } finally {
+                try { conn.setAutoCommit(true); } catch (SQLException ignored) {} // Restore auto-commit
+            }
+        }
+    }
+
+    /** A row's editable settings packed into one comparable value. */
+    private static long settings(int target, int daysMask) {
+        return ((long) target << 8) | daysMask;
+    }
+
+    // --- Attendance ---
+
+    /**
+     * Records the session in the ledger and appends its marks to the event log as a single batch,
+     * in one transaction. Nothing is committed if either fails.
+     *
+     * @throws SQLException a duplicate key error if this session id was already saved for the user
+     */
+    @Override
+    public int[] saveSession(String sapid, String sessionId, List<String> subjects, boolean[] present) throws SQLException {
+        if (subjects.isEmpty()) {
+            return new int[0];
+        }
+        if (recentSessions.contains(sapid, sessionId)) {
+            throw alreadySaved(sapid, sessionId, null);
+        }
+        try (Connection conn = connections.getConnection()) {
+            int userId = requireUserId(conn, sapid);
+            int[] ids = registeredSubjectIds(conn, sapid, userId, subjects);
+            conn.setAutoCommit(false); // Start transaction
+            try {
+                // a. Primary key probe: a session saved before stops here
+                try (PreparedStatement ledger = queries.prepare(conn, NamedQuery.INSERT_LEDGER)) {
+                    ledger.setInt(1, userId);
+                    ledger.setString(2, sessionId);
+                    ledger.setInt(3, ids.length);
+                    ledger.executeUpdate();
+                } catch (SQLException e) {
+                    if (dialect.isDuplicateKey(e)) {
+                        recentSessions.add(sapid, sessionId); // Retries of it need not reach the database again
+                        throw alreadySaved(sapid, sessionId, e);
+                    }
+                    throw e;
+                }
+
+                // b. The marks, one batch
+                int[] counts;
+                try (PreparedStatement pstmt = queries.prepare(conn, NamedQuery.INSERT_EVENT)) {
+                    for (int i = 0; i < ids.length; i++) {
+                        pstmt.setInt(1, userId);
+                        pstmt.setInt(2, ids[i]);
+                        pstmt.setString(3, sessionId);
+                        pstmt.setInt(4, present[i] ? 1 : 0);
+                        pstmt.addBatch();
+                    }
+                    counts = pstmt.executeBatch();
+                }
+                conn.commit();
+                recentSessions.add(sapid, sessionId);
+                return counts;
+            } catch (SQLException e) {
+                rollbackQuietly(conn);
+                throw e;
+            } finally {
+                try { conn.setAutoCommit(true); } catch (SQLException ignored) {}
+            }
+        }
+    }
+
+    /** Brings the user's counters up to date with the event log, then reads them. */
+    @Override
+    public List<SubjectStats> loadStatistics(String sapid) throws SQLException {
+        List<SubjectStats> rows = new ArrayList<>();
+        try (Connection conn = connections.getConnection()) {
+            int userId = userId(conn, sapid);
+            if (userId == KeyDictionary.NONE) {
+                return rows;
+            }
+            fold(conn, userId);
+            try (PreparedStatement pstmt = queries.prepare(conn, NamedQuery.SELECT_STATS)) {
+                pstmt.setInt(1, userId);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        rows.add(new SubjectStats(subjectIds.put(rs.getInt("subject_id"), rs.getString("name")),
+                                rs.getInt("attended"), rs.getInt("taken"), rs.getInt("target"),
+                                AttendanceBitmap.fromBytes(rs.getBytes("attendance_bits"))));
+                    }
+                }
+            }
+        }
+        return rows;
+    }
+
+    /** Clears the user's event history and session ledger and zeroes the counters in one transaction. */
+    @Override
+    public int resetAttendance(String sapid) throws SQLException {
+        try (Connection conn = connections.getConnection()) {
+            int userId = userId(conn, sapid);
+            if (userId == KeyDictionary.NONE) {
+                return 0;
+            }
+            conn.setAutoCommit(false);
+            try (PreparedStatement resetCounters = queries.prepare(conn, NamedQuery.RESET_COUNTERS);
+                 PreparedStatement deleteEvents = queries.prepare(conn, NamedQuery.DELETE_EVENTS);
+                 PreparedStatement deleteLedger = queries.prepare(conn, NamedQuery.DELETE_LEDGER);
+                 PreparedStatement touch = queries.prepare(conn, NamedQuery.TOUCH_USER)) {
+                // Timetable rows first, in the order a fold locks them, then the ledger rows the fold marks
+                resetCounters.setInt(1, userId);
+                int rows = resetCounters.executeUpdate();
+                deleteEvents.setInt(1, userId);
+                deleteEvents.executeUpdate();
+                deleteLedger.setInt(1, userId);
+                deleteLedger.executeUpdate();
+                touch.setInt(1, userId);
+                touch.executeUpdate();
+                conn.commit();
+                recentSessions.clear(sapid); // The user's session ids are no longer taken
+                return rows;
+            } catch (SQLException e) {
+                rollbackQuietly(conn);
+                throw e;
+            } finally {
+                try { conn.setAutoCommit(true); } catch (SQLException ignored) {}
+            }
+        }
+    }
+
+    /** Folds the pending sessions of every user who has any, then streams the whole counter table with a bounded fetch size. */
+    @Override
+    public void forEachCounter(BiConsumer<String, SubjectStats> visitor) throws SQLException {
+        try (Connection conn = connections.getConnection()) {
+            List<Integer> unfolded = new ArrayList<>();
+            try (PreparedStatement users = queries.prepare(conn, NamedQuery.SELECT_UNFOLDED_USERS);
+                 ResultSet rs = users.executeQuery()) {
+                while (rs.next()) {
+                    unfolded.add(rs.getInt(1));
+                }
+            }
+            for (int userId : unfolded) {
+                foldSessions(conn, userId);
+            }
+            try (PreparedStatement pstmt = queries.prepare(conn, NamedQuery.SELECT_ALL_COUNTERS)) {
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        visitor.accept(rs.getString("sapid"), new SubjectStats(subjectIds.put(rs.getInt("subject_id"), rs.getString("name")),
+                                rs.getInt("attended"), rs.getInt("taken"), rs.getInt("target")));
+                    }
+                }
+            }
+        }
+    }
+
+    /** The user's change sequence and ledger row count, both read through primary key indexes; no fold. */
+    @Override
+    public long changeToken(String sapid) throws SQLException {
+        try (Connection conn = connections.getConnection()) {
+            int userId = userId(conn, sapid);
+            if (userId == KeyDictionary.NONE) {
+                return 0;
+            }
+            try (PreparedStatement pstmt = queries.prepare(conn, NamedQuery.CHANGE_TOKEN)) {
+                pstmt.setInt(1, userId);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    return rs.next() ? AttendanceRepository.changeToken(rs.getLong("change_seq"), rs.getLong("sessions")) : 0;
+                }
+            }
+        }
+    }
+
+    /**
+     * Folds the user's sessions not yet reflected in the counters into them, in a transaction of
+     * its own on {@code conn} (which must be in auto-commit mode).
+     * Cheap when there is nothing pending: one index probe of the ledger, and no lock taken.
+     *
+     * @return number of timetable rows brought up to date
+     */
+    public int foldPendingEvents(Connection conn, String sapid) throws SQLException {
+        int userId = userId(conn, sapid);
+        return userId == KeyDictionary.NONE ? 0 : fold(conn, userId);
+    }
+
+    private int fold(Connection conn, int userId) throws SQLException {
+        try (PreparedStatement count = queries.prepare(conn, NamedQuery.COUNT_UNFOLDED)) {
+            count.setInt(1, userId);
+            try (ResultSet rs = count.executeQuery()) {
+                if (!rs.next() || rs.getInt(1) == 0) {
+                    return 0;
+                }
+            }
+        }
+        return foldSessions(conn, userId);
+    }
+
+    /**
+     * Locks the user's rows, folds the unfolded sessions into them and marks those sessions
+     * folded, in one transaction. A fold running concurrently waits for the lock and then finds
+     * the sessions marked, so no session is folded twice; one committed meanwhile is left for the next fold.
+     */
+    private int foldSessions(Connection conn, int userId) throws SQLException {
+        conn.setAutoCommit(false);
+        try (PreparedStatement lock = queries.prepare(conn, NamedQuery.LOCK_SUBJECTS);
+             PreparedStatement pending = queries.prepare(conn, NamedQuery.SELECT_PENDING)) {
+            lock.setInt(1, userId);
+            try (ResultSet rs = lock.executeQuery()) {
+                while (rs.next()) { /* Locks each row */ }
+            }
+            pending.setInt(1, userId);
+            int rows = applyFold(conn, userId, pending, false);
+            conn.commit();
+            return rows;
+        } catch (SQLException e) {
+            rollbackQuietly(conn);
+            throw e;
+        } finally {
+            try { conn.setAutoCommit(true); } catch (SQLException ignored) {}
+        }
+    }
+
+    /**
+     * Recomputes the user's counters and lecture bitmaps from the full event log, e.g. after a
+     * manual correction. The rows stay locked meanwhile, so no fold runs in between, and every
+     * session read is marked folded.
+     *
+     * @return number of timetable rows rebuilt
+     */
+    public int rebuildCounters(String sapid) throws SQLException {
+        try (Connection conn = connections.getConnection()) {
+            int userId = userId(conn, sapid);
+            if (userId == KeyDictionary.NONE) {
+                return 0;
+            }
+            conn.setAutoCommit(false);
+            try (PreparedStatement lock = queries.prepare(conn, NamedQuery.LOCK_SUBJECTS);
+                 PreparedStatement history = queries.prepare(conn, NamedQuery.SELECT_HISTORY);
+                 PreparedStatement touch = queries.prepare(conn, NamedQuery.TOUCH_USER)) {
+                lock.setInt(1, userId);
+                try (ResultSet rs = lock.executeQuery()) {
+                    while (rs.next()) { /* Locks each row */ }
+                }
+                history.setInt(1, userId);
+                int rows = applyFold(conn, userId, history, true);
+                touch.setInt(1, userId);
+                touch.executeUpdate();
+                conn.commit();
+                return rows;
+            } catch (SQLException e) {
+                rollbackQuietly(conn);
+                throw e;
+            } finally {
+                try { conn.setAutoCommit(true); } catch (SQLException ignored) {}
+            }
+        }
+    }
+
+    // --- Folding ---
+
+    /**
+     * Folds the events read by {@code events} (the user's rows with their events, grouped by row
+     * and in log order, as {@link NamedQuery#SELECT_PENDING}) into their rows, batching the
+     * updates, and marks the sessions the events belong to as folded. With {@code fromScratch} the
+     * rows' counters and bitmaps are rebuilt from the events alone, and an event-less row is
+     * written back emptied. The caller holds the rows locked and commits.
+     *
+     * @return number of rows updated
+     */
+    private int applyFold(Connection conn, int userId, PreparedStatement events, boolean fromScratch) throws SQLException {
+        int updated = 0;
+        Set<String> sessions = new HashSet<>();
+        try (ResultSet rs = events.executeQuery();
+             PreparedStatement update = queries.prepare(conn, NamedQuery.APPLY_FOLD)) {
+            PendingRow row = null;
+            int batched = 0;
+            while (rs.next()) {
+                int subjectId = rs.getInt("subject_id");
+                if (row == null || row.subjectId != subjectId) {
+                    if (row != null) {
+                        row.bind(update);
+                        update.addBatch();
+                        if (++batched == FOLD_BATCH) {
+                            updated += updatedRows(update.executeBatch());
+                            batched = 0;
+                        }
+                    }
+                    row = new PendingRow(rs, fromScratch);
+                }
+                long eventId = rs.getLong("event_id");
+                if (!rs.wasNull()) {
+                    row.append(eventId, rs.getInt("present") == 1);
+                    sessions.add(rs.getString("session_id"));
+                }
+            }
+            if (row != null) {
+                row.bind(update);
+                update.addBatch();
+                batched++;
+            }
+            if (batched > 0) {
+                updated += updatedRows(update.executeBatch());
+            }
+        }
+        if (!sessions.isEmpty()) {
+            try (PreparedStatement mark = queries.prepare(conn, NamedQuery.MARK_FOLDED)) {
+                int batched = 0;
+                for (String sessionId : sessions) {
+                    mark.setInt(1, userId);
+                    mark.setString(2, sessionId);
+                    mark.addBatch();
+                    if (++batched == FOLD_BATCH) {
+                        mark.executeBatch();
+                        batched = 0;
+                    }
+                }
+                if (batched > 0) {
+                    mark.executeBatch();
+                }
+            }
+        }
+        return updated;
+    }
+
+    // Batch results: 0 for a row removed meanwhile, SUCCESS_NO_INFO if the driver does not say
+    private static int updatedRows(int[] counts) {
+        int rows = 0;
+        for (int count : counts) {
+            if (count > 0 || count == Statement.SUCCESS_NO_INFO) rows++;
+        }
+        return rows;
+    }
+
+    /** One timetable row being folded: its state as read, and the bitmap with the events appended. */
+    private static final class PendingRow {
+        final int userId;
+        final int subjectId;
+        final int attendedBefore;
+        final int takenBefore;
+        final int bitsBefore;
+        AttendanceBitmap bits;
+        long lastEventId;
+
+        PendingRow(ResultSet rs, boolean fromScratch) throws SQLException {
+            userId = rs.getInt("user_id");
+            subjectId = rs.getInt("subject_id");
+            attendedBefore = fromScratch ? 0 : rs.getInt("attended_count");
+            takenBefore = fromScratch ? 0 : rs.getInt("lectures_taken_so_far");
+            bits = fromScratch ? AttendanceBitmap.EMPTY : AttendanceBitmap.fromBytes(rs.getBytes("attendance_bits"));
+            bitsBefore = bits.length();
+            lastEventId = fromScratch ? 0 : rs.getLong("last_event_id");
+        }
+
+        void append(long eventId, boolean present) {
+            bits = bits.append(present); // In place: fromBytes left room to grow
+            lastEventId = Math.max(lastEventId, eventId); // Ids are not commit-ordered; folded here in log order
+        }
+
+        /** Binds {@link NamedQuery#APPLY_FOLD}: the counters grow by what the appended bits add up to. */
+        void bind(PreparedStatement update) throws SQLException {
+            update.setInt(1, attendedBefore + bits.cardinality(bitsBefore, bits.length()));
+            update.setInt(2, takenBefore + bits.length() - bitsBefore);
+            update.setLong(3, lastEventId);
+            update.setBytes(4, bits.toBytes());
+            update.setInt(5, userId);
+            update.setInt(6, subjectId);
+        }
+    }
+
+    // --- Key lookups ---
+
+    /** The user's numeric id: from the dictionary, read once per user otherwise. {@link KeyDictionary#NONE} if unknown. */
+    private int userId(Connection conn, String sapid) throws SQLException {
+        int userId = userIds.id(sapid);
+        if (userId != KeyDictionary.NONE) {
+            return userId;
+        }
+        try (PreparedStatement pstmt = queries.prepare(conn, NamedQuery.SELECT_USER_ID)) {
+            pstmt.setString(1, sapid);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                if (!rs.next()) {
+                    return KeyDictionary.NONE;
+                }
+                userId = rs.getInt(1);
+            }
+        }
+        userIds.put(userId, sapid);
+        return userId;
+    }
+
+    /** As {@link #userId}, failing like a foreign key violation when there is no such user. */
+    private int requireUserId(Connection conn, String sapid) throws SQLException {
+        int userId = userId(conn, sapid);
+        if (userId == KeyDictionary.NONE) {
+            throw new SQLException("No user with SAPID " + sapid, "23000", 2291);
+        }
+        return userId;
+    }
+
+    /**
+     * The subject's id in the catalog, adding it there if it is new. Runs in the caller's
+     * transaction, so the caller puts the id in {@link #subjectIds} once that has committed: a
+     * rolled-back insert must not leave a cached id without a catalog row.
+     */
+    private int subjectId(Connection conn, String name) throws SQLException {
+        int subjectId = subjectIds.id(name);
+        if (subjectId != KeyDictionary.NONE) {
+            return subjectId;
+        }
+        subjectId = findSubjectId(conn, name);
+        if (subjectId == KeyDictionary.NONE) {
+            try (PreparedStatement insert = queries.prepare(conn, NamedQuery.INSERT_SUBJECT)) {
+                insert.setString(1, name);
+                insert.executeUpdate();
+            } catch (SQLException e) {
+                if (!dialect.isDuplicateKey(e)) {
+                    throw e;
+                }
+                // Added concurrently by another user's save; it is committed now
+            }
+            subjectId = findSubjectId(conn, name);
+            if (subjectId == KeyDictionary.NONE) {
+                throw new SQLException("Subject '" + name + "' could not be added to the catalog");
+            }
+        }
+        return subjectId;
+    }
+
+    private int findSubjectId(Connection conn, String name) throws SQLException {
+        try (PreparedStatement pstmt = queries.prepare(conn, NamedQuery.SELECT_SUBJECT_ID)) {
+            pstmt.setString(1, name);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() ? rs.getInt(1) : KeyDictionary.NONE;
+            }
+        }
+    }
+
+    /**
+     * Ids of subjects about to be marked. Names missing from the dictionary (e.g. after a restart)
+     * are resolved by reading the user's subject list once; a name the user has not registered
+     * fails like the event log's foreign key.
+     */
+    private int[] registeredSubjectIds(Connection conn, String sapid, int userId, List<String> subjects) throws SQLException {
+        int[] ids = new int[subjects.size()];
+        boolean loaded = false;
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = subjectIds.id(subjects.get(i));
+            if (ids[i] == KeyDictionary.NONE && !loaded) {
+                loadSubjects(conn, userId);
+                loaded = true;
+                ids[i] = subjectIds.id(subjects.get(i));
+            }
+            if (ids[i] == KeyDictionary.NONE) {
+                throw new SQLException("Subject '" + subjects.get(i) + "' is not registered for SAPID " + sapid, "23000", 2291);
+            }
+        }
+        return ids;
+    }
+
+    /** Reads as a duplicate key on every dialect (SQLState 23505, Oracle error 1), as the ledger's own violation does. */
+    private static SQLException alreadySaved(String sapid, String sessionId, SQLException cause) {
+        return new SQLException("Session " + sessionId + " was already saved for SAPID " + sapid, "23505", 1, cause);
+    }
+
+    private static void rollbackQuietly(Connection conn) {
+        try { conn.rollback(); } catch (SQLException e_rb) { LOG.warn("Rollback failed", "reason", e_rb.getMessage()); }
+    }
+
+    /**
+     * Bounded memory of the most recently saved (sapid, session id) pairs. A hit means the ledger
+     * already has the session; a miss proves nothing and the ledger insert decides.
+     */
+    private static final class RecentSessions {
+        // Insertion-ordered, oldest dropped first; guarded by "this"
+        private final Map<String, Boolean> keys;
+
+        RecentSessions(int capacity) {
+            this.keys = new LinkedHashMap<String, Boolean>(16, 0.75f, false) {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                    return size() > capacity;
+                }
+            };
+        }
+
+        synchronized boolean contains(String sapid, String sessionId) {
+            return keys.containsKey(key(sapid, sessionId));
+        }
+
+        synchronized void add(String sapid, String sessionId) {
+            keys.put(key(sapid, sessionId), Boolean.TRUE);
+        }
+
+        synchronized void clear(String sapid) {
+            String prefix = key(sapid, "");
+            keys.keySet().removeIf(key -> key.startsWith(prefix));
+        }
+
+        private static String key(String sapid, String sessionId) {
+            return sapid + '\u0000' + sessionId;
+        }
+    }
+}
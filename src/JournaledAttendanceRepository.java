@@ -0,0 +1,292 @@
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+
+/**
+ * Wraps a database repository so that attendance saves go to a local {@link SessionJournal} and
+ * reach the database in the background. A save returns as soon as the session is in the journal,
+ * however slow (or unreachable) the database is, and a session saved while the database was down
+ * is written once it is reachable again, even if the application was restarted in between.
+ *
+ * A replayer thread writes journaled sessions through the wrapped repository, oldest first. A
+ * session the database already has (its unique session index reports a duplicate) was written
+ * before a crash and is skipped. One the database rejects for good (e.g. its subject was removed
+ * meanwhile) is appended to {@code <journal>.rejected} and dropped. Any other failure means the
+ * database is unavailable: the replayer retries with backoff, from 250 ms up to
+ * {@code -Dattendance.journal.maxRetryMs}.
+ *
+ * Operations that read or rewrite attendance (statistics, exports, reset, subject changes)
+ * first replay the journal, so they see every session saved before them.
+ */
+public class JournaledAttendanceRepository implements AttendanceRepository {
+
+    private static final Log LOG = Log.get(JournaledAttendanceRepository.class);
+    private static final long MAX_RETRY_MS = Long.getLong("attendance.journal.maxRetryMs", 30_000L);
+    private static final long MIN_RETRY_MS = 250L;
+    private static final int REPLAY_BATCH = 64;
+
+    private final AttendanceRepository delegate;
+    private final SqlDialect dialect;
+    private final SessionJournal journal;
+    private final Thread replayer;
+
+    // Held while sessions are being written to the database, so the background and on-demand replays never overlap
+    private final ReentrantLock replayLock = new ReentrantLock();
+    private final ReentrantLock signalLock = new ReentrantLock();
+    private final Condition appended = signalLock.newCondition();
+    private volatile boolean signalled;
+    private volatile boolean closed;
+    private volatile boolean journalFull;
+    private volatile String lastReplayError; // Null while the database is reachable
+
+    public JournaledAttendanceRepository(AttendanceRepository delegate, SqlDialect dialect, SessionJournal journal) {
+        this.delegate = delegate;
+        this.dialect = dialect;
+        this.journal = journal;
+        this.replayer = new Thread(this::replayLoop, "journal-replayer");
+        this.replayer.setDaemon(true);
+        this.replayer.start();
+        Metrics.getInstance().gauge("journal.pending", journal::getPendingCount);
+        if (journal.getPendingCount() > 0) {
+            wakeReplayer();
+        }
+    }
+
+    public SessionJournal getJournal() {
+        return journal;
+    }
+
+    /** Sessions saved locally but not yet in the database. */
+    public int getPendingCount() {
+        return journal.getPendingCount();
+    }
+
+    /** True if the last attempt to write journaled sessions to the database failed. */
+    public boolean isDatabaseUnavailable() {
+        return lastReplayError != null;
+    }
+
+    // --- Journaled ---
+
+    /**
+     * Appends the session to the journal and returns one "written" count per subject. Falls back
+     * to saving directly if the journal is full.
+     *
+     * @throws SQLException a duplicate key error if the session is waiting in the journal or was
+     *                      recently replayed, as the database's ledger would report it
+     */
+    @Override
+    public int[] saveSession(String sapid, String sessionId, List<String> subjects, boolean[] present) throws SQLException {
+        if (subjects.isEmpty()) {
+            return new int[0];
+        }
+        boolean appendedToJournal;
+        try {
+            appendedToJournal = journal.append(sapid, sessionId, subjects, present);
+        } catch (IllegalStateException e) {
+            throw new SQLException(e.getMessage(), "23505", 1); // Reads as a duplicate key on every dialect
+        }
+        if (!appendedToJournal) {
+            if (!journalFull) {
+                journalFull = true;
+                LOG.warn("Journal full; saving sessions directly until the replayer catches up",
+                        "pending", journal.getPendingCount());
+            }
+            return delegate.saveSession(sapid, sessionId, subjects, present);
+        }
+        journalFull = false;
+        wakeReplayer();
+        int[] counts = new int[subjects.size()];
+        Arrays.fill(counts, 1);
+        return counts;
+    }
+
+    // --- Read or rewrite attendance: replay first ---
+
+    @Override
+    public List<SubjectStats> loadStatistics(String sapid) throws SQLException {
+        replayPending();
+        return delegate.loadStatistics(sapid);
+    }
+
+    @Override
+    public int resetAttendance(String sapid) throws SQLException {
+        replayPending(); // Otherwise a session saved before the reset would be counted after it
+        int rows = delegate.resetAttendance(sapid);
+        journal.forgetSaved(sapid); // The ledger was cleared with it
+        return rows;
+    }
+
+    @Override
+    public void saveSubjects(String sapid, List<SubjectTarget> subjects) throws SQLException {
+        replayPending(); // Sessions for a subject about to be removed still count until it is
+        delegate.saveSubjects(sapid, subjects);
+    }
+
+    @Override
+    public void forEachCounter(BiConsumer<String, SubjectStats> visitor) throws SQLException {
+        replayPending();
+        delegate.forEachCounter(visitor);
+    }
+
+    // --- Straight through ---
+
+    @Override
+    public UserAccount authenticate(String sapid, String password) throws SQLException {
+        return delegate.authenticate(sapid, password);
+    }
+
+    @Override
+    public boolean register(String sapid, String name, String password) throws SQLException {
+        return delegate.register(sapid, name, password);
+    }
+
+    @Override
+    public List<SubjectTarget> loadSubjects(String sapid) throws SQLException {
+        return delegate.loadSubjects(sapid);
+    }
+
+    // Journaled sessions are not counted until replayed; this process published them when they were saved
+    @Override
+    public long changeToken(String sapid) throws SQLException {
+        return delegate.changeToken(sapid);
+    }
+
+    // --- Replay ---
+
+    /**
+     * Writes every journaled session to the database before returning.
+     *
+     * @throws SQLException if the database cannot be reached; the sessions stay journaled
+     */
+    public void replayPending() throws SQLException {
+        if (journal.getPendingCount() == 0) {
+            return;
+        }
+        replayLock.lock();
+        try {
+            List<SessionJournal.Entry> batch;
+            while (!(batch = journal.pending(REPLAY_BATCH)).isEmpty()) {
+                for (SessionJournal.Entry entry : batch) {
+                    replay(entry);
+                }
+            }
+            lastReplayError = null;
+        } catch (SQLException e) {
+            lastReplayError = e.getMessage();
+            throw e;
+        } finally {
+            replayLock.unlock();
+        }
+    }
+
+    /** Writes one session and marks it replayed, unless the database is unavailable. Caller holds replayLock. */
+    private void replay(SessionJournal.Entry entry) throws SQLException {
+        try {
+            delegate.saveSession(entry.getSapid(), entry.getSessionId(), entry.getSubjects(), entry.getPresent());
+        } catch (SQLException e) {
+            if (dialect.isDuplicateKey(e)) {
+                // Written before a crash or restart; its counts may also have been applied to the cache twice
+                LOG.info("Journaled session was already saved", "sessionId", entry.getSessionId(), "sapid", entry.getSapid());
+                StatsCache.getInstance().invalidate(entry.getSapid());
+            } else if (isPermanent(e)) {
+                reject(entry, e);
+                StatsCache.getInstance().invalidate(entry.getSapid());
+                journal.markRejected(entry);
+                return;
+            } else {
+                throw e;
+            }
+        }
+        journal.markReplayed(entry);
+    }
+
+    /** Integrity violations (SQLState class 23) will fail the same way on every retry. */
+    private static boolean isPermanent(SQLException e) {
+        return e.getSQLState() != null && e.getSQLState().startsWith("23");
+    }
+
+    private void reject(SessionJournal.Entry entry, SQLException e) {
+        String rejectedFile = journal.getFile().getPath() + ".rejected";
+        LOG.warn("Journaled session rejected by the database", "session", entry.toString(), "reason", e.getMessage(),
+                "recordedIn", rejectedFile);
+        try (PrintWriter out = new PrintWriter(new FileWriter(rejectedFile, true))) {
+            out.println(System.currentTimeMillis() + "\t" + entry.getSapid() + "\t" + entry.getSessionId() + "\t"
+                    + entry.getSubjects() + "\t" + Arrays.toString(entry.getPresent()) + "\t" + e.getMessage());
+        } catch (IOException io) {
+            LOG.error("Could not record rejected session", "file", rejectedFile, "reason", io.getMessage());
+        }
+    }
+
+    private void wakeReplayer() {
+        signalLock.lock();
+        try {
+            signalled = true;
+            appended.signal();
+        } finally {
+            signalLock.unlock();
+        }
+    }
+
+    private void replayLoop() {
+        long retryMs = MIN_RETRY_MS;
+        while (!closed) {
+            try {
+                signalLock.lock();
+                try {
+                    long waitMs = lastReplayError != null ? retryMs : MAX_RETRY_MS;
+                    if (!signalled || lastReplayError != null) {
+                        appended.await(waitMs, TimeUnit.MILLISECONDS);
+                    }
+                    signalled = false;
+                } finally {
+                    signalLock.unlock();
+                }
+                if (closed) break;
+
+                boolean wasUnavailable = lastReplayError != null;
+                int before = journal.getPendingCount();
+                replayPending();
+                if (wasUnavailable) {
+                    LOG.info("Database reachable again; journaled sessions replayed", "sessions", before);
+                }
+                retryMs = MIN_RETRY_MS;
+            } catch (SQLException e) {
+                if (retryMs == MIN_RETRY_MS) {
+                    LOG.warn("Database unavailable; sessions kept in the journal", "pending", journal.getPendingCount(),
+                            "reason", e.getMessage());
+                }
+                retryMs = Math.min(retryMs * 2, MAX_RETRY_MS);
+            } catch (InterruptedException e) {
+                break;
+            } catch (RuntimeException e) {
+                LOG.error("Journal replayer error", e);
+                lastReplayError = String.valueOf(e.getMessage());
+                retryMs = Math.min(retryMs * 2, MAX_RETRY_MS);
+            }
+        }
+    }
+
+    /** Stops the replayer (sessions not yet replayed stay in the journal for the next start) and closes the journal. */
+    public void close() {
+        closed = true;
+        replayer.interrupt();
+        try {
+            replayer.join(5_000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            journal.close();
+        } catch (IOException e) {
+            LOG.error("Error closing journal", "reason", e.getMessage());
+        }
+    }
+}
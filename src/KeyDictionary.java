@@ -0,0 +1,62 @@
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Two-way, in-memory dictionary between the names the application works with (SAP IDs, subject
+ * names) and the numeric keys the database stores them under ({@code users.user_id},
+ * {@code subject.subject_id}).
+ *
+ * Each name is held as one canonical String instance: rows handed out with a name from the
+ * dictionary (subject lists, statistics, cached counters) all share it instead of carrying a
+ * copy per user. Entries are only ever added; a name keeps its id for the life of the database,
+ * so a cached id is never stale. Thread-safe.
+ */
+public final class KeyDictionary {
+
+    /** Returned by {@link #id} for a name without a known id. Database sequences start at 1. */
+    public static final int NONE = 0;
+
+    private final ConcurrentMap<String, Integer> ids = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Integer, String> names = new ConcurrentHashMap<>();
+
+    /** @return the name's id, or {@link #NONE} if it has not been seen yet */
+    public int id(String name) {
+        Integer id = ids.get(name);
+        return id == null ? NONE : id;
+    }
+
+    /** @return the name stored under {@code id}, or null if it has not been seen yet */
+    public String name(int id) {
+        return names.get(id);
+    }
+
+    /**
+     * Records a name and its id as read from the database.
+     *
+     * @return the canonical instance of the name, to be kept instead of {@code name}
+     */
+    public String put(int id, String name) {
+        String canonical = names.putIfAbsent(id, name);
+        if (canonical == null) {
+            canonical = name;
+            ids.putIfAbsent(canonical, id);
+        }
+        return canonical;
+    }
+
+    /** @return the canonical instance of a known name, or {@code name} itself */
+    public String intern(String name) {
+        Integer id = ids.get(name);
+        String canonical = id == null ? null : names.get(id);
+        return canonical == null ? name : canonical;
+    }
+
+    public int size() {
+        return names.size();
+    }
+
+    @Override
+    public String toString() {
+        return "KeyDictionary[size=" + size() + "]";
+    }
+}
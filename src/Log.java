@@ -0,0 +1,90 @@
+import java.util.Locale;
+
+/**
+ * Structured application log. A record is a level, a short message and optional key/value
+ * fields, e.g.
+ * <pre>
+ *   private static final Log LOG = Log.get(Timetable.class);
+ *   LOG.info("Attendance saved", "sapid", sapid, "subjects", count);
+ * </pre>
+ * which is written as
+ * <pre>
+ *   2026-10-18 09:15:02.114 INFO  [db-worker-1] Timetable - Attendance saved sapid=500123 subjects=6
+ * </pre>
+ *
+ * Logging never formats or writes on the calling thread: the record's parts are handed to the
+ * {@link AsyncLogWriter} thread through a lock-free ring buffer, so the EDT and database workers
+ * never wait on the console or a file. Field values are formatted later, on that thread, so pass
+ * values that do not change afterwards (strings, numbers). If the writer falls behind and the ring
+ * fills up, new DEBUG and INFO records are dropped and counted rather than blocking the caller;
+ * warnings and errors wait briefly for space.
+ *
+ * The threshold is {@code -Dattendance.log.level} (DEBUG, INFO (default), WARN or ERROR); output
+ * goes to the console and to a rolling file, see {@link AsyncLogWriter}.
+ */
+public final class Log {
+
+    public enum Level { DEBUG, INFO, WARN, ERROR }
+
+    static final Level THRESHOLD = parseLevel(System.getProperty("attendance.log.level", "INFO"));
+
+    private final String name;
+
+    private Log(String name) {
+        this.name = name;
+    }
+
+    /** The log for a class; its records are tagged with the class's simple name. */
+    public static Log get(Class<?> type) {
+        return new Log(type.getSimpleName());
+    }
+
+    public boolean isDebugEnabled() {
+        return THRESHOLD == Level.DEBUG;
+    }
+
+    // --- Records; fields are alternating keys and values ---
+
+    public void debug(String message, Object... fields) {
+        if (THRESHOLD == Level.DEBUG) {
+            AsyncLogWriter.getInstance().log(Level.DEBUG, name, message, null, fields);
+        }
+    }
+
+    public void info(String message, Object... fields) {
+        if (THRESHOLD.compareTo(Level.INFO) <= 0) {
+            AsyncLogWriter.getInstance().log(Level.INFO, name, message, null, fields);
+        }
+    }
+
+    public void warn(String message, Object... fields) {
+        if (THRESHOLD.compareTo(Level.WARN) <= 0) {
+            AsyncLogWriter.getInstance().log(Level.WARN, name, message, null, fields);
+        }
+    }
+
+    /** A warning with the stack trace of {@code error}. */
+    public void warn(String message, Throwable error, Object... fields) {
+        if (THRESHOLD.compareTo(Level.WARN) <= 0) {
+            AsyncLogWriter.getInstance().log(Level.WARN, name, message, error, fields);
+        }
+    }
+
+    public void error(String message, Object... fields) {
+        AsyncLogWriter.getInstance().log(Level.ERROR, name, message, null, fields);
+    }
+
+    /** An error with the stack trace of {@code error}. */
+    public void error(String message, Throwable error, Object... fields) {
+        AsyncLogWriter.getInstance().log(Level.ERROR, name, message, error, fields);
+    }
+
+    private static Level parseLevel(String value) {
+        try {
+            return Level.valueOf(value.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            System.err.println("Unknown attendance.log.level '" + value + "', using INFO");
+            return Level.INFO;
+        }
+    }
+}
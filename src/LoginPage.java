@@ -2,13 +2,13 @@ import java.awt.*;
 import java.awt.event.*;
 import javax.swing.*;
 import javax.swing.border.*;
-import java.sql.*;
 
 // ... imports remain unchanged
 
 public class LoginPage extends JFrame {
 
     private static final long serialVersionUID = 1L;
+    private static final Log LOG = Log.get(LoginPage.class);
     private JPanel contentPane;
     private JTextField textField; // SAPID field
     private JTextField textField_1; // Name field
@@ -21,7 +21,7 @@ public class LoginPage extends JFrame {
                 LoginPage frame = new LoginPage();
                 frame.setVisible(true);
             } catch (Exception e) {
-                e.printStackTrace();
+                LOG.error("Could not open the registration window", e);
             }
         });
     }
@@ -157,44 +157,15 @@ public class LoginPage extends JFrame {
             return;
         }
 
-        try {
-            String url = "jdbc:oracle:thin:@localhost:1521:xe";
-            String username = "system";
-            String dbPassword = "123";
-
-            Class.forName("oracle.jdbc.driver.OracleDriver");
-            Connection con = DriverManager.getConnection(url, username, dbPassword);
-
-            PreparedStatement checkStmt = con.prepareStatement("SELECT * FROM users WHERE sapid = ?");
-            checkStmt.setString(1, sapid);
-            ResultSet rs = checkStmt.executeQuery();
-
-            if (rs.next()) {
-                JOptionPane.showMessageDialog(this, "User already exists", "Registration Failed", JOptionPane.ERROR_MESSAGE);
+        // Check and insert off the EDT
+        DatabaseTask.run(this, "register:" + sapid, service -> service.register(sapid, name, password), registered -> {
+            if (registered) {
+                JOptionPane.showMessageDialog(this, "Registration Successful", "Success", JOptionPane.INFORMATION_MESSAGE);
+                new login().setVisible(true);
+                dispose();
             } else {
-                PreparedStatement insertStmt = con.prepareStatement("INSERT INTO users (sapid, name, password, subjects_added) VALUES (?, ?, ?, 0)");
-                insertStmt.setString(1, sapid);
-                insertStmt.setString(2, name);
-                insertStmt.setString(3, password);
-
-                int result = insertStmt.executeUpdate();
-                if (result > 0) {
-                    JOptionPane.showMessageDialog(this, "Registration Successful", "Success", JOptionPane.INFORMATION_MESSAGE);
-                    new login().setVisible(true);
-                    dispose();
-                } else {
-                    JOptionPane.showMessageDialog(this, "Failed to register", "Error", JOptionPane.ERROR_MESSAGE);
-                }
-                insertStmt.close();
+                JOptionPane.showMessageDialog(this, "User already exists", "Registration Failed", JOptionPane.ERROR_MESSAGE);
             }
-
-            rs.close();
-            checkStmt.close();
-            con.close();
-
-        } catch (Exception e) {
-            e.printStackTrace();
-            JOptionPane.showMessageDialog(this, "Error: " + e.getMessage(), "Exception", JOptionPane.ERROR_MESSAGE);
-        }
+        }, e -> JOptionPane.showMessageDialog(this, "Error: " + e.getMessage(), "Exception", JOptionPane.ERROR_MESSAGE));
     }
 }
@@ -0,0 +1,151 @@
+import java.sql.SQLException;
+import java.util.List;
+import java.util.function.BiConsumer;
+
+/**
+ * Records latency and outcome of every call to the wrapped repository as {@link Metrics} timers
+ * named {@code db.<operation>} (e.g. {@code db.authenticate}, {@code db.saveSession}). A call
+ * that throws counts as an error; {@code authenticate} returning null (wrong password) does not.
+ */
+public class MeteredAttendanceRepository implements AttendanceRepository {
+
+    private final AttendanceRepository delegate;
+    private final Metrics.Timer authenticate;
+    private final Metrics.Timer register;
+    private final Metrics.Timer loadSubjects;
+    private final Metrics.Timer saveSubjects;
+    private final Metrics.Timer saveSession;
+    private final Metrics.Timer loadStatistics;
+    private final Metrics.Timer resetAttendance;
+    private final Metrics.Timer forEachCounter;
+    private final Metrics.Timer changeToken;
+
+    public MeteredAttendanceRepository(AttendanceRepository delegate) {
+        this.delegate = delegate;
+        Metrics metrics = Metrics.getInstance();
+        this.authenticate = metrics.timer("db.authenticate");
+        this.register = metrics.timer("db.register");
+        this.loadSubjects = metrics.timer("db.loadSubjects");
+        this.saveSubjects = metrics.timer("db.saveSubjects");
+        this.saveSession = metrics.timer("db.saveSession");
+        this.loadStatistics = metrics.timer("db.loadStatistics");
+        this.resetAttendance = metrics.timer("db.resetAttendance");
+        this.forEachCounter = metrics.timer("db.forEachCounter");
+        this.changeToken = metrics.timer("db.changeToken");
+    }
+
+    @Override
+    public UserAccount authenticate(String sapid, String password) throws SQLException {
+        long start = System.nanoTime();
+        boolean ok = false;
+        try {
+            UserAccount account = delegate.authenticate(sapid, password);
+            ok = true;
+            return account;
+        } finally {
+            authenticate.record(start, ok);
+        }
+    }
+
+    @Override
+    public boolean register(String sapid, String name, String password) throws SQLException {
+        long start = System.nanoTime();
+        boolean ok = false;
+        try {
+            boolean created = delegate.register(sapid, name, password);
+            ok = true;
+            return created;
+        } finally {
+            register.record(start, ok);
+        }
+    }
+
+    @Override
+    public List<SubjectTarget> loadSubjects(String sapid) throws SQLException {
+        long start = System.nanoTime();
+        boolean ok = false;
+        try {
+            List<SubjectTarget> subjects = delegate.loadSubjects(sapid);
+            ok = true;
+            return subjects;
+        } finally {
+            loadSubjects.record(start, ok);
+        }
+    }
+
+    @Override
+    public void saveSubjects(String sapid, List<SubjectTarget> subjects) throws SQLException {
+        long start = System.nanoTime();
+        boolean ok = false;
+        try {
+            delegate.saveSubjects(sapid, subjects);
+            ok = true;
+        } finally {
+            saveSubjects.record(start, ok);
+        }
+    }
+
+    @Override
+    public int[] saveSession(String sapid, String sessionId, List<String> subjects, boolean[] present) throws SQLException {
+        long start = System.nanoTime();
+        boolean ok = false;
+        try {
+            int[] counts = delegate.saveSession(sapid, sessionId, subjects, present);
+            ok = true;
+            return counts;
+        } finally {
+            saveSession.record(start, ok);
+        }
+    }
+
+    @Override
+    public List<SubjectStats> loadStatistics(String sapid) throws SQLException {
+        long start = System.nanoTime();
+        boolean ok = false;
+        try {
+            List<SubjectStats> rows = delegate.loadStatistics(sapid);
+            ok = true;
+            return rows;
+        } finally {
+            loadStatistics.record(start, ok);
+        }
+    }
+
+    @Override
+    public int resetAttendance(String sapid) throws SQLException {
+        long start = System.nanoTime();
+        boolean ok = false;
+        try {
+            int rows = delegate.resetAttendance(sapid);
+            ok = true;
+            return rows;
+        } finally {
+            resetAttendance.record(start, ok);
+        }
+    }
+
+    @Override
+    public void forEachCounter(BiConsumer<String, SubjectStats> visitor) throws SQLException {
+        long start = System.nanoTime();
+        boolean ok = false;
+        try {
+            delegate.forEachCounter(visitor);
+            ok = true;
+        } finally {
+            forEachCounter.record(start, ok);
+        }
+    }
+
+    @Override
+    public long changeToken(String sapid) throws SQLException {
+        long start = System.nanoTime();
+        boolean ok = false;
+        try {
+            long token = delegate.changeToken(sapid);
+            ok = true;
+            return token;
+        } finally {
+            changeToken.record(start, ok);
+        }
+    }
+}
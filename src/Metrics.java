@@ -0,0 +1,309 @@
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.MBeanParameterInfo;
+import javax.management.ObjectName;
+
+/**
+ * Application-wide registry of counters, gauges and latency timers.
+ *
+ * Timers keep a {@link LatencyHistogram} plus a failure count, so p50/p99 of every database
+ * operation ({@code db.*}, {@link MeteredAttendanceRepository}), desktop action ({@code ui.*},
+ * {@link DatabaseTask}) and API request ({@code http.*}) are available in production. Everything
+ * is cumulative since startup and recording never blocks.
+ *
+ * The values are published as attributes of the JMX bean {@value #OBJECT_NAME} (jconsole,
+ * VisualVM) and written to {@code -Dattendance.metrics.file} every
+ * {@code -Dattendance.metrics.dumpSeconds} (0 turns the file off) and once more at exit.
+ */
+public final class Metrics {
+
+    public static final String OBJECT_NAME = "AttendanceSystem:type=Metrics";
+    public static final String FILE = System.getProperty("attendance.metrics.file", "attendance-data/metrics.txt");
+    private static final long DUMP_SECONDS = Long.getLong("attendance.metrics.dumpSeconds", 60L);
+    private static final boolean JMX = Boolean.parseBoolean(System.getProperty("attendance.metrics.jmx", "true"));
+    private static final double[] QUANTILES = {0.50, 0.90, 0.99};
+
+    private static final Log LOG = Log.get(Metrics.class);
+
+    private static volatile Metrics instance;
+
+    private final ConcurrentMap<String, Timer> timers = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, LongAdder> counters = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, LongSupplier> gauges = new ConcurrentHashMap<>();
+    private final long startedAt = System.currentTimeMillis();
+    private ScheduledExecutorService dumper;
+
+    /** Returns the shared registry, registering its JMX bean and starting the file dump on first use. */
+    public static Metrics getInstance() {
+        Metrics metrics = instance;
+        if (metrics == null) {
+            synchronized (Metrics.class) {
+                metrics = instance;
+                if (metrics == null) {
+                    metrics = new Metrics();
+                    instance = metrics;
+                    metrics.publish();
+                }
+            }
+        }
+        return metrics;
+    }
+
+    private Metrics() {}
+
+    // --- Registration ---
+
+    /** The timer with this name, created on first use. */
+    public Timer timer(String name) {
+        return timers.computeIfAbsent(name, n -> new Timer());
+    }
+
+    /** The counter with this name, created on first use. */
+    public LongAdder counter(String name) {
+        return counters.computeIfAbsent(name, n -> new LongAdder());
+    }
+
+    /** Publishes a value read when the metrics are reported; replaces a gauge of the same name. */
+    public void gauge(String name, LongSupplier value) {
+        gauges.put(name, value);
+    }
+
+    // --- Reporting ---
+
+    /** All metrics as text, one per line, sorted by name; latencies in milliseconds. */
+    public String format() {
+        StringBuilder out = new StringBuilder(4096);
+        out.append("# Attendance metrics at ").append(Instant.now())
+           .append(", up ").append((System.currentTimeMillis() - startedAt) / 1000).append(" s\n");
+        for (Map.Entry<String, Timer> e : new TreeMap<>(timers).entrySet()) {
+            LatencyHistogram.Snapshot s = e.getValue().snapshot();
+            out.append("timer ").append(e.getKey())
+               .append(" count=").append(s.getCount())
+               .append(" errors=").append(e.getValue().getErrorCount());
+            for (double q : QUANTILES) {
+                out.append(' ').append(quantileName(q)).append("_ms=").append(millis(s.getValueAtQuantile(q)));
+            }
+            out.append(" max_ms=").append(millis(s.getMax()))
+               .append(" mean_ms=").append(millis(Math.round(s.getMean()))).append('\n');
+        }
+        for (Map.Entry<String, LongAdder> e : new TreeMap<>(counters).entrySet()) {
+            out.append("counter ").append(e.getKey()).append(' ').append(e.getValue().sum()).append('\n');
+        }
+        for (Map.Entry<String, LongSupplier> e : new TreeMap<>(gauges).entrySet()) {
+            out.append("gauge ").append(e.getKey()).append(' ').append(readGauge(e.getValue())).append('\n');
+        }
+        return out.toString();
+    }
+
+    /** Replaces {@code file} with {@link #format()}; readers never see a half-written file. */
+    public void dump(Path file) throws IOException {
+        Path dir = file.toAbsolutePath().getParent();
+        if (dir != null) {
+            Files.createDirectories(dir);
+        }
+        Path temp = Files.createTempFile(dir, file.getFileName().toString(), ".tmp");
+        try {
+            Files.write(temp, format().getBytes(StandardCharsets.UTF_8));
+            try {
+                Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private void publish() {
+        if (JMX) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(new MetricsBean(), new ObjectName(OBJECT_NAME));
+            } catch (JMException | RuntimeException e) {
+                LOG.warn("Metrics not published over JMX", "reason", e.getMessage());
+            }
+        }
+        if (DUMP_SECONDS > 0) {
+            Path file = Paths.get(FILE);
+            dumper = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "metrics-dump");
+                t.setDaemon(true);
+                return t;
+            });
+            dumper.scheduleWithFixedDelay(() -> dumpQuietly(file), DUMP_SECONDS, DUMP_SECONDS, TimeUnit.SECONDS);
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                dumper.shutdownNow();
+                dumpQuietly(file);
+            }, "metrics-shutdown"));
+        }
+    }
+
+    private void dumpQuietly(Path file) {
+        try {
+            dump(file);
+        } catch (IOException | RuntimeException e) {
+            // Keep the previous file and try again next time
+            LOG.warn("Metrics dump failed", "file", file, "reason", e.getMessage());
+        }
+    }
+
+    private static long readGauge(LongSupplier gauge) {
+        try {
+            return gauge.getAsLong();
+        } catch (RuntimeException e) {
+            return -1; // E.g. the pool was shut down; one broken gauge must not hide the others
+        }
+    }
+
+    private static String quantileName(double quantile) {
+        return "p" + Math.round(quantile * 100);
+    }
+
+    private static String millis(long micros) {
+        return String.format(Locale.ROOT, "%.3f", micros / 1000.0);
+    }
+
+    // --- Timer ---
+
+    /**
+     * Latency and outcome of one kind of operation. Call sites take {@code System.nanoTime()}
+     * before the operation and pass it to {@link #record} in a finally block.
+     */
+    public static final class Timer {
+        private final LatencyHistogram histogram = new LatencyHistogram();
+        private final LongAdder errors = new LongAdder();
+
+        /**
+         * Records one call that started at {@code startNanos}.
+         *
+         * @param success false if the call failed; it is counted as an error and its latency still recorded
+         */
+        public void record(long startNanos, boolean success) {
+            histogram.record((System.nanoTime() - startNanos) / 1000);
+            if (!success) {
+                errors.increment();
+            }
+        }
+
+        public LatencyHistogram.Snapshot snapshot() {
+            return histogram.snapshot();
+        }
+
+        public long getErrorCount() {
+            return errors.sum();
+        }
+    }
+
+    // --- JMX view ---
+
+    /**
+     * Read-only bean with one attribute per value (e.g. {@code db.saveSession.p99Millis},
+     * {@code gauge.pool.active}); the attribute list follows the metrics registered so far.
+     */
+    private final class MetricsBean implements DynamicMBean {
+
+        @Override
+        public Object getAttribute(String attribute) throws AttributeNotFoundException {
+            Map<String, Object> values = values();
+            Object value = values.get(attribute);
+            if (value == null) {
+                throw new AttributeNotFoundException(attribute);
+            }
+            return value;
+        }
+
+        @Override
+        public AttributeList getAttributes(String[] attributes) {
+            Map<String, Object> values = values();
+            AttributeList list = new AttributeList();
+            for (String name : attributes) {
+                Object value = values.get(name);
+                if (value != null) {
+                    list.add(new Attribute(name, value));
+                }
+            }
+            return list;
+        }
+
+        @Override
+        public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+            throw new AttributeNotFoundException("Metrics are read-only: " + attribute.getName());
+        }
+
+        @Override
+        public AttributeList setAttributes(AttributeList attributes) {
+            return new AttributeList();
+        }
+
+        @Override
+        public Object invoke(String actionName, Object[] params, String[] signature) {
+            if ("format".equals(actionName)) {
+                return format();
+            }
+            throw new UnsupportedOperationException(actionName);
+        }
+
+        @Override
+        public MBeanInfo getMBeanInfo() {
+            List<MBeanAttributeInfo> attributes = new ArrayList<>();
+            for (Map.Entry<String, Object> e : values().entrySet()) {
+                attributes.add(new MBeanAttributeInfo(e.getKey(), e.getValue().getClass().getName(),
+                        e.getKey(), true, false, false));
+            }
+            MBeanOperationInfo format = new MBeanOperationInfo("format", "All metrics as text",
+                    new MBeanParameterInfo[0], String.class.getName(), MBeanOperationInfo.INFO);
+            return new MBeanInfo(Metrics.class.getName(), "Attendance system metrics",
+                    attributes.toArray(new MBeanAttributeInfo[0]), null,
+                    new MBeanOperationInfo[]{format}, null);
+        }
+
+        private Map<String, Object> values() {
+            Map<String, Object> values = new TreeMap<>();
+            for (Map.Entry<String, Timer> e : timers.entrySet()) {
+                LatencyHistogram.Snapshot s = e.getValue().snapshot();
+                String name = e.getKey();
+                values.put(name + ".count", s.getCount());
+                values.put(name + ".errors", e.getValue().getErrorCount());
+                for (double q : QUANTILES) {
+                    values.put(name + "." + quantileName(q) + "Millis", s.getValueAtQuantile(q) / 1000.0);
+                }
+                values.put(name + ".maxMillis", s.getMax() / 1000.0);
+                values.put(name + ".meanMillis", s.getMean() / 1000.0);
+            }
+            for (Map.Entry<String, LongAdder> e : counters.entrySet()) {
+                values.put("counter." + e.getKey(), e.getValue().sum());
+            }
+            for (Map.Entry<String, LongSupplier> e : gauges.entrySet()) {
+                values.put("gauge." + e.getKey(), readGauge(e.getValue()));
+            }
+            return values;
+        }
+    }
+}
@@ -0,0 +1,112 @@
+/**
+ * Every statement {@link JdbcAttendanceRepository} sends, by name. The SQL is written in Oracle
+ * syntax and translated once per database by {@link QueryRegistry}.
+ *
+ * Each query has a fetch size: how many rows the driver brings back per round trip (0 keeps the
+ * driver's default, e.g. 10 for Oracle). Per-user lists use one that covers a whole timetable in a
+ * single trip; the institution-wide export streams in large chunks. Override one with
+ * {@code -Dattendance.query.<NAME>.fetchSize}, e.g. {@code -Dattendance.query.SELECT_STATS.fetchSize=100}.
+ */
+public enum NamedQuery {
+
+    // --- Accounts ---
+    // The stored hash is fetched and checked in Java: a salted hash cannot be matched in the WHERE clause
+    AUTHENTICATE("SELECT user_id, name, subjects_added, password FROM users WHERE sapid = ?"),
+    // Only replaces the hash that was verified, so a concurrent password change is never overwritten
+    REHASH_PASSWORD("UPDATE users SET password = ? WHERE user_id = ? AND password = ?"),
+    USER_EXISTS("SELECT 1 FROM users WHERE sapid = ?"),
+    SELECT_USER_ID("SELECT user_id FROM users WHERE sapid = ?"),
+    INSERT_USER("INSERT INTO users (user_id, sapid, name, password, subjects_added) " +
+                "VALUES (users_seq.NEXTVAL, ?, ?, ?, 0)"),
+
+    // --- Subjects ---
+    SELECT_SUBJECTS("SELECT s.subject_id, s.name, t.target_total_lectures, t.days_mask " +
+                    "FROM timetable t JOIN subject s ON s.subject_id = t.subject_id " +
+                    "WHERE t.user_id = ? ORDER BY s.name", Sql.TIMETABLE_ROWS),
+    LOCK_SUBJECTS("SELECT subject_id, target_total_lectures, days_mask FROM timetable WHERE user_id = ? FOR UPDATE", Sql.TIMETABLE_ROWS),
+    SELECT_SUBJECT_ID("SELECT subject_id FROM subject WHERE name = ?"),
+    INSERT_SUBJECT("INSERT INTO subject (subject_id, name) VALUES (subject_seq.NEXTVAL, ?)"),
+    DELETE_SUBJECT("DELETE FROM timetable WHERE user_id = ? AND subject_id = ?"),
+    // Bind variables are typed explicitly; H2 cannot infer the type of an untyped "? AS col"
+    MERGE_SUBJECT("MERGE INTO timetable t USING (SELECT CAST(? AS NUMBER(10)) AS user_id, " +
+                  "CAST(? AS NUMBER(10)) AS subject_id, CAST(? AS NUMBER(10)) AS target, CAST(? AS NUMBER(3)) AS days_mask FROM dual) s " +
+                  "ON (t.user_id = s.user_id AND t.subject_id = s.subject_id) " +
+                  "WHEN MATCHED THEN UPDATE SET t.target_total_lectures = s.target, t.days_mask = s.days_mask " +
+                  "WHEN NOT MATCHED THEN INSERT (user_id, subject_id, target_total_lectures, days_mask, attended_count, lectures_taken_so_far) " +
+                  "VALUES (s.user_id, s.subject_id, s.target, s.days_mask, 0, 0)"),
+    // Also marks the edit for change pollers (ChangeBus) in other processes
+    UPDATE_FLAG("UPDATE users SET subjects_added = ?, change_seq = users_change_seq.NEXTVAL WHERE user_id = ?"),
+
+    // --- Attendance ---
+    // Runs first in a session's transaction: a repeated session id fails here, before any mark is written
+    INSERT_LEDGER("INSERT INTO session_ledger (user_id, session_id, marks) VALUES (?, ?, ?)"),
+    INSERT_EVENT("INSERT INTO attendance_event (event_id, user_id, subject_id, session_id, present) " +
+                 "VALUES (attendance_event_seq.NEXTVAL, ?, ?, ?, ?)"),
+    // Both served by the (folded, user_id) index; a user with nothing to fold costs one probe
+    COUNT_UNFOLDED("SELECT COUNT(*) FROM session_ledger WHERE folded = 0 AND user_id = ?"),
+    SELECT_UNFOLDED_USERS("SELECT DISTINCT user_id FROM session_ledger WHERE folded = 0", 1000),
+    // Events of sessions not yet folded, with the state of their timetable row, grouped by row and in log order for
+    // appending to the bitmap. A session's ledger row commits with its events, so a visible one brings all of them
+    SELECT_PENDING(Sql.ROW_EVENTS + "JOIN attendance_event e ON e.user_id = t.user_id AND e.subject_id = t.subject_id " +
+                   "JOIN session_ledger l ON l.user_id = e.user_id AND l.session_id = e.session_id AND l.folded = 0 " +
+                   "WHERE t.user_id = ? ORDER BY t.subject_id, e.event_id", Sql.TIMETABLE_ROWS),
+    // Every event of the user's rows; rows without any come back once with a NULL event
+    SELECT_HISTORY(Sql.ROW_EVENTS + "LEFT JOIN attendance_event e ON e.user_id = t.user_id AND e.subject_id = t.subject_id " +
+                   "WHERE t.user_id = ? ORDER BY t.subject_id, e.event_id", Sql.TIMETABLE_ROWS),
+    // The fold holds the user's rows locked (LOCK_SUBJECTS) from reading them to its commit
+    APPLY_FOLD("UPDATE timetable SET attended_count = ?, lectures_taken_so_far = ?, last_event_id = ?, attendance_bits = ? " +
+               "WHERE user_id = ? AND subject_id = ?"),
+    MARK_FOLDED("UPDATE session_ledger SET folded = 1 WHERE user_id = ? AND session_id = ?"),
+    // Sessions whose every mark went with removed subjects; nothing is left of them to fold
+    MARK_EMPTY_FOLDED("UPDATE session_ledger l SET folded = 1 WHERE l.user_id = ? AND l.folded = 0 AND NOT EXISTS " +
+                      "(SELECT 1 FROM attendance_event e WHERE e.user_id = l.user_id AND e.session_id = l.session_id)"),
+    SELECT_STATS("SELECT s.subject_id, s.name, NVL(t.attended_count,0) as attended, " +
+                 "NVL(t.lectures_taken_so_far,0) as taken, NVL(t.target_total_lectures,0) as target, t.attendance_bits " +
+                 "FROM timetable t JOIN subject s ON s.subject_id = t.subject_id " +
+                 "WHERE t.user_id = ? ORDER BY s.name", Sql.TIMETABLE_ROWS),
+    // Primary key order: grouped by user without sorting on the strings
+    SELECT_ALL_COUNTERS("SELECT u.sapid, s.subject_id, s.name, NVL(t.attended_count,0) as attended, " +
+                        "NVL(t.lectures_taken_so_far,0) as taken, NVL(t.target_total_lectures,0) as target " +
+                        "FROM timetable t JOIN users u ON u.user_id = t.user_id " +
+                        "JOIN subject s ON s.subject_id = t.subject_id ORDER BY t.user_id, t.subject_id", 1000),
+    DELETE_EVENTS("DELETE FROM attendance_event WHERE user_id = ?"),
+    DELETE_LEDGER("DELETE FROM session_ledger WHERE user_id = ?"),
+    TOUCH_USER("UPDATE users SET change_seq = users_change_seq.NEXTVAL WHERE user_id = ?"),
+    // Saves only insert, so the count of ledger rows (a range of its primary key index) tells them apart
+    CHANGE_TOKEN("SELECT u.change_seq, (SELECT COUNT(*) FROM session_ledger l WHERE l.user_id = u.user_id) AS sessions " +
+                 "FROM users u WHERE u.user_id = ?"),
+    RESET_COUNTERS("UPDATE timetable SET attended_count = 0, lectures_taken_so_far = 0, last_event_id = 0, attendance_bits = NULL " +
+                   "WHERE user_id = ?");
+
+    private final String sql;
+    private final int fetchSize;
+
+    NamedQuery(String sql) {
+        this(sql, 0);
+    }
+
+    NamedQuery(String sql, int defaultFetchSize) {
+        this.sql = sql;
+        this.fetchSize = Integer.getInteger("attendance.query." + name() + ".fetchSize", defaultFetchSize);
+    }
+
+    /** The statement in Oracle syntax. */
+    public String getSql() {
+        return sql;
+    }
+
+    /** Rows per round trip for this query's results; 0 for the driver's default. */
+    public int getFetchSize() {
+        return fetchSize;
+    }
+
+    // Shared fragments; a nested class because enum constants cannot refer to the enum's own static fields
+    private static final class Sql {
+        // More subjects than any one student takes, so a timetable arrives in one round trip
+        static final int TIMETABLE_ROWS = 64;
+
+        // A timetable row's counters and bitmap, joined below to its events
+        static final String ROW_EVENTS = "SELECT t.user_id, t.subject_id, t.attended_count, t.lectures_taken_so_far, " +
+                                         "t.last_event_id, t.attendance_bits, e.event_id, e.session_id, e.present FROM timetable t ";
+    }
+}
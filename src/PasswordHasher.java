@@ -0,0 +1,125 @@
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+
+/**
+ * Salted PBKDF2 (HMAC-SHA256) password hashes, stored as
+ * {@code pbkdf2_sha256$<iterations>$<salt>$<hash>} (salt and hash Base64).
+ *
+ * The iteration count is the cost knob ({@code -Dattendance.password.iterations}); hashes made
+ * with fewer iterations, and plaintext passwords left by installs from before hashing, still
+ * verify but are reported by {@link #needsRehash} so they can be upgraded at the next login.
+ * Thread-safe and stateless apart from the shared {@link SecureRandom}; the CPU cost is bounded
+ * by {@link PasswordService}, not here.
+ */
+public final class PasswordHasher {
+
+    private static final String ALGORITHM = "PBKDF2WithHmacSHA256";
+    private static final String PREFIX = "pbkdf2_sha256";
+    private static final int SALT_BYTES = 16;
+    private static final int HASH_BITS = 256;
+
+    public static final int DEFAULT_ITERATIONS = Integer.getInteger("attendance.password.iterations", 210_000);
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private final int iterations;
+
+    public PasswordHasher() {
+        this(DEFAULT_ITERATIONS);
+    }
+
+    public PasswordHasher(int iterations) {
+        if (iterations < 1) {
+            throw new IllegalArgumentException("iterations must be positive: " + iterations);
+        }
+        this.iterations = iterations;
+    }
+
+    public int getIterations() {
+        return iterations;
+    }
+
+    /** Hashes {@code password} with a fresh random salt. */
+    public String hash(String password) {
+        byte[] salt = new byte[SALT_BYTES];
+        RANDOM.nextBytes(salt);
+        Base64.Encoder base64 = Base64.getEncoder().withoutPadding();
+        return PREFIX + '$' + iterations + '$' + base64.encodeToString(salt) + '$'
+                + base64.encodeToString(pbkdf2(password, salt, iterations, HASH_BITS));
+    }
+
+    /**
+     * Checks {@code password} against a stored value: a hash produced by {@link #hash} (with any
+     * iteration count), or a legacy plaintext password. Comparison is constant-time.
+     */
+    public boolean verify(String password, String stored) {
+        if (stored == null) {
+            return false;
+        }
+        Parsed parsed = parse(stored);
+        if (parsed == null) {
+            // Legacy plaintext row
+            return MessageDigest.isEqual(password.getBytes(StandardCharsets.UTF_8), stored.getBytes(StandardCharsets.UTF_8));
+        }
+        byte[] actual = pbkdf2(password, parsed.salt, parsed.iterations, parsed.hash.length * 8);
+        return MessageDigest.isEqual(actual, parsed.hash);
+    }
+
+    /** True if {@code stored} is plaintext or was hashed with a lower cost than this hasher's. */
+    public boolean needsRehash(String stored) {
+        Parsed parsed = parse(stored);
+        return parsed == null || parsed.iterations < iterations;
+    }
+
+    /** True if {@code stored} is a hash in this class's format (as opposed to a plaintext password). */
+    public static boolean isHash(String stored) {
+        return parse(stored) != null;
+    }
+
+    private static byte[] pbkdf2(String password, byte[] salt, int iterations, int bits) {
+        PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), salt, iterations, bits);
+        try {
+            return SecretKeyFactory.getInstance(ALGORITHM).generateSecret(spec).getEncoded();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(ALGORITHM + " is not available in this JRE", e);
+        } finally {
+            spec.clearPassword();
+        }
+    }
+
+    private static Parsed parse(String stored) {
+        if (stored == null || !stored.startsWith(PREFIX + '$')) {
+            return null;
+        }
+        String[] parts = stored.split("\\$");
+        if (parts.length != 4) {
+            return null;
+        }
+        try {
+            int iterations = Integer.parseInt(parts[1]);
+            byte[] salt = Base64.getDecoder().decode(parts[2]);
+            byte[] hash = Base64.getDecoder().decode(parts[3]);
+            return iterations > 0 && salt.length > 0 && hash.length > 0 ? new Parsed(iterations, salt, hash) : null;
+        } catch (IllegalArgumentException e) {
+            return null; // Not a number / not Base64: treat as plaintext
+        }
+    }
+
+    private static final class Parsed {
+        final int iterations;
+        final byte[] salt;
+        final byte[] hash;
+
+        Parsed(int iterations, byte[] salt, byte[] hash) {
+            this.iterations = iterations;
+            this.salt = salt;
+            this.hash = hash;
+        }
+    }
+}
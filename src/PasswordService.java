@@ -0,0 +1,158 @@
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs password hashing and verification on a dedicated, bounded worker pool so that a burst of
+ * logins cannot take every CPU away from the rest of the application.
+ *
+ * The pool has one thread per core ({@code -Dattendance.password.threads}) and a bounded queue
+ * ({@code -Dattendance.password.queueCapacity}). When the queue is full, callers are held back
+ * for up to {@code -Dattendance.password.queueTimeoutMs} waiting for space (backpressure), then
+ * rejected with a {@link RejectedExecutionException} rather than piling up unbounded work.
+ * Callers block until their own result is ready; an interrupted caller gets a
+ * {@link CancellationException} (with its interrupt flag kept) and its queued work is dropped.
+ *
+ * A login for a SAP ID that has no account is checked against a dummy hash
+ * ({@link #verifyUnknownUser}), so it takes as long as a wrong password for an existing one.
+ */
+public final class PasswordService {
+
+    private static final int THREADS = Integer.getInteger("attendance.password.threads",
+            Runtime.getRuntime().availableProcessors());
+    private static final int QUEUE_CAPACITY = Integer.getInteger("attendance.password.queueCapacity", 64);
+    private static final long QUEUE_TIMEOUT_MS = Long.getLong("attendance.password.queueTimeoutMs", 2_000L);
+
+    private static volatile PasswordService instance;
+
+    private final PasswordHasher hasher;
+    private final ThreadPoolExecutor executor;
+    // Hash of a random password at the hasher's iteration count; the first task on the pool
+    private final Future<String> dummyHash;
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+
+    /** Returns the shared service, creating it on first use. */
+    public static PasswordService getInstance() {
+        PasswordService service = instance;
+        if (service == null) {
+            synchronized (PasswordService.class) {
+                service = instance;
+                if (service == null) {
+                    service = new PasswordService(new PasswordHasher(), THREADS, QUEUE_CAPACITY, QUEUE_TIMEOUT_MS);
+                    instance = service;
+                }
+            }
+        }
+        return service;
+    }
+
+    /**
+     * @param threads        worker threads, normally one per core
+     * @param queueCapacity  requests allowed to wait for a worker
+     * @param queueTimeoutMs how long a caller may wait for queue space before being rejected
+     */
+    public PasswordService(PasswordHasher hasher, int threads, int queueCapacity, long queueTimeoutMs) {
+        this.hasher = hasher;
+        this.executor = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                new ThreadFactory() {
+                    private final AtomicInteger count = new AtomicInteger();
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread t = new Thread(r, "password-worker-" + count.incrementAndGet());
+                        t.setDaemon(true);
+                        return t;
+                    }
+                },
+                (task, pool) -> {
+                    // Queue full: hold the caller back for a while before giving up
+                    try {
+                        if (!pool.isShutdown() && pool.getQueue().offer(task, queueTimeoutMs, TimeUnit.MILLISECONDS)) {
+                            return;
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    rejected.incrementAndGet();
+                    throw new RejectedExecutionException("Too many logins are being checked right now. Please try again in a moment.");
+                });
+        this.executor.allowCoreThreadTimeOut(true);
+        this.dummyHash = executor.submit(() -> hasher.hash(UUID.randomUUID().toString()));
+    }
+
+    public PasswordHasher getHasher() {
+        return hasher;
+    }
+
+    /** Hashes a new password on the worker pool. */
+    public String hash(String password) {
+        return call(() -> hasher.hash(password));
+    }
+
+    /** Verifies {@code password} against a stored hash (or legacy plaintext) on the worker pool. */
+    public boolean verify(String password, String stored) {
+        return call(() -> hasher.verify(password, stored));
+    }
+
+    /**
+     * Verifies {@code password} against the dummy hash, for a SAP ID with no account: the same
+     * work on the same pool as {@link #verify}, so the response time does not tell whether the
+     * account exists. The result is always a failed login.
+     */
+    public void verifyUnknownUser(String password) {
+        call(() -> hasher.verify(password, dummyHash.get())); // Submitted first, the dummy hash is done or running
+    }
+
+    /** True if the stored value should be replaced by a fresh {@link #hash} after a successful login. */
+    public boolean needsRehash(String stored) {
+        return hasher.needsRehash(stored);
+    }
+
+    /** Hash/verify operations finished so far. */
+    public long getCompletedCount() {
+        return completed.get();
+    }
+
+    /** Operations turned away because the queue stayed full. */
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+
+    public int getThreads() {
+        return executor.getMaximumPoolSize();
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private <T> T call(Callable<T> work) {
+        Future<T> future = executor.submit(work);
+        try {
+            T result = future.get();
+            completed.incrementAndGet();
+            return result;
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            CancellationException cancelled = new CancellationException("Interrupted while waiting for the password check");
+            cancelled.initCause(e);
+            throw cancelled;
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw new IllegalStateException(cause);
+        }
+    }
+}
@@ -0,0 +1,77 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The {@link NamedQuery} statements as sent to one database: each translated through the
+ * {@link SqlDialect} once, and prepared with its fetch size.
+ *
+ * Statements are prepared by their SQL text, so on a {@link ConnectionPool} connection every
+ * {@link #prepare} after the first is served from that connection's statement cache. {@link #warmUp}
+ * fills those caches at startup, so the first login or save does not pay for parsing.
+ */
+public final class QueryRegistry {
+
+    private static final Log LOG = Log.get(QueryRegistry.class);
+
+    private final Map<NamedQuery, String> statements = new EnumMap<>(NamedQuery.class);
+
+    public QueryRegistry(SqlDialect dialect) {
+        for (NamedQuery query : NamedQuery.values()) {
+            statements.put(query, dialect.translate(query.getSql()));
+        }
+    }
+
+    /** The query's SQL as sent to this database. */
+    public String sql(NamedQuery query) {
+        return statements.get(query);
+    }
+
+    /** Prepares the query on {@code conn}, with its fetch size. Close it when done, as any statement. */
+    public PreparedStatement prepare(Connection conn, NamedQuery query) throws SQLException {
+        PreparedStatement pstmt = conn.prepareStatement(statements.get(query));
+        if (query.getFetchSize() > 0) {
+            pstmt.setFetchSize(query.getFetchSize());
+        }
+        return pstmt;
+    }
+
+    /**
+     * Prepares every query on {@code count} connections held at the same time, so that many
+     * distinct pooled connections end up with warm statement caches. Queries are also described,
+     * which makes drivers that parse lazily (Oracle) parse them on the server now. Failures are
+     * logged and leave the rest to be prepared on first use.
+     *
+     * @return number of connections warmed
+     */
+    public int warmUp(JdbcAttendanceRepository.ConnectionSource source, int count) {
+        long start = System.nanoTime();
+        List<Connection> held = new ArrayList<>(count);
+        try {
+            for (int i = 0; i < count; i++) {
+                Connection conn = source.getConnection();
+                held.add(conn);
+                for (NamedQuery query : NamedQuery.values()) {
+                    try (PreparedStatement pstmt = prepare(conn, query)) {
+                        if (query.getSql().startsWith("SELECT")) {
+                            pstmt.getMetaData();
+                        }
+                    }
+                }
+            }
+            LOG.info("Prepared statements warmed", "connections", held.size(), "statements", statements.size(),
+                    "ms", (System.nanoTime() - start) / 1_000_000);
+        } catch (SQLException | RuntimeException e) {
+            LOG.warn("Statement warm-up stopped early", "connections", held.size(), "reason", e.getMessage());
+        } finally {
+            for (Connection conn : held) {
+                try { conn.close(); } catch (SQLException ignored) {}
+            }
+        }
+        return held.size();
+    }
+}
@@ -0,0 +1,135 @@
+import java.awt.Color;
+import java.awt.Component;
+import java.awt.Cursor;
+import java.awt.Dimension;
+import java.awt.Font;
+
+import javax.swing.AbstractCellEditor;
+import javax.swing.JRadioButton;
+import javax.swing.JTable;
+import javax.swing.ListSelectionModel;
+import javax.swing.SwingConstants;
+import javax.swing.border.EmptyBorder;
+import javax.swing.table.DefaultTableCellRenderer;
+import javax.swing.table.TableCellEditor;
+import javax.swing.table.TableCellRenderer;
+
+/**
+ * JTable for an {@link AttendanceRosterModel}. Present/Absent cells are painted by one shared
+ * radio-button renderer and edited by one shared radio-button editor, so no Swing components
+ * are created per row no matter how long the roster is.
+ */
+public class RosterTable extends JTable {
+
+    private static final long serialVersionUID = 1L;
+
+    public RosterTable(AttendanceRosterModel model, Font labelFont, Font cellFont, Color background, Color text, Color grid) {
+        super(model);
+        setRowHeight(40);
+        setShowVerticalLines(false);
+        setGridColor(grid);
+        setBackground(background);
+        setForeground(text);
+        setFont(cellFont);
+        setFillsViewportHeight(true);
+        setRowSelectionAllowed(false);
+        setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        getTableHeader().setReorderingAllowed(false);
+        getTableHeader().setFont(labelFont);
+        setIntercellSpacing(new Dimension(0, 1));
+
+        EmptyBorder labelPadding = new EmptyBorder(0, 15, 0, 15);
+        getColumnModel().getColumn(AttendanceRosterModel.COLUMN_LABEL).setCellRenderer(new DefaultTableCellRenderer() {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            public Component getTableCellRendererComponent(JTable table, Object value, boolean isSelected,
+                                                           boolean hasFocus, int row, int column) {
+                super.getTableCellRendererComponent(table, value, false, false, row, column);
+                setFont(labelFont);
+                setBorder(labelPadding);
+                return this;
+            }
+        });
+        getColumnModel().getColumn(AttendanceRosterModel.COLUMN_LABEL).setPreferredWidth(300);
+
+        getColumnModel().getColumn(AttendanceRosterModel.COLUMN_SUMMARY).setCellRenderer(new DefaultTableCellRenderer() {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            public Component getTableCellRendererComponent(JTable table, Object value, boolean isSelected,
+                                                           boolean hasFocus, int row, int column) {
+                super.getTableCellRendererComponent(table, value, false, false, row, column);
+                setForeground(Color.GRAY);
+                setBorder(labelPadding);
+                return this;
+            }
+        });
+        getColumnModel().getColumn(AttendanceRosterModel.COLUMN_SUMMARY).setPreferredWidth(130);
+
+        RadioRenderer renderer = new RadioRenderer(cellFont, background);
+        RadioEditor editor = new RadioEditor(cellFont, background);
+        for (int column : new int[]{AttendanceRosterModel.COLUMN_PRESENT, AttendanceRosterModel.COLUMN_ABSENT}) {
+            getColumnModel().getColumn(column).setCellRenderer(renderer);
+            getColumnModel().getColumn(column).setCellEditor(editor);
+            getColumnModel().getColumn(column).setPreferredWidth(110);
+        }
+    }
+
+    /** Stops any in-progress cell edit, e.g. before reading or clearing the marks. */
+    public void finishEditing() {
+        if (isEditing()) {
+            getCellEditor().stopCellEditing();
+        }
+    }
+
+    private static JRadioButton newRadio(String text, Font font, Color background) {
+        JRadioButton radio = new JRadioButton(text);
+        radio.setFont(font);
+        radio.setBackground(background);
+        radio.setFocusPainted(false);
+        radio.setHorizontalAlignment(SwingConstants.LEFT);
+        radio.setCursor(Cursor.getPredefinedCursor(Cursor.HAND_CURSOR));
+        return radio;
+    }
+
+    // --- Shared renderer: one JRadioButton stamps every visible Present/Absent cell ---
+    private static final class RadioRenderer implements TableCellRenderer {
+        private final JRadioButton radio;
+
+        RadioRenderer(Font font, Color background) {
+            radio = newRadio("", font, background);
+        }
+
+        @Override
+        public Component getTableCellRendererComponent(JTable table, Object value, boolean isSelected,
+                                                       boolean hasFocus, int row, int column) {
+            radio.setText(table.getColumnName(column));
+            radio.setSelected(Boolean.TRUE.equals(value));
+            return radio;
+        }
+    }
+
+    // --- Shared editor: a click on a cell selects that choice and ends the edit immediately ---
+    private static final class RadioEditor extends AbstractCellEditor implements TableCellEditor {
+        private static final long serialVersionUID = 1L;
+        private final JRadioButton radio;
+
+        RadioEditor(Font font, Color background) {
+            radio = newRadio("", font, background);
+            radio.addActionListener(e -> stopCellEditing());
+        }
+
+        @Override
+        public Component getTableCellEditorComponent(JTable table, Object value, boolean isSelected, int row, int column) {
+            radio.setText(table.getColumnName(column));
+            radio.setSelected(true);
+            return radio;
+        }
+
+        @Override
+        public Object getCellEditorValue() {
+            return Boolean.TRUE;
+        }
+    }
+}
@@ -0,0 +1,344 @@
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Brings the database schema up to date from an ordered list of versioned migrations,
+ * recording each applied one in a {@code schema_version} table.
+ *
+ * When the schema is already current, the check is one indexed read: the highest applied
+ * version and its checksum. Only when migrations are pending are the checksums of all applied
+ * migrations verified (an edited migration is an error, not a silent drift) and the missing
+ * ones run, in version order, each recorded as soon as it has finished.
+ *
+ * DDL commits on its own (on Oracle and H2 alike), so a migration cannot be rolled back as a
+ * whole. Its progress is recorded after every statement in {@code schema_version_progress}
+ * instead, in the transaction of a data statement; a migration that failed resumes at the
+ * statement that failed once the cause is fixed, and no statement before it runs twice.
+ */
+public final class SchemaMigrator {
+
+    private static final Log LOG = Log.get(SchemaMigrator.class);
+
+    static final String CREATE_VERSION_TABLE_SQL = "CREATE TABLE schema_version ( " +
+                                                   "  version NUMBER(10) NOT NULL, " +
+                                                   "  description VARCHAR2(200) NOT NULL, " +
+                                                   "  checksum NUMBER(19) NOT NULL, " +
+                                                   "  installed_on TIMESTAMP DEFAULT SYSTIMESTAMP NOT NULL, " +
+                                                   "  CONSTRAINT pk_schema_version PRIMARY KEY (version) " +
+                                                   ")";
+    // Both lookups are satisfied by the primary key index
+    static final String CURRENT_VERSION_SQL = "SELECT version, checksum FROM schema_version " +
+                                              "WHERE version = (SELECT MAX(version) FROM schema_version)";
+    static final String APPLIED_VERSIONS_SQL = "SELECT version, checksum FROM schema_version ORDER BY version";
+    static final String RECORD_VERSION_SQL = "INSERT INTO schema_version (version, description, checksum) VALUES (?, ?, ?)";
+    // Statements done of a migration not yet recorded; the row goes when the migration is
+    static final String CREATE_PROGRESS_TABLE_SQL = "CREATE TABLE schema_version_progress ( " +
+                                                    "  version NUMBER(10) NOT NULL, " +
+                                                    "  steps_done NUMBER(5) NOT NULL, " +
+                                                    "  CONSTRAINT pk_schema_version_progress PRIMARY KEY (version) " +
+                                                    ")";
+    static final String READ_PROGRESS_SQL = "SELECT steps_done FROM schema_version_progress WHERE version = ?";
+    static final String START_PROGRESS_SQL = "INSERT INTO schema_version_progress (version, steps_done) VALUES (?, 0)";
+    static final String UPDATE_PROGRESS_SQL = "UPDATE schema_version_progress SET steps_done = ? WHERE version = ?";
+    static final String DELETE_PROGRESS_SQL = "DELETE FROM schema_version_progress WHERE version = ?";
+
+    private final SqlDialect dialect;
+    private final List<Migration> migrations;
+
+    /**
+     * @param migrations the full schema history; versions must be unique and ascending
+     */
+    public SchemaMigrator(SqlDialect dialect, List<Migration> migrations) {
+        if (migrations.isEmpty()) {
+            throw new IllegalArgumentException("At least one migration is required");
+        }
+        for (int i = 1; i < migrations.size(); i++) {
+            if (migrations.get(i).version <= migrations.get(i - 1).version) {
+                throw new IllegalArgumentException("Migration versions must be ascending: V"
+                        + migrations.get(i - 1).version + " is followed by V" + migrations.get(i).version);
+            }
+        }
+        this.dialect = dialect;
+        this.migrations = Collections.unmodifiableList(new ArrayList<>(migrations));
+    }
+
+    /** Version the schema will be at once {@link #migrate} has succeeded. */
+    public int getLatestVersion() {
+        return latest().version;
+    }
+
+    /**
+     * Applies pending migrations, if any.
+     *
+     * @return number of migrations applied; 0 when the schema was already current
+     * @throws SQLException if a migration fails, or the recorded history does not match this application's
+     */
+    public int migrate(Connection conn) throws SQLException {
+        Migration latest = latest();
+        long[] current = readCurrentVersion(conn);
+        if (current != null && current[0] == latest.version) {
+            if (current[1] != latest.checksum) {
+                throw checksumMismatch(latest, current[1]);
+            }
+            LOG.info("Database schema is current", "version", latest.version);
+            return 0;
+        }
+        if (current != null && current[0] > latest.version) {
+            throw new SQLException("Database schema is at V" + current[0] + ", newer than this application supports (V"
+                    + latest.version + "). Please update the application.");
+        }
+        if (current == null) {
+            createTable(conn, CREATE_VERSION_TABLE_SQL, "schema_version");
+        }
+        createTable(conn, CREATE_PROGRESS_TABLE_SQL, "schema_version_progress");
+
+        // Pending work: verify the recorded history before changing anything
+        Map<Integer, Long> applied = readAppliedVersions(conn);
+        for (Map.Entry<Integer, Long> entry : applied.entrySet()) {
+            Migration migration = find(entry.getKey());
+            if (migration == null) {
+                throw new SQLException("Database schema has V" + entry.getKey() + ", which this application does not know.");
+            }
+            if (migration.checksum != entry.getValue()) {
+                throw checksumMismatch(migration, entry.getValue());
+            }
+        }
+
+        int count = 0;
+        boolean autoCommit = conn.getAutoCommit();
+        conn.setAutoCommit(false); // A data statement commits together with its progress
+        try {
+            for (Migration migration : migrations) {
+                if (!applied.containsKey(migration.version)) {
+                    apply(conn, migration);
+                    count++;
+                }
+            }
+        } finally {
+            conn.setAutoCommit(autoCommit);
+        }
+        LOG.info("Database schema migrated", "version", latest.version, "applied", count);
+        return count;
+    }
+
+    /**
+     * Records migrations up to {@code version} as applied without running them, for a database
+     * whose schema was created by hand at that version. Only allowed while nothing is recorded.
+     *
+     * @return number of migrations recorded
+     * @throws SQLException if migrations are already recorded, or {@code version} is not a known one
+     */
+    public int baseline(Connection conn, int version) throws SQLException {
+        if (find(version) == null) {
+            throw new SQLException("V" + version + " is not a migration of this application (latest is V" + latest().version + ").");
+        }
+        if (readCurrentVersion(conn) != null) {
+            throw new SQLException("Database schema already has recorded migrations; a baseline is only for unversioned schemas.");
+        }
+        createTable(conn, CREATE_VERSION_TABLE_SQL, "schema_version");
+        int count = 0;
+        for (Migration migration : migrations) {
+            if (migration.version <= version) {
+                record(conn, migration);
+                count++;
+            }
+        }
+        if (!conn.getAutoCommit()) {
+            conn.commit();
+        }
+        LOG.info("Database schema baselined", "version", version, "recorded", count);
+        return count;
+    }
+
+    /** @return {version, checksum} of the newest applied migration, or null if none is recorded yet */
+    private long[] readCurrentVersion(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(CURRENT_VERSION_SQL)) {
+            return rs.next() ? new long[]{rs.getLong("version"), rs.getLong("checksum")} : null;
+        } catch (SQLException e) {
+            if (dialect.isMissingTable(e)) {
+                return null; // Fresh database, or one set up before versioning
+            }
+            throw e;
+        }
+    }
+
+    private Map<Integer, Long> readAppliedVersions(Connection conn) throws SQLException {
+        Map<Integer, Long> applied = new LinkedHashMap<>();
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(APPLIED_VERSIONS_SQL)) {
+            while (rs.next()) {
+                applied.put(rs.getInt("version"), rs.getLong("checksum"));
+            }
+        }
+        return applied;
+    }
+
+    private void createTable(Connection conn, String sql, String table) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute(dialect.translate(sql));
+            LOG.info("Created migration bookkeeping table", "table", table);
+        } catch (SQLException e) {
+            if (!dialect.isObjectAlreadyExists(e)) {
+                throw e;
+            }
+            // Created concurrently by another instance starting up
+        }
+    }
+
+    /** Runs the migration's statements from where an earlier attempt stopped, then records it. Called without auto-commit. */
+    private void apply(Connection conn, Migration migration) throws SQLException {
+        int done = readProgress(conn, migration.version);
+        boolean resumed = done >= 0;
+        if (resumed) {
+            LOG.warn("Resuming migration", "version", migration.version, "description", migration.description,
+                    "step", done + 1, "steps", migration.statements.size());
+        } else {
+            LOG.info("Applying migration", "version", migration.version, "description", migration.description);
+            done = 0;
+            try (PreparedStatement start = conn.prepareStatement(START_PROGRESS_SQL)) {
+                start.setInt(1, migration.version);
+                start.executeUpdate();
+            }
+            conn.commit();
+        }
+        try (Statement stmt = conn.createStatement();
+             PreparedStatement progress = conn.prepareStatement(UPDATE_PROGRESS_SQL)) {
+            for (int step = done; step < migration.statements.size(); step++) {
+                String translated = dialect.translate(migration.statements.get(step));
+                try {
+                    stmt.execute(translated);
+                } catch (SQLException e) {
+                    rollbackQuietly(conn);
+                    // Installs set up before versioning already have some of a baseline's objects; and the
+                    // first statement resumed may be DDL that committed just before the last attempt stopped
+                    if ((migration.baseline || resumed && step == done) && dialect.isObjectAlreadyExists(e)) {
+                        LOG.info("Already present, skipped", "statement", abbreviate(translated));
+                    } else {
+                        throw new SQLException("Migration V" + migration.version + " failed at statement " + (step + 1)
+                                + " of " + migration.statements.size() + ": " + abbreviate(translated) + " (" + e.getMessage()
+                                + "). Statements before it are done; fix the cause and start again to resume here"
+                                + " (see \"If a migration fails\" in README.md).", e.getSQLState(), e.getErrorCode(), e);
+                    }
+                }
+                progress.setInt(1, step + 1);
+                progress.setInt(2, migration.version);
+                progress.executeUpdate();
+                conn.commit();
+            }
+        }
+        try (PreparedStatement finish = conn.prepareStatement(DELETE_PROGRESS_SQL)) {
+            record(conn, migration);
+            finish.setInt(1, migration.version);
+            finish.executeUpdate();
+            conn.commit();
+        } catch (SQLException e) {
+            rollbackQuietly(conn);
+            if (!dialect.isDuplicateKey(e)) {
+                throw e;
+            }
+            // Its statements ran here as well, so any data statement among them may have run twice
+            throw new SQLException("Migration V" + migration.version + " was also applied by another instance at the same time. "
+                    + "Check the data it changes, and upgrade with a single instance running.", e.getSQLState(), e.getErrorCode(), e);
+        }
+    }
+
+    private void record(Connection conn, Migration migration) throws SQLException {
+        try (PreparedStatement record = conn.prepareStatement(RECORD_VERSION_SQL)) {
+            record.setInt(1, migration.version);
+            record.setString(2, migration.description);
+            record.setLong(3, migration.checksum);
+            record.executeUpdate();
+        }
+    }
+
+    /** @return statements done by an earlier, unfinished attempt at the migration; -1 if none was made */
+    private static int readProgress(Connection conn, int version) throws SQLException {
+        try (PreparedStatement read = conn.prepareStatement(READ_PROGRESS_SQL)) {
+            read.setInt(1, version);
+            try (ResultSet rs = read.executeQuery()) {
+                return rs.next() ? rs.getInt(1) : -1;
+            }
+        }
+    }
+
+    private static void rollbackQuietly(Connection conn) {
+        try { conn.rollback(); } catch (SQLException e_rb) { LOG.warn("Rollback failed", "reason", e_rb.getMessage()); }
+    }
+
+    private Migration latest() {
+        return migrations.get(migrations.size() - 1);
+    }
+
+    private Migration find(int version) {
+        for (Migration migration : migrations) {
+            if (migration.version == version) return migration;
+        }
+        return null;
+    }
+
+    private static SQLException checksumMismatch(Migration migration, long recorded) {
+        return new SQLException("Migration V" + migration.version + " (" + migration.description + ") was changed after it "
+                + "was applied (checksum " + recorded + " recorded, " + migration.checksum + " now). "
+                + "Add a new migration instead of editing an applied one.");
+    }
+
+    private static String abbreviate(String sql) {
+        return sql.length() > 80 ? sql.substring(0, 80) + "..." : sql;
+    }
+
+    /** One schema change: statements run in order, identified by version and checksum. Immutable. */
+    public static final class Migration {
+        private final int version;
+        private final String description;
+        private final boolean baseline;
+        private final List<String> statements;
+        private final long checksum;
+
+        private Migration(int version, String description, boolean baseline, String... statements) {
+            this.version = version;
+            this.description = description;
+            this.baseline = baseline;
+            this.statements = Collections.unmodifiableList(Arrays.asList(statements));
+            CRC32 crc = new CRC32();
+            for (String sql : statements) {
+                crc.update(sql.getBytes(StandardCharsets.UTF_8));
+                crc.update('\n');
+            }
+            this.checksum = crc.getValue();
+        }
+
+        /** A regular migration: any failing statement fails it. */
+        public static Migration of(int version, String description, String... statements) {
+            return new Migration(version, description, false, statements);
+        }
+
+        /**
+         * A migration describing objects that installs from before versioning may already have;
+         * statements failing only because their object exists are skipped.
+         */
+        public static Migration baseline(int version, String description, String... statements) {
+            return new Migration(version, description, true, statements);
+        }
+
+        public int getVersion() { return version; }
+        public String getDescription() { return description; }
+        public long getChecksum() { return checksum; }
+
+        @Override
+        public String toString() {
+            return "Migration [V" + version + " " + description + ", checksum=" + checksum + "]";
+        }
+    }
+}
@@ -0,0 +1,440 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Local, memory-mapped write-ahead journal of attendance sessions that have not reached the
+ * database yet. Appending a session is a copy into the mapped file, so it costs microseconds and
+ * survives a crash of the application (the pages belong to the OS); a flusher thread forces dirty
+ * pages to disk every {@code -Dattendance.journal.flushMs} so a batch of saves shares one fsync.
+ *
+ * <pre>
+ * header (64 bytes):  magic, version, head, replayed
+ * record:             length, crc32, position, payload (sapid, sessionId, subjects + marks)
+ * </pre>
+ * Positions are logical byte offsets that only ever grow; {@code head} is the logical position
+ * stored at the start of the record area. Records before {@code replayed} have been written to the
+ * database. When every record has been replayed, or when the area is full and the records still
+ * waiting fit into the replayed part, the area is reused from the start by moving {@code head}
+ * (after copying those records there); stale records left behind carry an older position than the one expected, so
+ * recovery (a scan from {@code replayed} that stops at the first record whose position or
+ * checksum does not match) never mistakes them for new ones.
+ *
+ * The (sapid, sessionId) pair is the idempotency key: the replayer relies on the database's
+ * unique session index to skip a session that was already written before a crash, and the
+ * journal refuses a key that is still waiting to be replayed or was replayed recently (the last
+ * {@code -Dattendance.journal.recentSessions} in this process, default 4096), so a retry is
+ * refused as it would be without the journal. An older retry is journaled and then dropped by
+ * the replayer when the database reports the duplicate.
+ *
+ * Only one process may use a journal file; {@link #open} fails if another one holds it.
+ */
+public final class SessionJournal implements AutoCloseable {
+
+    private static final Log LOG = Log.get(SessionJournal.class);
+    public static final String FILE = System.getProperty("attendance.journal.file", "attendance-data/sessions.journal");
+    private static final int SIZE_KB = Integer.getInteger("attendance.journal.sizeKb", 4096);
+    private static final long FLUSH_MS = Long.getLong("attendance.journal.flushMs", 10L);
+    private static final int RECENT_SESSIONS = Integer.getInteger("attendance.journal.recentSessions", 4096);
+
+    private static final int MAGIC = 0x414A4E4C; // "AJNL"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 64;
+    private static final int HEAD_OFFSET = 8;
+    private static final int REPLAYED_OFFSET = 16;
+    private static final int RECORD_HEADER = 16; // length, crc32, position
+
+    /** One journaled session, as handed to the replayer. */
+    public static final class Entry {
+        private final long end;
+        private final String sapid;
+        private final String sessionId;
+        private final List<String> subjects;
+        private final boolean[] present;
+
+        Entry(long end, String sapid, String sessionId, List<String> subjects, boolean[] present) {
+            this.end = end;
+            this.sapid = sapid;
+            this.sessionId = sessionId;
+            this.subjects = subjects;
+            this.present = present;
+        }
+
+        public String getSapid() { return sapid; }
+        public String getSessionId() { return sessionId; }
+        public List<String> getSubjects() { return subjects; }
+        public boolean[] getPresent() { return present; }
+
+        @Override
+        public String toString() {
+            return sapid + "/" + sessionId + " " + subjects;
+        }
+    }
+
+    private final File file;
+    private final RandomAccessFile raf;
+    private final FileLock lock;
+    private final MappedByteBuffer buffer;
+    private final int capacity;
+    private final ScheduledExecutorService flusher;
+
+    // Guarded by this
+    private long head;
+    private long replayed;
+    private long written;
+    private int pendingCount;
+    private boolean dirty;
+    private final Set<String> pendingKeys = new HashSet<>();
+    // Keys of sessions replayed into the database, oldest dropped first
+    private final Map<String, Boolean> savedKeys = new LinkedHashMap<String, Boolean>(16, 0.75f, false) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+            return size() > RECENT_SESSIONS;
+        }
+    };
+
+    /** Opens (or creates) the journal at {@link #FILE}. */
+    public static SessionJournal open() throws IOException {
+        return new SessionJournal(new File(FILE), SIZE_KB * 1024, FLUSH_MS);
+    }
+
+    /**
+     * @param sizeBytes size of a new journal file; an existing larger file keeps its size
+     * @param flushMs   how often dirty pages are forced to disk, 0 to force on every append
+     */
+    public SessionJournal(File file, int sizeBytes, long flushMs) throws IOException {
+        this.file = file;
+        File dir = file.getAbsoluteFile().getParentFile();
+        if (dir != null && !dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Cannot create journal directory " + dir);
+        }
+        this.raf = new RandomAccessFile(file, "rw");
+        FileChannel channel = raf.getChannel();
+        FileLock acquired;
+        try {
+            acquired = channel.tryLock();
+        } catch (IOException | RuntimeException e) {
+            raf.close();
+            throw e;
+        }
+        if (acquired == null) {
+            raf.close();
+            throw new IOException("Journal " + file + " is in use by another process");
+        }
+        this.lock = acquired;
+        this.capacity = (int) Math.max(channel.size(), Math.max(sizeBytes, HEADER_SIZE + 4096));
+        this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+        recover();
+
+        if (flushMs > 0) {
+            this.flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "journal-flusher");
+                t.setDaemon(true);
+                return t;
+            });
+            this.flusher.scheduleWithFixedDelay(this::flush, flushMs, flushMs, TimeUnit.MILLISECONDS);
+        } else {
+            this.flusher = null;
+        }
+    }
+
+    // --- Writing ---
+
+    /**
+     * Appends a session. Returns once it is in the mapped file, without waiting for the disk.
+     *
+     * @return false if the journal has no room left for it; the caller must save it another way
+     * @throws IllegalStateException if this (sapid, sessionId) is waiting in the journal or was recently replayed
+     */
+    public synchronized boolean append(String sapid, String sessionId, List<String> subjects, boolean[] present) {
+        String key = key(sapid, sessionId);
+        if (pendingKeys.contains(key)) {
+            throw new IllegalStateException("Session " + sessionId + " for SAPID " + sapid + " is already waiting in the journal");
+        }
+        if (savedKeys.containsKey(key)) {
+            throw new IllegalStateException("Session " + sessionId + " was already saved for SAPID " + sapid);
+        }
+        byte[] payload = encode(sapid, sessionId, subjects, present);
+        int at = physical(written);
+        if (at + RECORD_HEADER + payload.length > capacity) {
+            if (!compact() || (at = physical(written)) + RECORD_HEADER + payload.length > capacity) {
+                return false;
+            }
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(longBytes(written));
+        crc.update(payload);
+        buffer.position(at + RECORD_HEADER);
+        buffer.put(payload);
+        buffer.putLong(at + 8, written);
+        buffer.putInt(at + 4, (int) crc.getValue());
+        buffer.putInt(at, payload.length); // Written last: a torn record fails the checksum anyway
+
+        written += RECORD_HEADER + payload.length;
+        pendingCount++;
+        pendingKeys.add(key);
+        markDirty();
+        return true;
+    }
+
+    /** Returns up to {@code max} sessions that have not been replayed yet, oldest first. */
+    public synchronized List<Entry> pending(int max) {
+        List<Entry> entries = new ArrayList<>();
+        long pos = replayed;
+        while (pos < written && entries.size() < max) {
+            Entry entry = read(pos);
+            entries.add(entry);
+            pos = entry.end;
+        }
+        return entries;
+    }
+
+    /**
+     * Records that a session (and every one before it) is in the database. Once nothing is left
+     * to replay, the record area is reused from the start.
+     */
+    public synchronized void markReplayed(Entry entry) {
+        markDone(entry, true);
+    }
+
+    /** As {@link #markReplayed}, for a session the database refused for good: its key may be saved again. */
+    public synchronized void markRejected(Entry entry) {
+        markDone(entry, false);
+    }
+
+    /** Forgets the replayed sessions of a user whose attendance was reset; their ids are free again. */
+    public synchronized void forgetSaved(String sapid) {
+        String prefix = key(sapid, "");
+        savedKeys.keySet().removeIf(key -> key.startsWith(prefix));
+    }
+
+    private void markDone(Entry entry, boolean saved) {
+        if (entry.end <= replayed) {
+            return;
+        }
+        long pos = replayed;
+        while (pos < entry.end) { // Normally just this entry
+            Entry done = read(pos);
+            String key = key(done.sapid, done.sessionId);
+            pendingKeys.remove(key);
+            if (saved || done.end != entry.end) { // Only the entry itself can be the rejected one
+                savedKeys.put(key, Boolean.TRUE);
+            }
+            pendingCount--;
+            pos = done.end;
+        }
+        replayed = entry.end;
+        buffer.putLong(REPLAYED_OFFSET, replayed);
+        if (replayed == written && head != written) {
+            head = written; // Empty: start again at the beginning of the area
+            buffer.putLong(HEAD_OFFSET, head);
+            buffer.force(); // Appends must not land at the new offsets before the disk knows about them
+            dirty = false;
+        } else {
+            markDirty();
+        }
+    }
+
+    /**
+     * Moves the records still waiting for replay to the start of the area, reclaiming the space of
+     * replayed ones while the replayer lags behind. Only done when the records fit into the
+     * reclaimed space: the copy then never overwrites them, so a crash before {@code head} is
+     * updated still finds them where the old header says. Caller holds the lock.
+     *
+     * @return false if too little has been replayed to make room this way
+     */
+    private boolean compact() {
+        int from = physical(replayed);
+        int live = physical(written) - from;
+        if (from - HEADER_SIZE < live || replayed == head) {
+            return false;
+        }
+        ByteBuffer source = buffer.duplicate();
+        source.position(from);
+        source.limit(from + live);
+        ByteBuffer target = buffer.duplicate();
+        target.position(HEADER_SIZE);
+        target.put(source);
+        buffer.force(); // Copies on disk before the header points at them
+        head = replayed;
+        buffer.putLong(HEAD_OFFSET, head);
+        buffer.force();
+        dirty = false;
+        return true;
+    }
+
+    /** Sessions waiting to be replayed. */
+    public synchronized int getPendingCount() {
+        return pendingCount;
+    }
+
+    /** True if this session is in the journal and not replayed yet. */
+    public synchronized boolean isPending(String sapid, String sessionId) {
+        return pendingKeys.contains(key(sapid, sessionId));
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /** Forces written records to disk, if any were added since the last flush. */
+    public void flush() {
+        synchronized (this) {
+            if (!dirty) return;
+            dirty = false;
+        }
+        buffer.force(); // Outside the lock: appends keep going while the disk catches up
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (flusher != null) {
+            flusher.shutdown();
+        }
+        synchronized (this) {
+            buffer.force();
+            dirty = false;
+        }
+        try {
+            lock.release();
+        } finally {
+            raf.close();
+        }
+    }
+
+    private void markDirty() {
+        if (flusher == null) {
+            buffer.force();
+        } else {
+            dirty = true;
+        }
+    }
+
+    // --- Recovery ---
+
+    private void recover() {
+        if (buffer.getInt(0) != MAGIC) {
+            // New file (all zeros)
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, VERSION);
+            buffer.putLong(HEAD_OFFSET, 0L);
+            buffer.putLong(REPLAYED_OFFSET, 0L);
+            buffer.force();
+        } else if (buffer.getInt(4) != VERSION) {
+            throw new IllegalStateException("Journal " + file + " has unsupported version " + buffer.getInt(4));
+        }
+        head = buffer.getLong(HEAD_OFFSET);
+        replayed = buffer.getLong(REPLAYED_OFFSET);
+        written = replayed;
+        while (true) {
+            Entry entry = tryRead(written);
+            if (entry == null) break;
+            pendingKeys.add(key(entry.sapid, entry.sessionId));
+            pendingCount++;
+            written = entry.end;
+        }
+        if (pendingCount > 0) {
+            LOG.info("Sessions waiting to be replayed", "journal", file, "pending", pendingCount);
+        }
+    }
+
+    private Entry read(long pos) {
+        Entry entry = tryRead(pos);
+        if (entry == null) {
+            throw new IllegalStateException("Journal " + file + " is corrupt at position " + pos);
+        }
+        return entry;
+    }
+
+    /** Decodes the record at a logical position, or returns null if there is no valid one there. */
+    private Entry tryRead(long pos) {
+        int at = physical(pos);
+        if (at < HEADER_SIZE || at + RECORD_HEADER > capacity) {
+            return null;
+        }
+        int length = buffer.getInt(at);
+        if (length <= 0 || at + RECORD_HEADER + length > capacity || buffer.getLong(at + 8) != pos) {
+            return null;
+        }
+        byte[] payload = new byte[length];
+        ByteBuffer view = buffer.duplicate();
+        view.position(at + RECORD_HEADER);
+        view.get(payload);
+        CRC32 crc = new CRC32();
+        crc.update(longBytes(pos));
+        crc.update(payload);
+        if ((int) crc.getValue() != buffer.getInt(at + 4)) {
+            return null;
+        }
+        return decode(pos + RECORD_HEADER + length, payload);
+    }
+
+    private int physical(long pos) {
+        long at = HEADER_SIZE + (pos - head);
+        return at > Integer.MAX_VALUE ? Integer.MAX_VALUE : (int) at;
+    }
+
+    // --- Encoding ---
+
+    private static byte[] encode(String sapid, String sessionId, List<String> subjects, boolean[] present) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + subjects.size() * 24);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeUTF(sapid);
+            out.writeUTF(sessionId);
+            out.writeInt(subjects.size());
+            for (int i = 0; i < subjects.size(); i++) {
+                out.writeUTF(subjects.get(i));
+                out.writeBoolean(present[i]);
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(e); // Cannot happen for an in-memory stream
+        }
+        return bytes.toByteArray();
+    }
+
+    private static Entry decode(long end, byte[] payload) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload))) {
+            String sapid = in.readUTF();
+            String sessionId = in.readUTF();
+            int n = in.readInt();
+            List<String> subjects = new ArrayList<>(n);
+            boolean[] present = new boolean[n];
+            for (int i = 0; i < n; i++) {
+                subjects.add(in.readUTF());
+                present[i] = in.readBoolean();
+            }
+            return new Entry(end, sapid, sessionId, subjects, present);
+        } catch (IOException e) {
+            throw new IllegalStateException("Unreadable journal record ending at " + end, e);
+        }
+    }
+
+    private static byte[] longBytes(long value) {
+        return ByteBuffer.allocate(8).putLong(value).array();
+    }
+
+    private static String key(String sapid, String sessionId) {
+        return sapid + '\u0000' + sessionId;
+    }
+}
@@ -0,0 +1,151 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes every user's attendance counters to a {@link CounterSnapshot} file, once or on a
+ * schedule, and prints institution-wide reports from it ({@link AttendanceAnalytics}).
+ *
+ * The repository is read in one streaming pass ({@link AttendanceRepository#forEachCounter}), so
+ * reports run against the mapped snapshot instead of the database. {@link AttendanceServer}
+ * refreshes the snapshot every {@code -Dattendance.snapshot.intervalMinutes} (0 turns it off).
+ *
+ * Usage:
+ *   java SnapshotExporter export [file]
+ *   java SnapshotExporter report [file] [requiredRatio]   (default -Dattendance.threshold)
+ */
+public final class SnapshotExporter {
+
+    public static final String FILE = System.getProperty("attendance.snapshot.file", "attendance-data/counters.snap");
+    public static final long INTERVAL_MINUTES = Long.getLong("attendance.snapshot.intervalMinutes", 15L);
+    private static final int AT_RISK_SHOWN = 20;
+    private static final Log LOG = Log.get(SnapshotExporter.class);
+
+    private final AttendanceRepository repository;
+    private final Path file;
+    private ScheduledExecutorService scheduler;
+
+    public SnapshotExporter(AttendanceRepository repository, Path file) {
+        this.repository = repository;
+        this.file = file;
+    }
+
+    /**
+     * Reads all counters and replaces the snapshot file.
+     *
+     * @return rows written
+     */
+    public int export() throws SQLException, IOException {
+        long start = System.nanoTime();
+        CounterSnapshot.Writer writer = new CounterSnapshot.Writer();
+        repository.forEachCounter(writer::add);
+        writer.writeTo(file);
+        LOG.info("Counter snapshot written", "file", file, "rows", writer.getRowCount(),
+                "ms", (System.nanoTime() - start) / 1_000_000);
+        return writer.getRowCount();
+    }
+
+    /** Exports now and then every {@code intervalMinutes} on a daemon thread, until {@link #stop}. */
+    public synchronized void start(long intervalMinutes) {
+        if (scheduler != null) return;
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "snapshot-exporter");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                export();
+            } catch (SQLException | IOException | RuntimeException e) {
+                // Keep the previous snapshot and try again next time
+                LOG.warn("Counter snapshot export failed", "reason", e.getMessage());
+            }
+        }, 0, intervalMinutes, TimeUnit.MINUTES);
+    }
+
+    public synchronized void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    // --- Command line ---
+
+    public static void main(String[] args) {
+        if (args.length < 1) {
+            printUsage();
+            System.exit(1);
+        }
+        Path file = Paths.get(args.length > 1 ? args[1] : FILE);
+        try {
+            switch (args[0]) {
+                case "export":
+                    new SnapshotExporter(AttendanceRepositories.get(), file).export();
+                    break;
+                case "report":
+                    double ratio = args.length > 2 ? Double.parseDouble(args[2]) : SubjectStats.DEFAULT_REQUIRED_RATIO;
+                    printReport(CounterSnapshot.open(file), ratio);
+                    break;
+                default:
+                    printUsage();
+                    System.exit(1);
+            }
+        } catch (Exception e) {
+            LOG.error("Command failed", e, "command", args[0]);
+            System.exit(2);
+        } finally {
+            if ("export".equals(args[0]) && !AttendanceRepositories.MEMORY.equals(AttendanceRepositories.BACKEND)) {
+                ConnectionPool.getInstance().shutdown();
+            }
+        }
+    }
+
+    private static void printUsage() {
+        System.err.println("Usage:");
+        System.err.println("  SnapshotExporter export [file]");
+        System.err.println("  SnapshotExporter report [file] [requiredRatio]");
+    }
+
+    /** Per-subject distributions and the most critical at-risk students, from {@link AttendanceAnalytics}. */
+    static void printReport(CounterSnapshot snapshot, double requiredRatio) {
+        AttendanceAnalytics analytics = new AttendanceAnalytics();
+        AttendanceAnalytics.Report report;
+        try {
+            report = analytics.analyze(snapshot, requiredRatio);
+        } finally {
+            analytics.shutdown();
+        }
+
+        System.out.printf("%s (taken %tF %<tT), required ratio %.0f%%%n%n", snapshot, snapshot.getCreatedAt(), requiredRatio * 100);
+        System.out.printf(" %-25s | %8s | %6s | %5s | %5s | %5s | %7s | %8s | %6s | %10s%n", "Subject", "Students",
+                "Rate", "p10", "p50", "p90", "Below", "No slack", "Lost", "Can Leave*");
+        System.out.println(" ------------------------------------------------------------------------------------------------------------");
+        for (AttendanceAnalytics.SubjectDistribution s : report.getSubjects()) {
+            System.out.printf(" %-25s | %8d | %6s | %5s | %5s | %5s | %7d | %8d | %6d | %10s%n", s.getSubject(),
+                    s.getStudents(), percent(s.getAttendanceRate()), percent(s.percentile(0.10)),
+                    percent(s.percentile(0.50)), percent(s.percentile(0.90)), s.getBelowRatio(), s.getNoSlack(),
+                    s.getBeyondRecovery(), Double.isNaN(s.getAverageCanLeave()) ? "-" : String.format("%.1f", s.getAverageCanLeave()));
+        }
+        System.out.println(" *Average lectures each student can still miss. 'Lost': the ratio is out of reach.");
+
+        List<AttendanceAnalytics.AtRisk> atRisk = report.getAtRisk(AT_RISK_SHOWN);
+        System.out.printf("%n At risk: %d student-subjects (most critical first)%n", report.getAtRiskCount());
+        for (AttendanceAnalytics.AtRisk r : atRisk) {
+            System.out.printf("   %-15s %-25s %4d / %-4d of %4d  %s%n", r.getSapid(), r.getSubject(), r.getAttended(),
+                    r.getTaken(), r.getTarget(), r.getSlack() < 0 ? "out of reach"
+                            : r.getSlack() == Integer.MAX_VALUE ? "no target" : r.getSlack() + " absences left");
+        }
+        System.out.printf("%n Analyzed %d rows in %.2f ms on %d threads%n", report.getRowCount(),
+                report.getElapsedNanos() / 1e6, report.getParallelism());
+    }
+
+    private static String percent(double ratio) {
+        return Double.isNaN(ratio) ? "-" : String.format("%.0f%%", ratio * 100);
+    }
+}
@@ -0,0 +1,102 @@
+import java.sql.SQLException;
+import java.util.regex.Pattern;
+
+/**
+ * Differences between the SQL databases the JDBC repository can run on.
+ *
+ * Statements are written once, in Oracle syntax; {@link #translate} rewrites the few
+ * Oracle-only constructs the application uses for the embedded engine (H2), and the
+ * error-code checks map each engine's "already exists" / "duplicate key" / "no such table"
+ * codes so DDL scripts and inserts can be retried safely on either.
+ */
+public enum SqlDialect {
+
+    ORACLE {
+        @Override
+        public String translate(String sql) {
+            return sql;
+        }
+
+        @Override
+        public boolean isObjectAlreadyExists(SQLException e) {
+            switch (e.getErrorCode()) {
+                case 955:   // ORA-00955: name is already used by an existing object
+                case 2260:  // ORA-02260: table can have only one primary key
+                case 2264:  // ORA-02264: name already used by an existing constraint
+                case 1442:  // ORA-01442: column to be modified to NOT NULL is already NOT NULL
+                case 1430:  // ORA-01430: column being added already exists in table
+                case 2261:  // ORA-02261: such unique or primary key already exists
+                case 2275:  // ORA-02275: such a referential constraint already exists
+                    return true;
+                default:
+                    return false;
+            }
+        }
+
+        @Override
+        public boolean isDuplicateKey(SQLException e) {
+            return e.getErrorCode() == 1; // ORA-00001: unique constraint violated
+        }
+
+        @Override
+        public boolean isMissingTable(SQLException e) {
+            return e.getErrorCode() == 942; // ORA-00942: table or view does not exist
+        }
+    },
+
+    EMBEDDED {
+        @Override
+        public String translate(String sql) {
+            String translated = NVL.matcher(sql).replaceAll("COALESCE(");
+            translated = NEXTVAL.matcher(translated).replaceAll("NEXT VALUE FOR $1");
+            translated = MODIFY_NOT_NULL.matcher(translated).replaceAll("ALTER COLUMN $1 SET NOT NULL");
+            translated = MODIFY_COLUMN.matcher(translated).replaceAll("ALTER COLUMN $1 SET DATA TYPE $2");
+            return SYSTIMESTAMP.matcher(translated).replaceAll("CURRENT_TIMESTAMP");
+        }
+
+        @Override
+        public boolean isObjectAlreadyExists(SQLException e) {
+            switch (e.getErrorCode()) {
+                case 42101: // Table or view already exists (Oracle 955)
+                case 90035: // Sequence already exists (Oracle 955)
+                case 90017: // Attempt to define a second primary key (Oracle 2260)
+                case 90045: // Constraint already exists (Oracle 2264 / 2261 / 2275)
+                case 42121: // Duplicate column name (Oracle 1430)
+                case 42111: // Index already exists (Oracle 955)
+                    return true;
+                default:
+                    return false;
+            }
+        }
+
+        @Override
+        public boolean isDuplicateKey(SQLException e) {
+            return "23505".equals(e.getSQLState());
+        }
+
+        @Override
+        public boolean isMissingTable(SQLException e) {
+            // Table not found; with close-match suggestions; database has no tables yet (Oracle 942)
+            return e.getErrorCode() == 42102 || e.getErrorCode() == 42103 || e.getErrorCode() == 42104;
+        }
+    };
+
+    private static final Pattern NVL = Pattern.compile("\\bNVL\\s*\\(", Pattern.CASE_INSENSITIVE);
+    private static final Pattern NEXTVAL = Pattern.compile("\\b(\\w+)\\.NEXTVAL\\b", Pattern.CASE_INSENSITIVE);
+    // ALTER TABLE t MODIFY (col NOT NULL) / MODIFY (col type): one column per statement
+    private static final Pattern MODIFY_NOT_NULL = Pattern.compile("\\bMODIFY\\s*\\(\\s*(\\w+)\\s+NOT\\s+NULL\\s*\\)\\s*$", Pattern.CASE_INSENSITIVE);
+    private static final Pattern MODIFY_COLUMN = Pattern.compile("\\bMODIFY\\s*\\(\\s*(\\w+)\\s+(.+)\\)\\s*$", Pattern.CASE_INSENSITIVE);
+    private static final Pattern SYSTIMESTAMP = Pattern.compile("\\bSYSTIMESTAMP\\b", Pattern.CASE_INSENSITIVE);
+
+    /** Rewrites an Oracle-syntax statement for this database. */
+    public abstract String translate(String sql);
+
+    /** True if a DDL statement failed only because the object it creates is already there. */
+    public abstract boolean isObjectAlreadyExists(SQLException e);
+
+    /** True if an insert failed because of a primary key or unique constraint. */
+    public abstract boolean isDuplicateKey(SQLException e);
+
+    /** True if a query failed because a table it reads does not exist. */
+    public abstract boolean isMissingTable(SQLException e);
+}
@@ -0,0 +1,166 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per-user cache of attendance statistics, so repeated "View STATS" clicks cost no database work.
+ *
+ * Bounded in size (least recently used users are evicted first) and in age (entries expire
+ * after the TTL, which bounds staleness from changes made by other terminals). Writers keep it
+ * current: a saved session is applied to the cached counters in place (write-through), a reset
+ * zeroes them, and a subject edit invalidates the user's entry. Changes from other processes are
+ * put here by {@link ChangeBus}'s poller while the user has a window open.
+ */
+public final class StatsCache {
+
+    private static final int MAX_ENTRIES = Integer.getInteger("attendance.statsCache.maxEntries", 1000);
+    private static final long TTL_MS = TimeUnit.SECONDS.toMillis(Long.getLong("attendance.statsCache.ttlSeconds", 300L));
+
+    private static final StatsCache INSTANCE = new StatsCache();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong expirations = new AtomicLong();
+
+    // Access-ordered map gives LRU iteration order; guarded by "this"
+    private final Map<String, CachedRows> entries = new LinkedHashMap<String, CachedRows>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CachedRows> eldest) {
+            if (size() > MAX_ENTRIES) {
+                evictions.incrementAndGet();
+                return true;
+            }
+            return false;
+        }
+    };
+
+    public static StatsCache getInstance() {
+        return INSTANCE;
+    }
+
+    private StatsCache() {
+        Metrics metrics = Metrics.getInstance();
+        metrics.gauge("statsCache.hits", hits::get);
+        metrics.gauge("statsCache.misses", misses::get);
+        metrics.gauge("statsCache.size", this::size);
+    }
+
+    /** Returns the cached rows for a user, or null on a miss (absent or expired). */
+    public synchronized List<SubjectStats> get(String sapid) {
+        CachedRows entry = entries.get(sapid);
+        if (entry != null && System.currentTimeMillis() - entry.loadedAt > TTL_MS) {
+            entries.remove(sapid);
+            expirations.incrementAndGet();
+            entry = null;
+        }
+        if (entry == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return entry.rows;
+    }
+
+    /** The cached rows of a user without counting a hit or miss; null if absent or expired. */
+    public synchronized List<SubjectStats> peek(String sapid) {
+        CachedRows entry = entries.get(sapid);
+        return entry == null || System.currentTimeMillis() - entry.loadedAt > TTL_MS ? null : entry.rows;
+    }
+
+    /**
+     * Stores freshly loaded rows, unless the entry changed since {@code expected} was {@link #peek}ed
+     * (a write-through from a concurrent save is newer than the rows).
+     *
+     * @return true if stored
+     */
+    public synchronized boolean replace(String sapid, List<SubjectStats> expected, List<SubjectStats> rows) {
+        CachedRows entry = entries.get(sapid);
+        if ((entry == null ? null : entry.rows) != expected) {
+            return false;
+        }
+        put(sapid, rows);
+        return true;
+    }
+
+    /** Stores freshly loaded rows for a user. */
+    public synchronized void put(String sapid, List<SubjectStats> rows) {
+        entries.put(sapid, new CachedRows(Collections.unmodifiableList(new ArrayList<>(rows)), System.currentTimeMillis()));
+    }
+
+    /**
+     * Applies a saved session to the cached counters, if the user is cached.
+     *
+     * @param subjects subjects that were saved
+     * @param present  present[i] is true if subjects.get(i) was attended
+     * @return the updated rows, or null if the user is not cached
+     */
+    public synchronized List<SubjectStats> recordSession(String sapid, List<String> subjects, boolean[] present) {
+        CachedRows entry = entries.get(sapid);
+        if (entry == null) return null;
+        List<SubjectStats> updated = new ArrayList<>(entry.rows.size());
+        for (SubjectStats row : entry.rows) {
+            int index = subjects.indexOf(row.getSubject());
+            updated.add(index >= 0 ? row.withLecture(present[index]) : row);
+        }
+        return store(sapid, updated, entry.loadedAt);
+    }
+
+    /**
+     * Zeroes the cached counters of a user after an attendance reset.
+     *
+     * @return the updated rows, or null if the user is not cached
+     */
+    public synchronized List<SubjectStats> resetCounts(String sapid) {
+        CachedRows entry = entries.get(sapid);
+        if (entry == null) return null;
+        List<SubjectStats> updated = new ArrayList<>(entry.rows.size());
+        for (SubjectStats row : entry.rows) {
+            updated.add(row.withZeroCounts());
+        }
+        return store(sapid, updated, entry.loadedAt);
+    }
+
+    private List<SubjectStats> store(String sapid, List<SubjectStats> updated, long loadedAt) {
+        List<SubjectStats> rows = Collections.unmodifiableList(updated);
+        entries.put(sapid, new CachedRows(rows, loadedAt));
+        return rows;
+    }
+
+    /** Drops a user's entry, e.g. after their subject list changed. */
+    public synchronized void invalidate(String sapid) {
+        entries.remove(sapid);
+    }
+
+    public long getHitCount() { return hits.get(); }
+    public long getMissCount() { return misses.get(); }
+    public long getEvictionCount() { return evictions.get(); }
+    public long getExpirationCount() { return expirations.get(); }
+    public synchronized int size() { return entries.size(); }
+
+    @Override
+    public String toString() {
+        long h = hits.get();
+        long m = misses.get();
+        return "StatsCache[size=" + size() + ", hits=" + h + ", misses=" + m
+                + ", hitRate=" + (h + m == 0 ? "n/a" : String.format("%.1f%%", 100.0 * h / (h + m)))
+                + ", evictions=" + evictions.get() + ", expirations=" + expirations.get() + "]";
+    }
+
+    // --- Inner class for one cached user ---
+    private static final class CachedRows {
+        private final List<SubjectStats> rows;
+        private final long loadedAt;
+
+        CachedRows(List<SubjectStats> rows, long loadedAt) {
+            this.rows = rows;
+            this.loadedAt = loadedAt;
+        }
+    }
+}
@@ -1,7 +1,7 @@
 import java.awt.*; // Use specific imports or wildcard
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
-import java.sql.*;
+import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -12,6 +12,7 @@ import javax.swing.border.LineBorder; // For secondary button border
 public class Subject extends JFrame {
 
     private static final long serialVersionUID = 1L;
+    private static final Log LOG = Log.get(Subject.class);
 
     // --- UI Style Constants ---
     private static final Color COLOR_BACKGROUND = new Color(240, 244, 248); // Very light grey/blue
@@ -26,12 +27,8 @@ public class Subject extends JFrame {
     private static final Font FONT_LABEL = new Font("Segoe UI", Font.PLAIN, 12);
 
 
-    // --- Database Connection Details ---
-    private static final String DB_URL = "jdbc:oracle:thin:@localhost:1521:xe";
-    private static final String DB_USERNAME = "system";
-    private static final String DB_PASSWORD = "123"; // Replace with your actual DB password
-
     // --- User Information ---
+    private UserSession session;  // Shared with the Timetable screen for this login
     private String userSapid;
 
     // --- UI Components ---
@@ -40,19 +37,23 @@ public class Subject extends JFrame {
     private JPanel buttonPanel;   // Panel holding the buttons (white background)
     private JTextField[] subjectFields = new JTextField[7];
     private JTextField[] targetTotalLecturesFields = new JTextField[7];
+    private JTextField[] daysFields = new JTextField[7]; // Weekdays the subject meets, e.g. "Mon Wed Fri"
+    // Subjects past the seventh row (e.g. added through the HTTP API); saved back unchanged
+    private List<SubjectTarget> hiddenSubjects = new ArrayList<>();
     private JButton btnSave;
     private JButton btnLoadExisting;
     private JButton btnBack; // New Back button
 
     /**
-     * Constructor - Requires SAPID of the logged-in user.
-     * @param sapid The SAPID of the user entering/editing subjects.
+     * Constructor - Requires the session of the logged-in user.
+     * @param session The logged-in user's session; its cached subjects fill the form without a database round trip.
      */
-    public Subject(String sapid) {
-        this.userSapid = sapid;
+    public Subject(UserSession session) {
+        this.session = session;
+        this.userSapid = session == null ? null : session.getSapid();
 
         if (this.userSapid == null || this.userSapid.trim().isEmpty()) {
-            showErrorDialog("Error: User SAPID is missing. Cannot initialize subject management.", "Initialization Error");
+            showErrorDialog("Error: User session is missing. Cannot initialize subject management.", "Initialization Error");
             // Prevent the frame from becoming fully operational
              SwingUtilities.invokeLater(() -> {
                  setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
@@ -65,7 +66,7 @@ public class Subject extends JFrame {
         setTitle("Manage Subjects - SAPID: " + this.userSapid);
         setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE); // Or DISPOSE_ON_CLOSE
         // Increased size slightly for better spacing
-        setBounds(100, 100, 650, 550);
+        setBounds(100, 100, 760, 550);
         setLocationRelativeTo(null); // Center on screen
 
         // Main content pane setup
@@ -77,7 +78,7 @@ public class Subject extends JFrame {
         createComponents(); // Create and layout UI elements
         addListeners(); // Add action listeners
         applyStyling(); // Apply custom colors and fonts
-        loadExistingSubjects(); // Load data initially
+        showExistingSubjects(); // From the session, or loaded once if this login has not seen them yet
     }
 
     /** Creates and lays out the UI components using appropriate layout managers. */
@@ -94,11 +95,11 @@ public class Subject extends JFrame {
         gbc.insets = new Insets(8, 5, 8, 5); // Spacing around components (top, left, bottom, right)
 
         // Header Label
-        JLabel lblHeader = new JLabel("Manage Subjects & Target Lectures");
+        JLabel lblHeader = new JLabel("Manage Subjects, Target Lectures & Days");
         lblHeader.setHorizontalAlignment(SwingConstants.CENTER);
         gbc.gridx = 0;
         gbc.gridy = 0;
-        gbc.gridwidth = 3; // Span across 3 columns
+        gbc.gridwidth = 4; // Span across 4 columns
         gbc.weightx = 1.0;
         gbc.insets = new Insets(0, 5, 20, 5); // Extra bottom margin for header
         formPanel.add(lblHeader, gbc);
@@ -121,6 +122,14 @@ public class Subject extends JFrame {
         gbc.anchor = GridBagConstraints.CENTER;
         formPanel.add(lblHoursHeader, gbc);
 
+        JLabel lblDaysHeader = new JLabel("Days");
+        lblDaysHeader.setToolTipText("Weekdays the subject meets, e.g. Mon Wed Fri. Leave blank for every day.");
+        gbc.gridx = 3;
+        gbc.gridy = 1;
+        gbc.weightx = 0.4;
+        gbc.anchor = GridBagConstraints.CENTER;
+        formPanel.add(lblDaysHeader, gbc);
+
         // Input Fields and Row Labels
         for (int i = 0; i < 7; i++) {
             gbc.gridy++; // Move to the next row
@@ -147,14 +156,20 @@ public class Subject extends JFrame {
             gbc.gridx = 2;
             gbc.weightx = 0.3; // Less horizontal space
             formPanel.add(targetTotalLecturesFields[i], gbc);
+
+            // Days Field
+            daysFields[i] = new JTextField();
+            gbc.gridx = 3;
+            gbc.weightx = 0.4;
+            formPanel.add(daysFields[i], gbc);
         }
 
          // Info Label
-         JLabel lblInfo = new JLabel("Leave rows blank if fewer than 7 subjects.");
+         JLabel lblInfo = new JLabel("Leave rows blank if fewer than 7 subjects. Leave Days blank for subjects held every day.");
          lblInfo.setHorizontalAlignment(SwingConstants.CENTER);
          gbc.gridx = 0;
          gbc.gridy++;
-         gbc.gridwidth = 3;
+         gbc.gridwidth = 4;
          gbc.insets = new Insets(15, 5, 0, 5); // Add space above info label
          formPanel.add(lblInfo, gbc);
 
@@ -186,6 +201,7 @@ public class Subject extends JFrame {
         contentPane.getComponent(0).setFont(FONT_HEADER); // Header in formPanel
         ((JLabel)formPanel.getComponent(1)).setFont(FONT_BOLD); // Subject Header
         ((JLabel)formPanel.getComponent(2)).setFont(FONT_BOLD); // Target Header
+        ((JLabel)formPanel.getComponent(3)).setFont(FONT_BOLD); // Days Header
          // Info label styling
          Component infoLabel = formPanel.getComponent(formPanel.getComponentCount() - 1); // Last component is info label
          if (infoLabel instanceof JLabel) {
@@ -195,7 +211,7 @@ public class Subject extends JFrame {
 
         // Style input fields and row labels
         for(int i = 0; i < 7; i++) {
-             JLabel rowLabel = (JLabel)formPanel.getComponent(3 + (i*3)); // Calculate index of row label
+             JLabel rowLabel = (JLabel)formPanel.getComponent(4 + (i*4)); // Calculate index of row label
              rowLabel.setFont(FONT_BOLD);
              rowLabel.setForeground(COLOR_TEXT);
 
@@ -210,6 +226,12 @@ public class Subject extends JFrame {
                      BorderFactory.createLineBorder(Color.LIGHT_GRAY, 1),
                      BorderFactory.createEmptyBorder(3, 5, 3, 5) // Internal padding
              ));
+
+             daysFields[i].setFont(FONT_PRIMARY);
+             daysFields[i].setBorder(BorderFactory.createCompoundBorder(
+                     BorderFactory.createLineBorder(Color.LIGHT_GRAY, 1),
+                     BorderFactory.createEmptyBorder(3, 5, 3, 5) // Internal padding
+             ));
         }
 
         // Style Buttons
@@ -275,15 +297,15 @@ public class Subject extends JFrame {
                 JOptionPane.WARNING_MESSAGE);
 
             if (choice == JOptionPane.YES_OPTION) {
-                loadExistingSubjects();
+                loadExistingSubjects(); // Explicit reload always goes to the database
             }
         });
 
         // Listener for the new Back button
         btnBack.addActionListener(e -> {
-            System.out.println("Navigating back to Timetable for SAPID: " + userSapid);
+            LOG.debug("Navigating back to Timetable", "sapid", userSapid);
             // Open the Timetable frame
-            Timetable timetableFrame = new Timetable(this.userSapid);
+            Timetable timetableFrame = new Timetable(session);
             timetableFrame.setVisible(true);
             // Close this Subject frame
             this.dispose();
@@ -291,49 +313,52 @@ public class Subject extends JFrame {
     }
 
 
-    /** Loads existing subjects and their TARGET TOTAL LECTURES for the current user. */
+    /** Fills the form from the session's subjects, loading them only if this login has not yet. */
+    private void showExistingSubjects() {
+        if (session.hasSubjectsLoaded()) {
+            fillFields(session.getSubjects());
+        } else {
+            loadExistingSubjects();
+        }
+    }
+
+    /** Loads existing subjects and their TARGET TOTAL LECTURES for the current user, off the EDT, refreshing the session. */
     private void loadExistingSubjects() {
         clearFields();
-        String sql = "SELECT subjects, target_total_lectures FROM timetable WHERE sapid = ? ORDER BY subjects";
-        Connection con = null;
-        PreparedStatement pstmt = null;
-        ResultSet rs = null;
-        int index = 0;
+        String sapid = this.userSapid;
 
-        System.out.println("Loading subjects and target lectures for SAPID: " + this.userSapid);
+        LOG.debug("Loading subjects and target lectures", "sapid", sapid);
 
-        try {
-            con = DriverManager.getConnection(DB_URL, DB_USERNAME, DB_PASSWORD);
-            pstmt = con.prepareStatement(sql);
-            pstmt.setString(1, this.userSapid);
-            rs = pstmt.executeQuery();
+        DatabaseTask.run(this, "subject-load:" + sapid, service -> service.reloadSubjects(session), this::fillFields, ex -> showErrorDialog("Database Error loading subjects: " + ex.getMessage(), "Database Error"),
+        btnSave, btnLoadExisting);
+    }
 
-            while (rs.next() && index < 7) {
-                subjectFields[index].setText(rs.getString("subjects"));
-                targetTotalLecturesFields[index].setText(String.valueOf(rs.getInt("target_total_lectures")));
-                index++;
-            }
-            System.out.println("Loaded " + index + " existing subjects.");
-
-        } catch (SQLException ex) {
-            showErrorDialog("Database Error loading subjects: " + ex.getMessage(), "Database Error");
-            ex.printStackTrace();
-        } finally {
-            closeQuietly(rs);
-            closeQuietly(pstmt);
-            closeQuietly(con);
+    /** Shows up to seven subjects in the form and keeps the rest aside for the save. Runs on the EDT. */
+    private void fillFields(List<SubjectTarget> subjects) {
+        clearFields();
+        int index = 0;
+        for (SubjectTarget subject : subjects) {
+            if (index == 7) break; // The form has seven rows
+            subjectFields[index].setText(subject.getName());
+            targetTotalLecturesFields[index].setText(String.valueOf(subject.getTargetTotalLectures()));
+            daysFields[index].setText(subject.getDaysMask() == WeeklySchedule.EVERY_DAY ? "" : WeeklySchedule.format(subject.getDaysMask()));
+            index++;
         }
+        // The save replaces the whole list, so subjects left off the form would be deleted with their attendance
+        hiddenSubjects = new ArrayList<>(subjects.subList(index, subjects.size()));
+        LOG.debug("Loaded existing subjects", "sapid", userSapid, "subjects", index, "notShown", hiddenSubjects.size());
     }
 
-    /** Saves new subjects or updates existing ones. Initializes attendance counts to 0. */
+    /** Saves new subjects or updates existing ones. New subjects start with attendance counts of 0; existing ones keep theirs. */
     private void saveOrUpdateSubjects() {
-        List<SubjectTargetData> subjectsToSave = new ArrayList<>();
+        List<SubjectTarget> subjectsToSave = new ArrayList<>();
         boolean validationError = false;
 
         // 1. Collect and Validate Input
         for (int i = 0; i < 7; i++) {
             String name = subjectFields[i].getText().trim();
             String targetLecturesStr = targetTotalLecturesFields[i].getText().trim();
+            String daysStr = daysFields[i].getText().trim();
 
             if (!name.isEmpty() || !targetLecturesStr.isEmpty()) { // Process row only if at least one field has content
                 if (name.isEmpty()) {
@@ -359,7 +384,7 @@ public class Subject extends JFrame {
                         break;
                     }
                     // Check for duplicate subject names within the input fields
-                    for (SubjectTargetData existing : subjectsToSave) {
+                    for (SubjectTarget existing : subjectsToSave) {
                         if (existing.getName().equalsIgnoreCase(name)) {
                             showErrorDialog("Duplicate subject name entered: '" + name + "'. Subject names must be unique.", "Validation Error");
                             subjectFields[i].requestFocus();
@@ -369,7 +394,16 @@ public class Subject extends JFrame {
                     }
                     if (validationError) break;
 
-                    subjectsToSave.add(new SubjectTargetData(name, targetLectures));
+                    int daysMask;
+                    try {
+                        daysMask = WeeklySchedule.parse(daysStr);
+                    } catch (IllegalArgumentException ex) {
+                        showErrorDialog("Invalid Days for '" + name + "': " + ex.getMessage(), "Validation Error");
+                        daysFields[i].requestFocus();
+                        validationError = true;
+                        break;
+                    }
+                    subjectsToSave.add(new SubjectTarget(name, targetLectures, daysMask));
 
                 } catch (NumberFormatException ex) {
                     showErrorDialog("Invalid number format for Target Lectures in row " + (i + 1) + ".", "Validation Error");
@@ -383,6 +417,13 @@ public class Subject extends JFrame {
 
 
         if (validationError) return;
+        for (SubjectTarget hidden : hiddenSubjects) {
+            boolean entered = false; // Re-entered in a row: the row wins
+            for (SubjectTarget subject : subjectsToSave) {
+                entered |= subject.getName().equalsIgnoreCase(hidden.getName());
+            }
+            if (!entered) subjectsToSave.add(hidden);
+        }
         if (subjectsToSave.isEmpty()) {
             // Allow saving empty list if user explicitly clears all subjects
              int choice = JOptionPane.showConfirmDialog(
@@ -398,87 +439,41 @@ public class Subject extends JFrame {
         }
 
 
-        // 2. Database Operations within a Transaction
-        Connection con = null;
-        PreparedStatement pstmtDelete = null;
-        PreparedStatement pstmtInsert = null;
-        PreparedStatement pstmtUpdateFlag = null;
-
-        try {
-            con = DriverManager.getConnection(DB_URL, DB_USERNAME, DB_PASSWORD);
-            con.setAutoCommit(false); // Start transaction
-
-            // a. Delete existing subjects for this user
-            String deleteSql = "DELETE FROM timetable WHERE sapid = ?";
-            pstmtDelete = con.prepareStatement(deleteSql);
-            pstmtDelete.setString(1, this.userSapid);
-            int deletedRows = pstmtDelete.executeUpdate();
-            System.out.println("Deleted " + deletedRows + " existing timetable rows for SAPID: " + this.userSapid);
-
-            // b. Insert the new set of subjects (if any)
-            if (!subjectsToSave.isEmpty()) {
-                String insertSql = "INSERT INTO timetable (sapid, subjects, target_total_lectures, attended_count, lectures_taken_so_far) " +
-                                   "VALUES (?, ?, ?, 0, 0)";
-                pstmtInsert = con.prepareStatement(insertSql);
-
-                for (SubjectTargetData subject : subjectsToSave) {
-                    pstmtInsert.setString(1, this.userSapid);
-                    pstmtInsert.setString(2, subject.getName());
-                    pstmtInsert.setInt(3, subject.getTargetTotalLectures());
-                    pstmtInsert.addBatch();
-                }
-                int[] insertCounts = pstmtInsert.executeBatch();
-                System.out.println("Inserted " + insertCounts.length + " new timetable rows.");
-            }
-
-            // c. Update the 'subjects_added' flag in the users table
-            // Set flag to 1 if saving >0 subjects, set to 0 if saving 0 subjects
-            int flagValue = subjectsToSave.isEmpty() ? 0 : 1;
-            String updateFlagSql = "UPDATE users SET subjects_added = ? WHERE sapid = ?";
-            pstmtUpdateFlag = con.prepareStatement(updateFlagSql);
-            pstmtUpdateFlag.setInt(1, flagValue);
-            pstmtUpdateFlag.setString(2, this.userSapid);
-            int flagUpdateCount = pstmtUpdateFlag.executeUpdate();
-            System.out.println("User flag 'subjects_added' set to " + flagValue + " for SAPID: " + this.userSapid + " (Rows updated: " + flagUpdateCount + ")");
-
-            con.commit(); // Commit transaction
-
-            JOptionPane.showMessageDialog(this,
-                subjectsToSave.isEmpty() ? "All subjects removed successfully." : "Subjects saved successfully!",
-                "Success", JOptionPane.INFORMATION_MESSAGE);
-
-            // 3. Proceed to the main Timetable view
-            Timetable timetableFrame = new Timetable(this.userSapid);
-            timetableFrame.setVisible(true);
-            this.dispose(); // Close this subject entry window
-
-        } catch (SQLException ex) {
-            try { if (con != null) con.rollback(); } catch (SQLException e_rb) { System.err.println("Rollback failed: " + e_rb.getMessage()); }
-
-            String errorMessage = "Database Error saving subjects: " + ex.getMessage();
-            if (ex.getErrorCode() == 1 || (ex.getMessage() != null && ex.getMessage().toUpperCase().contains("PK_TIMETABLE"))) {
-                errorMessage = "Database Error: Primary key violation. This might happen if there's an unexpected issue during delete/insert.";
-            } else if (ex.getErrorCode() == 2290) { // Check constraint violation
-                 errorMessage = "Database Error: Check constraint violation. Ensure target lectures are positive if required by DB constraints.";
-            }
-            showErrorDialog(errorMessage, "Save Error");
-            ex.printStackTrace();
-
-        } finally {
-            try { if (con != null) con.setAutoCommit(true); } catch (SQLException ignored) {} // Restore auto-commit
-            closeQuietly(pstmtDelete);
-            closeQuietly(pstmtInsert);
-            closeQuietly(pstmtUpdateFlag);
-            closeQuietly(con);
-        }
+        // 2. Database Operations within a Transaction, off the EDT
+        String sapid = this.userSapid;
+        DatabaseTask.run(this, "subject-save:" + sapid,
+                service -> { service.saveSubjects(session, subjectsToSave); return null; }, // Also refreshes the session
+                ignored -> {
+                    JOptionPane.showMessageDialog(this,
+                        subjectsToSave.isEmpty() ? "All subjects removed successfully." : "Subjects saved successfully!",
+                        "Success", JOptionPane.INFORMATION_MESSAGE);
+
+                    // 3. Proceed to the main Timetable view
+                    Timetable timetableFrame = new Timetable(session);
+                    timetableFrame.setVisible(true);
+                    this.dispose(); // Close this subject entry window
+                },
+                ex -> {
+                    String errorMessage = "Database Error saving subjects: " + ex.getMessage();
+                    if (ex instanceof SQLException) {
+                        SQLException sqlEx = (SQLException) ex;
+                        if (sqlEx.getErrorCode() == 1 || (ex.getMessage() != null && ex.getMessage().toUpperCase().contains("PK_TIMETABLE"))) {
+                            errorMessage = "Database Error: Primary key violation. This might happen if the subjects were changed concurrently.";
+                        } else if (sqlEx.getErrorCode() == 2290) { // Check constraint violation
+                             errorMessage = "Database Error: Check constraint violation. Ensure target lectures are positive if required by DB constraints.";
+                        }
+                    }
+                    showErrorDialog(errorMessage, "Save Error");
+                },
+                btnSave, btnLoadExisting, btnBack);
     }
 
-
     /** Helper method to clear all input fields */
     private void clearFields() {
         for (int i = 0; i < 7; i++) {
             subjectFields[i].setText("");
             targetTotalLecturesFields[i].setText("");
+            daysFields[i].setText("");
         }
     }
 
@@ -488,34 +483,5 @@ public class Subject extends JFrame {
     }
 
 
-    // --- Helper Methods for Closing JDBC Resources ---
-    private static void closeQuietly(AutoCloseable resource) {
-        if (resource != null) {
-            try {
-                resource.close();
-            } catch (Exception ex) {
-                System.err.println("Failed to close resource (" + resource.getClass().getSimpleName() + "): " + ex.getMessage());
-            }
-        }
-    }
-
-    // --- Inner class for holding subject data ---
-    private static class SubjectTargetData {
-        private String name;
-        private int targetTotalLectures;
-
-        public SubjectTargetData(String name, int targetTotalLectures) {
-            this.name = name;
-            this.targetTotalLectures = targetTotalLectures;
-        }
-        public String getName() { return name; }
-        public int getTargetTotalLectures() { return targetTotalLectures; }
-
-        @Override
-        public String toString() {
-            return "SubjectTargetData [name=" + name + ", targetTotalLectures=" + targetTotalLectures + "]";
-        }
-    }
-
     // --- Main method removed (frame should be launched from elsewhere) ---
 }
\ No newline at end of file
@@ -0,0 +1,103 @@
+/**
+ * Attendance counters of one subject for one user, as shown in the statistics report, with the
+ * per-lecture {@link AttendanceBitmap} history behind the streak and recent-share columns.
+ * Immutable; the "with" methods return updated copies.
+ *
+ * The counters may cover more lectures than the history: rows from before the bitmap was stored
+ * start with an empty one, which then grows with every lecture folded.
+ */
+public final class SubjectStats {
+
+    /**
+     * Share of the target lectures a student must attend, used for "Can Leave" and the at-risk
+     * reports. Set with {@code -Dattendance.threshold} (default 0.80).
+     */
+    public static final double DEFAULT_REQUIRED_RATIO = Double.parseDouble(System.getProperty("attendance.threshold", "0.80"));
+
+    /** Lectures in the "recent" share of the report. Set with {@code -Dattendance.stats.recentLectures} (default 10). */
+    public static final int RECENT_LECTURES = Integer.getInteger("attendance.stats.recentLectures", 10);
+
+    private final String subject;
+    private final int attended;
+    private final int taken;
+    private final int target;
+    private final AttendanceBitmap history;
+
+    /** Counters without a lecture history. */
+    public SubjectStats(String subject, int attended, int taken, int target) {
+        this(subject, attended, taken, target, AttendanceBitmap.EMPTY);
+    }
+
+    public SubjectStats(String subject, int attended, int taken, int target, AttendanceBitmap history) {
+        this.subject = subject;
+        this.attended = attended;
+        this.taken = taken;
+        this.target = target;
+        this.history = history;
+    }
+
+    public String getSubject() { return subject; }
+    public int getAttended() { return attended; }
+    public int getTaken() { return taken; }
+    public int getTarget() { return target; }
+    public AttendanceBitmap getHistory() { return history; }
+
+    /** Counters after one more recorded lecture, appended to the history in place. */
+    public SubjectStats withLecture(boolean present) {
+        return new SubjectStats(subject, attended + (present ? 1 : 0), taken + 1, target, history.append(present));
+    }
+
+    /** Counters and history reset to zero, target kept. */
+    public SubjectStats withZeroCounts() {
+        return new SubjectStats(subject, 0, 0, target);
+    }
+
+    /** Same counters and history under a new target. */
+    public SubjectStats withTarget(int newTarget) {
+        return new SubjectStats(subject, attended, taken, newTarget, history);
+    }
+
+    /** Consecutive lectures attended up to the latest recorded one. */
+    public int currentStreak() {
+        return history.currentStreak();
+    }
+
+    /**
+     * Percentage of the latest {@code lectures} attended, rounded down; -1 if no history is
+     * recorded. Counts fewer lectures while the history is shorter.
+     */
+    public int recentPercent(int lectures) {
+        int window = Math.min(lectures, history.length());
+        return window <= 0 ? -1 : history.cardinalityOfLast(window) * 100 / window;
+    }
+
+    /**
+     * Additional lectures that can still be missed while keeping {@code requiredRatio}
+     * of the target, assuming the remaining lectures are taken.
+     *
+     * @return lectures that can be missed, or -1 if no target is set
+     */
+    public int canLeave(double requiredRatio) {
+        if (target <= 0) {
+            return -1;
+        }
+        return Math.max(0, slack(attended, taken, target, requiredRatio));
+    }
+
+    /**
+     * Absences still allowed before {@code requiredRatio} of {@code target} becomes unreachable;
+     * negative once it already is. Only meaningful when {@code target > 0}.
+     */
+    public static int slack(int attended, int taken, int target, double requiredRatio) {
+        int minRequiredAttendance = (int) Math.ceil(target * requiredRatio);
+        int maxAllowedAbsences = target - minRequiredAttendance;
+        int absencesSoFar = taken - attended;
+        return maxAllowedAbsences - absencesSoFar;
+    }
+
+    @Override
+    public String toString() {
+        return "SubjectStats [subject=" + subject + ", attended=" + attended + ", taken=" + taken + ", target=" + target
+                + ", history=" + history.length() + "]";
+    }
+}
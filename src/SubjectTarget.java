@@ -0,0 +1,31 @@
+/**
+ * A subject registered by a user together with its planned number of lectures and the weekdays
+ * it meets on ({@link WeeklySchedule} mask). Immutable.
+ */
+public final class SubjectTarget {
+
+    private final String name;
+    private final int targetTotalLectures;
+    private final int daysMask;
+
+    /** A subject that meets every day. */
+    public SubjectTarget(String name, int targetTotalLectures) {
+        this(name, targetTotalLectures, WeeklySchedule.EVERY_DAY);
+    }
+
+    public SubjectTarget(String name, int targetTotalLectures, int daysMask) {
+        this.name = name;
+        this.targetTotalLectures = targetTotalLectures;
+        this.daysMask = daysMask;
+    }
+
+    public String getName() { return name; }
+    public int getTargetTotalLectures() { return targetTotalLectures; }
+    public int getDaysMask() { return daysMask; }
+
+    @Override
+    public String toString() {
+        return "SubjectTarget [name=" + name + ", targetTotalLectures=" + targetTotalLectures
+                + ", days=" + WeeklySchedule.format(daysMask) + "]";
+    }
+}
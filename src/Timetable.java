@@ -1,20 +1,25 @@
 import java.awt.*; // Use specific imports or wildcard
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
-import java.sql.*;
+import java.sql.SQLException;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.format.TextStyle;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.UUID;
 
 import javax.swing.*;
 import javax.swing.border.EmptyBorder;
 import javax.swing.border.LineBorder;
-import javax.swing.border.MatteBorder; // For bottom border on rows
 
 public class Timetable extends JFrame {
 
     private static final long serialVersionUID = 1L;
+    private static final Log LOG = Log.get(Timetable.class);
 
     // --- UI Style Constants ---
     private static final Color COLOR_BACKGROUND = new Color(240, 244, 248);
@@ -31,54 +36,48 @@ public class Timetable extends JFrame {
     private static final Font FONT_LABEL = new Font("Segoe UI", Font.PLAIN, 12);
     private static final Font FONT_MONOSPACED = new Font("Monospaced", Font.PLAIN, 12); // For stats
 
-    // --- Database Connection Details ---
-    private static final String DB_URL = "jdbc:oracle:thin:@localhost:1521:xe";
-    private static final String DB_USERNAME = "system";
-    private static final String DB_PASSWORD = "123"; // Replace with your actual DB password
-
     // --- User Information ---
+    private UserSession session;        // Shared with the Subject screen for this login
     private String currentUserSapid;
 
     // --- UI Components & Data ---
-    private Connection conn;
-    private List<String> subjects = new ArrayList<>();
-    private Map<String, JRadioButton> presentRadioButtons = new HashMap<>();
-    private Map<String, JRadioButton> absentRadioButtons = new HashMap<>();
-    private Map<String, ButtonGroup> subjectButtonGroups = new HashMap<>();
+    private AttendanceRosterModel rosterModel = new AttendanceRosterModel(); // Subjects + Present/Absent marks
+    private RosterTable rosterTable;
     private JPanel contentPane;     // Main content pane of JFrame
     private JPanel mainPanel;       // Panel holding header, subjects, buttons (white background)
-    private JPanel subjectPanel;    // Panel inside scrollpane holding subject rows
     private JScrollPane scrollPane;
     private JButton btnSave;
     private JButton btnResetData;
     private JButton btnViewStats;
     private JButton btnResetUI;
     private JButton btnEditSubjects;
+    private JCheckBox chkShowAll;       // Off: only the subjects scheduled today are listed
+    private final DayOfWeek today = LocalDate.now().getDayOfWeek();
+    private JLabel lblStatus;           // Status text for background database work
+    private JProgressBar progressBar;   // Indeterminate bar shown while a task runs
+    private JButton btnCancelTask;
+    private DatabaseTask<?> currentTask;
+    private String pendingSessionId;    // Id of the session being saved; kept across retries until it is stored or found already saved
+    private ChangeBus.Subscription changeSubscription; // Live updates of this user's rows while the window is open
 
     /**
-     * Constructor - Requires SAPID of the logged-in user.
-     * @param sapid The SAPID of the user whose timetable to display.
+     * Constructor - Requires the session of the logged-in user.
+     * @param session The logged-in user's session; its cached subjects are shown without a database round trip.
      */
-    public Timetable(String sapid) {
-        this.currentUserSapid = sapid;
-
-        if (this.currentUserSapid == null || this.currentUserSapid.trim().isEmpty()) {
-            handleFatalError("User SAPID missing. Cannot load timetable.");
+    public Timetable(UserSession session) {
+        if (session == null) {
+            handleFatalError("User session missing. Cannot load timetable.");
             return;
         }
+        this.session = session;
+        this.currentUserSapid = session.getSapid();
 
         setTitle("Attendance Tracker - SAPID: " + this.currentUserSapid);
-        initializeDatabaseConnection();
-
-        if (conn == null) {
-            handleFatalError("Fatal Error: Database connection failed. Exiting.");
-            return;
-        }
 
         // --- Frame Setup ---
         setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
         // Increased size slightly for better spacing with new layout
-        setPreferredSize(new Dimension(700, 650));
+        setPreferredSize(new Dimension(820, 650));
         setMinimumSize(new Dimension(600, 500)); // Prevent resizing too small
         setLocationRelativeTo(null); // Center screen
 
@@ -103,48 +102,50 @@ public class Timetable extends JFrame {
         loadSubjectsAndCreateUI();
         applyStyling();
         resetRadioButtonsToDefault(); // Ensure initial state is unselected
+        subscribeToChanges();
 
         pack(); // Adjust frame size to fit components based on layout managers
     }
 
+    /** Stops following changes when the window goes away, e.g. on the way to the subject editor. */
+    @Override
+    public void dispose() {
+        if (changeSubscription != null) {
+            changeSubscription.close();
+            changeSubscription = null;
+        }
+        super.dispose();
+    }
+
     /** Gracefully handle fatal errors during startup */
     private void handleFatalError(String message) {
         JOptionPane.showMessageDialog(null, message, "Initialization Error", JOptionPane.ERROR_MESSAGE);
         setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
         SwingUtilities.invokeLater(() -> {
-            if (conn != null) try { conn.close(); } catch (SQLException ignored) {}
             setVisible(false);
             dispose();
         });
     }
 
-    /** Initializes the database connection. */
-    private void initializeDatabaseConnection() {
-        try {
-            conn = DriverManager.getConnection(DB_URL, DB_USERNAME, DB_PASSWORD);
-            System.out.println("Database connection established.");
-        } catch (SQLException e) {
-            e.printStackTrace();
-            conn = null; // Ensure conn is null on failure
-        }
-    }
-
      /** Creates the header panel (NORTH). */
     private void createHeaderPanel() {
-        JPanel headerPanel = new JPanel(new FlowLayout(FlowLayout.CENTER));
+        JPanel headerPanel = new JPanel(new FlowLayout(FlowLayout.CENTER, 15, 5));
         headerPanel.setBackground(COLOR_CONTENT_BACKGROUND); // Match inner background
-        JLabel lblHeader = new JLabel("Mark Attendance for this Session");
+        JLabel lblHeader = new JLabel("Mark Attendance for " + today.getDisplayName(TextStyle.FULL, Locale.ENGLISH));
         headerPanel.add(lblHeader);
+        chkShowAll = new JCheckBox("Show all subjects");
+        chkShowAll.setToolTipText("Also list subjects not scheduled today, e.g. to mark a make-up lecture");
+        chkShowAll.setBackground(COLOR_CONTENT_BACKGROUND);
+        chkShowAll.addActionListener(e -> createSubjectRows());
+        headerPanel.add(chkShowAll);
         mainPanel.add(headerPanel, BorderLayout.NORTH);
     }
 
-    /** Sets up the scrollable panel for subject rows (CENTER). */
+    /** Sets up the scrollable roster table for subject rows (CENTER). Only visible rows are rendered. */
     private void setupSubjectPanel() {
-        subjectPanel = new JPanel();
-        subjectPanel.setLayout(new BoxLayout(subjectPanel, BoxLayout.Y_AXIS)); // Vertical stacking
-        subjectPanel.setBackground(COLOR_CONTENT_BACKGROUND); // White background
+        rosterTable = new RosterTable(rosterModel, FONT_BOLD, FONT_PRIMARY, COLOR_CONTENT_BACKGROUND, COLOR_TEXT, COLOR_BORDER);
 
-        scrollPane = new JScrollPane(subjectPanel);
+        scrollPane = new JScrollPane(rosterTable);
         scrollPane.setBorder(new LineBorder(COLOR_BORDER)); // Simple border for scroll pane
         scrollPane.setVerticalScrollBarPolicy(ScrollPaneConstants.VERTICAL_SCROLLBAR_AS_NEEDED);
         scrollPane.setHorizontalScrollBarPolicy(ScrollPaneConstants.HORIZONTAL_SCROLLBAR_NEVER);
@@ -186,9 +187,59 @@ public class Timetable extends JFrame {
 
 
         buttonPanelContainer.add(buttonPanel, BorderLayout.CENTER);
+        buttonPanelContainer.add(createStatusPanel(), BorderLayout.SOUTH);
         mainPanel.add(buttonPanelContainer, BorderLayout.SOUTH);
     }
 
+    /** Creates the status strip showing progress and a cancel link for background database work. */
+    private JPanel createStatusPanel() {
+        JPanel statusPanel = new JPanel(new FlowLayout(FlowLayout.CENTER, 10, 2));
+        statusPanel.setBackground(COLOR_CONTENT_BACKGROUND);
+
+        progressBar = new JProgressBar();
+        progressBar.setIndeterminate(true);
+        progressBar.setPreferredSize(new Dimension(120, 12));
+        progressBar.setVisible(false);
+        statusPanel.add(progressBar);
+
+        lblStatus = new JLabel(" ");
+        lblStatus.setForeground(Color.GRAY);
+        statusPanel.add(lblStatus);
+
+        btnCancelTask = new JButton("Cancel");
+        btnCancelTask.setContentAreaFilled(false);
+        btnCancelTask.setBorderPainted(false);
+        btnCancelTask.setFocusPainted(false);
+        btnCancelTask.setForeground(COLOR_SECONDARY_BUTTON_TEXT);
+        btnCancelTask.setVisible(false);
+        btnCancelTask.addActionListener(e -> {
+            if (currentTask != null && currentTask.cancel(false)) {
+                lblStatus.setText("Cancelled.");
+            }
+        });
+        statusPanel.add(btnCancelTask);
+        return statusPanel;
+    }
+
+    /** Shows progress for a background task until it finishes. A null task (duplicate request) is ignored. */
+    private void track(DatabaseTask<?> task, String message) {
+        if (task == null) return;
+        currentTask = task;
+        lblStatus.setText(message);
+        progressBar.setVisible(true);
+        btnCancelTask.setVisible(true);
+        task.addPropertyChangeListener(evt -> {
+            if ("state".equals(evt.getPropertyName()) && evt.getNewValue() == SwingWorker.StateValue.DONE) {
+                if (currentTask == task) {
+                    currentTask = null;
+                    progressBar.setVisible(false);
+                    btnCancelTask.setVisible(false);
+                    if (!task.isCancelled()) lblStatus.setText(" ");
+                }
+            }
+        });
+    }
+
     /** Applies custom fonts and colors to components */
     private void applyStyling() {
         // Set fonts
@@ -203,12 +254,11 @@ public class Timetable extends JFrame {
         styleSecondaryButton(btnEditSubjects);
         styleWarningButton(btnResetData); // Special style for Reset All
 
-        // Style subject panel and scrollpane
-        subjectPanel.setBackground(COLOR_CONTENT_BACKGROUND);
+        // Style scrollpane
         scrollPane.getViewport().setBackground(COLOR_CONTENT_BACKGROUND); // Background seen during scroll
         scrollPane.setBorder(new LineBorder(COLOR_BORDER));
 
-        // Styling applied within createSubjectRowPanel for rows
+        // Row styling is applied by RosterTable's renderers
     }
 
     // Helper to apply font recursively
@@ -266,120 +316,154 @@ public class Timetable extends JFrame {
         button.setCursor(Cursor.getPredefinedCursor(Cursor.HAND_CURSOR));
     }
 
-    /** Loads subjects for the CURRENT USER and creates UI rows. */
+    /**
+     * Creates UI rows for the CURRENT USER's subjects: straight from the session when it already
+     * holds them, otherwise loaded in the background (and kept in the session for the next screen).
+     */
     private void loadSubjectsAndCreateUI() {
-        subjectPanel.removeAll(); // Clear previous content
-        subjects.clear();
-        presentRadioButtons.clear();
-        absentRadioButtons.clear();
-        subjectButtonGroups.clear();
-
-        String sql = "SELECT subjects FROM timetable WHERE sapid = ? ORDER BY subjects";
-
-        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            pstmt.setString(1, this.currentUserSapid);
-            ResultSet rs = pstmt.executeQuery();
-
-            int count = 0;
-            while (rs.next()) {
-                String subject = rs.getString("subjects");
-                subjects.add(subject);
-                subjectPanel.add(createSubjectRowPanel(subject));
-                // Add separator line between items, but not after the last one
-                // subjectPanel.add(Box.createVerticalStrut(5)); // Add spacing between rows
-                count++;
-            }
+        String sapid = this.currentUserSapid;
+        if (session.hasSubjectsLoaded()) {
+            createSubjectRows();
+            return;
+        }
 
-             if (count > 0) {
-                 // Remove border from the last item to avoid double border at the bottom
-                Component lastRow = subjectPanel.getComponent(subjectPanel.getComponentCount() - 1);
-                if (lastRow instanceof JPanel) {
-                    ((JPanel)lastRow).setBorder(new EmptyBorder(10, 15, 10, 15)); // Keep padding, remove border
-                }
+        track(DatabaseTask.run(this, "timetable-load:" + sapid,
+                service -> service.subjects(session), loaded -> createSubjectRows(), e -> {
+            JOptionPane.showMessageDialog(this, "Error loading subjects: " + e.getMessage(), "Database Error", JOptionPane.ERROR_MESSAGE);
+            JLabel errorLabel = new JLabel("Error loading subjects. Check connection or try 'Edit Subjects'.");
+            errorLabel.setForeground(Color.RED);
+            errorLabel.setFont(FONT_LABEL);
+            showMessageInsteadOfRoster(errorLabel);
+        }, btnSave, btnResetUI, btnViewStats, btnResetData), "Loading subjects...");
+    }
+
+    /**
+     * Fills the roster from the session's subjects: those scheduled today, or all of them when
+     * "Show all subjects" is ticked. Only listed subjects can be marked and saved. Runs on the EDT.
+     */
+    private void createSubjectRows() {
+        if (!session.hasSubjectsLoaded()) {
+            return; // Still loading; called again when done
+        }
+        List<String> loaded = chkShowAll.isSelected() ? session.getSubjectNames() : session.getSchedule().subjectsOn(today);
+        rosterTable.finishEditing();
+        rosterModel.setRows(loaded);
+
+        if (loaded.isEmpty() && session.getSubjectNames().isEmpty()) {
+            JLabel noSubjectsLabel = new JLabel("No subjects found. Click 'Edit Subjects' to add some.");
+            noSubjectsLabel.setHorizontalAlignment(SwingConstants.CENTER);
+            noSubjectsLabel.setFont(FONT_LABEL.deriveFont(Font.ITALIC));
+            noSubjectsLabel.setForeground(Color.GRAY);
+            showMessageInsteadOfRoster(noSubjectsLabel);
+        } else if (loaded.isEmpty()) {
+            JLabel noLecturesLabel = new JLabel("No subjects are scheduled for today. Tick 'Show all subjects' to mark an extra lecture.");
+            noLecturesLabel.setHorizontalAlignment(SwingConstants.CENTER);
+            noLecturesLabel.setFont(FONT_LABEL.deriveFont(Font.ITALIC));
+            noLecturesLabel.setForeground(Color.GRAY);
+            showMessageInsteadOfRoster(noLecturesLabel);
+        } else {
+            scrollPane.setViewportView(rosterTable);
+            refreshSummaries();
+        }
+    }
+
+    // --- Live updates ---
+
+    /**
+     * Follows changes to this user's attendance made in other windows, over the API or on other
+     * terminals ({@link ChangeBus}), patching only the rows they touch.
+     */
+    private void subscribeToChanges() {
+        try {
+            changeSubscription = AttendanceService.getInstance().getChanges().subscribe(currentUserSapid,
+                    change -> SwingUtilities.invokeLater(() -> applyChange(change)));
+        } catch (RuntimeException e) {
+            LOG.warn("Live updates unavailable", "sapid", currentUserSapid, "reason", e.getMessage());
+        }
+    }
+
+    /** Applies one change: a subject's "So Far" cell, or the whole subject list. Runs on the EDT. */
+    private void applyChange(AttendanceChange change) {
+        if (changeSubscription == null) {
+            return; // Disposed after the change was queued
+        }
+        if (change.getKind() == AttendanceChange.Kind.SUBJECTS) {
+            reloadSubjectsKeepingMarks();
+        } else if (change.getSubject() == null || change.getStats() == null) {
+            refreshSummaries();
+        } else {
+            int row = rosterModel.rowOf(change.getSubject());
+            if (row >= 0 && rosterModel.setSummary(row, summaryOf(change.getStats())) && change.isRemote() && currentTask == null) {
+                lblStatus.setText(change.getSubject() + " was updated elsewhere.");
             }
+        }
+    }
 
+    /** Re-reads the subject list after it was edited elsewhere; marks already made stay on their subjects. */
+    private void reloadSubjectsKeepingMarks() {
+        String sapid = this.currentUserSapid;
+        DatabaseTask.run(this, "timetable-load:" + sapid, service -> service.reloadSubjects(session), loaded -> {
+            rosterTable.finishEditing();
+            Map<String, Byte> marks = new HashMap<>();
+            for (int row = 0; row < rosterModel.getRowCount(); row++) {
+                marks.put(rosterModel.getLabel(row), rosterModel.getMark(row));
+            }
+            createSubjectRows();
+            for (int row = 0; row < rosterModel.getRowCount(); row++) {
+                Byte mark = marks.get(rosterModel.getLabel(row));
+                if (mark != null) rosterModel.setMark(row, mark);
+            }
+        }, e -> LOG.warn("Could not reload subjects after a change", "sapid", sapid, "reason", e.getMessage()));
+    }
 
-            if (subjects.isEmpty()) {
-                JLabel noSubjectsLabel = new JLabel("No subjects found. Click 'Edit Subjects' to add some.");
-                noSubjectsLabel.setHorizontalAlignment(SwingConstants.CENTER);
-                noSubjectsLabel.setFont(FONT_LABEL.deriveFont(Font.ITALIC));
-                noSubjectsLabel.setForeground(Color.GRAY);
-                // Add padding around the label when it's the only thing
-                JPanel emptyPanel = new JPanel(new BorderLayout());
-                emptyPanel.setBackground(COLOR_CONTENT_BACKGROUND);
-                emptyPanel.setBorder(new EmptyBorder(50, 20, 50, 20));
-                emptyPanel.add(noSubjectsLabel, BorderLayout.CENTER);
-                subjectPanel.add(emptyPanel);
+    /** Fills the "So Far" column, from {@link StatsCache} when possible, otherwise loaded in the background. */
+    private void refreshSummaries() {
+        String sapid = this.currentUserSapid;
+        List<SubjectStats> cached = StatsCache.getInstance().get(sapid);
+        if (cached != null) {
+            showSummaries(cached);
+            return;
+        }
+        DatabaseTask.run(this, "timetable-summaries:" + sapid, service -> service.statistics(session), this::showSummaries,
+                e -> LOG.warn("Could not load attendance summaries", "sapid", sapid, "reason", e.getMessage()));
+    }
 
+    private void showSummaries(List<SubjectStats> rows) {
+        for (SubjectStats stats : rows) {
+            int row = rosterModel.rowOf(stats.getSubject());
+            if (row >= 0) {
+                rosterModel.setSummary(row, summaryOf(stats));
             }
+        }
+    }
 
-        } catch (SQLException e) {
-            e.printStackTrace();
-            JOptionPane.showMessageDialog(this, "Error loading subjects: " + e.getMessage(), "Database Error", JOptionPane.ERROR_MESSAGE);
-            JLabel errorLabel = new JLabel("Error loading subjects. Check connection or try 'Edit Subjects'.");
-            errorLabel.setForeground(Color.RED);
-            errorLabel.setFont(FONT_LABEL);
-            subjectPanel.add(errorLabel); // Add error label directly
-        } finally {
-            // Ensure the panel updates its layout and appearance
-            subjectPanel.revalidate();
-            subjectPanel.repaint();
+    private static String summaryOf(SubjectStats stats) {
+        if (stats.getTaken() == 0) {
+            return "No lectures yet";
         }
+        return String.format("%d / %d  (%d%%)", stats.getAttended(), stats.getTaken(), stats.getAttended() * 100 / stats.getTaken());
     }
 
-    /** Creates a JPanel containing the UI elements for a single subject row. */
-    private JPanel createSubjectRowPanel(String subject) {
-        JPanel rowPanel = new JPanel();
-        rowPanel.setLayout(new FlowLayout(FlowLayout.LEFT, 20, 5)); // Increased gap
-        rowPanel.setBackground(COLOR_CONTENT_BACKGROUND); // White background for the row
-         // Add padding and a bottom border only
-        rowPanel.setBorder(BorderFactory.createCompoundBorder(
-             new MatteBorder(0, 0, 1, 0, COLOR_BORDER), // Bottom border
-             new EmptyBorder(10, 15, 10, 15)             // Padding
-        ));
-        rowPanel.setMaximumSize(new Dimension(Short.MAX_VALUE, 60)); // Allow slightly more height
-
-
-        JLabel lblSubject = new JLabel(subject);
-        lblSubject.setFont(FONT_BOLD); // Bolder subject name
-        lblSubject.setForeground(COLOR_TEXT);
-        lblSubject.setPreferredSize(new Dimension(300, 25)); // Wider label
-        rowPanel.add(lblSubject);
-
-        JRadioButton rdoPresent = new JRadioButton("Present");
-        rdoPresent.setFont(FONT_PRIMARY);
-        rdoPresent.setBackground(COLOR_CONTENT_BACKGROUND); // Match background
-        rdoPresent.setFocusPainted(false);
-        rdoPresent.setCursor(Cursor.getPredefinedCursor(Cursor.HAND_CURSOR));
-        rowPanel.add(rdoPresent);
-        presentRadioButtons.put(subject, rdoPresent);
-
-        JRadioButton rdoAbsent = new JRadioButton("Absent");
-        rdoAbsent.setFont(FONT_PRIMARY);
-        rdoAbsent.setBackground(COLOR_CONTENT_BACKGROUND); // Match background
-        rdoAbsent.setFocusPainted(false);
-        rdoAbsent.setCursor(Cursor.getPredefinedCursor(Cursor.HAND_CURSOR));
-        rowPanel.add(rdoAbsent);
-        absentRadioButtons.put(subject, rdoAbsent);
-
-        ButtonGroup group = new ButtonGroup();
-        group.add(rdoPresent);
-        group.add(rdoAbsent);
-        subjectButtonGroups.put(subject, group);
-
-        return rowPanel;
+    /** Replaces the roster in the scroll pane with a message (empty list or load error). */
+    private void showMessageInsteadOfRoster(JLabel message) {
+        // Add padding around the label when it's the only thing
+        JPanel messagePanel = new JPanel(new BorderLayout());
+        messagePanel.setBackground(COLOR_CONTENT_BACKGROUND);
+        messagePanel.setBorder(new EmptyBorder(50, 20, 50, 20));
+        messagePanel.add(message, BorderLayout.CENTER);
+        scrollPane.setViewportView(messagePanel);
     }
 
 
     /** Action handler for the Edit Subjects button */
     private void openSubjectEditor() {
-         System.out.println("Opening Subject edit window for SAPID: " + currentUserSapid);
+         LOG.info("Opening subject editor", "sapid", currentUserSapid);
          try {
-             Subject subjectFrame = new Subject(currentUserSapid); // Pass the current user's SAPID
+             Subject subjectFrame = new Subject(session); // Hand over the session, subjects included
              subjectFrame.setVisible(true);
              this.dispose(); // Close the current Timetable window
          } catch (Exception ex) {
-             ex.printStackTrace();
+             LOG.error("Could not open subject editor", ex, "sapid", currentUserSapid);
              JOptionPane.showMessageDialog(Timetable.this,
                  "Error opening subject editor: " + ex.getMessage(),
                  "Navigation Error", JOptionPane.ERROR_MESSAGE);
@@ -389,53 +473,87 @@ public class Timetable extends JFrame {
     /** Saves the current attendance status for all subjects where a selection is made. */
     private void saveAttendance() {
         int subjectsProcessed = 0;
-        int subjectsUpdated = 0;
-        int subjectsFailed = 0;
         int subjectsSkipped = 0;
         List<String> errors = new ArrayList<>();
 
-        String sql = "UPDATE timetable SET " +
-                     "lectures_taken_so_far = NVL(lectures_taken_so_far, 0) + 1, " +
-                     "attended_count = NVL(attended_count, 0) + ? " +
-                     "WHERE sapid = ? AND subjects = ?";
-
-        for (String subject : subjects) {
+        // 1. Collect the selections made on the roster
+        rosterTable.finishEditing();
+        List<String> markedSubjects = new ArrayList<>();
+        boolean[] presentFlags = new boolean[rosterModel.getRowCount()];
+        for (int row = 0; row < rosterModel.getRowCount(); row++) {
             subjectsProcessed++;
-            JRadioButton rdoPresent = presentRadioButtons.get(subject);
-            JRadioButton rdoAbsent = absentRadioButtons.get(subject);
+            String subject = rosterModel.getLabel(row);
+            byte mark = rosterModel.getMark(row);
 
-            if (rdoPresent == null || rdoAbsent == null) {
-                System.err.println("Error: UI component missing for subject " + subject);
-                subjectsFailed++;
-                errors.add("UI component missing for " + subject);
+            if (mark == AttendanceRosterModel.UNMARKED) {
+                subjectsSkipped++; // No selection made
                 continue;
             }
 
-            if (!rdoPresent.isSelected() && !rdoAbsent.isSelected()) {
-                subjectsSkipped++;
-                System.out.println("Skipping subject '" + subject + "' as no selection was made.");
-                continue;
-            }
+            presentFlags[markedSubjects.size()] = mark == AttendanceRosterModel.PRESENT;
+            markedSubjects.add(subject);
+        }
 
-            int attendedIncrement = rdoPresent.isSelected() ? 1 : 0;
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Saving attendance", "sapid", currentUserSapid, "marked", markedSubjects.size(), "skipped", subjectsSkipped);
+        }
+        if (markedSubjects.isEmpty()) {
+            reportSaveResult(subjectsProcessed, subjectsSkipped, errors, markedSubjects, presentFlags, new int[0], null);
+            return;
+        }
 
-            try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
-                pstmt.setInt(1, attendedIncrement);
-                pstmt.setString(2, this.currentUserSapid);
-                pstmt.setString(3, subject);
-                int rowsAffected = pstmt.executeUpdate();
+        // 2. Append the whole session to the event log as one batch in one transaction, off the EDT.
+        //    The save button stays disabled until it finishes, so a double-click cannot save twice.
+        final int processed = subjectsProcessed;
+        final int skipped = subjectsSkipped;
+        String sapid = this.currentUserSapid;
+        // A retry after a failure or timeout resends the same id, so a save that did reach the
+        // database is turned away instead of counted twice
+        if (pendingSessionId == null) {
+            pendingSessionId = UUID.randomUUID().toString();
+        }
+        String sessionId = pendingSessionId;
+        track(DatabaseTask.run(this, "timetable-save:" + sapid,
+                service -> service.saveSession(session, sessionId, markedSubjects, presentFlags),
+                counts -> reportSaveResult(processed, skipped, errors, markedSubjects, presentFlags, counts, null),
+                e -> reportSaveResult(processed, skipped, errors, markedSubjects, presentFlags, null, e),
+                btnSave, btnResetUI, btnResetData), "Saving session...");
+    }
+
+    /**
+     * Reports the outcome of a session save. Runs on the EDT.
+     * {@code counts} holds per-subject batch results; if {@code failure} is set the
+     * transaction was rolled back, so none of the marked subjects were saved.
+     */
+    private void reportSaveResult(int subjectsProcessed, int subjectsSkipped, List<String> errors,
+                                  List<String> markedSubjects, boolean[] presentFlags, int[] counts, Exception failure) {
+        if (failure == null) {
+            pendingSessionId = null;
+        } else if (failure instanceof SQLException && AttendanceRepositories.dialect().isDuplicateKey((SQLException) failure)) {
+            pendingSessionId = null;
+            JOptionPane.showMessageDialog(this, "This session was already saved by an earlier attempt; it was not counted again.",
+                                          "Already Saved", JOptionPane.INFORMATION_MESSAGE);
+            resetRadioButtonsToDefault();
+            return;
+        }
+        int subjectsUpdated = 0;
+        int subjectsFailed = errors.size();
 
-                if (rowsAffected > 0) {
+        if (failure != null) {
+            for (String subject : markedSubjects) {
+                subjectsFailed++;
+                errors.add("SQL Error for " + subject + ": " + failure.getMessage());
+            }
+        } else {
+            for (int i = 0; i < counts.length; i++) {
+                String subject = markedSubjects.get(i);
+                if (AttendanceRepository.isUpdated(counts[i])) {
                     subjectsUpdated++;
                 } else {
                     subjectsFailed++;
                     errors.add("Failed to update DB for " + subject);
-                    System.err.println("Warning: 0 rows updated for subject '" + subject + "', SAPID '" + currentUserSapid + "'");
+                    LOG.warn("Attendance not written", "sapid", currentUserSapid, "subject", subject);
                 }
-            } catch (SQLException e) {
-                subjectsFailed++;
-                errors.add("SQL Error for " + subject + ": " + e.getMessage());
-                e.printStackTrace();
             }
         }
 
@@ -446,6 +564,11 @@ public class Timetable extends JFrame {
 
         if (isSuccess) {
             resultMessage.append("Attendance for ").append(subjectsUpdated).append(" subjects saved successfully!\n");
+            int backlog = AttendanceService.getInstance().offlineBacklog();
+            if (backlog > 0) {
+                resultMessage.append("The database is unreachable; ").append(backlog)
+                             .append(" session(s) are stored on this computer and will be sent when it is back.\n");
+            }
         }
         if (subjectsSkipped > 0) {
              resultMessage.append(subjectsSkipped).append(" subjects were skipped (no selection made).\n");
@@ -473,7 +596,7 @@ public class Timetable extends JFrame {
     }
 
 
-    /** Resets the attendance counts (attended, taken) to ZERO in the database for the current user. */
+    /** Resets the attendance counts (attended, taken) and history to ZERO in the database for the current user. */
     private void resetAttendanceData() {
         // Use styled JOptionPane if possible, or standard one
         UIManager.put("OptionPane.messageFont", FONT_PRIMARY);
@@ -495,101 +618,102 @@ public class Timetable extends JFrame {
          UIManager.put("OptionPane.buttonFont", null);
 
         if (choice == JOptionPane.YES_OPTION) {
-            String sql = "UPDATE timetable SET attended_count = 0, lectures_taken_so_far = 0 WHERE sapid = ?";
-            try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
-                pstmt.setString(1, this.currentUserSapid);
-                int rowsAffected = pstmt.executeUpdate();
+            String sapid = this.currentUserSapid;
+            track(DatabaseTask.run(this, "timetable-reset:" + sapid,
+                    service -> service.resetAttendance(session), rowsAffected -> {
                 JOptionPane.showMessageDialog(this, rowsAffected + " subjects had their attendance counts reset.",
                                               "Reset Complete", JOptionPane.INFORMATION_MESSAGE);
-                System.out.println("Attendance data reset for SAPID: " + currentUserSapid + ", Rows affected: " + rowsAffected);
-            } catch (SQLException e) {
-                e.printStackTrace();
-                JOptionPane.showMessageDialog(this, "Database error during reset: " + e.getMessage(),
-                                              "Reset Error", JOptionPane.ERROR_MESSAGE);
-            }
+                LOG.info("Attendance data reset", "sapid", sapid, "subjects", rowsAffected);
+            }, e -> JOptionPane.showMessageDialog(this, "Database error during reset: " + e.getMessage(),
+                                                  "Reset Error", JOptionPane.ERROR_MESSAGE),
+            btnSave, btnResetData), "Resetting attendance...");
         } else {
              JOptionPane.showMessageDialog(this, "Attendance reset cancelled.", "Cancelled", JOptionPane.INFORMATION_MESSAGE);
         }
     }
 
-    /** Resets all radio buttons on the UI to be unselected. */
+    /** Resets all Present/Absent choices on the UI to be unselected. */
     private void resetRadioButtonsToDefault() {
-         for (ButtonGroup group : subjectButtonGroups.values()) {
-             if (group != null) {
-                 group.clearSelection();
-             }
-         }
-         System.out.println("Reset radio button selections (cleared).");
+         rosterTable.finishEditing();
+         rosterModel.clearMarks();
     }
 
 
-    /** Fetches and displays attendance statistics for the current user. */
+    /**
+     * Displays attendance statistics for the current user. Served from {@link StatsCache}
+     * when possible; otherwise loaded in the background and cached.
+     */
     private void showStatistics() {
-        JTextArea statsTextArea = new JTextArea(15, 65);
+        String sapid = this.currentUserSapid;
+        List<SubjectStats> cached = StatsCache.getInstance().get(sapid);
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Statistics requested", "sapid", sapid, "cache", StatsCache.getInstance().toString());
+        }
+        if (cached != null) {
+            displayStatistics(formatStatisticsReport(sapid, cached));
+            return;
+        }
+        track(DatabaseTask.run(this, "timetable-stats:" + sapid,
+                service -> service.statistics(session),
+                rows -> displayStatistics(formatStatisticsReport(sapid, rows)),
+                e -> {
+                    JOptionPane.showMessageDialog(this, "Error loading statistics: " + e.getMessage(),
+                            "Database Error", JOptionPane.ERROR_MESSAGE);
+                    displayStatistics(" Attendance Statistics for SAPID: " + sapid
+                            + "\n\n\nError loading statistics: " + e.getMessage());
+                },
+                btnViewStats), "Loading statistics...");
+    }
+
+    /** Formats the statistics report for a user's counters. */
+    private static String formatStatisticsReport(String sapid, List<SubjectStats> rows) {
+        String rule = " ==========================================================================================\n";
+        String line = " ------------------------------------------------------------------------------------------\n";
+        String recentHeader = "Last " + SubjectStats.RECENT_LECTURES;
+        StringBuilder stats = new StringBuilder(" Attendance Statistics for SAPID: " + sapid + "\n");
+        stats.append(rule);
+        stats.append(String.format(" %-25s | %8s | %8s | %8s | %6s | %7s | %10s \n",
+                "Subject", "Attended", "Taken", "Target", "Streak", recentHeader, "Can Leave*"));
+        stats.append(line);
+
+        for (SubjectStats row : rows) {
+            int canLeaveMore = row.canLeave(SubjectStats.DEFAULT_REQUIRED_RATIO);
+            String canLeaveStr = canLeaveMore >= 0 ? String.valueOf(canLeaveMore) : "(Set Target)";
+            int recent = row.recentPercent(SubjectStats.RECENT_LECTURES);
+            String recentStr = recent >= 0 ? recent + "%" : "-";
+            stats.append(String.format(" %-25s | %8d | %8d | %8d | %6d | %7s | %10s \n",
+                    row.getSubject(), row.getAttended(), row.getTaken(), row.getTarget(),
+                    row.currentStreak(), recentStr, canLeaveStr));
+        }
+
+        if (rows.isEmpty()) {
+            stats.append("\n       No attendance data found for this user.\n");
+        }
+        stats.append(line);
+        stats.append(String.format(" *'Can Leave' estimates additional lectures missable for potential %d%% attendance\n",
+                Math.round(SubjectStats.DEFAULT_REQUIRED_RATIO * 100)));
+        stats.append("  by 'Target' count. Assumes remaining lectures are taken. Requires 'Target' > 0.\n");
+        stats.append("  'Streak' counts lectures attended in a row up to the latest; '" + recentHeader
+                + "' is the share attended of the latest " + SubjectStats.RECENT_LECTURES + ".\n");
+        stats.append(rule);
+        return stats.toString();
+    }
+
+    /** Shows a statistics report in a dialog. Runs on the EDT. */
+    private void displayStatistics(String report) {
+        JTextArea statsTextArea = new JTextArea(15, 80);
         statsTextArea.setEditable(false);
         statsTextArea.setFont(FONT_MONOSPACED); // Use Monospaced for alignment
         statsTextArea.setBackground(COLOR_CONTENT_BACKGROUND);
         statsTextArea.setForeground(COLOR_TEXT);
         statsTextArea.setMargin(new Insets(10, 10, 10, 10)); // Padding inside text area
 
-        StringBuilder stats = new StringBuilder(" Attendance Statistics for SAPID: " + currentUserSapid + "\n");
-        stats.append(" ==============================================================================\n");
-        stats.append(String.format(" %-25s | %8s | %8s | %8s | %10s \n",
-                "Subject", "Attended", "Taken", "Target", "Can Leave*"));
-        stats.append(" ------------------------------------------------------------------------------\n");
-
-        String sql = "SELECT subjects, NVL(attended_count,0) as attended, " +
-                     "NVL(lectures_taken_so_far,0) as taken, NVL(target_total_lectures,0) as target " +
-                     "FROM timetable WHERE sapid = ? ORDER BY subjects";
-
-        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            pstmt.setString(1, this.currentUserSapid);
-            ResultSet rs = pstmt.executeQuery();
-
-            boolean hasData = false;
-            while (rs.next()) {
-                hasData = true;
-                String subject = rs.getString("subjects");
-                int attended = rs.getInt("attended");
-                int taken = rs.getInt("taken");
-                int target = rs.getInt("target");
-
-                String canLeaveStr = "N/A";
-                if (target > 0) {
-                    int minRequiredAttendance = (int) Math.ceil(target * 0.80); // Assuming 80% target
-                    int maxAllowedAbsences = target - minRequiredAttendance;
-                    int absencesSoFar = taken - attended;
-                    int canLeaveMore = Math.max(0, maxAllowedAbsences - absencesSoFar);
-                    canLeaveStr = String.valueOf(canLeaveMore);
-                } else {
-                     canLeaveStr = "(Set Target)";
-                }
-                stats.append(String.format(" %-25s | %8d | %8d | %8d | %10s \n",
-                        subject, attended, taken, target, canLeaveStr));
-            }
-
-            if (!hasData) {
-                stats.append("\n       No attendance data found for this user.\n");
-            }
-            stats.append(" ------------------------------------------------------------------------------\n");
-            stats.append(" *'Can Leave' estimates additional lectures missable for potential 80% attendance\n");
-            stats.append("  by 'Target' count. Assumes remaining lectures are taken. Requires 'Target' > 0.\n");
-            stats.append(" ==============================================================================\n");
-
-
-        } catch (SQLException e) {
-            e.printStackTrace();
-            stats.append("\n\nError loading statistics: ").append(e.getMessage());
-            JOptionPane.showMessageDialog(this, "Error loading statistics: " + e.getMessage(),
-                    "Database Error", JOptionPane.ERROR_MESSAGE);
-        }
-
-        statsTextArea.setText(stats.toString());
+        statsTextArea.setText(report);
         statsTextArea.setCaretPosition(0); // Scroll to top
 
         JScrollPane statsScrollPane = new JScrollPane(statsTextArea);
         statsScrollPane.setBorder(new LineBorder(COLOR_BORDER));
-        statsScrollPane.setPreferredSize(new Dimension(650, 350)); // Dialog size
+        statsScrollPane.setPreferredSize(new Dimension(800, 350)); // Dialog size
 
          // Show in a dialog
          UIManager.put("OptionPane.background", COLOR_BACKGROUND);
@@ -599,19 +723,4 @@ public class Timetable extends JFrame {
          UIManager.put("OptionPane.background", null); // Reset
          UIManager.put("Panel.background", null);
     }
-
-
-    // Close connection when the frame is closed
-    @Override
-    public void dispose() {
-        try {
-            if (conn != null && !conn.isClosed()) {
-                conn.close();
-                System.out.println("Database connection closed.");
-            }
-        } catch (SQLException e) {
-            e.printStackTrace();
-        }
-        super.dispose();
-    }
 }
\ No newline at end of file
@@ -0,0 +1,30 @@
+/**
+ * An authenticated user, as returned by {@link AttendanceRepository#authenticate}. Immutable.
+ */
+public final class UserAccount {
+
+    private final int userId;
+    private final String sapid;
+    private final String name;
+    private final boolean subjectsAdded;
+
+    public UserAccount(int userId, String sapid, String name, boolean subjectsAdded) {
+        this.userId = userId;
+        this.sapid = sapid;
+        this.name = name;
+        this.subjectsAdded = subjectsAdded;
+    }
+
+    /** Numeric key of the user in the store ({@code users.user_id}). */
+    public int getUserId() { return userId; }
+    public String getSapid() { return sapid; }
+    public String getName() { return name; }
+
+    /** True once the user has saved at least one subject. */
+    public boolean hasSubjects() { return subjectsAdded; }
+
+    @Override
+    public String toString() {
+        return "UserAccount [userId=" + userId + ", sapid=" + sapid + ", name=" + name + ", subjectsAdded=" + subjectsAdded + "]";
+    }
+}
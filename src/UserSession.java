@@ -0,0 +1,97 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Everything the screens need to know about the logged-in user, created once at login and
+ * handed from frame to frame: the account profile, the subject list with targets, and the
+ * {@link WeeklySchedule} built from it.
+ *
+ * Navigating between {@link Timetable} and {@link Subject} renders from this context without
+ * touching the database; only the first screen that needs the subjects loads them. Writes keep
+ * it current ({@link #setSubjects} after a subject save), and the Subject screen's reload button
+ * refreshes it from the database to pick up changes made from another terminal.
+ *
+ * Thread-safe: state is held in immutable values behind volatile fields, so background tasks
+ * may update it while the EDT reads it.
+ */
+public final class UserSession {
+
+    private volatile UserAccount account;
+    private volatile List<SubjectTarget> subjects; // null until loaded
+    private volatile WeeklySchedule schedule = WeeklySchedule.of(Collections.emptyList());
+
+    public UserSession(UserAccount account) {
+        if (account == null || account.getSapid() == null || account.getSapid().trim().isEmpty()) {
+            throw new IllegalArgumentException("A session needs an account with a SAPID");
+        }
+        this.account = account;
+    }
+
+    public UserAccount getAccount() {
+        return account;
+    }
+
+    public String getSapid() {
+        return account.getSapid();
+    }
+
+    public int getUserId() {
+        return account.getUserId();
+    }
+
+    /** True once the subjects have been loaded or saved in this session. */
+    public boolean hasSubjectsLoaded() {
+        return subjects != null;
+    }
+
+    /** The user's subjects ordered by name (as the repository returns them), or null if not loaded yet. */
+    public List<SubjectTarget> getSubjects() {
+        return subjects;
+    }
+
+    /** Names of the loaded subjects, in display order; empty if not loaded yet. */
+    public List<String> getSubjectNames() {
+        List<SubjectTarget> current = subjects;
+        if (current == null) {
+            return Collections.emptyList();
+        }
+        List<String> names = new ArrayList<>(current.size());
+        for (SubjectTarget subject : current) {
+            names.add(subject.getName());
+        }
+        return names;
+    }
+
+    /** Subjects by weekday, built from the loaded subjects; empty if not loaded yet. */
+    public WeeklySchedule getSchedule() {
+        return schedule;
+    }
+
+    /**
+     * Replaces the subject list after it was loaded from, or written to, the repository.
+     * Also keeps the profile's "has subjects" flag in step, as the repository does.
+     */
+    public void setSubjects(List<SubjectTarget> loaded) {
+        List<SubjectTarget> sorted = new ArrayList<>(loaded);
+        sorted.sort(Comparator.comparing(SubjectTarget::getName));
+        schedule = WeeklySchedule.of(sorted);
+        subjects = Collections.unmodifiableList(sorted);
+        UserAccount current = account;
+        if (current.hasSubjects() == sorted.isEmpty()) {
+            account = new UserAccount(current.getUserId(), current.getSapid(), current.getName(), !sorted.isEmpty());
+        }
+    }
+
+    /** Forgets the subject list so the next screen loads it again. */
+    public void invalidateSubjects() {
+        subjects = null;
+    }
+
+    @Override
+    public String toString() {
+        List<SubjectTarget> current = subjects;
+        return "UserSession [account=" + account + ", subjects=" + (current == null ? "not loaded" : current.size()) + "]";
+    }
+}
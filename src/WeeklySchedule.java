@@ -0,0 +1,131 @@
+import java.time.DayOfWeek;
+import java.time.format.TextStyle;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Which of a user's subjects meet on which weekday. Each subject has a 7-bit mask, bit 0 for
+ * Monday through bit 6 for Sunday ({@code timetable.days_mask}); {@link #EVERY_DAY} is the
+ * default for subjects without a schedule.
+ *
+ * Built once from the subject list, it keeps the masks in a byte array and the subjects of each
+ * weekday as a ready list, so {@link #subjectsOn} is an array read. Immutable.
+ */
+public final class WeeklySchedule {
+
+    public static final int EVERY_DAY = 0x7F;
+
+    private static final WeeklySchedule EMPTY = new WeeklySchedule(Collections.emptyList());
+
+    private final String[] subjects;
+    private final byte[] masks;
+    private final List<List<String>> byDay = new ArrayList<>(7); // Index 0 = Monday
+
+    private WeeklySchedule(List<SubjectTarget> targets) {
+        subjects = new String[targets.size()];
+        masks = new byte[targets.size()];
+        for (int i = 0; i < subjects.length; i++) {
+            subjects[i] = targets.get(i).getName();
+            masks[i] = (byte) targets.get(i).getDaysMask();
+        }
+        for (DayOfWeek day : DayOfWeek.values()) {
+            List<String> names = new ArrayList<>();
+            for (int i = 0; i < subjects.length; i++) {
+                if ((masks[i] & bit(day)) != 0) {
+                    names.add(subjects[i]);
+                }
+            }
+            byDay.add(Collections.unmodifiableList(names));
+        }
+    }
+
+    /** The schedule of {@code subjects}, keeping their order within each day. */
+    public static WeeklySchedule of(List<SubjectTarget> subjects) {
+        return subjects.isEmpty() ? EMPTY : new WeeklySchedule(subjects);
+    }
+
+    /** Subjects that meet on {@code day}. */
+    public List<String> subjectsOn(DayOfWeek day) {
+        return byDay.get(day.getValue() - 1);
+    }
+
+    /** The subject's days mask; 0 if the subject is not in this schedule. */
+    public int daysOf(String subject) {
+        for (int i = 0; i < subjects.length; i++) {
+            if (subjects[i].equals(subject)) {
+                return masks[i];
+            }
+        }
+        return 0;
+    }
+
+    // --- Masks ---
+
+    /** The mask bit of {@code day}. */
+    public static int bit(DayOfWeek day) {
+        return 1 << (day.getValue() - 1);
+    }
+
+    public static boolean isScheduled(int daysMask, DayOfWeek day) {
+        return (daysMask & bit(day)) != 0;
+    }
+
+    /** True if {@code daysMask} names at least one day and nothing else. */
+    public static boolean isValid(int daysMask) {
+        return daysMask > 0 && daysMask <= EVERY_DAY;
+    }
+
+    /**
+     * Reads days written as in {@link #format}: short or full English day names separated by
+     * spaces or commas ("Mon Wed Fri", "tuesday, thursday"). Blank or "Every day" means every day.
+     *
+     * @throws IllegalArgumentException if a word is not a day name
+     */
+    public static int parse(String text) {
+        String trimmed = text == null ? "" : text.trim();
+        if (trimmed.isEmpty() || trimmed.equalsIgnoreCase("every day")) {
+            return EVERY_DAY;
+        }
+        int mask = 0;
+        for (String word : trimmed.split("[\\s,]+")) {
+            mask |= bit(dayNamed(word));
+        }
+        return mask;
+    }
+
+    /** The days as short names in week order, e.g. "Mon Wed Fri"; "Every day" for {@link #EVERY_DAY}. */
+    public static String format(int daysMask) {
+        if (daysMask == EVERY_DAY) {
+            return "Every day";
+        }
+        StringBuilder text = new StringBuilder();
+        for (DayOfWeek day : DayOfWeek.values()) {
+            if (isScheduled(daysMask, day)) {
+                if (text.length() > 0) text.append(' ');
+                text.append(shortName(day));
+            }
+        }
+        return text.toString();
+    }
+
+    public static String shortName(DayOfWeek day) {
+        return day.getDisplayName(TextStyle.SHORT, Locale.ENGLISH);
+    }
+
+    private static DayOfWeek dayNamed(String word) {
+        for (DayOfWeek day : DayOfWeek.values()) {
+            String full = day.getDisplayName(TextStyle.FULL, Locale.ENGLISH);
+            if (word.length() >= 3 && full.regionMatches(true, 0, word, 0, word.length())) {
+                return day;
+            }
+        }
+        throw new IllegalArgumentException("'" + word + "' is not a day of the week (use e.g. Mon Wed Fri)");
+    }
+
+    @Override
+    public String toString() {
+        return "WeeklySchedule [subjects=" + subjects.length + "]";
+    }
+}
@@ -4,22 +4,35 @@ import javax.swing.border.EmptyBorder;
 import java.awt.*;
 import java.awt.event.ActionListener;
 import java.awt.event.ActionEvent;
-import java.sql.*;
+import java.sql.SQLException;
+import java.util.concurrent.RejectedExecutionException;
 
 public class login extends JFrame {
     private static final long serialVersionUID = 1L;
+    private static final Log LOG = Log.get(login.class);
     private JPanel contentPane;
     private JTextField textField_1;
     private JPasswordField passwordField;
     
 
     public static void main(String[] args) {
+        // Check the schema and warm the statements while the user is still typing
+        Thread warmUp = new Thread(() -> {
+            try {
+                AttendanceService.getInstance();
+            } catch (RuntimeException e) {
+                LOG.warn("Backend not ready at startup, retrying on first use", "reason", e.getMessage());
+            }
+        }, "startup-warmup");
+        warmUp.setDaemon(true);
+        warmUp.start();
+
         EventQueue.invokeLater(() -> {
             try {
                 login frame = new login();
                 frame.setVisible(true);
             } catch (Exception e) {
-                e.printStackTrace();
+                LOG.error("Could not open the login window", e);
             }
         });
     }
@@ -106,8 +119,7 @@ public class login extends JFrame {
         // --- LOGIC STARTS HERE (UNCHANGED) ---
         btnLogin.addActionListener(new ActionListener() {
             public void actionPerformed(ActionEvent e) {
-                System.out.println("-----------------------------------------");
-                System.out.println("DEBUG: Login button clicked!");
+                LOG.debug("Login button clicked");
 
                 String sapid = textField_1.getText().trim();
                 String password = new String(passwordField.getPassword());
@@ -117,43 +129,20 @@ public class login extends JFrame {
                     return;
                 }
 
-                Connection con = null;
-                PreparedStatement pstmtAuth = null;
-                ResultSet rsAuth = null;
-
-                try {
-                    String url = "jdbc:oracle:thin:@localhost:1521:xe";
-                    String username = "system";
-                    String dbPassword = "123";
-
-                    try {
-                        Class.forName("oracle.jdbc.driver.OracleDriver");
-                    } catch (ClassNotFoundException cnfe) {
-                        JOptionPane.showMessageDialog(login.this, "Oracle JDBC Driver not found!", "Driver Error", JOptionPane.ERROR_MESSAGE);
-                        return;
-                    }
-
-                    DriverManager.setLoginTimeout(15);
-                    con = DriverManager.getConnection(url, username, dbPassword);
-
-                    String authSql = "SELECT name, subjects_added FROM users WHERE sapid = ? AND password = ?";
-                    pstmtAuth = con.prepareStatement(authSql);
-                    pstmtAuth.setString(1, sapid);
-                    pstmtAuth.setString(2, password);
-                    rsAuth = pstmtAuth.executeQuery();
-
-                    if (rsAuth.next()) {
-                        String userName = rsAuth.getString("name");
-                        int subjectsAddedFlag = rsAuth.getInt("subjects_added");
+                // Authenticate off the EDT; the button stays disabled until the check completes
+                DatabaseTask.run(login.this, "login", service -> service.login(sapid, password), session -> {
+                    if (session != null) {
+                        UserAccount account = session.getAccount(); // The session is shared by every screen of this login
+                        String userName = account.getName();
 
                         JOptionPane.showMessageDialog(login.this, "Login Successful! Welcome " + userName, "Success", JOptionPane.INFORMATION_MESSAGE);
 
-                        if (subjectsAddedFlag == 1) {
-                            Timetable timetableFrame = new Timetable(sapid);
+                        if (account.hasSubjects()) {
+                            Timetable timetableFrame = new Timetable(session);
                             timetableFrame.setVisible(true);
                             dispose();
                         } else {
-                            Subject subjectPage = new Subject(sapid);
+                            Subject subjectPage = new Subject(session);
                             subjectPage.setVisible(true);
                             dispose();
                         }
@@ -161,18 +150,16 @@ public class login extends JFrame {
                     } else {
                         JOptionPane.showMessageDialog(login.this, "Invalid SAP ID or Password", "Login Failed", JOptionPane.ERROR_MESSAGE);
                     }
-
-                } catch (SQLException ex_sql) {
-                    ex_sql.printStackTrace();
-                    JOptionPane.showMessageDialog(login.this, "Database Error: " + ex_sql.getMessage(), "Database Error", JOptionPane.ERROR_MESSAGE);
-                } catch (Exception ex_gen) {
-                    ex_gen.printStackTrace();
-                    JOptionPane.showMessageDialog(login.this, "An unexpected error occurred: " + ex_gen.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
-                } finally {
-                    try { if (rsAuth != null) rsAuth.close(); } catch (SQLException ignored) {}
-                    try { if (pstmtAuth != null) pstmtAuth.close(); } catch (SQLException ignored) {}
-                    try { if (con != null) con.close(); } catch (SQLException ignored) {}
-                }
+                }, ex -> {
+                    if (ex instanceof SQLException) {
+                        JOptionPane.showMessageDialog(login.this, "Database Error: " + ex.getMessage(), "Database Error", JOptionPane.ERROR_MESSAGE);
+                    } else if (ex instanceof RejectedExecutionException) {
+                        // Password checks are bounded; a login storm is turned away rather than queued forever
+                        JOptionPane.showMessageDialog(login.this, ex.getMessage(), "Busy", JOptionPane.WARNING_MESSAGE);
+                    } else {
+                        JOptionPane.showMessageDialog(login.this, "An unexpected error occurred: " + ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+                    }
+                }, btnLogin, btnRegister);
             }
         });
 
@@ -184,6 +171,6 @@ public class login extends JFrame {
             }
         });
 
-        System.out.println("DEBUG: Login constructor finished.");
+        LOG.debug("Login window created");
     }
 }
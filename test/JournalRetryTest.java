@@ -0,0 +1,69 @@
+import java.io.File;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Retries of a session saved through the {@link JournaledAttendanceRepository} must be refused as
+ * a duplicate, as the database's session ledger refuses them, whether the first save is still in
+ * the journal or has been replayed. A reset frees the ids again.
+ *
+ * Usage: java -cp out JournalRetryTest (exits with status 1 on the first failed check)
+ */
+public class JournalRetryTest {
+
+    private static final List<String> SUBJECTS = Arrays.asList("Math", "Chem");
+    private static final boolean[] PRESENT = {true, false};
+
+    public static void main(String[] args) throws Exception {
+        File file = File.createTempFile("journal-retry", ".journal");
+        file.deleteOnExit();
+        new File(file.getPath() + ".rejected").deleteOnExit();
+        InMemoryAttendanceRepository database = new InMemoryAttendanceRepository();
+        database.register("S1", "Test", "password");
+        database.saveSubjects("S1", Arrays.asList(new SubjectTarget("Math", 40), new SubjectTarget("Chem", 30)));
+
+        JournaledAttendanceRepository journaled = open(database, file);
+        check("first save is journaled", Arrays.equals(journaled.saveSession("S1", "s1", SUBJECTS, PRESENT), new int[] {1, 1}));
+        check("retry while pending is a duplicate", isDuplicate(journaled, "s1"));
+
+        journaled.replayPending();
+        check("retry after replay is a duplicate", isDuplicate(journaled, "s1"));
+        check("replayed once", attended(journaled, "Math") == 1);
+
+        journaled.resetAttendance("S1");
+        check("save after reset is journaled", journaled.saveSession("S1", "s1", SUBJECTS, PRESENT).length == 2);
+        journaled.replayPending();
+        check("saved again after reset", attended(journaled, "Math") == 1);
+        journaled.close();
+        System.out.println("JournalRetryTest: all checks passed");
+        System.exit(0);
+    }
+
+    private static JournaledAttendanceRepository open(AttendanceRepository database, File file) throws Exception {
+        return new JournaledAttendanceRepository(database, SqlDialect.ORACLE, new SessionJournal(file, 64 * 1024, 0));
+    }
+
+    private static boolean isDuplicate(AttendanceRepository repository, String sessionId) {
+        try {
+            repository.saveSession("S1", sessionId, SUBJECTS, PRESENT);
+            return false;
+        } catch (SQLException e) {
+            return SqlDialect.ORACLE.isDuplicateKey(e);
+        }
+    }
+
+    private static int attended(AttendanceRepository repository, String subject) throws SQLException {
+        for (SubjectStats stats : repository.loadStatistics("S1")) {
+            if (stats.getSubject().equals(subject)) return stats.getAttended();
+        }
+        throw new AssertionError("No statistics for " + subject);
+    }
+
+    private static void check(String what, boolean ok) {
+        System.out.println((ok ? "ok   " : "FAIL ") + what);
+        if (!ok) {
+            System.exit(1);
+        }
+    }
+}